@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine;
+
+import java.util.Collection;
+
+import org.springframework.messaging.Message;
+import org.springframework.statemachine.transition.Transition;
+
+/**
+ * {@code EventResult} is an outcome of an event sent into a
+ * {@link StateMachine} telling if event was accepted, deferred or denied and
+ * what happened when it was processed.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ */
+public interface EventResult<S, E> {
+
+	/**
+	 * Gets the message of an event.
+	 *
+	 * @return the message
+	 */
+	Message<E> getMessage();
+
+	/**
+	 * Gets the result type.
+	 *
+	 * @return the result type
+	 */
+	ResultType getResultType();
+
+	/**
+	 * Gets the transition taken because of an event. Transition is
+	 * null if event didn't cause a transition, like when event was
+	 * denied, deferred or denied by a guard.
+	 *
+	 * @return the transition or null
+	 */
+	Transition<S, E> getTransition();
+
+	/**
+	 * Gets the ids of states machine was in after event was handled.
+	 *
+	 * @return the resulting state ids
+	 */
+	Collection<S> getStateIds();
+
+	/**
+	 * Enumeration of possible result types.
+	 */
+	public enum ResultType {
+
+		/** Event was accepted and processed. */
+		ACCEPTED,
+
+		/** Event was deferred for later processing. */
+		DEFERRED,
+
+		/** Event was not accepted. */
+		DENIED,
+
+		/** Event was discarded because its deadline passed. */
+		EXPIRED
+	}
+
+}
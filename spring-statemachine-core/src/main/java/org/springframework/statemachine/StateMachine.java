@@ -15,9 +15,15 @@
  */
 package org.springframework.statemachine;
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.springframework.messaging.Message;
 import org.springframework.statemachine.access.StateMachineAccessor;
 import org.springframework.statemachine.region.Region;
 import org.springframework.statemachine.state.State;
+import org.springframework.util.concurrent.ListenableFuture;
 
 /**
  * {@code StateMachine} provides an APIs for generic finite state machine needed
@@ -51,6 +57,39 @@ public interface StateMachine<S, E> extends Region<S, E> {
 	 */
 	StateMachineAccessor<S, E> getStateMachineAccessor();
 
+	/**
+	 * Send a batch of events {@code E} wrapped with a {@link Message}. Whole
+	 * batch is processed in order within a single execution instead of
+	 * scheduling an execution for every event.
+	 *
+	 * @param events the wrapped events to send
+	 * @return the acceptance results in order of given events
+	 */
+	List<Boolean> sendEvents(Collection<Message<E>> events);
+
+	/**
+	 * Send a batch of events {@code E} wrapped with a {@link Message}. Whole
+	 * batch is processed in order within a single execution instead of
+	 * scheduling an execution for every event.
+	 *
+	 * @param events the iterator of wrapped events to send
+	 * @return the acceptance results in order of given events
+	 */
+	List<Boolean> sendEvents(Iterator<Message<E>> events);
+
+	/**
+	 * Send an event {@code E} wrapped with a {@link Message} and return
+	 * a future which is completed when the event has been processed. Result
+	 * tells whether an event was accepted, deferred or denied, a transition
+	 * taken and state ids after the event was processed. Event is denied
+	 * if no transition is taken, and a future of an event still queued when
+	 * a machine is stopped is completed as denied.
+	 *
+	 * @param event the wrapped event to send
+	 * @return the future of an event result
+	 */
+	ListenableFuture<EventResult<S, E>> sendEventAsync(Message<E> event);
+
 	/**
 	 * Sets the state machine error.
 	 *
@@ -35,4 +35,16 @@ public abstract class StateMachineSystemConstants {
 	/** State machine id key for headers and variables */
 	public static final String STATEMACHINE_IDENTIFIER = "_sm_id_";
 
+	/** Coalescing key header, queued events with equal keys replace each other */
+	public static final String COALESCE_KEY = "_sm_coalesce_";
+
+	/** Event priority header, value is an EventPriority or its name */
+	public static final String EVENT_PRIORITY = "_sm_priority_";
+
+	/** Event deadline header, value is an absolute time in milliseconds */
+	public static final String EVENT_DEADLINE = "_sm_deadline_";
+
+	/** Event time to live header, value is milliseconds from a message timestamp */
+	public static final String EVENT_TTL = "_sm_ttl_";
+
 }
@@ -17,6 +17,7 @@ package org.springframework.statemachine.config;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -39,6 +40,7 @@ import org.springframework.statemachine.config.builders.StateMachineStates;
 import org.springframework.statemachine.config.builders.StateMachineTransitions;
 import org.springframework.statemachine.config.builders.StateMachineTransitions.ChoiceData;
 import org.springframework.statemachine.config.builders.StateMachineTransitions.TransitionData;
+import org.springframework.statemachine.engine.StatelessStateMachineEngine;
 import org.springframework.statemachine.ensemble.DistributedStateMachine;
 import org.springframework.statemachine.listener.StateMachineListener;
 import org.springframework.statemachine.region.Region;
@@ -53,8 +55,10 @@ import org.springframework.statemachine.state.PseudoStateKind;
 import org.springframework.statemachine.state.RegionState;
 import org.springframework.statemachine.state.State;
 import org.springframework.statemachine.state.StateMachineState;
+import org.springframework.statemachine.support.AbstractStateMachine;
 import org.springframework.statemachine.support.DefaultExtendedState;
 import org.springframework.statemachine.support.LifecycleObjectSupport;
+import org.springframework.statemachine.support.TransitionPlanCache;
 import org.springframework.statemachine.support.tree.Tree;
 import org.springframework.statemachine.support.tree.Tree.Node;
 import org.springframework.statemachine.support.tree.TreeTraverser;
@@ -89,6 +93,12 @@ public abstract class AbstractStateMachineFactory<S, E> extends LifecycleObjectS
 
 	private boolean handleAutostartup = false;
 
+	private volatile List<BuildStep<S, E>> buildSteps;
+
+	private volatile StatelessStateMachineEngine<S, E> statelessEngine;
+
+	private final TransitionPlanCache<S, E> transitionPlanCache = new TransitionPlanCache<S, E>();
+
 	/**
 	 * Instantiates a new enum state machine factory.
 	 *
@@ -118,43 +128,15 @@ public abstract class AbstractStateMachineFactory<S, E> extends LifecycleObjectS
 		// states.
 		final Map<S, State<S, E>> stateMap = new HashMap<S, State<S, E>>();
 		Stack<MachineStackItem<S, E>> regionStack = new Stack<MachineStackItem<S, E>>();
-		Stack<StateData<S, E>> stateStack = new Stack<StateData<S, E>>();
 		Map<Object, StateMachine<S, E>> machineMap = new HashMap<Object, StateMachine<S,E>>();
 
-		Iterator<Node<StateData<S, E>>> iterator = buildStateDataIterator();
-		while (iterator.hasNext()) {
-			Node<StateData<S, E>> node = iterator.next();
-			StateData<S, E> stateData = node.getData();
-			StateData<S, E> peek = stateStack.isEmpty() ? null : stateStack.peek();
-
-			// simply push and continue
-			if (stateStack.isEmpty()) {
-				stateStack.push(stateData);
-				continue;
-			}
-
-			boolean stackContainsSameParent = false;
-			Iterator<StateData<S, E>> ii = stateStack.iterator();
-			while (ii.hasNext()) {
-				StateData<S, E> sd = ii.next();
-				if (stateData != null && ObjectUtils.nullSafeEquals(stateData.getState(), sd.getParent())) {
-					stackContainsSameParent = true;
-					break;
-				}
-			}
-
-			if (stateData != null && !stackContainsSameParent) {
-				stateStack.push(stateData);
-				continue;
-			}
-
-			Collection<StateData<S, E>> stateDatas = popSameParents(stateStack);
-			int initialCount = getInitialCount(stateDatas);
-			Collection<Collection<StateData<S, E>>> regionsStateDatas = splitIntoRegions(stateDatas);
-			Collection<TransitionData<S, E>> transitionsData = getTransitionData(iterator.hasNext(), stateDatas);
+		for (BuildStep<S, E> step : getBuildSteps()) {
+			StateData<S, E> stateData = step.stateData;
+			StateData<S, E> peek = step.peek;
+			Collection<TransitionData<S, E>> transitionsData = step.transitionsData;
 
-			if (initialCount > 1) {
-				for (Collection<StateData<S, E>> regionStateDatas : regionsStateDatas) {
+			if (step.regionsStateDatas != null) {
+				for (Collection<StateData<S, E>> regionStateDatas : step.regionsStateDatas) {
 					machine = buildMachine(machineMap, stateMap, regionStateDatas, transitionsData, resolveBeanFactory(),
 							contextEvents, defaultExtendedState, stateMachineTransitions, resolveTaskExecutor(),
 							resolveTaskScheduler());
@@ -169,6 +151,10 @@ public abstract class AbstractStateMachineFactory<S, E> extends LifecycleObjectS
 				S parent = (S)peek.getParent();
 				RegionState<S, E> rstate = buildRegionStateInternal(parent, regions, null, stateData != null ? stateData.getEntryActions() : null,
 						stateData != null ? stateData.getExitActions() : null, new DefaultPseudoState<S, E>(PseudoStateKind.INITIAL));
+				if (stateMachineConfigurationConfig.getRegionExecutor() != null) {
+					rstate.setRegionExecutor(stateMachineConfigurationConfig.getRegionExecutor());
+					rstate.setOrderedNotifications(stateMachineConfigurationConfig.isOrderedRegionNotifications());
+				}
 				if (stateData != null) {
 					stateMap.put(stateData.getState(), rstate);
 				} else {
@@ -182,14 +168,12 @@ public abstract class AbstractStateMachineFactory<S, E> extends LifecycleObjectS
 					machine = m;
 				}
 			} else {
-				machine = buildMachine(machineMap, stateMap, stateDatas, transitionsData, resolveBeanFactory(),
+				machine = buildMachine(machineMap, stateMap, step.stateDatas, transitionsData, resolveBeanFactory(),
 						contextEvents, defaultExtendedState, stateMachineTransitions, resolveTaskExecutor(), resolveTaskScheduler());
 				if (peek.isInitial() || (!peek.isInitial() && !machineMap.containsKey(peek.getParent()))) {
 					machineMap.put(peek.getParent(), machine);
 				}
 			}
-
-			stateStack.push(stateData);
 		}
 
 		// setup autostart for top-level machine
@@ -208,6 +192,12 @@ public abstract class AbstractStateMachineFactory<S, E> extends LifecycleObjectS
 
 		});
 
+		// plans are keyed by state ordinals which are same for all
+		// machines built here, thus compile those once and share
+		if (machine instanceof AbstractStateMachine) {
+			((AbstractStateMachine<S, E>)machine).setTransitionPlanCache(transitionPlanCache);
+		}
+
 		// setup distributed state machine if needed.
 		// we wrap previously build machine with a distributed
 		// state machine and set it to use given ensemble.
@@ -226,6 +216,23 @@ public abstract class AbstractStateMachineFactory<S, E> extends LifecycleObjectS
 		return delegateAutoStartup(machine);
 	}
 
+	/**
+	 * Gets a {@link StatelessStateMachineEngine} compiled from a same
+	 * configuration this factory builds machines from. Engine is compiled
+	 * once and shared by all callers.
+	 *
+	 * @return the stateless state machine engine
+	 * @throws IllegalStateException if configuration uses features engine doesn't support
+	 */
+	public StatelessStateMachineEngine<S, E> getStatelessStateMachineEngine() {
+		StatelessStateMachineEngine<S, E> engine = statelessEngine;
+		if (engine == null) {
+			engine = new StatelessStateMachineEngine<S, E>(stateMachineStates, stateMachineTransitions);
+			statelessEngine = engine;
+		}
+		return engine;
+	}
+
 	public void setHandleAutostartup(boolean handleAutostartup) {
 		this.handleAutostartup = handleAutostartup;
 	}
@@ -265,6 +272,60 @@ public abstract class AbstractStateMachineFactory<S, E> extends LifecycleObjectS
 		}
 	}
 
+	private List<BuildStep<S, E>> getBuildSteps() {
+		// steps only depend on configuration, thus compile those once
+		// and share with all machines this factory creates
+		List<BuildStep<S, E>> steps = buildSteps;
+		if (steps == null) {
+			steps = compileBuildSteps();
+			buildSteps = steps;
+		}
+		return steps;
+	}
+
+	private List<BuildStep<S, E>> compileBuildSteps() {
+		List<BuildStep<S, E>> steps = new ArrayList<BuildStep<S, E>>();
+		Stack<StateData<S, E>> stateStack = new Stack<StateData<S, E>>();
+
+		Iterator<Node<StateData<S, E>>> iterator = buildStateDataIterator();
+		while (iterator.hasNext()) {
+			Node<StateData<S, E>> node = iterator.next();
+			StateData<S, E> stateData = node.getData();
+			StateData<S, E> peek = stateStack.isEmpty() ? null : stateStack.peek();
+
+			// simply push and continue
+			if (stateStack.isEmpty()) {
+				stateStack.push(stateData);
+				continue;
+			}
+
+			boolean stackContainsSameParent = false;
+			Iterator<StateData<S, E>> ii = stateStack.iterator();
+			while (ii.hasNext()) {
+				StateData<S, E> sd = ii.next();
+				if (stateData != null && ObjectUtils.nullSafeEquals(stateData.getState(), sd.getParent())) {
+					stackContainsSameParent = true;
+					break;
+				}
+			}
+
+			if (stateData != null && !stackContainsSameParent) {
+				stateStack.push(stateData);
+				continue;
+			}
+
+			Collection<StateData<S, E>> stateDatas = popSameParents(stateStack);
+			int initialCount = getInitialCount(stateDatas);
+			Collection<Collection<StateData<S, E>>> regionsStateDatas = initialCount > 1 ? new ArrayList<Collection<StateData<S, E>>>(
+					splitIntoRegions(stateDatas)) : null;
+			Collection<TransitionData<S, E>> transitionsData = getTransitionData(iterator.hasNext(), stateDatas);
+			steps.add(new BuildStep<S, E>(stateData, peek, stateDatas, regionsStateDatas, transitionsData));
+
+			stateStack.push(stateData);
+		}
+		return Collections.unmodifiableList(steps);
+	}
+
 	private int getInitialCount(Collection<StateData<S, E>> stateDatas) {
 		int count = 0;
 		for (StateData<S, E> stateData : stateDatas) {
@@ -309,6 +370,30 @@ public abstract class AbstractStateMachineFactory<S, E> extends LifecycleObjectS
 	}
 
 
+	/**
+	 * Compiled step of building a machine from a configuration. A step builds
+	 * either a machine from states having a same parent or, if regions are
+	 * present, a machine for every region.
+	 */
+	private static class BuildStep<S, E> {
+
+		final StateData<S, E> stateData;
+		final StateData<S, E> peek;
+		final Collection<StateData<S, E>> stateDatas;
+		final Collection<Collection<StateData<S, E>>> regionsStateDatas;
+		final Collection<TransitionData<S, E>> transitionsData;
+
+		BuildStep(StateData<S, E> stateData, StateData<S, E> peek, Collection<StateData<S, E>> stateDatas,
+				Collection<Collection<StateData<S, E>>> regionsStateDatas, Collection<TransitionData<S, E>> transitionsData) {
+			this.stateData = stateData;
+			this.peek = peek;
+			this.stateDatas = stateDatas;
+			this.regionsStateDatas = regionsStateDatas;
+			this.transitionsData = transitionsData;
+		}
+
+	}
+
 	private static class MachineStackItem<S, E> {
 
 		StateMachine<S, E> machine;
@@ -530,6 +615,15 @@ public abstract class AbstractStateMachineFactory<S, E> extends LifecycleObjectS
 		return machine;
 	}
 
+	/**
+	 * Gets the generic state machine configuration config.
+	 *
+	 * @return the state machine configuration config
+	 */
+	protected StateMachineConfigurationConfig<S, E> getStateMachineConfigurationConfig() {
+		return stateMachineConfigurationConfig;
+	}
+
 	protected abstract StateMachine<S, E> buildStateMachineInternal(Collection<State<S, E>> states,
 			Collection<Transition<S, E>> transitions, State<S, E> initialState, Transition<S, E> initialTransition,
 			Message<E> initialEvent, ExtendedState extendedState, PseudoState<S, E> historyState,
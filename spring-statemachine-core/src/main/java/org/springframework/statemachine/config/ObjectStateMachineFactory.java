@@ -72,6 +72,16 @@ public class ObjectStateMachineFactory<S, E> extends AbstractStateMachineFactory
 		if (taskScheduler != null) {
 			machine.setTaskScheduler(taskScheduler);;
 		}
+		StateMachineConfigurationConfig<S, E> config = getStateMachineConfigurationConfig();
+		if (config != null) {
+			machine.setEventQueueCapacity(config.getEventQueueCapacity());
+			machine.setEventQueuePolicy(config.getEventQueuePolicy());
+			machine.setEventPriorityDrain(config.getEventPriorityDrain());
+			machine.setCallerThreadExecution(config.isCallerThreadExecution());
+			machine.setSendEventsTimeout(config.getSendEventsTimeout());
+			machine.setCoalescableEvents(config.getCoalescableEvents());
+			machine.setLazyInit(config.isLazyInit());
+		}
 		machine.afterPropertiesSet();
 		return machine;
 	}
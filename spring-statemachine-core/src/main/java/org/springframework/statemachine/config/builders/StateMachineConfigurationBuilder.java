@@ -16,7 +16,9 @@
 package org.springframework.statemachine.config.builders;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.core.task.TaskExecutor;
@@ -30,6 +32,8 @@ import org.springframework.statemachine.config.configurers.DefaultDistributedSta
 import org.springframework.statemachine.config.configurers.DistributedStateMachineConfigurer;
 import org.springframework.statemachine.ensemble.StateMachineEnsemble;
 import org.springframework.statemachine.listener.StateMachineListener;
+import org.springframework.statemachine.support.EventPriorityDrain;
+import org.springframework.statemachine.support.EventQueuePolicy;
 
 /**
  * {@link AnnotationBuilder} for {@link StateMachineStates}.
@@ -49,6 +53,15 @@ public class StateMachineConfigurationBuilder<S, E>
 	private boolean autoStart = false;
 	private StateMachineEnsemble<S, E> ensemble;
 	private final List<StateMachineListener<S, E>> listeners = new ArrayList<StateMachineListener<S, E>>();
+	private int eventQueueCapacity = 0;
+	private EventQueuePolicy eventQueuePolicy = EventQueuePolicy.REJECT;
+	private EventPriorityDrain eventPriorityDrain = EventPriorityDrain.STRICT;
+	private boolean callerThreadExecution = false;
+	private long sendEventsTimeout = 0;
+	private final Set<E> coalescableEvents = new HashSet<E>();
+	private TaskExecutor regionExecutor;
+	private boolean orderedRegionNotifications = true;
+	private boolean lazyInit = false;
 
 	/**
 	 * Instantiates a new state machine configuration builder.
@@ -89,7 +102,9 @@ public class StateMachineConfigurationBuilder<S, E>
 
 	@Override
 	protected StateMachineConfigurationConfig<S, E> performBuild() throws Exception {
-		return new StateMachineConfigurationConfig<>(beanFactory, taskExecutor, taskScheculer, autoStart, ensemble, listeners);
+		return new StateMachineConfigurationConfig<>(beanFactory, taskExecutor, taskScheculer, autoStart, ensemble, listeners,
+				eventQueueCapacity, eventQueuePolicy, eventPriorityDrain, callerThreadExecution, sendEventsTimeout,
+				coalescableEvents, regionExecutor, orderedRegionNotifications, lazyInit);
 	}
 
 	/**
@@ -147,4 +162,86 @@ public class StateMachineConfigurationBuilder<S, E>
 		this.listeners.addAll(listeners);
 	}
 
+	/**
+	 * Sets the event queue capacity.
+	 *
+	 * @param eventQueueCapacity the new event queue capacity
+	 */
+	public void setEventQueueCapacity(int eventQueueCapacity) {
+		this.eventQueueCapacity = eventQueueCapacity;
+	}
+
+	/**
+	 * Sets the event queue policy.
+	 *
+	 * @param eventQueuePolicy the new event queue policy
+	 */
+	public void setEventQueuePolicy(EventQueuePolicy eventQueuePolicy) {
+		this.eventQueuePolicy = eventQueuePolicy;
+	}
+
+	/**
+	 * Sets the event priority drain.
+	 *
+	 * @param eventPriorityDrain the new event priority drain
+	 */
+	public void setEventPriorityDrain(EventPriorityDrain eventPriorityDrain) {
+		this.eventPriorityDrain = eventPriorityDrain;
+	}
+
+	/**
+	 * Sets the caller thread execution flag.
+	 *
+	 * @param callerThreadExecution the new caller thread execution flag
+	 */
+	public void setCallerThreadExecution(boolean callerThreadExecution) {
+		this.callerThreadExecution = callerThreadExecution;
+	}
+
+	/**
+	 * Sets the timeout of sending a batch of events.
+	 *
+	 * @param sendEventsTimeout the new timeout in milliseconds
+	 */
+	public void setSendEventsTimeout(long sendEventsTimeout) {
+		this.sendEventsTimeout = sendEventsTimeout;
+	}
+
+	/**
+	 * Sets the events coalesced in an event queue.
+	 *
+	 * @param coalescableEvents the coalescable events
+	 */
+	public void setCoalescableEvents(Set<E> coalescableEvents) {
+		this.coalescableEvents.clear();
+		this.coalescableEvents.addAll(coalescableEvents);
+	}
+
+	/**
+	 * Sets the task executor for orthogonal regions.
+	 *
+	 * @param regionExecutor the new region executor
+	 */
+	public void setRegionExecutor(TaskExecutor regionExecutor) {
+		this.regionExecutor = regionExecutor;
+	}
+
+	/**
+	 * Sets the ordered region notifications flag.
+	 *
+	 * @param orderedRegionNotifications the new ordered region notifications flag
+	 */
+	public void setOrderedRegionNotifications(boolean orderedRegionNotifications) {
+		this.orderedRegionNotifications = orderedRegionNotifications;
+	}
+
+	/**
+	 * Sets the lazy init flag.
+	 *
+	 * @param lazyInit the new lazy init flag
+	 */
+	public void setLazyInit(boolean lazyInit) {
+		this.lazyInit = lazyInit;
+	}
+
 }
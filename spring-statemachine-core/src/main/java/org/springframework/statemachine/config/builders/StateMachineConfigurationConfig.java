@@ -16,12 +16,15 @@
 package org.springframework.statemachine.config.builders;
 
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.statemachine.ensemble.StateMachineEnsemble;
 import org.springframework.statemachine.listener.StateMachineListener;
+import org.springframework.statemachine.support.EventPriorityDrain;
+import org.springframework.statemachine.support.EventQueuePolicy;
 
 /**
  * Configuration object used to keep things together in {@link StateMachineConfigurationBuilder}.
@@ -39,6 +42,15 @@ public class StateMachineConfigurationConfig<S, E> {
 	private final boolean autoStart;
 	private final StateMachineEnsemble<S, E> ensemble;
 	private final List<StateMachineListener<S, E>> listeners;
+	private final int eventQueueCapacity;
+	private final EventQueuePolicy eventQueuePolicy;
+	private final EventPriorityDrain eventPriorityDrain;
+	private final boolean callerThreadExecution;
+	private final long sendEventsTimeout;
+	private final Set<E> coalescableEvents;
+	private final TaskExecutor regionExecutor;
+	private final boolean orderedRegionNotifications;
+	private final boolean lazyInit;
 
 	/**
 	 * Instantiates a new state machine configuration config.
@@ -53,12 +65,50 @@ public class StateMachineConfigurationConfig<S, E> {
 	public StateMachineConfigurationConfig(BeanFactory beanFactory, TaskExecutor taskExecutor,
 			TaskScheduler taskScheduler, boolean autoStart, StateMachineEnsemble<S, E> ensemble,
 			List<StateMachineListener<S, E>> listeners) {
+		this(beanFactory, taskExecutor, taskScheduler, autoStart, ensemble, listeners, 0, EventQueuePolicy.REJECT,
+				EventPriorityDrain.STRICT, false, 0, null, null, true, false);
+	}
+
+	/**
+	 * Instantiates a new state machine configuration config.
+	 *
+	 * @param beanFactory the bean factory
+	 * @param taskExecutor the task executor
+	 * @param taskScheduler the task scheduler
+	 * @param autoStart the autostart flag
+	 * @param ensemble the state machine ensemble
+	 * @param listeners the state machine listeners
+	 * @param eventQueueCapacity the event queue capacity
+	 * @param eventQueuePolicy the event queue policy
+	 * @param eventPriorityDrain the event priority drain
+	 * @param callerThreadExecution the caller thread execution flag
+	 * @param sendEventsTimeout the timeout of sending a batch of events
+	 * @param coalescableEvents the events coalesced in an event queue
+	 * @param regionExecutor the task executor for orthogonal regions
+	 * @param orderedRegionNotifications the ordered region notifications flag
+	 * @param lazyInit the lazy init flag
+	 */
+	public StateMachineConfigurationConfig(BeanFactory beanFactory, TaskExecutor taskExecutor,
+			TaskScheduler taskScheduler, boolean autoStart, StateMachineEnsemble<S, E> ensemble,
+			List<StateMachineListener<S, E>> listeners, int eventQueueCapacity, EventQueuePolicy eventQueuePolicy,
+			EventPriorityDrain eventPriorityDrain, boolean callerThreadExecution, long sendEventsTimeout,
+			Set<E> coalescableEvents,
+			TaskExecutor regionExecutor, boolean orderedRegionNotifications, boolean lazyInit) {
 		this.beanFactory = beanFactory;
 		this.taskExecutor = taskExecutor;
 		this.taskScheduler = taskScheduler;
 		this.autoStart = autoStart;
 		this.ensemble = ensemble;
 		this.listeners = listeners;
+		this.eventQueueCapacity = eventQueueCapacity;
+		this.eventQueuePolicy = eventQueuePolicy;
+		this.eventPriorityDrain = eventPriorityDrain;
+		this.callerThreadExecution = callerThreadExecution;
+		this.sendEventsTimeout = sendEventsTimeout;
+		this.coalescableEvents = coalescableEvents;
+		this.regionExecutor = regionExecutor;
+		this.orderedRegionNotifications = orderedRegionNotifications;
+		this.lazyInit = lazyInit;
 	}
 
 	/**
@@ -115,4 +165,85 @@ public class StateMachineConfigurationConfig<S, E> {
 		return listeners;
 	}
 
+	/**
+	 * Gets the event queue capacity.
+	 *
+	 * @return the event queue capacity
+	 */
+	public int getEventQueueCapacity() {
+		return eventQueueCapacity;
+	}
+
+	/**
+	 * Gets the event queue policy.
+	 *
+	 * @return the event queue policy
+	 */
+	public EventQueuePolicy getEventQueuePolicy() {
+		return eventQueuePolicy;
+	}
+
+	/**
+	 * Gets the event priority drain.
+	 *
+	 * @return the event priority drain
+	 */
+	public EventPriorityDrain getEventPriorityDrain() {
+		return eventPriorityDrain;
+	}
+
+	/**
+	 * Returns caller thread execution flag.
+	 *
+	 * @return true, if events are executed on a caller thread
+	 */
+	public boolean isCallerThreadExecution() {
+		return callerThreadExecution;
+	}
+
+	/**
+	 * Gets the timeout of sending a batch of events.
+	 *
+	 * @return the timeout in milliseconds, zero or negative for no timeout
+	 */
+	public long getSendEventsTimeout() {
+		return sendEventsTimeout;
+	}
+
+	/**
+	 * Gets the events coalesced in an event queue.
+	 *
+	 * @return the coalescable events
+	 */
+	public Set<E> getCoalescableEvents() {
+		return coalescableEvents;
+	}
+
+	/**
+	 * Gets the task executor for orthogonal regions.
+	 *
+	 * @return the region executor, null if regions are executed sequentially
+	 */
+	public TaskExecutor getRegionExecutor() {
+		return regionExecutor;
+	}
+
+	/**
+	 * Returns ordered region notifications flag.
+	 *
+	 * @return true, if region notifications are delivered in region order
+	 */
+	public boolean isOrderedRegionNotifications() {
+		return orderedRegionNotifications;
+	}
+
+	/**
+	 * Returns lazy init flag.
+	 *
+	 * @return true, if machines are initialized when first started
+	 */
+	public boolean isLazyInit() {
+		return lazyInit;
+	}
+
 }
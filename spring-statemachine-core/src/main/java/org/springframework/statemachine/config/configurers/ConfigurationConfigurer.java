@@ -15,12 +15,17 @@
  */
 package org.springframework.statemachine.config.configurers;
 
+import java.util.Collection;
+
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.statemachine.config.builders.StateMachineConfigurationConfigurer;
 import org.springframework.statemachine.config.common.annotation.AnnotationConfigurerBuilder;
 import org.springframework.statemachine.listener.StateMachineListener;
+import org.springframework.statemachine.support.EventPriority;
+import org.springframework.statemachine.support.EventPriorityDrain;
+import org.springframework.statemachine.support.EventQueuePolicy;
 
 /**
  * Base {@code ConfigConfigurer} interface for configuring generic config.
@@ -76,4 +81,121 @@ public interface ConfigurationConfigurer<S, E> extends
 	 */
 	ConfigurationConfigurer<S, E> listener(StateMachineListener<S, E> listener);
 
+	/**
+	 * Specify a capacity of a state machine event queue. On default
+	 * event queue is unbounded. What happens when a bounded queue is full
+	 * is defined by {@link #eventQueuePolicy(EventQueuePolicy)}.
+	 *
+	 * @param capacity the event queue capacity
+	 * @return configurer for chaining
+	 */
+	ConfigurationConfigurer<S, E> eventQueueCapacity(int capacity);
+
+	/**
+	 * Specify an {@link EventQueuePolicy} used when a bounded event
+	 * queue is full. On default new events are rejected.
+	 *
+	 * @param policy the event queue policy
+	 * @return configurer for chaining
+	 */
+	ConfigurationConfigurer<S, E> eventQueuePolicy(EventQueuePolicy policy);
+
+	/**
+	 * Specify an order in which event priority lanes are drained. Event
+	 * priority is given with a message header
+	 * {@link org.springframework.statemachine.StateMachineSystemConstants#EVENT_PRIORITY}.
+	 * On default higher priority lanes are always drained first.
+	 *
+	 * @param drain the event priority drain
+	 * @return configurer for chaining
+	 * @see EventPriority
+	 */
+	ConfigurationConfigurer<S, E> eventPriorityDrain(EventPriorityDrain drain);
+
+	/**
+	 * Specify if events should be executed on a caller thread in a
+	 * run-to-completion fashion instead of using a {@link TaskExecutor}.
+	 * Only one thread processes events at a time and events sent during
+	 * processing, either from other threads or from actions, are queued and
+	 * processed by that thread before it returns. On default events are
+	 * executed using a {@link TaskExecutor}.
+	 *
+	 * @param callerThreadExecution the caller thread execution flag
+	 * @return configurer for chaining
+	 */
+	ConfigurationConfigurer<S, E> callerThreadExecution(boolean callerThreadExecution);
+
+	/**
+	 * Specify the max time in milliseconds a call to send a batch of events
+	 * waits for those to be processed. Events not offered to a machine
+	 * when a timeout elapses are reported as not accepted. On default
+	 * a caller waits until a whole batch has been processed.
+	 *
+	 * @param timeout the timeout in milliseconds, zero or negative for no timeout
+	 * @return configurer for chaining
+	 */
+	ConfigurationConfigurer<S, E> sendEventsTimeout(long timeout);
+
+	/**
+	 * Specify events which are coalesced in an event queue. Event of
+	 * a given type replaces a queued event of a same type instead of
+	 * adding another one to a queue, which is useful with events where only
+	 * the latest one matters. Events can also be coalesced using a header
+	 * {@link org.springframework.statemachine.StateMachineSystemConstants#COALESCE_KEY}
+	 * where events having equal header values replace each other. This method
+	 * can be called multiple times to add more events.
+	 *
+	 * @param events the coalescable events
+	 * @return configurer for chaining
+	 * @see #coalescableEvents(Collection)
+	 */
+	@SuppressWarnings("unchecked")
+	ConfigurationConfigurer<S, E> coalescableEvents(E... events);
+
+	/**
+	 * Specify events which are coalesced in an event queue.
+	 *
+	 * @param events the coalescable events
+	 * @return configurer for chaining
+	 * @see #coalescableEvents(Object...)
+	 */
+	ConfigurationConfigurer<S, E> coalescableEvents(Collection<E> events);
+
+	/**
+	 * Specify a {@link TaskExecutor} used to execute orthogonal regions in
+	 * parallel. Events, entries and exits of a state having multiple regions
+	 * are forked to regions using this executor and joined before processing
+	 * continues. On default regions are executed sequentially on a same
+	 * thread.
+	 *
+	 * @param regionExecutor the region executor
+	 * @return configurer for chaining
+	 * @see #orderedRegionNotifications(boolean)
+	 */
+	ConfigurationConfigurer<S, E> regionExecutor(TaskExecutor regionExecutor);
+
+	/**
+	 * Specify if listener notifications from regions executed in parallel
+	 * are delivered in region order. Notifications are then recorded while
+	 * regions execute and delivered after all regions have been joined.
+	 * On default notifications are ordered.
+	 *
+	 * @param ordered the ordered notifications flag
+	 * @return configurer for chaining
+	 * @see #regionExecutor(TaskExecutor)
+	 */
+	ConfigurationConfigurer<S, E> orderedRegionNotifications(boolean ordered);
+
+	/**
+	 * Specify if state machines are initialized lazily. Lazily initialized
+	 * machine, including its submachines and regions, builds its dispatch
+	 * structures and executor only when it is first started, thus nested
+	 * machines which are never entered stay lightweight. On default
+	 * machines are initialized when created.
+	 *
+	 * @param lazyInit the lazy init flag
+	 * @return configurer for chaining
+	 */
+	ConfigurationConfigurer<S, E> lazyInit(boolean lazyInit);
+
 }
@@ -16,7 +16,11 @@
 package org.springframework.statemachine.config.configurers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.core.task.TaskExecutor;
@@ -26,6 +30,8 @@ import org.springframework.statemachine.config.builders.StateMachineConfiguratio
 import org.springframework.statemachine.config.builders.StateMachineConfigurationConfigurer;
 import org.springframework.statemachine.config.common.annotation.AnnotationConfigurerAdapter;
 import org.springframework.statemachine.listener.StateMachineListener;
+import org.springframework.statemachine.support.EventPriorityDrain;
+import org.springframework.statemachine.support.EventQueuePolicy;
 
 /**
  * Default implementation of a {@link ConfigurationConfigurer}.
@@ -44,6 +50,18 @@ public class DefaultConfigurationConfigurer<S, E>
 	private TaskScheduler taskScheculer;
 	private boolean autoStart = false;
 	private final List<StateMachineListener<S, E>> listeners = new ArrayList<StateMachineListener<S, E>>();
+	private int eventQueueCapacity = 0;
+	private EventQueuePolicy eventQueuePolicy = EventQueuePolicy.REJECT;
+	private EventPriorityDrain eventPriorityDrain = EventPriorityDrain.STRICT;
+	private boolean callerThreadExecution = false;
+	private long sendEventsTimeout = 0;
+	private final Set<E> coalescableEvents = new HashSet<E>();
+
+	private TaskExecutor regionExecutor;
+
+	private boolean orderedRegionNotifications = true;
+
+	private boolean lazyInit = false;
 
 	@Override
 	public void configure(StateMachineConfigurationBuilder<S, E> builder) throws Exception {
@@ -52,6 +70,15 @@ public class DefaultConfigurationConfigurer<S, E>
 		builder.setTaskScheculer(taskScheculer);
 		builder.setAutoStart(autoStart);
 		builder.setStateMachineListeners(listeners);
+		builder.setEventQueueCapacity(eventQueueCapacity);
+		builder.setEventQueuePolicy(eventQueuePolicy);
+		builder.setEventPriorityDrain(eventPriorityDrain);
+		builder.setCallerThreadExecution(callerThreadExecution);
+		builder.setSendEventsTimeout(sendEventsTimeout);
+		builder.setCoalescableEvents(coalescableEvents);
+		builder.setRegionExecutor(regionExecutor);
+		builder.setOrderedRegionNotifications(orderedRegionNotifications);
+		builder.setLazyInit(lazyInit);
 	}
 
 	@Override
@@ -84,4 +111,64 @@ public class DefaultConfigurationConfigurer<S, E>
 		return this;
 	}
 
+	@Override
+	public ConfigurationConfigurer<S, E> eventQueueCapacity(int capacity) {
+		this.eventQueueCapacity = capacity;
+		return this;
+	}
+
+	@Override
+	public ConfigurationConfigurer<S, E> eventQueuePolicy(EventQueuePolicy policy) {
+		this.eventQueuePolicy = policy;
+		return this;
+	}
+
+	@Override
+	public ConfigurationConfigurer<S, E> eventPriorityDrain(EventPriorityDrain drain) {
+		this.eventPriorityDrain = drain;
+		return this;
+	}
+
+	@Override
+	public ConfigurationConfigurer<S, E> callerThreadExecution(boolean callerThreadExecution) {
+		this.callerThreadExecution = callerThreadExecution;
+		return this;
+	}
+
+	@Override
+	public ConfigurationConfigurer<S, E> sendEventsTimeout(long timeout) {
+		this.sendEventsTimeout = timeout;
+		return this;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public ConfigurationConfigurer<S, E> coalescableEvents(E... events) {
+		return coalescableEvents(Arrays.asList(events));
+	}
+
+	@Override
+	public ConfigurationConfigurer<S, E> coalescableEvents(Collection<E> events) {
+		this.coalescableEvents.addAll(events);
+		return this;
+	}
+
+	@Override
+	public ConfigurationConfigurer<S, E> regionExecutor(TaskExecutor regionExecutor) {
+		this.regionExecutor = regionExecutor;
+		return this;
+	}
+
+	@Override
+	public ConfigurationConfigurer<S, E> orderedRegionNotifications(boolean ordered) {
+		this.orderedRegionNotifications = ordered;
+		return this;
+	}
+
+	@Override
+	public ConfigurationConfigurer<S, E> lazyInit(boolean lazyInit) {
+		this.lazyInit = lazyInit;
+		return this;
+	}
+
 }
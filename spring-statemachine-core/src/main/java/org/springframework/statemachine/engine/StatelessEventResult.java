@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.engine;
+
+import java.util.Collection;
+
+import org.springframework.messaging.Message;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.support.DefaultEventResult;
+import org.springframework.statemachine.transition.Transition;
+
+/**
+ * {@link org.springframework.statemachine.EventResult} of an event applied
+ * by a {@link StatelessStateMachineEngine} carrying a resulting
+ * {@link StateMachineContext}.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ */
+public class StatelessEventResult<S, E> extends DefaultEventResult<S, E> {
+
+	private final StateMachineContext<S, E> stateMachineContext;
+
+	/**
+	 * Instantiates a new stateless event result.
+	 *
+	 * @param message the message
+	 * @param resultType the result type
+	 * @param transition the transition or null
+	 * @param stateIds the resulting state ids
+	 * @param stateMachineContext the resulting state machine context
+	 */
+	public StatelessEventResult(Message<E> message, ResultType resultType, Transition<S, E> transition,
+			Collection<S> stateIds, StateMachineContext<S, E> stateMachineContext) {
+		super(message, resultType, transition, stateIds);
+		this.stateMachineContext = stateMachineContext;
+	}
+
+	/**
+	 * Gets the state machine context after an event was applied. If event
+	 * was not accepted, this is the context given to an engine.
+	 *
+	 * @return the state machine context
+	 */
+	public StateMachineContext<S, E> getStateMachineContext() {
+		return stateMachineContext;
+	}
+
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.statemachine.EventResult.ResultType;
+import org.springframework.statemachine.ExtendedState;
+import org.springframework.statemachine.StateContext;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.action.Action;
+import org.springframework.statemachine.config.StateData;
+import org.springframework.statemachine.config.builders.StateMachineStates;
+import org.springframework.statemachine.config.builders.StateMachineTransitions;
+import org.springframework.statemachine.config.builders.StateMachineTransitions.ChoiceData;
+import org.springframework.statemachine.config.builders.StateMachineTransitions.TransitionData;
+import org.springframework.statemachine.state.DefaultPseudoState;
+import org.springframework.statemachine.state.ObjectState;
+import org.springframework.statemachine.state.PseudoState;
+import org.springframework.statemachine.state.PseudoStateKind;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateContext;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+import org.springframework.statemachine.support.TransitionDispatchIndex;
+import org.springframework.statemachine.transition.DefaultExternalTransition;
+import org.springframework.statemachine.transition.DefaultInternalTransition;
+import org.springframework.statemachine.transition.DefaultLocalTransition;
+import org.springframework.statemachine.transition.Transition;
+import org.springframework.statemachine.transition.TransitionKind;
+import org.springframework.statemachine.trigger.EventTrigger;
+import org.springframework.util.Assert;
+
+/**
+ * {@code StatelessStateMachineEngine} applies events to state machine data
+ * instead of to a running {@link org.springframework.statemachine.StateMachine}.
+ * State machine model is compiled once and shared, while a state of an
+ * individual entity is kept in a {@link StateMachineContext} owned by a
+ * caller. Applying an event returns a new context, thus no long-lived
+ * objects exist per entity and a single engine can drive any number of
+ * entities from any number of threads.
+ * <p>
+ * Context state is an id of a deepest active state. Processing follows
+ * a running machine: a transition's guard and actions are executed first,
+ * then states are exited from a deepest active state and entered down to
+ * a target, continuing into initial substates. Extended state of a given
+ * context is updated in place.
+ * <p>
+ * Engine supports hierarchical states, external, internal and local
+ * transitions, choices, deferred events and end states. A context only
+ * tracks a single active state, thus orthogonal regions, which a running
+ * machine persists as child contexts, as well as forks, joins and history
+ * states are not supported and fail compilation. Timer triggered and
+ * triggerless transitions also fail compilation because engine only
+ * reacts to given events and has no notion of time. Actions and guards
+ * are given a {@link StateContext} without a state machine.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ */
+public class StatelessStateMachineEngine<S, E> {
+
+	private final Map<S, Node<S, E>> nodes = new HashMap<S, Node<S, E>>();
+	private final Map<S, List<ChoiceData<S, E>>> choices;
+	private final TransitionDispatchIndex<S, E> transitionIndex;
+	private final Node<S, E> initial;
+
+	/**
+	 * Instantiates a new stateless state machine engine.
+	 *
+	 * @param stateMachineStates the state machine states
+	 * @param stateMachineTransitions the state machine transitions
+	 */
+	@SuppressWarnings("unchecked")
+	public StatelessStateMachineEngine(StateMachineStates<S, E> stateMachineStates,
+			StateMachineTransitions<S, E> stateMachineTransitions) {
+		Assert.notNull(stateMachineStates, "State machine states must be set");
+		Assert.notNull(stateMachineTransitions, "State machine transitions must be set");
+
+		Collection<StateData<S, E>> stateDatas = stateMachineStates.getStateDatas();
+		for (StateData<S, E> stateData : stateDatas) {
+			PseudoStateKind kind = stateData.getPseudoStateKind();
+			Assert.state(kind != PseudoStateKind.FORK && kind != PseudoStateKind.JOIN
+					&& kind != PseudoStateKind.HISTORY_SHALLOW && kind != PseudoStateKind.HISTORY_DEEP,
+					"Stateless engine doesn't support " + kind + " state " + stateData.getState());
+			PseudoState<S, E> pseudoState = null;
+			if (stateData.isInitial()) {
+				pseudoState = new DefaultPseudoState<S, E>(PseudoStateKind.INITIAL);
+			} else if (stateData.isEnd()) {
+				pseudoState = new DefaultPseudoState<S, E>(PseudoStateKind.END);
+			} else if (kind == PseudoStateKind.CHOICE) {
+				pseudoState = new DefaultPseudoState<S, E>(PseudoStateKind.CHOICE);
+			}
+			State<S, E> state = new ObjectState<S, E>(stateData.getState(), stateData.getDeferred(),
+					stateData.getEntryActions(), stateData.getExitActions(), pseudoState);
+			nodes.put(stateData.getState(), new Node<S, E>(state, stateData));
+		}
+
+		// every block of states under a same parent is a region
+		Map<Object, Object> regions = new HashMap<Object, Object>();
+		for (Node<S, E> node : nodes.values()) {
+			Object parentId = node.stateData.getParent();
+			Object region = node.stateData.getRegion();
+			if (!regions.containsKey(parentId)) {
+				regions.put(parentId, region);
+			}
+			Object other = regions.get(parentId);
+			Assert.state(other == null ? region == null : other.equals(region),
+					"Stateless engine doesn't support orthogonal regions, found multiple regions "
+							+ (parentId != null ? "in state " + parentId : "on a top level")
+							+ ", contexts only track a single active state and no child contexts");
+		}
+
+		Node<S, E> root = null;
+		for (Node<S, E> node : nodes.values()) {
+			Object parentId = node.stateData.getParent();
+			if (parentId != null) {
+				node.parent = nodes.get((S) parentId);
+				Assert.state(node.parent != null, "Parent " + parentId + " of state " + node.state.getId() + " not found");
+			}
+			if (node.stateData.isInitial()) {
+				Assert.state(node.parent != null ? node.parent.initial == null : root == null,
+						"Stateless engine doesn't support regions, found multiple initial states under " + parentId);
+				if (node.parent != null) {
+					node.parent.initial = node;
+				} else {
+					root = node;
+				}
+			}
+		}
+		Assert.state(root != null, "Initial state must be set");
+		for (Node<S, E> node : nodes.values()) {
+			node.compile();
+		}
+		this.initial = root;
+		this.choices = stateMachineTransitions.getChoices();
+
+		Collection<Transition<S, E>> transitions = new ArrayList<Transition<S, E>>();
+		for (TransitionData<S, E> transitionData : stateMachineTransitions.getTransitions()) {
+			E event = transitionData.getEvent();
+			Assert.state(transitionData.getPeriod() == null, "Stateless engine doesn't support timer triggered transition from "
+					+ transitionData.getSource());
+			Assert.state(event != null, "Stateless engine doesn't support triggerless transition from "
+					+ transitionData.getSource());
+			Node<S, E> source = nodes.get(transitionData.getSource());
+			Node<S, E> target = nodes.get(transitionData.getTarget());
+			Assert.state(source != null, "Source state " + transitionData.getSource() + " not found");
+			EventTrigger<S, E> trigger = new EventTrigger<S, E>(event);
+			if (transitionData.getKind() == TransitionKind.INTERNAL) {
+				transitions.add(new DefaultInternalTransition<S, E>(source.state, transitionData.getActions(), event,
+						transitionData.getGuard(), trigger));
+				continue;
+			}
+			Assert.state(target != null, "Target state " + transitionData.getTarget() + " not found");
+			if (transitionData.getKind() == TransitionKind.LOCAL) {
+				transitions.add(new DefaultLocalTransition<S, E>(source.state, target.state, transitionData.getActions(),
+						event, transitionData.getGuard(), trigger));
+			} else {
+				transitions.add(new DefaultExternalTransition<S, E>(source.state, target.state,
+						transitionData.getActions(), event, transitionData.getGuard(), trigger));
+			}
+		}
+		this.transitionIndex = TransitionDispatchIndex.create(transitions);
+	}
+
+	/**
+	 * Creates a context for a new entity by entering initial states
+	 * using a new extended state.
+	 *
+	 * @return the state machine context
+	 */
+	public StateMachineContext<S, E> start() {
+		return start(new DefaultExtendedState());
+	}
+
+	/**
+	 * Creates a context for a new entity by entering initial states. Initial
+	 * actions and entry actions are executed with a given extended state.
+	 *
+	 * @param extendedState the extended state
+	 * @return the state machine context
+	 */
+	public StateMachineContext<S, E> start(ExtendedState extendedState) {
+		Assert.notNull(extendedState, "Extended state must be set");
+		StateContext<S, E> context = new DefaultStateContext<S, E>(null, new MessageHeaders(null), extendedState, null,
+				null);
+		Node<S, E> leaf = enter(initial, context);
+		return buildContext(leaf, null, null, extendedState);
+	}
+
+	/**
+	 * Apply an event to a given context.
+	 *
+	 * @param stateMachineContext the state machine context
+	 * @param event the event
+	 * @return the event result
+	 * @see #sendEvent(StateMachineContext, Message)
+	 */
+	public StatelessEventResult<S, E> sendEvent(StateMachineContext<S, E> stateMachineContext, E event) {
+		return sendEvent(stateMachineContext, MessageBuilder.withPayload(event).build());
+	}
+
+	/**
+	 * Apply an event to a given context. If a transition is taken, returned
+	 * result is {@link ResultType#ACCEPTED} and it carries a new context.
+	 * Otherwise event is either {@link ResultType#DEFERRED} by an active state
+	 * or {@link ResultType#DENIED}, and result carries the given context.
+	 * Re-sending deferred events is left to a caller.
+	 *
+	 * @param stateMachineContext the state machine context
+	 * @param message the event message
+	 * @return the event result
+	 */
+	public StatelessEventResult<S, E> sendEvent(StateMachineContext<S, E> stateMachineContext, Message<E> message) {
+		Assert.notNull(stateMachineContext, "State machine context must be set");
+		Assert.notNull(message, "Message must be set");
+		Node<S, E> leaf = nodes.get(stateMachineContext.getState());
+		Assert.notNull(leaf, "Unknown state " + stateMachineContext.getState());
+		if (leaf.isComplete()) {
+			return new StatelessEventResult<S, E>(message, ResultType.DENIED, null, leaf.ids, stateMachineContext);
+		}
+
+		ExtendedState extendedState = stateMachineContext.getExtendedState();
+		if (extendedState == null) {
+			extendedState = new DefaultExtendedState();
+		}
+		E event = message.getPayload();
+		for (Transition<S, E> transition : transitionIndex.findTransitions(leaf.ids, event)) {
+			StateContext<S, E> context = new DefaultStateContext<S, E>(event, message.getHeaders(), extendedState,
+					transition, null);
+			if (transition.transit(context)) {
+				Node<S, E> next = execute(leaf, transition, context);
+				return new StatelessEventResult<S, E>(message, ResultType.ACCEPTED, transition, next.ids,
+						buildContext(next, event, message.getHeaders(), extendedState));
+			}
+		}
+		ResultType resultType = transitionIndex.isDeferred(leaf.ids, event) ? ResultType.DEFERRED : ResultType.DENIED;
+		return new StatelessEventResult<S, E>(message, resultType, null, leaf.ids, stateMachineContext);
+	}
+
+	/**
+	 * Gets the ids of active states for a given context. Ids are ordered
+	 * from an outermost state to a deepest state.
+	 *
+	 * @param stateMachineContext the state machine context
+	 * @return the active state ids
+	 */
+	public Collection<S> getStateIds(StateMachineContext<S, E> stateMachineContext) {
+		Node<S, E> node = nodes.get(stateMachineContext.getState());
+		return node != null ? node.ids : Collections.<S>emptyList();
+	}
+
+	/**
+	 * Checks if a given context is in a top level end state.
+	 *
+	 * @param stateMachineContext the state machine context
+	 * @return true, if complete
+	 */
+	public boolean isComplete(StateMachineContext<S, E> stateMachineContext) {
+		Node<S, E> node = nodes.get(stateMachineContext.getState());
+		return node != null && node.isComplete();
+	}
+
+	private Node<S, E> execute(Node<S, E> leaf, Transition<S, E> transition, StateContext<S, E> context) {
+		if (transition.getKind() == TransitionKind.INTERNAL) {
+			return leaf;
+		}
+		Node<S, E> source = nodes.get(transition.getSource().getId());
+		Node<S, E> target = resolveChoice(nodes.get(transition.getTarget().getId()), context);
+		if (target == null) {
+			return leaf;
+		}
+
+		Node<S, E> domain;
+		if (transition.getKind() == TransitionKind.LOCAL && target.isSubstateOf(source)) {
+			domain = source;
+		} else if (transition.getKind() == TransitionKind.LOCAL && source.isSubstateOf(target)) {
+			domain = target;
+		} else {
+			domain = source.commonParent(target);
+			if (domain == source || domain == target) {
+				// external transition exits and re-enters an outer state
+				domain = domain.parent;
+			}
+		}
+
+		for (Node<S, E> node = leaf; node != domain; node = node.parent) {
+			node.state.exit(context);
+		}
+		if (target == domain) {
+			return enterInitial(target, context);
+		}
+		List<Node<S, E>> path = new ArrayList<Node<S, E>>(target.depth);
+		for (Node<S, E> node = target; node != domain; node = node.parent) {
+			path.add(node);
+		}
+		for (int i = path.size() - 1; i >= 0; i--) {
+			path.get(i).state.entry(context);
+		}
+		return enterInitial(target, context);
+	}
+
+	private Node<S, E> resolveChoice(Node<S, E> target, StateContext<S, E> context) {
+		while (target != null && target.choice) {
+			Node<S, E> next = null;
+			List<ChoiceData<S, E>> list = choices.get(target.state.getId());
+			if (list != null) {
+				for (ChoiceData<S, E> choice : list) {
+					if (choice.getGuard() == null || choice.getGuard().evaluate(context)) {
+						next = nodes.get(choice.getTarget());
+						break;
+					}
+				}
+			}
+			target = next;
+		}
+		return target;
+	}
+
+	private Node<S, E> enter(Node<S, E> node, StateContext<S, E> context) {
+		if (node.initialAction != null) {
+			node.initialAction.execute(context);
+		}
+		node.state.entry(context);
+		return enterInitial(node, context);
+	}
+
+	private Node<S, E> enterInitial(Node<S, E> node, StateContext<S, E> context) {
+		while (node.initial != null) {
+			node = node.initial;
+			if (node.initialAction != null) {
+				node.initialAction.execute(context);
+			}
+			node.state.entry(context);
+		}
+		return node;
+	}
+
+	private StateMachineContext<S, E> buildContext(Node<S, E> leaf, E event, Map<String, Object> headers,
+			ExtendedState extendedState) {
+		return new DefaultStateMachineContext<S, E>(Collections.<StateMachineContext<S, E>>emptyList(),
+				leaf.state.getId(), event, headers, extendedState);
+	}
+
+	/**
+	 * Compiled state within a hierarchy.
+	 */
+	private static class Node<S, E> {
+
+		final State<S, E> state;
+		final StateData<S, E> stateData;
+		final Action<S, E> initialAction;
+		final boolean choice;
+		Node<S, E> parent;
+		Node<S, E> initial;
+		int depth;
+		List<S> ids;
+
+		Node(State<S, E> state, StateData<S, E> stateData) {
+			this.state = state;
+			this.stateData = stateData;
+			this.initialAction = stateData.isInitial() ? stateData.getInitialAction() : null;
+			this.choice = stateData.getPseudoStateKind() == PseudoStateKind.CHOICE;
+		}
+
+		void compile() {
+			List<S> list = new ArrayList<S>();
+			for (Node<S, E> node = this; node != null; node = node.parent) {
+				list.add(0, node.state.getId());
+			}
+			depth = list.size();
+			ids = Collections.unmodifiableList(list);
+		}
+
+		boolean isComplete() {
+			return parent == null && stateData.isEnd();
+		}
+
+		boolean isSubstateOf(Node<S, E> other) {
+			for (Node<S, E> node = parent; node != null; node = node.parent) {
+				if (node == other) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		Node<S, E> commonParent(Node<S, E> other) {
+			Node<S, E> left = this;
+			Node<S, E> right = other;
+			while (left.depth > right.depth) {
+				left = left.parent;
+			}
+			while (right.depth > left.depth) {
+				right = right.parent;
+			}
+			while (left != right) {
+				left = left.parent;
+				right = right.parent;
+			}
+			return left;
+		}
+
+	}
+
+}
@@ -16,11 +16,14 @@
 package org.springframework.statemachine.ensemble;
 
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.statemachine.EventResult;
 import org.springframework.statemachine.ExtendedState;
 import org.springframework.statemachine.StateContext;
 import org.springframework.statemachine.StateMachine;
@@ -38,6 +41,7 @@ import org.springframework.statemachine.transition.Transition;
 import org.springframework.statemachine.transition.TransitionKind;
 import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
+import org.springframework.util.concurrent.ListenableFuture;
 
 /**
  * {@code DistributedStateMachine} is wrapping a real {@link StateMachine} and works
@@ -113,6 +117,41 @@ public class DistributedStateMachine<S, E> extends LifecycleObjectSupport implem
 		return sendEvent(MessageBuilder.withPayload(event).build());
 	}
 
+	@Override
+	public ListenableFuture<EventResult<S, E>> sendEventAsync(Message<E> event) {
+		return delegate.sendEventAsync(MessageBuilder.fromMessage(event)
+				.setHeader(StateMachineSystemConstants.STATEMACHINE_IDENTIFIER, delegate.getId()).build());
+	}
+
+	@Override
+	public List<Boolean> sendEvents(Collection<Message<E>> events) {
+		return sendEvents(events.iterator());
+	}
+
+	@Override
+	public List<Boolean> sendEvents(final Iterator<Message<E>> events) {
+		// same as with a single event, add state machine id
+		// to every message in a batch
+		return delegate.sendEvents(new Iterator<Message<E>>() {
+
+			@Override
+			public boolean hasNext() {
+				return events.hasNext();
+			}
+
+			@Override
+			public Message<E> next() {
+				return MessageBuilder.fromMessage(events.next())
+						.setHeader(StateMachineSystemConstants.STATEMACHINE_IDENTIFIER, delegate.getId()).build();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		});
+	}
+
 	@Override
 	public State<S, E> getState() {
 		return delegate.getState();
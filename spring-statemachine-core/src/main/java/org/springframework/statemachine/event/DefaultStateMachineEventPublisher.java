@@ -80,6 +80,13 @@ public class DefaultStateMachineEventPublisher implements StateMachineEventPubli
 		}
 	}
 
+	@Override
+	public void publishEventExpired(Object source, Message<?> event) {
+		if (applicationEventPublisher != null) {
+			applicationEventPublisher.publishEvent(new OnEventExpiredEvent(source, event));
+		}
+	}
+
 	@Override
 	public void publishTransitionStart(Object source, Transition<?, ?> transition) {
 		if (applicationEventPublisher != null) {
@@ -61,6 +61,14 @@ public interface StateMachineEventPublisher {
 	 */
 	void publishEventNotAccepted(Object source, Message<?> event);
 
+	/**
+	 * Publish event expired event.
+	 *
+	 * @param source the source
+	 * @param event the event
+	 */
+	void publishEventExpired(Object source, Message<?> event);
+
 	/**
 	 * Publish a transition start event.
 	 *
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.journal;
+
+/**
+ * Policies for forcing appended {@link StateMachineJournal} records into
+ * a storage device.
+ *
+ * @author Janne Valkealahti
+ *
+ */
+public enum JournalSyncPolicy {
+
+	/**
+	 * Records are never forced explicitly and are written by an
+	 * operating system. Records survive a process crash but
+	 * not a system crash.
+	 */
+	NONE,
+
+	/**
+	 * Records are forced periodically with a configured interval.
+	 */
+	INTERVAL,
+
+	/**
+	 * Appending a record waits until it has been forced. Records appended
+	 * concurrently are forced together with a single group commit.
+	 */
+	ALWAYS
+
+}
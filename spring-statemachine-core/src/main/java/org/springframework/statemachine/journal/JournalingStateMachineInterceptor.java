@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.journal;
+
+import org.springframework.messaging.Message;
+import org.springframework.statemachine.StateContext;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+import org.springframework.statemachine.support.StateMachineInterceptor;
+import org.springframework.statemachine.support.StateMachineInterceptorAdapter;
+import org.springframework.statemachine.transition.Transition;
+import org.springframework.statemachine.transition.TransitionKind;
+import org.springframework.util.Assert;
+
+/**
+ * {@link StateMachineInterceptor} appending every state change into a
+ * {@link StateMachineJournal} before it happens. A record contains an
+ * entered state, an event with its headers and extended state variables.
+ * If appending a record fails, a state change is not done.
+ * <p>
+ * Internal transitions don't change a state but may change extended state
+ * variables, those are appended after a transition has happened with a
+ * current state, thus a failing append can't stop it. Extended state
+ * variables changed outside of transitions, for example directly by a
+ * user, are not journaled until a next recorded transition.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ */
+public class JournalingStateMachineInterceptor<S, E> extends StateMachineInterceptorAdapter<S, E> {
+
+	private final StateMachineJournal<S, E> journal;
+	private final String machineId;
+
+	/**
+	 * Instantiates a new journaling state machine interceptor using
+	 * an id of an intercepted machine as a journal key.
+	 *
+	 * @param journal the journal
+	 */
+	public JournalingStateMachineInterceptor(StateMachineJournal<S, E> journal) {
+		this(journal, null);
+	}
+
+	/**
+	 * Instantiates a new journaling state machine interceptor.
+	 *
+	 * @param journal the journal
+	 * @param machineId the journal key, null to use an id of an intercepted machine
+	 */
+	public JournalingStateMachineInterceptor(StateMachineJournal<S, E> journal, String machineId) {
+		Assert.notNull(journal, "Journal must be set");
+		this.journal = journal;
+		this.machineId = machineId;
+	}
+
+	@Override
+	public void preStateChange(State<S, E> state, Message<E> message, Transition<S, E> transition,
+			StateMachine<S, E> stateMachine) {
+		if (state == null || transition == null) {
+			return;
+		}
+		String id = machineId != null ? machineId : stateMachine.getId();
+		journal.append(id, new DefaultStateMachineContext<S, E>(state.getId(), message != null ? message.getPayload()
+				: null, message != null ? message.getHeaders() : null, stateMachine.getExtendedState()));
+	}
+
+	@Override
+	public StateContext<S, E> postTransition(StateContext<S, E> stateContext) {
+		Transition<S, E> transition = stateContext.getTransition();
+		if (transition != null && transition.getKind() == TransitionKind.INTERNAL && transition.getSource() != null) {
+			String id = machineId != null ? machineId : stateContext.getStateMachine().getId();
+			journal.append(id, new DefaultStateMachineContext<S, E>(transition.getSource().getId(),
+					stateContext.getEvent(), stateContext.getMessageHeaders(), stateContext.getExtendedState()));
+		}
+		return stateContext;
+	}
+
+}
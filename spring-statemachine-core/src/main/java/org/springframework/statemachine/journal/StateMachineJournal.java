@@ -0,0 +1,527 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.journal;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachineException;
+import org.springframework.statemachine.kryo.KryoStateMachineSerializationService;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+import org.springframework.statemachine.support.LifecycleObjectSupport;
+import org.springframework.util.Assert;
+
+/**
+ * Append only journal of {@link StateMachineContext}s stored in memory
+ * mapped segment files within a local directory. Every record is keyed
+ * by a machine id and a journal can be shared by multiple machines.
+ * <p>
+ * Records are either transition records, usually appended by a
+ * {@link JournalingStateMachineInterceptor}, or snapshot records appended
+ * by a user to capture a full context including child contexts. A
+ * transition record carries a state, an event and extended state variables
+ * of a machine but no child contexts. {@link #replay(String)} rebuilds a
+ * context of a machine from its last snapshot with a last later transition
+ * record applied on top of it, child contexts being kept from the snapshot.
+ * A new segment is started when a record doesn't fit into a current one.
+ * <p>
+ * Locations of a last snapshot and a last transition record of every
+ * machine are kept in memory. The index is built by scanning segments when
+ * a journal is opened and updated by appends, thus a replay reads at most
+ * two records and does so without blocking appends.
+ * <p>
+ * How appended records are forced into a storage device is controlled
+ * by a {@link JournalSyncPolicy}. Records are checksummed and when a
+ * journal is opened, a current segment is scanned until a first torn or
+ * corrupted record after which appending continues.
+ * <p>
+ * Kryo libraries need to be present on a classpath.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ */
+public class StateMachineJournal<S, E> extends LifecycleObjectSupport {
+
+	private static final Log log = LogFactory.getLog(StateMachineJournal.class);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String SEGMENT_SUFFIX = ".journal";
+	private static final byte TYPE_TRANSITION = 1;
+	private static final byte TYPE_SNAPSHOT = 2;
+	// record length and crc
+	private static final int RECORD_HEADER_SIZE = 8;
+	// record type and sequence
+	private static final int BODY_HEADER_SIZE = 9;
+
+	private final KryoStateMachineSerializationService<S, E> serializationService = new KryoStateMachineSerializationService<S, E>();
+	private final File directory;
+	private int segmentSize = 16 * 1024 * 1024;
+	private JournalSyncPolicy syncPolicy = JournalSyncPolicy.INTERVAL;
+	private long syncInterval = 1000;
+
+	private final Object writeLock = new Object();
+	private final Object syncLock = new Object();
+	private final Map<String, IndexEntry> index = new HashMap<String, IndexEntry>();
+	private File segmentPath;
+	private RandomAccessFile segmentFile;
+	private MappedByteBuffer segment;
+	private long sequence;
+	private volatile long syncedSequence;
+	private volatile ScheduledFuture<?> syncFuture;
+
+	/**
+	 * Instantiates a new state machine journal.
+	 *
+	 * @param directory the directory for segment files
+	 */
+	public StateMachineJournal(File directory) {
+		Assert.notNull(directory, "Directory must be set");
+		this.directory = directory;
+	}
+
+	/**
+	 * Sets the size of a segment file in bytes. Default is 16MB.
+	 *
+	 * @param segmentSize the segment size
+	 */
+	public void setSegmentSize(int segmentSize) {
+		Assert.isTrue(segmentSize > RECORD_HEADER_SIZE, "Segment size too small");
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Sets the journal sync policy. Default is {@link JournalSyncPolicy#INTERVAL}.
+	 *
+	 * @param syncPolicy the journal sync policy
+	 */
+	public void setSyncPolicy(JournalSyncPolicy syncPolicy) {
+		Assert.notNull(syncPolicy, "Sync policy must be set");
+		this.syncPolicy = syncPolicy;
+	}
+
+	/**
+	 * Sets the interval in milliseconds used with
+	 * {@link JournalSyncPolicy#INTERVAL}. Default is 1000.
+	 *
+	 * @param syncInterval the sync interval in milliseconds
+	 */
+	public void setSyncInterval(long syncInterval) {
+		this.syncInterval = syncInterval;
+	}
+
+	@Override
+	protected void onInit() throws Exception {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create journal directory " + directory);
+		}
+		open();
+	}
+
+	@Override
+	protected void doStart() {
+		open();
+		TaskScheduler taskScheduler = getTaskScheduler();
+		if (syncPolicy == JournalSyncPolicy.INTERVAL && syncInterval > 0 && taskScheduler != null) {
+			syncFuture = taskScheduler.scheduleWithFixedDelay(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						sync();
+					} catch (Exception e) {
+						log.error("Error syncing journal", e);
+					}
+				}
+			}, syncInterval);
+		}
+	}
+
+	@Override
+	protected void doStop() {
+		ScheduledFuture<?> future = syncFuture;
+		if (future != null) {
+			future.cancel(false);
+			syncFuture = null;
+		}
+		sync();
+		synchronized (writeLock) {
+			closeSegment();
+		}
+	}
+
+	/**
+	 * Append a transition record.
+	 *
+	 * @param machineId the machine id
+	 * @param context the state machine context
+	 * @return the sequence of an appended record
+	 */
+	public long append(String machineId, StateMachineContext<S, E> context) {
+		return append(TYPE_TRANSITION, machineId, context);
+	}
+
+	/**
+	 * Append a snapshot record.
+	 *
+	 * @param machineId the machine id
+	 * @param context the state machine context
+	 * @return the sequence of an appended record
+	 */
+	public long snapshot(String machineId, StateMachineContext<S, E> context) {
+		return append(TYPE_SNAPSHOT, machineId, context);
+	}
+
+	/**
+	 * Rebuilds a state machine context of a machine from a last snapshot
+	 * appended for it and a last transition record appended after that
+	 * snapshot. A state, an event, event headers and extended state
+	 * variables are taken from the transition record and child contexts
+	 * from the snapshot. Without a snapshot a last transition record is
+	 * returned as is.
+	 *
+	 * @param machineId the machine id
+	 * @return the state machine context or null if none found
+	 */
+	public StateMachineContext<S, E> replay(String machineId) {
+		Assert.notNull(machineId, "Machine id must be set");
+		RecordLocation snapshotLocation;
+		RecordLocation transitionLocation;
+		synchronized (writeLock) {
+			IndexEntry entry = index.get(machineId);
+			if (entry == null) {
+				return null;
+			}
+			snapshotLocation = entry.snapshot;
+			transitionLocation = entry.transition;
+		}
+		// appended records never change, read those without a lock
+		StateMachineContext<S, E> snapshot = snapshotLocation != null ? readContext(snapshotLocation) : null;
+		StateMachineContext<S, E> transition = transitionLocation != null ? readContext(transitionLocation) : null;
+		if (transition == null) {
+			return snapshot;
+		} else if (snapshot == null) {
+			return transition;
+		}
+		return new DefaultStateMachineContext<S, E>(snapshot.getChilds(), transition.getState(), transition.getEvent(),
+				transition.getEventHeaders(), transition.getExtendedState());
+	}
+
+	/**
+	 * Forces all appended records into a storage device.
+	 */
+	public void sync() {
+		long current;
+		synchronized (writeLock) {
+			current = sequence;
+		}
+		awaitSync(current);
+	}
+
+	/**
+	 * Gets the sequence of a last appended record.
+	 *
+	 * @return the last sequence
+	 */
+	public long getLastSequence() {
+		synchronized (writeLock) {
+			return sequence;
+		}
+	}
+
+	private long append(byte type, String machineId, StateMachineContext<S, E> context) {
+		Assert.notNull(machineId, "Machine id must be set");
+		byte[] id = machineId.getBytes(UTF8);
+		byte[] data = serializationService.serializeStateMachineContext(context);
+		int bodySize = BODY_HEADER_SIZE + 4 + id.length + data.length;
+		long appended;
+		synchronized (writeLock) {
+			Assert.state(segment != null, "Journal is not initialized");
+			appended = sequence + 1;
+			ByteBuffer body = ByteBuffer.allocate(bodySize);
+			body.put(type).putLong(appended).putInt(id.length).put(id).put(data);
+			CRC32 crc = new CRC32();
+			crc.update(body.array(), 0, bodySize);
+			if (segment.remaining() < RECORD_HEADER_SIZE + bodySize) {
+				rotate(appended, RECORD_HEADER_SIZE + bodySize);
+			}
+			int position = segment.position();
+			segment.putInt(bodySize).putInt((int) crc.getValue()).put(body.array());
+			sequence = appended;
+			index(type, machineId, new RecordLocation(segmentPath, position));
+		}
+		if (syncPolicy == JournalSyncPolicy.ALWAYS) {
+			awaitSync(appended);
+		}
+		return appended;
+	}
+
+	private void open() {
+		synchronized (writeLock) {
+			if (segment != null) {
+				return;
+			}
+			index.clear();
+			File[] segments = listSegments();
+			for (int i = 0; i < segments.length - 1; i++) {
+				indexSegment(segments[i]);
+			}
+			if (segments.length == 0) {
+				openSegment(1, segmentSize);
+				sequence = 0;
+			} else {
+				recover(segments[segments.length - 1]);
+			}
+			syncedSequence = sequence;
+		}
+	}
+
+	private void awaitSync(long target) {
+		if (syncedSequence >= target) {
+			return;
+		}
+		synchronized (syncLock) {
+			// a previous group commit may already cover us
+			if (syncedSequence >= target) {
+				return;
+			}
+			MappedByteBuffer buffer;
+			long written;
+			synchronized (writeLock) {
+				buffer = segment;
+				written = sequence;
+			}
+			if (buffer != null) {
+				buffer.force();
+			}
+			syncedSequence = written;
+		}
+	}
+
+	private void rotate(long nextSequence, int recordSize) {
+		if (syncPolicy != JournalSyncPolicy.NONE) {
+			segment.force();
+		}
+		closeSegment();
+		openSegment(nextSequence, Math.max(segmentSize, recordSize + 4));
+	}
+
+	private void openSegment(long firstSequence, int size) {
+		File file = new File(directory, String.format("%020d", firstSequence) + SEGMENT_SUFFIX);
+		try {
+			segmentFile = new RandomAccessFile(file, "rw");
+			segment = segmentFile.getChannel().map(MapMode.READ_WRITE, 0, Math.max(size, segmentFile.length()));
+			segmentPath = file;
+		} catch (IOException e) {
+			closeSegment();
+			throw new StateMachineException("Error opening journal segment " + file, e);
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Opened journal segment " + file);
+		}
+	}
+
+	private void closeSegment() {
+		segment = null;
+		segmentPath = null;
+		if (segmentFile != null) {
+			try {
+				segmentFile.close();
+			} catch (IOException e) {
+				log.warn("Error closing journal segment", e);
+			}
+			segmentFile = null;
+		}
+	}
+
+	private void recover(File file) {
+		long first = Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()));
+		openSegment(first, segmentSize);
+		long last = indexRecords(segmentPath, segment);
+		sequence = last > 0 ? last : first - 1;
+	}
+
+	private void indexSegment(File file) {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				indexRecords(file, channel.map(MapMode.READ_ONLY, 0, channel.size()));
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			throw new StateMachineException("Error reading journal segment " + file, e);
+		}
+	}
+
+	/**
+	 * Indexes valid records of a segment from a current buffer position and
+	 * leaves the buffer positioned after a last valid record.
+	 *
+	 * @return the sequence of a last valid record or zero if none found
+	 */
+	private long indexRecords(File file, ByteBuffer buffer) {
+		long last = 0;
+		int position = buffer.position();
+		ByteBuffer body;
+		while ((body = nextRecord(buffer)) != null) {
+			last = body.getLong(1);
+			body.position(BODY_HEADER_SIZE);
+			byte[] id = new byte[body.getInt()];
+			body.get(id);
+			index(body.get(0), new String(id, UTF8), new RecordLocation(file, position));
+			position = buffer.position();
+		}
+		return last;
+	}
+
+	private void index(byte type, String machineId, RecordLocation location) {
+		IndexEntry entry = index.get(machineId);
+		if (entry == null) {
+			entry = new IndexEntry();
+			index.put(machineId, entry);
+		}
+		if (type == TYPE_SNAPSHOT) {
+			entry.snapshot = location;
+			entry.transition = null;
+		} else {
+			entry.transition = location;
+		}
+	}
+
+	private StateMachineContext<S, E> readContext(RecordLocation location) {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(location.file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+				readFully(channel, header, location.position);
+				ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + header.getInt(0));
+				readFully(channel, record, location.position);
+				record.flip();
+				ByteBuffer body = nextRecord(record);
+				if (body == null) {
+					throw new StateMachineException("Corrupted journal record at " + location.position + " in "
+							+ location.file);
+				}
+				body.position(BODY_HEADER_SIZE);
+				int idLength = body.getInt();
+				body.position(body.position() + idLength);
+				byte[] data = new byte[body.remaining()];
+				body.get(data);
+				return serializationService.deserializeStateMachineContext(data);
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			throw new StateMachineException("Error reading journal segment " + location.file, e);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	/**
+	 * Reads a next valid record body from a buffer and leaves the buffer
+	 * positioned after it. If a record is missing, torn or corrupted, the
+	 * buffer is left positioned at its start and null is returned.
+	 */
+	private static ByteBuffer nextRecord(ByteBuffer buffer) {
+		int start = buffer.position();
+		if (buffer.remaining() < RECORD_HEADER_SIZE) {
+			return null;
+		}
+		int bodySize = buffer.getInt();
+		int checksum = buffer.getInt();
+		if (bodySize < BODY_HEADER_SIZE + 4 || bodySize > buffer.remaining()) {
+			buffer.position(start);
+			return null;
+		}
+		byte[] body = new byte[bodySize];
+		buffer.get(body);
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, bodySize);
+		if ((int) crc.getValue() != checksum) {
+			buffer.position(start);
+			return null;
+		}
+		return ByteBuffer.wrap(body);
+	}
+
+	private File[] listSegments() {
+		File[] files = directory.listFiles(new FileFilter() {
+
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		if (files == null) {
+			return new File[0];
+		}
+		// fixed width names sort in sequence order
+		Arrays.sort(files);
+		return files;
+	}
+
+	/**
+	 * Location of a record within a segment file.
+	 */
+	private static class RecordLocation {
+
+		final File file;
+		final int position;
+
+		RecordLocation(File file, int position) {
+			this.file = file;
+			this.position = position;
+		}
+	}
+
+	/**
+	 * Locations of a last snapshot and a last transition record appended
+	 * after it for a machine.
+	 */
+	private static class IndexEntry {
+
+		RecordLocation snapshot;
+		RecordLocation transition;
+	}
+
+}
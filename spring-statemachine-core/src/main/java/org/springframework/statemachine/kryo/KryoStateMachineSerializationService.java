@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.kryo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.statemachine.StateMachineContext;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Service serializing a {@link StateMachineContext} into a compact binary
+ * form using kryo libraries. Kryo is not thread safe so every thread uses
+ * its own configured {@link Kryo} instance. Instances are kept per thread
+ * and per service class and shared by all services of a same class, thus
+ * a configuration done in {@link #configureKryoInstance(Kryo)} should only
+ * depend on a class, not on a state of a service instance.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ */
+public class KryoStateMachineSerializationService<S, E> {
+
+	private static final ThreadLocal<Map<Class<?>, Kryo>> kryoThreadLocal = new ThreadLocal<Map<Class<?>, Kryo>>() {
+
+		@Override
+		protected Map<Class<?>, Kryo> initialValue() {
+			return new HashMap<Class<?>, Kryo>();
+		}
+	};
+
+	/**
+	 * Serialize a state machine context.
+	 *
+	 * @param context the state machine context
+	 * @return the serialized bytes
+	 */
+	public byte[] serializeStateMachineContext(StateMachineContext<S, E> context) {
+		Kryo kryo = getKryo();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Output output = new Output(out);
+		kryo.writeObject(output, context);
+		output.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * Deserialize a state machine context.
+	 *
+	 * @param data the serialized bytes
+	 * @return the state machine context or null if data is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public StateMachineContext<S, E> deserializeStateMachineContext(byte[] data) {
+		if (data == null || data.length == 0) {
+			return null;
+		}
+		Kryo kryo = getKryo();
+		ByteArrayInputStream in = new ByteArrayInputStream(data);
+		Input input = new Input(in);
+		return kryo.readObject(input, StateMachineContext.class);
+	}
+
+	private Kryo getKryo() {
+		Map<Class<?>, Kryo> instances = kryoThreadLocal.get();
+		Kryo kryo = instances.get(getClass());
+		if (kryo == null) {
+			kryo = new Kryo();
+			configureKryoInstance(kryo);
+			instances.put(getClass(), kryo);
+		}
+		return kryo;
+	}
+
+	/**
+	 * Configures a new {@link Kryo} instance. Subclasses may override
+	 * this method to register additional serializers but should always
+	 * call super method.
+	 *
+	 * @param kryo the kryo instance
+	 */
+	protected void configureKryoInstance(Kryo kryo) {
+		kryo.addDefaultSerializer(StateMachineContext.class, new StateMachineContextSerializer<S, E>());
+		kryo.addDefaultSerializer(MessageHeaders.class, new MessageHeadersSerializer());
+		kryo.addDefaultSerializer(UUID.class, new UUIDSerializer());
+	}
+
+}
@@ -23,7 +23,8 @@ import org.springframework.statemachine.state.State;
 import org.springframework.statemachine.transition.Transition;
 
 /**
- * Default {@link StateMachineListener} dispatcher.
+ * Default {@link StateMachineListener} dispatcher. Expired events are
+ * dispatched to listeners implementing {@link EventExpiredListener}.
  *
  * @author Janne Valkealahti
  *
@@ -31,7 +32,7 @@ import org.springframework.statemachine.transition.Transition;
  * @param <E> the type of event
  */
 public class CompositeStateMachineListener<S,E> extends AbstractCompositeListener<StateMachineListener<S,E>> implements
-		StateMachineListener<S, E> {
+		StateMachineListener<S, E>, EventExpiredListener<E> {
 
 	@Override
 	public void stateChanged(State<S, E> from, State<S, E> to) {
@@ -65,6 +66,17 @@ public class CompositeStateMachineListener<S,E> extends AbstractCompositeListene
 		}
 	}
 
+	@SuppressWarnings("unchecked")
+	@Override
+	public void eventExpired(Message<E> event) {
+		for (Iterator<StateMachineListener<S, E>> iterator = getListeners().reverse(); iterator.hasNext();) {
+			StateMachineListener<S, E> listener = iterator.next();
+			if (listener instanceof EventExpiredListener) {
+				((EventExpiredListener<E>) listener).eventExpired(event);
+			}
+		}
+	}
+
 	@Override
 	public void transition(Transition<S, E> transition) {
 		for (Iterator<StateMachineListener<S, E>> iterator = getListeners().reverse(); iterator.hasNext();) {
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.listener;
+
+import org.springframework.messaging.Message;
+
+/**
+ * Optional listener interface notified when an event was discarded because
+ * its deadline passed before it was processed. A {@link StateMachineListener}
+ * registered with a state machine also implementing this interface receives
+ * these notifications. {@link StateMachineListenerAdapter} implements it.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <E> the type of event
+ */
+public interface EventExpiredListener<E> {
+
+	/**
+	 * Notified when event was discarded because its deadline
+	 * passed before it was processed.
+	 *
+	 * @param event the event
+	 */
+	void eventExpired(Message<E> event);
+
+}
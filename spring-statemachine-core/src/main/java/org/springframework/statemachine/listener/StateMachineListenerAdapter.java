@@ -22,14 +22,15 @@ import org.springframework.statemachine.transition.Transition;
 
 /**
  * Adapter implementation of {@link StateMachineListener} implementing all
- * methods which extended implementation can override.
+ * methods which extended implementation can override. Also implements
+ * {@link EventExpiredListener}.
  *
  * @author Janne Valkealahti
  *
  * @param <S> the type of state
  * @param <E> the type of event
  */
-public class StateMachineListenerAdapter<S, E> implements StateMachineListener<S, E> {
+public class StateMachineListenerAdapter<S, E> implements StateMachineListener<S, E>, EventExpiredListener<E> {
 
 	@Override
 	public void stateChanged(State<S, E> from, State<S, E> to) {
@@ -47,6 +48,10 @@ public class StateMachineListenerAdapter<S, E> implements StateMachineListener<S
 	public void eventNotAccepted(Message<E> event) {
 	}
 
+	@Override
+	public void eventExpired(Message<E> event) {
+	}
+
 	@Override
 	public void transition(Transition<S, E> transition) {
 	}
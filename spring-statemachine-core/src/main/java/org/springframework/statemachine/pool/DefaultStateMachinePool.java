@@ -0,0 +1,464 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.pool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachineException;
+import org.springframework.statemachine.access.StateMachineAccess;
+import org.springframework.statemachine.access.StateMachineFunction;
+import org.springframework.statemachine.config.StateMachineFactory;
+import org.springframework.statemachine.region.Region;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.support.AbstractStateMachine;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+import org.springframework.statemachine.support.LifecycleObjectSupport;
+import org.springframework.util.Assert;
+
+/**
+ * Default implementation of a {@link StateMachinePool} creating machines
+ * from a {@link StateMachineFactory}.
+ * <p>
+ * Machines are started when created and kept running while pooled.
+ * Returned machine is reset in place into its initial states and its
+ * extended state variables are cleared, borrowed machine is rehydrated
+ * from a given {@link StateMachineContext} using
+ * {@link StateMachineAccess#resetStateMachine(StateMachineContext)}.
+ * Child contexts are applied to submachines and regions having a matching
+ * state. Events deferred or queued but not processed when a machine is
+ * returned are discarded.
+ * Because neither of these go through a full stop and start, entry, exit
+ * and initial actions are not executed on reset. Machines in error or
+ * in a final state are discarded instead of pooled.
+ * <p>
+ * Number of machines is limited by a max size, borrowing from an
+ * exhausted pool waits up to a max wait and then fails with a
+ * {@link StateMachineException}. When an idle timeout is set and
+ * a {@link TaskScheduler} is available, idle machines are periodically
+ * evicted while this pool is running.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ */
+public class DefaultStateMachinePool<S, E> extends LifecycleObjectSupport implements StateMachinePool<S, E>,
+		StateMachinePoolMetrics {
+
+	private static final Log log = LogFactory.getLog(DefaultStateMachinePool.class);
+
+	private final StateMachineFactory<S, E> stateMachineFactory;
+	private final int maxSize;
+	private final Semaphore permits;
+	private final LinkedBlockingDeque<PooledStateMachine<S, E>> idle = new LinkedBlockingDeque<PooledStateMachine<S, E>>();
+	private final Map<StateMachine<S, E>, Boolean> active = new ConcurrentHashMap<StateMachine<S, E>, Boolean>();
+	private long maxWait = 0;
+	private long idleTimeout = 0;
+	private long evictionInterval = 0;
+	private volatile ScheduledFuture<?> evictionFuture;
+
+	private final AtomicLong createdCount = new AtomicLong();
+	private final AtomicLong borrowedCount = new AtomicLong();
+	private final AtomicLong returnedCount = new AtomicLong();
+	private final AtomicLong evictedCount = new AtomicLong();
+	private final AtomicLong discardedCount = new AtomicLong();
+	private final AtomicLong exhaustedCount = new AtomicLong();
+
+	/**
+	 * Instantiates a new unbounded state machine pool.
+	 *
+	 * @param stateMachineFactory the state machine factory
+	 */
+	public DefaultStateMachinePool(StateMachineFactory<S, E> stateMachineFactory) {
+		this(stateMachineFactory, 0);
+	}
+
+	/**
+	 * Instantiates a new state machine pool.
+	 *
+	 * @param stateMachineFactory the state machine factory
+	 * @param maxSize the maximum number of machines, zero or negative for unbounded
+	 */
+	public DefaultStateMachinePool(StateMachineFactory<S, E> stateMachineFactory, int maxSize) {
+		Assert.notNull(stateMachineFactory, "State machine factory must be set");
+		this.stateMachineFactory = stateMachineFactory;
+		this.maxSize = maxSize;
+		this.permits = maxSize > 0 ? new Semaphore(maxSize, true) : null;
+	}
+
+	/**
+	 * Sets the maximum time in milliseconds borrowing waits for
+	 * a machine when pool is exhausted. Defaults to zero which
+	 * fails immediately.
+	 *
+	 * @param maxWait the max wait in milliseconds
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Sets the time in milliseconds a machine may stay idle
+	 * before it is evicted. Zero or negative value disables
+	 * eviction which is a default.
+	 *
+	 * @param idleTimeout the idle timeout in milliseconds
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Sets the interval in milliseconds between eviction runs.
+	 * Defaults to the idle timeout.
+	 *
+	 * @param evictionInterval the eviction interval in milliseconds
+	 */
+	public void setEvictionInterval(long evictionInterval) {
+		this.evictionInterval = evictionInterval;
+	}
+
+	@Override
+	protected void doStart() {
+		TaskScheduler taskScheduler = getTaskScheduler();
+		if (idleTimeout > 0 && taskScheduler != null) {
+			long interval = evictionInterval > 0 ? evictionInterval : idleTimeout;
+			evictionFuture = taskScheduler.scheduleWithFixedDelay(new Runnable() {
+
+				@Override
+				public void run() {
+					evictIdle();
+				}
+			}, interval);
+		}
+	}
+
+	@Override
+	protected void doStop() {
+		ScheduledFuture<?> future = evictionFuture;
+		if (future != null) {
+			future.cancel(false);
+			evictionFuture = null;
+		}
+		PooledStateMachine<S, E> pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			pooled.stateMachine.stop();
+		}
+	}
+
+	@Override
+	public StateMachine<S, E> borrowStateMachine() {
+		return borrowStateMachine(null);
+	}
+
+	@Override
+	public StateMachine<S, E> borrowStateMachine(StateMachineContext<S, E> stateMachineContext) {
+		acquire();
+		StateMachine<S, E> stateMachine = null;
+		try {
+			PooledStateMachine<S, E> pooled = idle.pollFirst();
+			if (pooled != null) {
+				stateMachine = pooled.stateMachine;
+			} else {
+				stateMachine = createStateMachine();
+				stateMachine.start();
+				createdCount.incrementAndGet();
+			}
+			if (stateMachineContext != null) {
+				rehydrate(stateMachine, stateMachineContext);
+			}
+		} catch (RuntimeException e) {
+			if (stateMachine != null) {
+				discard(stateMachine);
+			}
+			release();
+			throw e;
+		}
+		active.put(stateMachine, Boolean.TRUE);
+		borrowedCount.incrementAndGet();
+		return stateMachine;
+	}
+
+	@Override
+	public void returnStateMachine(StateMachine<S, E> stateMachine) {
+		checkActive(stateMachine);
+		try {
+			returnedCount.incrementAndGet();
+			if (stateMachine.hasStateMachineError() || stateMachine.isComplete()) {
+				discard(stateMachine);
+				return;
+			}
+			try {
+				reset(stateMachine);
+			} catch (RuntimeException e) {
+				log.warn("Discarding state machine which could not be reset", e);
+				discard(stateMachine);
+				return;
+			}
+			idle.offerFirst(new PooledStateMachine<S, E>(stateMachine, System.nanoTime()));
+		} finally {
+			release();
+		}
+	}
+
+	@Override
+	public void invalidateStateMachine(StateMachine<S, E> stateMachine) {
+		checkActive(stateMachine);
+		try {
+			discard(stateMachine);
+		} finally {
+			release();
+		}
+	}
+
+	@Override
+	public StateMachinePoolMetrics getPoolMetrics() {
+		return this;
+	}
+
+	@Override
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	@Override
+	public int getActiveCount() {
+		return active.size();
+	}
+
+	@Override
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	@Override
+	public long getCreatedCount() {
+		return createdCount.get();
+	}
+
+	@Override
+	public long getBorrowedCount() {
+		return borrowedCount.get();
+	}
+
+	@Override
+	public long getReturnedCount() {
+		return returnedCount.get();
+	}
+
+	@Override
+	public long getEvictedCount() {
+		return evictedCount.get();
+	}
+
+	@Override
+	public long getDiscardedCount() {
+		return discardedCount.get();
+	}
+
+	@Override
+	public long getExhaustedCount() {
+		return exhaustedCount.get();
+	}
+
+	/**
+	 * Creates a new machine for this pool. Machine is started by the pool
+	 * after it's been created. Subclasses may override to further prepare
+	 * machines, like adding interceptors, before those are lent.
+	 *
+	 * @return the state machine
+	 */
+	protected StateMachine<S, E> createStateMachine() {
+		return stateMachineFactory.getStateMachine();
+	}
+
+	/**
+	 * Evict machines which have been idle longer than the idle timeout.
+	 * Oldest machines are at the tail of the idle deque, so eviction
+	 * stops at first machine which is still fresh.
+	 *
+	 * @return the number of evicted machines
+	 */
+	public int evictIdle() {
+		if (idleTimeout <= 0) {
+			return 0;
+		}
+		long limit = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+		int count = 0;
+		Iterator<PooledStateMachine<S, E>> iterator = idle.descendingIterator();
+		while (iterator.hasNext()) {
+			PooledStateMachine<S, E> pooled = iterator.next();
+			if (pooled.idleSince - limit > 0) {
+				break;
+			}
+			// borrower may have taken it meanwhile
+			if (idle.removeLastOccurrence(pooled)) {
+				pooled.stateMachine.stop();
+				evictedCount.incrementAndGet();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void acquire() {
+		if (permits == null) {
+			return;
+		}
+		boolean acquired = false;
+		try {
+			acquired = maxWait > 0 ? permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS) : permits.tryAcquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (!acquired) {
+			exhaustedCount.incrementAndGet();
+			throw new StateMachineException("State machine pool exhausted, maxSize=" + maxSize);
+		}
+	}
+
+	private void release() {
+		if (permits != null) {
+			permits.release();
+		}
+	}
+
+	private void checkActive(StateMachine<S, E> stateMachine) {
+		Assert.notNull(stateMachine, "State machine must be set");
+		Assert.isTrue(active.remove(stateMachine) != null, "State machine is not borrowed from this pool");
+	}
+
+	private void discard(StateMachine<S, E> stateMachine) {
+		discardedCount.incrementAndGet();
+		stateMachine.stop();
+	}
+
+	private void rehydrate(StateMachine<S, E> stateMachine, StateMachineContext<S, E> stateMachineContext) {
+		// all machines in a hierarchy share one extended state,
+		// update it in place as executors hold a reference to it
+		Map<Object, Object> variables = stateMachine.getExtendedState().getVariables();
+		variables.clear();
+		if (stateMachineContext.getExtendedState() != null) {
+			variables.putAll(stateMachineContext.getExtendedState().getVariables());
+		}
+		if (stateMachineContext.getState() == null) {
+			return;
+		}
+		// child contexts carry states of submachines and regions
+		List<S> states = new ArrayList<S>();
+		collectStates(stateMachineContext, states);
+		final List<StateMachineAccess<S, E>> machines = new ArrayList<StateMachineAccess<S, E>>();
+		stateMachine.getStateMachineAccessor().doWithAllRegions(new StateMachineFunction<StateMachineAccess<S, E>>() {
+
+			@Override
+			public void apply(StateMachineAccess<S, E> function) {
+				machines.add(function);
+			}
+		});
+		// machines are visited owners first, reset those last so that a state
+		// set into a submachine is kept when its owner starts it
+		for (int i = machines.size() - 1; i >= 0; i--) {
+			StateMachineAccess<S, E> machine = machines.get(i);
+			S state = findState(machine, states);
+			if (state != null) {
+				machine.resetStateMachine(new DefaultStateMachineContext<S, E>(state, null, null, null));
+			}
+		}
+	}
+
+	private void collectStates(StateMachineContext<S, E> stateMachineContext, List<S> states) {
+		if (stateMachineContext.getState() != null) {
+			states.add(stateMachineContext.getState());
+		}
+		if (stateMachineContext.getChilds() != null) {
+			for (StateMachineContext<S, E> child : stateMachineContext.getChilds()) {
+				collectStates(child, states);
+			}
+		}
+	}
+
+	private S findState(StateMachineAccess<S, E> machine, List<S> states) {
+		if (!(machine instanceof Region)) {
+			return states.get(0);
+		}
+		@SuppressWarnings("unchecked")
+		Collection<State<S, E>> machineStates = ((Region<S, E>) machine).getStates();
+		for (S state : states) {
+			for (State<S, E> s : machineStates) {
+				for (State<S, E> ss : s.getStates()) {
+					if (ss.getIds().contains(state)) {
+						return state;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private void reset(StateMachine<S, E> stateMachine) {
+		stateMachine.getExtendedState().getVariables().clear();
+		stateMachine.getStateMachineAccessor().doWithAllRegions(new StateMachineFunction<StateMachineAccess<S, E>>() {
+
+			@Override
+			public void apply(StateMachineAccess<S, E> function) {
+				// deferred and queued events would otherwise be
+				// processed by a next borrower
+				if (function instanceof AbstractStateMachine) {
+					((AbstractStateMachine<?, ?>) function).clearEvents();
+				}
+				// machines which were never entered are left untouched
+				// and go through their initial transition when entered
+				if (!(function instanceof StateMachine)) {
+					return;
+				}
+				@SuppressWarnings("unchecked")
+				StateMachine<S, E> machine = (StateMachine<S, E>) function;
+				State<S, E> initialState = machine.getInitialState();
+				if (machine.getState() != null && initialState != null) {
+					function.resetStateMachine(new DefaultStateMachineContext<S, E>(initialState.getId(), null, null,
+							null));
+				}
+			}
+		});
+	}
+
+	private static class PooledStateMachine<S, E> {
+
+		final StateMachine<S, E> stateMachine;
+		final long idleSince;
+
+		PooledStateMachine(StateMachine<S, E> stateMachine, long idleSince) {
+			this.stateMachine = stateMachine;
+			this.idleSince = idleSince;
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.pool;
+
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
+
+/**
+ * {@code StateMachinePool} lends started {@link StateMachine}s so that
+ * short lived processing doesn't need to build and start a new machine
+ * for every unit of work. Borrowed machine must be given back either
+ * with {@link #returnStateMachine(StateMachine)} or, if it should not be
+ * used anymore, with {@link #invalidateStateMachine(StateMachine)}.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ */
+public interface StateMachinePool<S, E> {
+
+	/**
+	 * Borrow a state machine in its initial state.
+	 *
+	 * @return the state machine
+	 */
+	StateMachine<S, E> borrowStateMachine();
+
+	/**
+	 * Borrow a state machine reset into a state and extended state
+	 * given by a {@link StateMachineContext}.
+	 *
+	 * @param stateMachineContext the state machine context
+	 * @return the state machine
+	 */
+	StateMachine<S, E> borrowStateMachine(StateMachineContext<S, E> stateMachineContext);
+
+	/**
+	 * Return a borrowed state machine back to the pool.
+	 *
+	 * @param stateMachine the state machine
+	 */
+	void returnStateMachine(StateMachine<S, E> stateMachine);
+
+	/**
+	 * Invalidate a borrowed state machine. Machine is stopped and
+	 * not lent again.
+	 *
+	 * @param stateMachine the state machine
+	 */
+	void invalidateStateMachine(StateMachine<S, E> stateMachine);
+
+	/**
+	 * Gets the pool metrics.
+	 *
+	 * @return the pool metrics
+	 */
+	StateMachinePoolMetrics getPoolMetrics();
+
+}
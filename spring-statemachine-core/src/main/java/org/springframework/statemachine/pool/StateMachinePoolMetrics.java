@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.pool;
+
+/**
+ * Runtime metrics of a {@link StateMachinePool}.
+ *
+ * @author Janne Valkealahti
+ *
+ */
+public interface StateMachinePoolMetrics {
+
+	/**
+	 * Gets the maximum number of machines a pool keeps. Zero or
+	 * negative value indicates an unbounded pool.
+	 *
+	 * @return the maximum pool size
+	 */
+	int getMaxSize();
+
+	/**
+	 * Gets the number of machines currently borrowed.
+	 *
+	 * @return the active count
+	 */
+	int getActiveCount();
+
+	/**
+	 * Gets the number of machines currently idle in a pool.
+	 *
+	 * @return the idle count
+	 */
+	int getIdleCount();
+
+	/**
+	 * Gets the count of machines created by a pool.
+	 *
+	 * @return the created count
+	 */
+	long getCreatedCount();
+
+	/**
+	 * Gets the count of borrowed machines.
+	 *
+	 * @return the borrowed count
+	 */
+	long getBorrowedCount();
+
+	/**
+	 * Gets the count of machines returned back into a pool.
+	 *
+	 * @return the returned count
+	 */
+	long getReturnedCount();
+
+	/**
+	 * Gets the count of machines evicted after staying idle
+	 * too long.
+	 *
+	 * @return the evicted count
+	 */
+	long getEvictedCount();
+
+	/**
+	 * Gets the count of machines discarded either because those
+	 * were invalidated, were in error or complete, or could not
+	 * be reset.
+	 *
+	 * @return the discarded count
+	 */
+	long getDiscardedCount();
+
+	/**
+	 * Gets the count of borrow requests rejected because a pool
+	 * was exhausted.
+	 *
+	 * @return the exhausted count
+	 */
+	long getExhaustedCount();
+
+}
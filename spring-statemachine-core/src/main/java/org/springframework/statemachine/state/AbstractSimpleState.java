@@ -18,6 +18,7 @@ package org.springframework.statemachine.state;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 import org.springframework.statemachine.StateMachine;
 import org.springframework.statemachine.action.Action;
@@ -33,7 +34,7 @@ import org.springframework.statemachine.region.Region;
  */
 public abstract class AbstractSimpleState<S, E> extends AbstractState<S, E> {
 
-	private final Collection<S> ids;
+	private final List<S> ids;
 
 	/**
 	 * Instantiates a new abstract simple state.
@@ -90,8 +91,7 @@ public abstract class AbstractSimpleState<S, E> extends AbstractState<S, E> {
 	public AbstractSimpleState(S id, Collection<E> deferred, Collection<? extends Action<S, E>> entryActions,
 			Collection<? extends Action<S, E>> exitActions, PseudoState<S, E> pseudoState, Collection<Region<S, E>> regions) {
 		super(id, deferred, entryActions, exitActions, pseudoState, regions);
-		this.ids = new ArrayList<S>();
-		this.ids.add(id);
+		this.ids = Collections.singletonList(id);
 	}
 
 	/**
@@ -107,8 +107,7 @@ public abstract class AbstractSimpleState<S, E> extends AbstractState<S, E> {
 	public AbstractSimpleState(S id, Collection<E> deferred, Collection<? extends Action<S, E>> entryActions,
 			Collection<? extends Action<S, E>> exitActions, PseudoState<S, E> pseudoState, StateMachine<S, E> submachine) {
 		super(id, deferred, entryActions, exitActions, pseudoState, submachine);
-		this.ids = new ArrayList<S>();
-		this.ids.add(id);
+		this.ids = Collections.singletonList(id);
 	}
 
 	/**
@@ -123,13 +122,12 @@ public abstract class AbstractSimpleState<S, E> extends AbstractState<S, E> {
 	public AbstractSimpleState(S id, Collection<E> deferred, Collection<? extends Action<S, E>> entryActions,
 			Collection<? extends Action<S, E>> exitActions, PseudoState<S, E> pseudoState) {
 		super(id, deferred, entryActions, exitActions, pseudoState);
-		this.ids = new ArrayList<S>();
-		this.ids.add(id);
+		this.ids = Collections.singletonList(id);
 	}
 
 	@Override
 	public Collection<S> getIds() {
-		return Collections.unmodifiableCollection(ids);
+		return ids;
 	}
 
 	@Override
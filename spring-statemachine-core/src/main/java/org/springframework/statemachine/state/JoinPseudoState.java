@@ -15,15 +15,24 @@
  */
 package org.springframework.statemachine.state;
 
-import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.springframework.statemachine.StateContext;
+import org.springframework.statemachine.StateMachine;
 import org.springframework.statemachine.listener.StateMachineListenerAdapter;
 import org.springframework.statemachine.state.PseudoStateContext.PseudoAction;
 
 /**
  * Join implementation of a {@link PseudoState}.
+ * <p>
+ * Join states are given fixed positions when join is created and reached
+ * join states are counted down without locking. A single tracking listener
+ * is registered with a state machine on a first entry and is only armed
+ * and disarmed on further entries and exits.
  *
  * @author Janne Valkealahti
  *
@@ -33,7 +42,12 @@ import org.springframework.statemachine.state.PseudoStateContext.PseudoAction;
 public class JoinPseudoState<S, E> extends AbstractPseudoState<S, E> {
 
 	private final List<State<S, E>> joins;
-	private volatile JoinTracker tracker;
+	private final Map<State<S, E>, Integer> positions;
+	private final AtomicIntegerArray reached;
+	private final AtomicInteger remaining = new AtomicInteger();
+	private final JoinTracker tracker = new JoinTracker();
+	private volatile boolean armed;
+	private StateMachine<S, E> trackedMachine;
 
 	/**
 	 * Instantiates a new join pseudo state.
@@ -43,21 +57,30 @@ public class JoinPseudoState<S, E> extends AbstractPseudoState<S, E> {
 	public JoinPseudoState(List<State<S, E>> joins) {
 		super(PseudoStateKind.JOIN);
 		this.joins = joins;
+		this.positions = new IdentityHashMap<State<S, E>, Integer>();
+		for (State<S, E> join : joins) {
+			if (!positions.containsKey(join)) {
+				positions.put(join, positions.size());
+			}
+		}
+		this.reached = new AtomicIntegerArray(positions.size());
 	}
 
 	@Override
 	public State<S, E> entry(StateContext<S, E> context) {
-		tracker = new JoinTracker(this, new ArrayList<State<S,E>>(joins));
-		context.getStateMachine().addStateListener(tracker);
+		armed = false;
+		for (int i = 0; i < reached.length(); i++) {
+			reached.set(i, 0);
+		}
+		remaining.set(reached.length());
+		registerTracker(context.getStateMachine());
+		armed = reached.length() > 0;
 		return null;
 	}
 
 	@Override
 	public void exit(StateContext<S, E> context) {
-		if (context != null) {
-			context.getStateMachine().removeStateListener(tracker);
-		}
-		tracker = null;
+		armed = false;
 	}
 
 	/**
@@ -69,26 +92,37 @@ public class JoinPseudoState<S, E> extends AbstractPseudoState<S, E> {
 		return joins;
 	}
 
-	private class JoinTracker extends StateMachineListenerAdapter<S, E> {
-
-		private final PseudoState<S, E> pseudoState;
-		private final List<State<S, E>> track;
-		private boolean notified = false;
+	private synchronized void registerTracker(StateMachine<S, E> stateMachine) {
+		if (trackedMachine == stateMachine) {
+			return;
+		}
+		if (trackedMachine != null) {
+			trackedMachine.removeStateListener(tracker);
+		}
+		stateMachine.addStateListener(tracker);
+		trackedMachine = stateMachine;
+	}
 
-		public JoinTracker(PseudoState<S, E> pseudoState, List<State<S, E>> track) {
-			this.pseudoState = pseudoState;
-			this.track = track;
+	private void stateReached(State<S, E> state) {
+		if (!armed) {
+			return;
+		}
+		Integer position = positions.get(state);
+		if (position == null) {
+			return;
 		}
+		// only a thread reaching a last join state sees zero
+		if (reached.compareAndSet(position, 0, 1) && remaining.decrementAndGet() == 0) {
+			armed = false;
+			notifyContext(new DefaultPseudoStateContext<S, E>(this, PseudoAction.JOIN_COMPLETED));
+		}
+	}
+
+	private class JoinTracker extends StateMachineListenerAdapter<S, E> {
 
 		@Override
-		public synchronized void stateChanged(State<S, E> from, State<S, E> to) {
-			if (!notified && track.size() > 0) {
-				track.remove(to);
-				if (track.size() == 0) {
-					notified = true;
-					notifyContext(new DefaultPseudoStateContext<S, E>(pseudoState, PseudoAction.JOIN_COMPLETED));
-				}
-			}
+		public void stateChanged(State<S, E> from, State<S, E> to) {
+			stateReached(to);
 		}
 
 	}
@@ -17,14 +17,29 @@ package org.springframework.statemachine.state;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.messaging.Message;
 import org.springframework.statemachine.StateContext;
+import org.springframework.statemachine.StateMachineException;
 import org.springframework.statemachine.action.Action;
 import org.springframework.statemachine.region.Region;
+import org.springframework.statemachine.support.NotificationRecorder;
 
 /**
  * A {@link State} implementation where states are wrapped in a regions..
+ * <p>
+ * On default regions are processed one after another on a calling thread. If
+ * a region executor is set, events, entries and exits are forked to regions
+ * using that executor and joined before processing continues. If a region
+ * executor rejects a task, a region is executed on a calling thread instead
+ * and a warning is logged.
  *
  * @author Janne Valkealahti
  *
@@ -33,8 +48,16 @@ import org.springframework.statemachine.region.Region;
  */
 public class RegionState<S, E> extends AbstractState<S, E> {
 
+	private static final Log log = LogFactory.getLog(RegionState.class);
+
 	private JoinPseudoState<S, E> join;
 
+	private volatile IdsSnapshot<S> idsSnapshot;
+
+	private TaskExecutor regionExecutor;
+
+	private boolean orderedNotifications = true;
+
 	/**
 	 * Instantiates a new region state.
 	 *
@@ -97,24 +120,32 @@ public class RegionState<S, E> extends AbstractState<S, E> {
 	}
 
 	@Override
-	public boolean sendEvent(Message<E> event) {
-		boolean accept = false;
-		if (getRegions() != null) {
-			for (Region<S, E> r : getRegions()) {
-				accept |= r.sendEvent(event);
-			}
+	public boolean sendEvent(final Message<E> event) {
+		if (getRegions() == null) {
+			return false;
 		}
-		return accept;
+		return executeRegions(new RegionCallback<S, E>() {
+
+			@Override
+			public boolean execute(Region<S, E> region) {
+				return region.sendEvent(event);
+			}
+		});
 	}
 
 	@Override
-	public void exit(StateContext<S, E> context) {
-		for (Region<S, E> region : getRegions()) {
-			if (region.getState() != null) {
-				region.getState().exit(context);
+	public void exit(final StateContext<S, E> context) {
+		executeRegions(new RegionCallback<S, E>() {
+
+			@Override
+			public boolean execute(Region<S, E> region) {
+				if (region.getState() != null) {
+					region.getState().exit(context);
+				}
+				region.stop();
+				return false;
 			}
-			region.stop();
-		}
+		});
 		Collection<? extends Action<S, E>> actions = getExitActions();
 		if (actions != null) {
 			for (Action<S, E> action : actions) {
@@ -124,7 +155,7 @@ public class RegionState<S, E> extends AbstractState<S, E> {
 	}
 
 	@Override
-	public void entry(StateContext<S, E> context) {
+	public void entry(final StateContext<S, E> context) {
 		if (join != null) {
 			join.entry(context);
 		}
@@ -135,32 +166,53 @@ public class RegionState<S, E> extends AbstractState<S, E> {
 			}
 		}
 
-		if (getPseudoState() != null && getPseudoState().getKind() == PseudoStateKind.INITIAL) {
-			for (Region<S, E> region : getRegions()) {
-				region.start();
-			}
-		} else {
-			for (Region<S, E> region : getRegions()) {
-				if (region.getState() != null) {
+		final boolean initial = getPseudoState() != null && getPseudoState().getKind() == PseudoStateKind.INITIAL;
+		executeRegions(new RegionCallback<S, E>() {
+
+			@Override
+			public boolean execute(Region<S, E> region) {
+				if (initial) {
+					region.start();
+				} else if (region.getState() != null) {
 					region.getState().entry(context);
 				}
+				return false;
 			}
-		}
+		});
 	}
 
+	/**
+	 * Gets the ids of this state and active states of all regions. Returned
+	 * collection is an immutable snapshot which is shared by all callers and
+	 * only rebuilt when region active states change.
+	 *
+	 * @return the active state ids
+	 */
 	@Override
 	public Collection<S> getIds() {
+		IdsSnapshot<S> snapshot = idsSnapshot;
+		if (snapshot != null && isCurrent(snapshot)) {
+			return snapshot.ids;
+		}
+		Collection<Region<S, E>> regions = getRegions();
+		Object[] regionIds = new Object[regions.size()];
 		ArrayList<S> ids = new ArrayList<S>();
 		if (getId() != null) {
 			ids.add(getId());
 		}
-		for (Region<S, E> r : getRegions()) {
+		int i = 0;
+		for (Region<S, E> r : regions) {
 			State<S, E> s = r.getState();
 			if (s != null) {
-				ids.addAll(s.getIds());
+				Collection<S> stateIds = s.getIds();
+				regionIds[i] = stateIds;
+				ids.addAll(stateIds);
 			}
+			i++;
 		}
-		return ids;
+		snapshot = new IdsSnapshot<S>(regionIds, Collections.unmodifiableList(ids));
+		idsSnapshot = snapshot;
+		return snapshot.ids;
 	}
 
 	@Override
@@ -175,14 +227,179 @@ public class RegionState<S, E> extends AbstractState<S, E> {
 		return states;
 	}
 
+	private boolean isCurrent(IdsSnapshot<S> snapshot) {
+		Collection<Region<S, E>> regions = getRegions();
+		if (regions.size() != snapshot.regionIds.length) {
+			return false;
+		}
+		int i = 0;
+		for (Region<S, E> r : regions) {
+			State<S, E> s = r.getState();
+			if (snapshot.regionIds[i++] != (s != null ? s.getIds() : null)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	public void setJoin(JoinPseudoState<S, E> join) {
 		this.join = join;
 	}
 
+	/**
+	 * Sets the task executor used to execute regions in parallel. A region
+	 * executor is only used if this state has more than one region and
+	 * a first region is always executed on a calling thread.
+	 *
+	 * @param regionExecutor the new region executor
+	 */
+	public void setRegionExecutor(TaskExecutor regionExecutor) {
+		this.regionExecutor = regionExecutor;
+	}
+
+	/**
+	 * Sets if listener notifications from regions executed in parallel are
+	 * delivered in region order after all regions have completed. If
+	 * disabled, notifications are delivered from region threads as they
+	 * happen. On default notifications are ordered.
+	 *
+	 * @param orderedNotifications the new ordered notifications flag
+	 */
+	public void setOrderedNotifications(boolean orderedNotifications) {
+		this.orderedNotifications = orderedNotifications;
+	}
+
 	@Override
 	public String toString() {
 		return "RegionState [getIds()=" + getIds() + ", getClass()=" + getClass() + ", hashCode()=" + hashCode()
 				+ ", toString()=" + super.toString() + "]";
 	}
 
+	private boolean executeRegions(RegionCallback<S, E> callback) {
+		Collection<Region<S, E>> regions = getRegions();
+		if (regionExecutor == null || regions.size() < 2) {
+			boolean result = false;
+			for (Region<S, E> region : regions) {
+				result |= callback.execute(region);
+			}
+			return result;
+		}
+
+		final RegionFork<S, E> fork = new RegionFork<S, E>(new ArrayList<Region<S, E>>(regions), callback,
+				orderedNotifications);
+		for (int i = 1; i < fork.regions.size(); i++) {
+			final int index = i;
+			Runnable task = new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						fork.execute(index);
+					} finally {
+						fork.latch.countDown();
+					}
+				}
+			};
+			try {
+				regionExecutor.execute(task);
+			} catch (TaskRejectedException e) {
+				// region still needs to be processed to keep regions
+				// consistent, a saturated executor just loses parallelism
+				log.warn("Region executor rejected a task, executing region " + fork.regions.get(index).getId()
+						+ " on a calling thread", e);
+				task.run();
+			}
+		}
+		fork.execute(0);
+		return fork.join();
+	}
+
+	/**
+	 * Callback executed for every region.
+	 */
+	private interface RegionCallback<S, E> {
+		boolean execute(Region<S, E> region);
+	}
+
+	/**
+	 * State of regions forked to a region executor.
+	 */
+	private static class RegionFork<S, E> {
+		final List<Region<S, E>> regions;
+		final RegionCallback<S, E> callback;
+		final boolean ordered;
+		final boolean[] results;
+		final Throwable[] errors;
+		final List<List<Runnable>> notifications;
+		final CountDownLatch latch;
+
+		RegionFork(List<Region<S, E>> regions, RegionCallback<S, E> callback, boolean ordered) {
+			this.regions = regions;
+			this.callback = callback;
+			this.ordered = ordered;
+			this.results = new boolean[regions.size()];
+			this.errors = new Throwable[regions.size()];
+			this.notifications = new ArrayList<List<Runnable>>(Collections.<List<Runnable>>nCopies(regions.size(), null));
+			this.latch = new CountDownLatch(regions.size() - 1);
+		}
+
+		void execute(int index) {
+			List<Runnable> previous = ordered ? NotificationRecorder.start() : null;
+			try {
+				results[index] = callback.execute(regions.get(index));
+			} catch (Throwable e) {
+				errors[index] = e;
+			} finally {
+				if (ordered) {
+					notifications.set(index, NotificationRecorder.stop(previous));
+				}
+			}
+		}
+
+		boolean join() {
+			// regions are always waited to complete as those
+			// keep modifying their state until done
+			boolean interrupted = false;
+			while (true) {
+				try {
+					latch.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			boolean result = false;
+			for (int i = 0; i < regions.size(); i++) {
+				NotificationRecorder.replay(notifications.get(i));
+				result |= results[i];
+			}
+			for (Throwable e : errors) {
+				if (e instanceof RuntimeException) {
+					throw (RuntimeException) e;
+				} else if (e instanceof Error) {
+					throw (Error) e;
+				} else if (e != null) {
+					throw new StateMachineException("Region execution failed", e);
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Active ids together with region ids they were built from.
+	 */
+	private static class IdsSnapshot<S> {
+		final Object[] regionIds;
+		final List<S> ids;
+
+		IdsSnapshot(Object[] regionIds, List<S> ids) {
+			this.regionIds = regionIds;
+			this.ids = ids;
+		}
+	}
+
 }
@@ -17,6 +17,8 @@ package org.springframework.statemachine.state;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import org.springframework.messaging.Message;
 import org.springframework.statemachine.StateContext;
@@ -38,7 +40,9 @@ import org.springframework.statemachine.transition.TransitionKind;
  */
 public class StateMachineState<S, E> extends AbstractState<S, E> {
 
-	private final Collection<S> ids;
+	private final List<S> ids;
+
+	private volatile IdsSnapshot<S> idsSnapshot;
 
 	/**
 	 * Instantiates a new state machine state.
@@ -48,8 +52,7 @@ public class StateMachineState<S, E> extends AbstractState<S, E> {
 	 */
 	public StateMachineState(S id, StateMachine<S, E> submachine) {
 		super(id, null, null, null, null, submachine);
-		this.ids = new ArrayList<S>();
-		this.ids.add(id);
+		this.ids = Collections.singletonList(id);
 	}
 
 	/**
@@ -61,8 +64,7 @@ public class StateMachineState<S, E> extends AbstractState<S, E> {
 	 */
 	public StateMachineState(S id, StateMachine<S, E> submachine, Collection<E> deferred) {
 		super(id, deferred, null, null, null, submachine);
-		this.ids = new ArrayList<S>();
-		this.ids.add(id);
+		this.ids = Collections.singletonList(id);
 	}
 
 	/**
@@ -74,8 +76,7 @@ public class StateMachineState<S, E> extends AbstractState<S, E> {
 	 */
 	public StateMachineState(S id, StateMachine<S, E> submachine, PseudoState<S, E> pseudoState) {
 		super(id, null, null, null, pseudoState, submachine);
-		this.ids = new ArrayList<S>();
-		this.ids.add(id);
+		this.ids = Collections.singletonList(id);
 	}
 
 	/**
@@ -92,8 +93,7 @@ public class StateMachineState<S, E> extends AbstractState<S, E> {
 			Collection<? extends Action<S, E>> entryActions, Collection<? extends Action<S, E>> exitActions,
 			PseudoState<S, E> pseudoState) {
 		super(id, deferred, entryActions, exitActions, pseudoState, submachine);
-		this.ids = new ArrayList<S>();
-		this.ids.add(id);
+		this.ids = Collections.singletonList(id);
 	}
 
 	/**
@@ -108,19 +108,30 @@ public class StateMachineState<S, E> extends AbstractState<S, E> {
 	public StateMachineState(S id, StateMachine<S, E> submachine, Collection<E> deferred,
 			Collection<? extends Action<S, E>> entryActions, Collection<? extends Action<S, E>> exitActions) {
 		super(id, deferred, entryActions, exitActions, null, submachine);
-		this.ids = new ArrayList<S>();
-		this.ids.add(id);
+		this.ids = Collections.singletonList(id);
 	}
 
+	/**
+	 * Gets the ids of this state and active states of a submachine. Returned
+	 * collection is an immutable snapshot which is shared by all callers and
+	 * only rebuilt when submachine active states change.
+	 *
+	 * @return the active state ids
+	 */
 	@Override
 	public Collection<S> getIds() {
-
-		Collection<S> ret = new ArrayList<S>(ids);
 		State<S, E> state = getSubmachine().getState();
-		if (state != null) {
-			ret.addAll(state.getIds());
+		Collection<S> stateIds = state != null ? state.getIds() : null;
+		IdsSnapshot<S> snapshot = idsSnapshot;
+		if (snapshot == null || snapshot.stateIds != stateIds) {
+			List<S> ret = new ArrayList<S>(ids);
+			if (stateIds != null) {
+				ret.addAll(stateIds);
+			}
+			snapshot = new IdsSnapshot<S>(stateIds, Collections.unmodifiableList(ret));
+			idsSnapshot = snapshot;
 		}
-		return ret;
+		return snapshot.ids;
 	}
 
 	@Override
@@ -241,4 +252,17 @@ public class StateMachineState<S, E> extends AbstractState<S, E> {
 				+ getClass() + "]";
 	}
 
+	/**
+	 * Active ids together with submachine ids they were built from.
+	 */
+	private static class IdsSnapshot<S> {
+		final Collection<S> stateIds;
+		final List<S> ids;
+
+		IdsSnapshot(Collection<S> stateIds, List<S> ids) {
+			this.stateIds = stateIds;
+			this.ids = ids;
+		}
+	}
+
 }
@@ -21,6 +21,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -35,6 +36,8 @@ import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.statemachine.EventResult;
+import org.springframework.statemachine.EventResult.ResultType;
 import org.springframework.statemachine.ExtendedState;
 import org.springframework.statemachine.StateContext;
 import org.springframework.statemachine.StateMachine;
@@ -56,14 +59,18 @@ import org.springframework.statemachine.state.PseudoStateContext;
 import org.springframework.statemachine.state.PseudoStateKind;
 import org.springframework.statemachine.state.PseudoStateListener;
 import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.support.StateMachineExecutor.StateMachineExecutorAcceptor;
+import org.springframework.statemachine.support.StateMachineExecutor.StateMachineExecutorExpiry;
 import org.springframework.statemachine.support.StateMachineExecutor.StateMachineExecutorTransit;
 import org.springframework.statemachine.transition.InitialTransition;
 import org.springframework.statemachine.transition.Transition;
 import org.springframework.statemachine.transition.TransitionKind;
-import org.springframework.statemachine.trigger.DefaultTriggerContext;
 import org.springframework.statemachine.trigger.Trigger;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
 /**
  * Base implementation of a {@link StateMachine} loosely modelled from UML state
@@ -78,6 +85,12 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 
 	private static final Log log = LogFactory.getLog(AbstractStateMachine.class);
 
+	private static final MessageHeaders EMPTY_HEADERS = new LayeredMessageHeaders(null, null, null);
+
+	/** Result types in order of precedence when results of regions are combined */
+	private static final List<ResultType> RESULT_PRECEDENCE = Arrays.asList(ResultType.ACCEPTED,
+			ResultType.DEFERRED, ResultType.EXPIRED, ResultType.DENIED);
+
 	private final Collection<State<S,E>> states;
 
 	private final Collection<Transition<S,E>> transitions;
@@ -104,14 +117,58 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 
 	private final List<Transition<S, E>> triggerlessTransitions = new ArrayList<Transition<S,E>>();
 
+	private TransitionDispatchIndex<S, E> transitionIndex;
+
+	private StateHierarchyIndex<S, E> hierarchyIndex;
+
+	private volatile TransitionPlanCache<S, E> transitionPlans = new TransitionPlanCache<S, E>();
+
 	private StateMachine<S, E> relay;
 
-	private StateMachineExecutor<S, E> stateMachineExecutor;
+	private DefaultStateMachineExecutor<S, E> stateMachineExecutor;
+
+	private boolean lazyInit = false;
+
+	private volatile boolean initialized;
+
+	private StateMachine<S, E> executorStateMachine;
+
+	private List<StateMachineInterceptor<S, E>> pendingInterceptors;
 
 	private Boolean initialEnabled = null;
 
+	private int eventQueueCapacity = 0;
+
+	private EventQueuePolicy eventQueuePolicy = EventQueuePolicy.REJECT;
+
+	private EventPriorityDrain eventPriorityDrain = EventPriorityDrain.STRICT;
+
+	private boolean callerThreadExecution = false;
+
+	private long sendEventsTimeout = 0;
+
+	private Collection<E> coalescableEvents;
+
 	private String id = UUID.randomUUID().toString();
 
+	private volatile StateContextHolder<S, E> lastStateContext;
+
+	private final StateMachineExecutorAcceptor<E> acceptor = new StateMachineExecutorAcceptor<E>() {
+
+		@Override
+		public boolean accept(Message<E> event) {
+			if (hasStateMachineError() || isComplete() || !isRunning()) {
+				notifyEventNotAccepted(event);
+				return false;
+			}
+			boolean accepted = acceptEvent(event);
+			if (!accepted) {
+				notifyEventNotAccepted(event);
+			}
+			return accepted;
+		}
+	};
+
 	/**
 	 * Instantiates a new abstract state machine.
 	 *
@@ -181,23 +238,105 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 		this.history = history;
 	}
 
+	/**
+	 * Sets the capacity of an event queue. Zero or negative capacity
+	 * means an unbounded queue which is also a default.
+	 *
+	 * @param eventQueueCapacity the new event queue capacity
+	 * @see EventQueuePolicy
+	 */
+	public void setEventQueueCapacity(int eventQueueCapacity) {
+		this.eventQueueCapacity = eventQueueCapacity;
+	}
+
+	/**
+	 * Sets the policy used when a bounded event queue is full.
+	 *
+	 * @param eventQueuePolicy the new event queue policy
+	 */
+	public void setEventQueuePolicy(EventQueuePolicy eventQueuePolicy) {
+		this.eventQueuePolicy = eventQueuePolicy;
+	}
+
+	/**
+	 * Sets the order in which event priority lanes are drained.
+	 *
+	 * @param eventPriorityDrain the new event priority drain
+	 * @see EventPriority
+	 */
+	public void setEventPriorityDrain(EventPriorityDrain eventPriorityDrain) {
+		this.eventPriorityDrain = eventPriorityDrain;
+	}
+
+	/**
+	 * Sets the events which are coalesced in an event queue.
+	 *
+	 * @param coalescableEvents the new coalescable events
+	 * @see DefaultStateMachineExecutor#setCoalescableEvents(Collection)
+	 */
+	public void setCoalescableEvents(Collection<E> coalescableEvents) {
+		this.coalescableEvents = coalescableEvents;
+	}
+
+	/**
+	 * Sets if events are executed on a caller thread in a run-to-completion
+	 * fashion instead of using a {@link org.springframework.core.task.TaskExecutor}.
+	 *
+	 * @param callerThreadExecution the caller thread execution flag
+	 * @see DefaultStateMachineExecutor#setCallerThreadExecution(boolean)
+	 */
+	public void setCallerThreadExecution(boolean callerThreadExecution) {
+		this.callerThreadExecution = callerThreadExecution;
+	}
+
+	/**
+	 * Sets the max time in milliseconds {@link #sendEvents(Iterator)} waits
+	 * for a batch to be processed.
+	 *
+	 * @param sendEventsTimeout the timeout in milliseconds, zero or negative for no timeout
+	 * @see DefaultStateMachineExecutor#setSendEventsTimeout(long)
+	 */
+	public void setSendEventsTimeout(long sendEventsTimeout) {
+		this.sendEventsTimeout = sendEventsTimeout;
+	}
+
+	/**
+	 * Sets the cache of compiled transition plans. Machines built from
+	 * a same configuration can share a cache so that each plan is compiled
+	 * only once.
+	 *
+	 * @param transitionPlanCache the transition plan cache
+	 */
+	public void setTransitionPlanCache(TransitionPlanCache<S, E> transitionPlanCache) {
+		Assert.notNull(transitionPlanCache, "Transition plan cache must be set");
+		this.transitionPlans = transitionPlanCache;
+	}
+
+	/**
+	 * Sets if this machine is initialized lazily. Lazily initialized machine
+	 * builds its dispatch structures and executor when it is first started or
+	 * otherwise needed, instead of when properties are set. This keeps
+	 * submachines and regions which are never entered lightweight.
+	 *
+	 * @param lazyInit the lazy init flag
+	 */
+	public void setLazyInit(boolean lazyInit) {
+		this.lazyInit = lazyInit;
+	}
+
+	/**
+	 * Gets the event queue metrics.
+	 *
+	 * @return the event queue metrics
+	 */
+	public EventQueueMetrics getEventQueueMetrics() {
+		ensureInitialized();
+		return stateMachineExecutor.getEventQueueMetrics();
+	}
+
 	@Override
 	public boolean sendEvent(Message<E> event) {
-		if (hasStateMachineError()) {
-			// TODO: should we throw exception?
-			notifyEventNotAccepted(event);
-			return false;
-		}
-		if (isComplete() || !isRunning()) {
-			notifyEventNotAccepted(event);
-			return false;
-		}
-		boolean accepted = acceptEvent(event);
-		stateMachineExecutor.execute();
-		if (!accepted) {
-			notifyEventNotAccepted(event);
-		}
-		return accepted;
+		return sendEvent(event, null);
 	}
 
 	@Override
@@ -205,6 +344,26 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 		return sendEvent(MessageBuilder.withPayload(event).build());
 	}
 
+	@Override
+	public ListenableFuture<EventResult<S, E>> sendEventAsync(Message<E> event) {
+		SettableListenableFuture<EventResult<S, E>> future = new SettableListenableFuture<EventResult<S, E>>();
+		if (!sendEvent(event, future)) {
+			future.set(createEventResult(event, ResultType.DENIED, null));
+		}
+		return future;
+	}
+
+	@Override
+	public List<Boolean> sendEvents(Collection<Message<E>> events) {
+		return sendEvents(events.iterator());
+	}
+
+	@Override
+	public List<Boolean> sendEvents(Iterator<Message<E>> events) {
+		ensureInitialized();
+		return stateMachineExecutor.sendEvents(events, acceptor);
+	}
+
 	@Override
 	protected void onInit() throws Exception {
 		super.onInit();
@@ -213,6 +372,27 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 				&& initialState.getPseudoState().getKind() == PseudoStateKind.INITIAL,
 				"Initial state's pseudostate kind must be INITIAL");
 
+		// executor gets a relay known at this point, keep it
+		// for a case where initialization is deferred
+		executorStateMachine = getRelayStateMachine();
+		if (!lazyInit) {
+			ensureInitialized();
+		}
+	}
+
+	private void ensureInitialized() {
+		if (initialized) {
+			return;
+		}
+		synchronized (this) {
+			if (!initialized) {
+				initialize();
+				initialized = true;
+			}
+		}
+	}
+
+	private void initialize() {
 		// process given transitions
 		for (Transition<S, E> transition : transitions) {
 			Trigger<S, E> trigger = transition.getTrigger();
@@ -223,6 +403,8 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 				triggerlessTransitions.add(transition);
 			}
 		}
+		transitionIndex = TransitionDispatchIndex.create(transitions);
+		hierarchyIndex = new StateHierarchyIndex<S, E>(states);
 
 		for (State<S, E> state : states) {
 			if (state.isSubmachineState()) {
@@ -241,14 +423,31 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 			}
 		}
 
-		DefaultStateMachineExecutor<S, E> executor = new DefaultStateMachineExecutor<S, E>(this, getRelayStateMachine(), extendedState,
-				transitions, triggerToTransitionMap, triggerlessTransitions, initialTransition, initialEvent);
+		DefaultStateMachineExecutor<S, E> executor = new DefaultStateMachineExecutor<S, E>(this, executorStateMachine, extendedState,
+				transitionIndex, triggerToTransitionMap, triggerlessTransitions, initialTransition, initialEvent);
 		if (getBeanFactory() != null) {
 			executor.setBeanFactory(getBeanFactory());
 		} else if (getTaskExecutor() != null){
 			executor.setTaskExecutor(getTaskExecutor());
 		}
+		executor.setQueueCapacity(eventQueueCapacity);
+		if (eventQueuePolicy != null) {
+			executor.setQueuePolicy(eventQueuePolicy);
+		}
+		if (eventPriorityDrain != null) {
+			executor.setPriorityDrain(eventPriorityDrain);
+		}
+		executor.setCallerThreadExecution(callerThreadExecution);
+		executor.setSendEventsTimeout(sendEventsTimeout);
+		executor.setCoalescableEvents(coalescableEvents);
 		executor.afterPropertiesSet();
+		executor.setStateMachineExecutorExpiry(new StateMachineExecutorExpiry<E>() {
+
+			@Override
+			public void expired(Message<E> message) {
+				notifyEventExpired(message);
+			}
+		});
 		executor.setStateMachineExecutorTransit(new StateMachineExecutorTransit<S, E>() {
 
 			@Override
@@ -265,11 +464,18 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 				notifyTransitionEnd(t);
 			}
 		});
+		if (pendingInterceptors != null) {
+			for (StateMachineInterceptor<S, E> interceptor : pendingInterceptors) {
+				executor.addStateMachineInterceptor(interceptor);
+			}
+			pendingInterceptors = null;
+		}
 		stateMachineExecutor = executor;
 	}
 
 	@Override
 	protected void doStart() {
+		ensureInitialized();
 		// if state is set assume nothing to do
 		if (currentState != null) {
 			if (log.isDebugEnabled()) {
@@ -422,6 +628,9 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 	@Override
 	protected void stateChangedInRelay() {
 		// TODO: temp tweak, see super
+		if (!initialized) {
+			return;
+		}
 		stateMachineExecutor.execute();
 	}
 
@@ -448,6 +657,29 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 		return buf.toString();
 	}
 
+	/**
+	 * Checks if this machine processes events on a thread sending those,
+	 * meaning that a send method returns only after an event has been
+	 * processed. Submachines and regions are not checked.
+	 *
+	 * @return true if events are processed on a sending thread
+	 */
+	public boolean isSynchronousExecution() {
+		ensureInitialized();
+		return stateMachineExecutor.isSynchronousExecution();
+	}
+
+	/**
+	 * Clears events waiting in this machine, including deferred events and
+	 * events queued but not yet processed. Submachines and regions are not
+	 * cleared, those need to be cleared separately.
+	 */
+	public void clearEvents() {
+		if (stateMachineExecutor != null) {
+			stateMachineExecutor.clearEvents();
+		}
+	}
+
 	@Override
 	public void resetStateMachine(StateMachineContext<S, E> stateMachineContext) {
 		S state = stateMachineContext.getState();
@@ -478,6 +710,15 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 	@Override
 	public void addStateMachineInterceptor(StateMachineInterceptor<S, E> interceptor) {
 		getStateMachineInterceptors().add(interceptor);
+		synchronized (this) {
+			if (!initialized) {
+				if (pendingInterceptors == null) {
+					pendingInterceptors = new ArrayList<StateMachineInterceptor<S, E>>();
+				}
+				pendingInterceptors.add(interceptor);
+				return;
+			}
+		}
 		stateMachineExecutor.addStateMachineInterceptor(interceptor);
 	}
 
@@ -487,8 +728,50 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 	}
 
 	protected boolean acceptEvent(Message<E> message) {
-		boolean accepted = (currentState != null && currentState.sendEvent(message));
-		if (accepted) {
+		return acceptEvent(message, null);
+	}
+
+	/**
+	 * Send an event into this machine and optionally track its result.
+	 *
+	 * @param event the event
+	 * @param future the future completed with an event result if event is
+	 *        accepted, or null if result is not tracked
+	 * @return true if event was accepted
+	 */
+	private boolean sendEvent(Message<E> event, SettableListenableFuture<EventResult<S, E>> future) {
+		if (hasStateMachineError()) {
+			// TODO: should we throw exception?
+			notifyEventNotAccepted(event);
+			return false;
+		}
+		if (isComplete() || !isRunning()) {
+			notifyEventNotAccepted(event);
+			return false;
+		}
+		boolean accepted = acceptEvent(event, future);
+		stateMachineExecutor.execute();
+		if (!accepted) {
+			notifyEventNotAccepted(event);
+		}
+		return accepted;
+	}
+
+	/**
+	 * Accept an event by passing it to a current state, queueing a trigger
+	 * or deferring it. If a future is given and event is accepted, the
+	 * future is completed when the event has been processed.
+	 *
+	 * @param message the event
+	 * @param future the future for an event result or null
+	 * @return true if event was accepted
+	 */
+	private boolean acceptEvent(Message<E> message, SettableListenableFuture<EventResult<S, E>> future) {
+		State<S, E> state = currentState;
+		if (state == null) {
+			return false;
+		}
+		if (future != null ? sendEventToState(state, message, future) : state.sendEvent(message)) {
 			return true;
 		}
 
@@ -496,27 +779,133 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 			log.debug("Queue event " + message);
 		}
 
-		Message<E> defer = null;
-		for (Transition<S,E> transition : transitions) {
-			State<S,E> source = transition.getSource();
-			Trigger<S, E> trigger = transition.getTrigger();
+		Collection<S> ids = state.getIds();
+		Trigger<S, E> trigger = transitionIndex.findTrigger(ids, message.getPayload());
+		if (trigger != null) {
+			// future is completed by an executor after trigger is processed
+			return stateMachineExecutor.queueTrigger(trigger, message, future);
+		}
+		if (transitionIndex.isDeferred(ids, message.getPayload())) {
+			log.info("Deferring event " + message);
+			stateMachineExecutor.queueDeferredEvent(message);
+			if (future != null) {
+				future.set(createEventResult(message, ResultType.DEFERRED, null));
+			}
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Send an event into a submachine or regions of a state and complete a
+	 * future from their results. Results of regions are combined so that
+	 * an event is accepted if any region accepted it. Regions are called
+	 * in order on a calling thread instead of using a region executor.
+	 *
+	 * @param state the current state
+	 * @param message the event
+	 * @param future the future for an event result
+	 * @return true if event was accepted
+	 */
+	private boolean sendEventToState(State<S, E> state, Message<E> message,
+			SettableListenableFuture<EventResult<S, E>> future) {
+		List<AbstractStateMachine<S, E>> machines = getEventMachines(state);
+		if (machines == null) {
+			// simple state, or a custom submachine or region which can't
+			// report a result
+			if (state.sendEvent(message)) {
+				future.set(createEventResult(message, ResultType.ACCEPTED, null));
+				return true;
+			}
+			return false;
+		}
+		List<ListenableFuture<EventResult<S, E>>> results = new ArrayList<ListenableFuture<EventResult<S, E>>>();
+		for (AbstractStateMachine<S, E> machine : machines) {
+			SettableListenableFuture<EventResult<S, E>> result = new SettableListenableFuture<EventResult<S, E>>();
+			if (machine.sendEvent(message, result)) {
+				results.add(result);
+			}
+		}
+		if (results.isEmpty()) {
+			return false;
+		}
+		completeEventResult(message, results, future);
+		return true;
+	}
 
-			if (StateMachineUtils.containsAtleastOne(source.getIds(), currentState.getIds())) {
-				if (trigger != null && trigger.evaluate(new DefaultTriggerContext<S, E>(message.getPayload()))) {
-					stateMachineExecutor.queueTrigger(trigger, message);
-					return true;
-				} else if (source.getDeferredEvents() != null && source.getDeferredEvents().contains(message.getPayload())) {
-					defer = message;
+	/**
+	 * Gets the submachine or regions of a state handling events, null if
+	 * state has none or any of them is not a machine of this type.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <S, E> List<AbstractStateMachine<S, E>> getEventMachines(State<S, E> state) {
+		if (!(state instanceof AbstractState)) {
+			return null;
+		}
+		AbstractState<S, E> s = (AbstractState<S, E>) state;
+		List<AbstractStateMachine<S, E>> machines = new ArrayList<AbstractStateMachine<S, E>>();
+		if (s.getSubmachine() != null) {
+			if (!(s.getSubmachine() instanceof AbstractStateMachine)) {
+				return null;
+			}
+			machines.add((AbstractStateMachine<S, E>) s.getSubmachine());
+		} else if (s.getRegions() != null) {
+			for (Region<S, E> region : s.getRegions()) {
+				if (!(region instanceof AbstractStateMachine)) {
+					return null;
 				}
+				machines.add((AbstractStateMachine<S, E>) region);
 			}
 		}
-		if (defer != null) {
-			log.info("Deferring event " + defer);
-			stateMachineExecutor.queueDeferredEvent(defer);
-			return true;
+		return machines.isEmpty() ? null : machines;
+	}
+
+	/**
+	 * Completes a future when all results of a submachine or regions are
+	 * completed. Result is accepted if any of them accepted an event,
+	 * otherwise deferred, expired or denied in that order, and state ids
+	 * are the ones of this machine.
+	 */
+	private void completeEventResult(final Message<E> message, final List<ListenableFuture<EventResult<S, E>>> results,
+			final SettableListenableFuture<EventResult<S, E>> future) {
+		final List<EventResult<S, E>> completed = new ArrayList<EventResult<S, E>>(results.size());
+		ListenableFutureCallback<EventResult<S, E>> callback = new ListenableFutureCallback<EventResult<S, E>>() {
+
+			@Override
+			public void onSuccess(EventResult<S, E> result) {
+				synchronized (completed) {
+					completed.add(result);
+					if (completed.size() < results.size()) {
+						return;
+					}
+				}
+				ResultType type = ResultType.DENIED;
+				Transition<S, E> transition = null;
+				for (EventResult<S, E> r : completed) {
+					if (RESULT_PRECEDENCE.indexOf(r.getResultType()) < RESULT_PRECEDENCE.indexOf(type)) {
+						type = r.getResultType();
+					}
+					if (transition == null) {
+						transition = r.getTransition();
+					}
+				}
+				future.set(createEventResult(message, type, transition));
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				future.setException(t);
+			}
+		};
+		for (ListenableFuture<EventResult<S, E>> result : results) {
+			result.addCallback(callback);
 		}
+	}
 
-		return false;
+	private EventResult<S, E> createEventResult(Message<E> event, ResultType resultType, Transition<S, E> transition) {
+		Collection<S> ids = currentState != null ? currentState.getIds() : Collections.<S>emptyList();
+		return new DefaultEventResult<S, E>(event, resultType, transition, ids);
 	}
 
 	private boolean callPreStateChangeInterceptors(State<S,E> state, Message<E> message, Transition<S,E> transition, StateMachine<S, E> stateMachine) {
@@ -597,13 +986,24 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 	}
 
 	private StateContext<S, E> buildStateContext(Message<E> message, Transition<S,E> transition, StateMachine<S, E> stateMachine) {
+		// contexts are immutable, thus a context for a same message, transition
+		// and machine is reused for all exits and entries of a transition
+		StateContextHolder<S, E> holder = lastStateContext;
+		if (holder != null && holder.message == message && holder.transition == transition
+				&& holder.stateMachine == stateMachine && holder.context.getExtendedState() == extendedState) {
+			return holder.context;
+		}
 		E event = message != null ? message.getPayload() : null;
-		MessageHeaders messageHeaders = message != null ? message.getHeaders() : new MessageHeaders(
-				new HashMap<String, Object>());
-		return new DefaultStateContext<S, E>(event, messageHeaders, extendedState, transition, stateMachine);
+		MessageHeaders messageHeaders = message != null ? message.getHeaders() : EMPTY_HEADERS;
+		StateContext<S, E> context = new DefaultStateContext<S, E>(event, messageHeaders, extendedState, transition, stateMachine);
+		lastStateContext = new StateContextHolder<S, E>(message, transition, stateMachine, context);
+		return context;
 	}
 
 	private State<S, E> findDeepParent(State<S, E> state) {
+		if (hierarchyIndex != null) {
+			return hierarchyIndex.getRoot(state);
+		}
 		for (State<S, E> s : states) {
 			if (s.getStates().contains(state)) {
 				return s;
@@ -612,12 +1012,22 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 		return null;
 	}
 
+	private boolean isSubstate(State<S, E> left, State<S, E> right) {
+		// states from other machines, like a transition source passed
+		// into a submachine, are not in the index
+		if (left != null && hierarchyIndex != null && hierarchyIndex.contains(left)) {
+			return hierarchyIndex.isSubstate(left, right);
+		}
+		return StateMachineUtils.isSubstate(left, right);
+	}
+
 	void setCurrentState(State<S, E> state, Message<E> message, Transition<S, E> transition, boolean exit, StateMachine<S, E> stateMachine) {
+		ensureInitialized();
 
 		State<S, E> findDeep = findDeepParent(state);
 		boolean isTargetSubOf = false;
 		if (transition != null) {
-			isTargetSubOf = StateMachineUtils.isSubstate(state, transition.getSource());
+			isTargetSubOf = isSubstate(state, transition.getSource());
 			if (isTargetSubOf && currentState == transition.getTarget()) {
 				state = transition.getSource();
 			}
@@ -637,7 +1047,7 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 			entryToState(state, message, transition, stateMachine);
 			notifyStateChanged(notifyFrom, state);
 			nonDeepStatePresent = true;
-		} else if (currentState == null && StateMachineUtils.isSubstate(findDeep, state)) {
+		} else if (currentState == null && isSubstate(findDeep, state)) {
 			if (exit) {
 				exitCurrentState(findDeep, message, transition, stateMachine);
 			}
@@ -687,7 +1097,7 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 					}
 				}
 				boolean shouldTryEntry = findDeep != currentState;
-				if (!shouldTryEntry && (transition.getSource() == currentState && StateMachineUtils.isSubstate(currentState, transition.getTarget()))) {
+				if (!shouldTryEntry && (transition.getSource() == currentState && isSubstate(currentState, transition.getTarget()))) {
 					shouldTryEntry = true;
 				}
 				currentState = findDeep;
@@ -719,6 +1129,7 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 		if (currentState == null) {
 			return;
 		}
+		ensureInitialized();
 		if (currentState.isSubmachineState()) {
 			StateMachine<S, E> submachine = ((AbstractState<S, E>)currentState).getSubmachine();
 			((AbstractStateMachine<S, E>)submachine).exitCurrentState(state, message, transition, stateMachine);
@@ -733,32 +1144,22 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 		if (state == null) {
 			return;
 		}
-		log.trace("Trying Exit state=[" + state + "]");
-		StateContext<S, E> stateContext = buildStateContext(message, transition, stateMachine);
+		if (log.isTraceEnabled()) {
+			log.trace("Trying Exit state=[" + state + "]");
+		}
 
 		if (transition != null) {
-
-			State<S, E> findDeep = findDeepParent(transition.getTarget());
-			boolean isTargetSubOfOtherState = findDeep != null && findDeep != currentState;
-			boolean isSubOfSource = StateMachineUtils.isSubstate(transition.getSource(), currentState);
-			boolean isSubOfTarget = StateMachineUtils.isSubstate(transition.getTarget(), currentState);
-
-			// TODO: this and entry below should be done via a separate
-			// voter of some sort which would reveal transition path
-			// we could make a choice on.
-			if (currentState == transition.getSource() && currentState == transition.getTarget()) {
-			} else if (!isSubOfSource && !isSubOfTarget && currentState == transition.getSource()) {
-			} else if (!isSubOfSource && !isSubOfTarget && currentState == transition.getTarget()) {
-			} else if (isTargetSubOfOtherState) {
-			} else if (!isSubOfSource && !isSubOfTarget && findDeep == null) {
-			} else if (!isSubOfSource && !isSubOfTarget && (transition.getSource() == currentState && StateMachineUtils.isSubstate(currentState, transition.getTarget()))) {
-			} else if (!isSubOfSource && !isSubOfTarget) {
+			AbstractStateMachine<S, E> planner = getTransitionPlanner(stateMachine);
+			TransitionPlan<S, E> plan = planner.getTransitionPlan(transition);
+			if (!plan.isExit(planner.hierarchyIndex.getOrdinal(state), planner.hierarchyIndex)) {
 				return;
 			}
-
 		}
 
-		log.debug("Exit state=[" + state + "]");
+		if (log.isDebugEnabled()) {
+			log.debug("Exit state=[" + state + "]");
+		}
+		StateContext<S, E> stateContext = buildStateContext(message, transition, stateMachine);
 		state.exit(stateContext);
 		notifyStateExited(state);
 	}
@@ -767,32 +1168,42 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 		if (state == null) {
 			return;
 		}
-		log.trace("Trying Enter state=[" + state + "]");
-		StateContext<S, E> stateContext = buildStateContext(message, transition, stateMachine);
+		if (log.isTraceEnabled()) {
+			log.trace("Trying Enter state=[" + state + "]");
+		}
 
 		if (transition != null) {
-			State<S, E> findDeep1 = findDeepParent(transition.getTarget());
-			State<S, E> findDeep2 = findDeepParent(transition.getSource());
-			boolean isComingFromOtherSubmachine = findDeep1 != null && findDeep2 != null && findDeep2 != currentState;
-
-			boolean isSubOfSource = StateMachineUtils.isSubstate(transition.getSource(), currentState);
-			boolean isSubOfTarget = StateMachineUtils.isSubstate(transition.getTarget(), currentState);
-			if (currentState == transition.getSource() && currentState == transition.getTarget()) {
-			} else if (!isSubOfSource && !isSubOfTarget && currentState == transition.getTarget()) {
-			} else if (isComingFromOtherSubmachine) {
-			} else if (!isSubOfSource && !isSubOfTarget && findDeep2 == null) {
-			} else if (isSubOfSource && !isSubOfTarget && currentState == transition.getTarget()) {
-			} else if (!isSubOfSource && !isSubOfTarget && (transition.getSource() == currentState && StateMachineUtils.isSubstate(currentState, transition.getTarget()))) {
-			} else if (!isSubOfSource && !isSubOfTarget) {
+			AbstractStateMachine<S, E> planner = getTransitionPlanner(stateMachine);
+			TransitionPlan<S, E> plan = planner.getTransitionPlan(transition);
+			if (!plan.isEntry(planner.hierarchyIndex.getOrdinal(state), planner.hierarchyIndex)) {
 				return;
 			}
 		}
 
 		notifyStateEntered(state);
-		log.debug("Enter state=[" + state + "]");
+		if (log.isDebugEnabled()) {
+			log.debug("Enter state=[" + state + "]");
+		}
+		StateContext<S, E> stateContext = buildStateContext(message, transition, stateMachine);
 		state.entry(stateContext);
 	}
 
+	@SuppressWarnings("unchecked")
+	private AbstractStateMachine<S, E> getTransitionPlanner(StateMachine<S, E> stateMachine) {
+		// transitions passed into submachines and regions are planned by
+		// a machine which took a transition as its index knows all states
+		if (stateMachine instanceof AbstractStateMachine && stateMachine != this) {
+			AbstractStateMachine<S, E> machine = (AbstractStateMachine<S, E>) stateMachine;
+			machine.ensureInitialized();
+			return machine;
+		}
+		return this;
+	}
+
+	private TransitionPlan<S, E> getTransitionPlan(Transition<S, E> transition) {
+		return transitionPlans.getTransitionPlan(transition.getSource(), transition.getTarget(), hierarchyIndex);
+	}
+
 	private void callHandlers(State<S,E> sourceState, State<S,E> targetState, Message<E> message) {
 		StateContext<S, E> stateContext = buildStateContext(message, null, getRelayStateMachine());
 		getStateMachineHandlerResults(getStateMachineHandlers(sourceState, targetState), stateContext);
@@ -893,4 +1304,18 @@ public abstract class AbstractStateMachine<S, E> extends StateMachineObjectSuppo
 		return handle;
 	}
 
+	private static class StateContextHolder<S, E> {
+		final Message<E> message;
+		final Transition<S, E> transition;
+		final StateMachine<S, E> stateMachine;
+		final StateContext<S, E> context;
+		public StateContextHolder(Message<E> message, Transition<S, E> transition, StateMachine<S, E> stateMachine,
+				StateContext<S, E> context) {
+			this.message = message;
+			this.transition = transition;
+			this.stateMachine = stateMachine;
+			this.context = context;
+		}
+	}
+
 }
@@ -0,0 +1,466 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.util.Assert;
+
+/**
+ * Event queue used by a {@link StateMachineExecutor} which can be bounded
+ * by a capacity. What happens when a full queue is offered a new item is
+ * defined by an {@link EventQueuePolicy}. Queue with zero or negative capacity
+ * is unbounded and never rejects or drops items.
+ * <p>
+ * Items are kept in {@link EventPriority} lanes which are drained
+ * as defined by an {@link EventPriorityDrain}. Items within a lane are
+ * kept in a FIFO order. Capacity is shared by all lanes.
+ * <p>
+ * Items having a coalescing key replace a pending item with a same
+ * key instead of being added into a queue. Replacing item takes a queue
+ * position of a replaced item, thus frequently updated keys are not starved,
+ * unless it has a higher priority which moves it to an end of a higher lane.
+ * <p>
+ * Expired items are discarded when polled instead of being returned.
+ * <p>
+ * Callbacks for coalesced, dropped and expired items are called without
+ * holding a queue lock, thus those may safely call back into a queue.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <T> the type of queued item
+ */
+public class BoundedEventQueue<T> implements EventQueueMetrics {
+
+	private static final EventPriority[] PRIORITIES = EventPriority.values();
+
+	private final List<ArrayDeque<Slot<T>>> lanes;
+
+	private final Map<Object, Slot<T>> pending = new HashMap<Object, Slot<T>>();
+
+	private final int[] credits;
+
+	private int size;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notFull = lock.newCondition();
+
+	private final int capacity;
+
+	private final EventQueuePolicy policy;
+
+	private final EventPriorityDrain drain;
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final AtomicLong coalesced = new AtomicLong();
+
+	private final AtomicLong expired = new AtomicLong();
+
+	/**
+	 * Instantiates a new unbounded event queue.
+	 */
+	public BoundedEventQueue() {
+		this(0, EventQueuePolicy.REJECT);
+	}
+
+	/**
+	 * Instantiates a new bounded event queue.
+	 *
+	 * @param capacity the queue capacity
+	 * @param policy the policy used when queue is full
+	 */
+	public BoundedEventQueue(int capacity, EventQueuePolicy policy) {
+		this(capacity, policy, EventPriorityDrain.STRICT);
+	}
+
+	/**
+	 * Instantiates a new bounded event queue.
+	 *
+	 * @param capacity the queue capacity
+	 * @param policy the policy used when queue is full
+	 * @param drain the order priority lanes are drained
+	 */
+	public BoundedEventQueue(int capacity, EventQueuePolicy policy, EventPriorityDrain drain) {
+		Assert.notNull(policy, "Event queue policy must be set");
+		Assert.notNull(drain, "Event priority drain must be set");
+		this.capacity = capacity;
+		this.policy = policy;
+		this.drain = drain;
+		this.lanes = new ArrayList<ArrayDeque<Slot<T>>>(PRIORITIES.length);
+		this.credits = new int[PRIORITIES.length];
+		for (int i = 0; i < PRIORITIES.length; i++) {
+			// most lanes stay empty, keep those small
+			lanes.add(new ArrayDeque<Slot<T>>(2));
+			credits[i] = PRIORITIES[i].getWeight();
+		}
+	}
+
+	/**
+	 * Offer an item into this queue. Whether caller is allowed to
+	 * block is only meaningful with {@link EventQueuePolicy#BLOCK}. If
+	 * blocking is not allowed, item is added over capacity. Item coalesced
+	 * with a pending item is always accepted as it doesn't need capacity.
+	 *
+	 * @param item the item
+	 * @param mayBlock whether caller can be blocked
+	 * @return true, if item was added into a queue
+	 */
+	public boolean offer(T item, boolean mayBlock) {
+		Object key = getCoalesceKey(item);
+		// callbacks are not called while holding a lock, thus
+		// an item replaced or dropped by this offer is kept here
+		T replaced = null;
+		T dropped = null;
+		boolean added = false;
+		lock.lock();
+		try {
+			if (key != null) {
+				replaced = coalesce(key, item);
+			}
+			if (replaced == null && capacity > 0 && size >= capacity) {
+				switch (policy) {
+				case BLOCK:
+					if (mayBlock) {
+						while (size >= capacity) {
+							notFull.await();
+						}
+						// pending item may have appeared while waiting
+						if (key != null) {
+							replaced = coalesce(key, item);
+						}
+					}
+					break;
+				case DROP_OLDEST:
+					dropped = dropOldest();
+					break;
+				case DROP_COALESCABLE:
+					dropped = dropCoalescable();
+					if (dropped == null) {
+						rejected.incrementAndGet();
+						return false;
+					}
+					break;
+				default:
+					rejected.incrementAndGet();
+					return false;
+				}
+			}
+			if (replaced == null) {
+				Slot<T> slot = new Slot<T>(item, key, getLane(item));
+				lanes.get(slot.lane).add(slot);
+				if (key != null) {
+					pending.put(key, slot);
+				}
+				size++;
+			}
+			added = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			rejected.incrementAndGet();
+		} finally {
+			lock.unlock();
+		}
+		if (replaced != null) {
+			coalesced(replaced);
+		}
+		if (dropped != null) {
+			dropped(dropped);
+		}
+		return added;
+	}
+
+	/**
+	 * Retrieves and removes the next item from this queue. Expired
+	 * items are discarded and never returned.
+	 *
+	 * @return the next item or null if queue is empty
+	 */
+	public T poll() {
+		while (true) {
+			T item;
+			lock.lock();
+			try {
+				if (size == 0) {
+					return null;
+				}
+				int lane = drain == EventPriorityDrain.WEIGHTED ? nextWeightedLane() : nextLane();
+				size--;
+				notFull.signal();
+				item = unlink(lanes.get(lane).poll());
+			} finally {
+				lock.unlock();
+			}
+			// expiry callbacks are not called while holding a lock
+			if (!isExpired(item)) {
+				return item;
+			}
+			expired.incrementAndGet();
+			expired(item);
+		}
+	}
+
+	/**
+	 * Checks if this queue is empty.
+	 *
+	 * @return true, if queue is empty
+	 */
+	public boolean isEmpty() {
+		return getQueueDepth() == 0;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int getQueueCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	@Override
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	@Override
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	@Override
+	public long getExpiredCount() {
+		return expired.get();
+	}
+
+	/**
+	 * Gets the policy used when queue is full.
+	 *
+	 * @return the event queue policy
+	 */
+	public EventQueuePolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Gets the order priority lanes are drained.
+	 *
+	 * @return the event priority drain
+	 */
+	public EventPriorityDrain getDrain() {
+		return drain;
+	}
+
+	/**
+	 * Gets a priority lane of an item. Default implementation
+	 * returns {@link EventPriority#NORMAL}.
+	 *
+	 * @param item the item
+	 * @return the priority of an item
+	 */
+	protected EventPriority getPriority(T item) {
+		return EventPriority.NORMAL;
+	}
+
+	/**
+	 * Checks if a queued item can be dropped with
+	 * {@link EventQueuePolicy#DROP_COALESCABLE}. Default implementation
+	 * returns false, thus subclasses need to override this method.
+	 *
+	 * @param item the queued item
+	 * @return true, if item is coalescable
+	 */
+	protected boolean isCoalescable(T item) {
+		return false;
+	}
+
+	/**
+	 * Gets a coalescing key of an item. Item having a key replaces a pending
+	 * item with an equal key. Default implementation returns null, thus
+	 * subclasses need to override this method to enable coalescing.
+	 *
+	 * @param item the item
+	 * @return the coalescing key or null if item is not coalesced
+	 */
+	protected Object getCoalesceKey(T item) {
+		return null;
+	}
+
+	/**
+	 * Called when a pending item has been replaced by a new item having
+	 * a same coalescing key. Default implementation does nothing.
+	 *
+	 * @param item the replaced item
+	 */
+	protected void coalesced(T item) {
+	}
+
+	/**
+	 * Checks if a polled item has expired and should be discarded. Default
+	 * implementation returns false.
+	 *
+	 * @param item the item
+	 * @return true, if item has expired
+	 */
+	protected boolean isExpired(T item) {
+		return false;
+	}
+
+	/**
+	 * Called when a polled item has been discarded because it has
+	 * expired. Default implementation does nothing.
+	 *
+	 * @param item the expired item
+	 */
+	protected void expired(T item) {
+	}
+
+	/**
+	 * Called when a queued item has been dropped to make room for a new
+	 * item. Default implementation does nothing.
+	 *
+	 * @param item the dropped item
+	 */
+	protected void dropped(T item) {
+	}
+
+	private int nextLane() {
+		for (int i = 0; i < lanes.size(); i++) {
+			if (!lanes.get(i).isEmpty()) {
+				return i;
+			}
+		}
+		throw new IllegalStateException("Queue size " + size + " but all lanes are empty");
+	}
+
+	private int nextWeightedLane() {
+		for (int i = 0; i < lanes.size(); i++) {
+			if (credits[i] > 0 && !lanes.get(i).isEmpty()) {
+				credits[i]--;
+				return i;
+			}
+		}
+		// lanes having items are out of credits, start a new round
+		for (int i = 0; i < lanes.size(); i++) {
+			credits[i] = PRIORITIES[i].getWeight();
+		}
+		int lane = nextLane();
+		credits[lane]--;
+		return lane;
+	}
+
+	private T dropOldest() {
+		// least important events are dropped first
+		for (int i = lanes.size() - 1; i >= 0; i--) {
+			T item = unlink(lanes.get(i).poll());
+			if (item != null) {
+				size--;
+				dropped.incrementAndGet();
+				return item;
+			}
+		}
+		return null;
+	}
+
+	private T dropCoalescable() {
+		for (int i = lanes.size() - 1; i >= 0; i--) {
+			Iterator<Slot<T>> iterator = lanes.get(i).iterator();
+			while (iterator.hasNext()) {
+				Slot<T> slot = iterator.next();
+				if (isCoalescable(slot.item)) {
+					iterator.remove();
+					size--;
+					dropped.incrementAndGet();
+					return unlink(slot);
+				}
+			}
+		}
+		return null;
+	}
+
+	private T coalesce(Object key, T item) {
+		Slot<T> slot = pending.get(key);
+		if (slot == null) {
+			return null;
+		}
+		T replaced = slot.item;
+		slot.item = item;
+		int lane = getLane(item);
+		if (lane < slot.lane) {
+			// more urgent item must not wait behind a less important lane
+			lanes.get(slot.lane).remove(slot);
+			lanes.get(lane).add(slot);
+			slot.lane = lane;
+		}
+		coalesced.incrementAndGet();
+		return replaced;
+	}
+
+	private int getLane(T item) {
+		EventPriority priority = getPriority(item);
+		return priority != null ? priority.ordinal() : EventPriority.NORMAL.ordinal();
+	}
+
+	private T unlink(Slot<T> slot) {
+		if (slot == null) {
+			return null;
+		}
+		if (slot.key != null) {
+			pending.remove(slot.key);
+		}
+		return slot.item;
+	}
+
+	/**
+	 * Queue position of an item. Item is replaced in place when
+	 * a pending item is coalesced, unless a new item has a higher
+	 * priority which moves a slot to the end of a new lane.
+	 */
+	private static class Slot<T> {
+		T item;
+		final Object key;
+		int lane;
+
+		Slot(T item, Object key, int lane) {
+			this.item = item;
+			this.key = key;
+			this.lane = lane;
+		}
+	}
+
+}
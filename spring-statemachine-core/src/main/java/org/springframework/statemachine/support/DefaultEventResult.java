@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import java.util.Collection;
+
+import org.springframework.messaging.Message;
+import org.springframework.statemachine.EventResult;
+import org.springframework.statemachine.transition.Transition;
+
+/**
+ * Default implementation of a {@link EventResult}.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ */
+public class DefaultEventResult<S, E> implements EventResult<S, E> {
+
+	private final Message<E> message;
+
+	private final ResultType resultType;
+
+	private final Transition<S, E> transition;
+
+	private final Collection<S> stateIds;
+
+	/**
+	 * Instantiates a new default event result.
+	 *
+	 * @param message the message
+	 * @param resultType the result type
+	 * @param transition the transition
+	 * @param stateIds the resulting state ids
+	 */
+	public DefaultEventResult(Message<E> message, ResultType resultType, Transition<S, E> transition,
+			Collection<S> stateIds) {
+		this.message = message;
+		this.resultType = resultType;
+		this.transition = transition;
+		this.stateIds = stateIds;
+	}
+
+	@Override
+	public Message<E> getMessage() {
+		return message;
+	}
+
+	@Override
+	public ResultType getResultType() {
+		return resultType;
+	}
+
+	@Override
+	public Transition<S, E> getTransition() {
+		return transition;
+	}
+
+	@Override
+	public Collection<S> getStateIds() {
+		return stateIds;
+	}
+
+	@Override
+	public String toString() {
+		return "DefaultEventResult [message=" + message + ", resultType=" + resultType + ", transition=" + transition
+				+ ", stateIds=" + stateIds + "]";
+	}
+
+}
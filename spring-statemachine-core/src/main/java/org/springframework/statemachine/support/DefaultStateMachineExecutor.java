@@ -18,32 +18,39 @@ package org.springframework.statemachine.support;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.context.Lifecycle;
+import org.springframework.core.task.SyncTaskExecutor;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageHeaders;
+import org.springframework.statemachine.EventResult;
+import org.springframework.statemachine.EventResult.ResultType;
 import org.springframework.statemachine.ExtendedState;
 import org.springframework.statemachine.StateContext;
 import org.springframework.statemachine.StateMachine;
 import org.springframework.statemachine.StateMachineSystemConstants;
 import org.springframework.statemachine.state.State;
 import org.springframework.statemachine.transition.Transition;
-import org.springframework.statemachine.trigger.DefaultTriggerContext;
 import org.springframework.statemachine.trigger.TimerTrigger;
 import org.springframework.statemachine.trigger.Trigger;
 import org.springframework.statemachine.trigger.TriggerListener;
+import org.springframework.util.Assert;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
 /**
  * Default implementation of a {@link StateMachineExecutor}.
@@ -57,21 +64,36 @@ public class DefaultStateMachineExecutor<S, E> extends LifecycleObjectSupport im
 
 	private static final Log log = LogFactory.getLog(DefaultStateMachineExecutor.class);
 
+	// task executor of a drain running on a current thread
+	private static final ThreadLocal<TaskExecutor> drainingExecutor = new ThreadLocal<TaskExecutor>();
+
 	private final StateMachine<S, E> stateMachine;
 
 	private final StateMachine<S, E> relayStateMachine;
 
 	private final ExtendedState extendedState;
 
-	private final Queue<Message<E>> eventQueue = new ConcurrentLinkedQueue<Message<E>>();
+	private final DeferredEventStore<E> deferredEvents = new DeferredEventStore<E>();
+
+	private BoundedEventQueue<TriggerQueueItem> triggerQueue = new BoundedEventQueue<TriggerQueueItem>();
+
+	private int queueCapacity = 0;
+
+	private EventQueuePolicy queuePolicy = EventQueuePolicy.REJECT;
+
+	private EventPriorityDrain priorityDrain = EventPriorityDrain.STRICT;
+
+	private Set<E> coalescableEvents = Collections.emptySet();
 
-	private final LinkedList<Message<E>> deferList = new LinkedList<Message<E>>();
+	private final Queue<EventBatch> batchQueue = new ConcurrentLinkedQueue<EventBatch>();
 
-	private final Queue<TriggerQueueItem> triggerQueue = new ConcurrentLinkedQueue<TriggerQueueItem>();
+	private final TransitionDispatchIndex<S, E> transitionIndex;
 
-	private final Collection<Transition<S,E>> transitions;
+	private final AtomicInteger drainRequests = new AtomicInteger();
 
-	private final AtomicBoolean requestTask = new AtomicBoolean(false);
+	private boolean callerThreadExecution = false;
+
+	private long sendEventsTimeout = 0;
 
 	private final Map<Trigger<S, E>, Transition<S,E>> triggerToTransitionMap;
 
@@ -83,10 +105,22 @@ public class DefaultStateMachineExecutor<S, E> extends LifecycleObjectSupport im
 
 	private final AtomicBoolean initialHandled = new AtomicBoolean(false);
 
-	private volatile Runnable task;
+	private final Runnable task = new Runnable() {
+
+		@Override
+		public void run() {
+			drainOnTaskExecutor();
+		}
+	};
+
+	private int drainBudget = Integer.MAX_VALUE;
+
+	private volatile Thread taskThread;
 
 	private StateMachineExecutorTransit<S, E> stateMachineExecutorTransit;
 
+	private StateMachineExecutorExpiry<E> stateMachineExecutorExpiry;
+
     private final StateMachineInterceptorList<S, E> interceptors =
             new StateMachineInterceptorList<S, E>();
 
@@ -96,39 +130,48 @@ public class DefaultStateMachineExecutor<S, E> extends LifecycleObjectSupport im
 	 * @param stateMachine the state machine
 	 * @param relayStateMachine the relay state machine
 	 * @param extendedState the extended state
-	 * @param transitions the transitions
+	 * @param transitionIndex the transition dispatch index
 	 * @param triggerToTransitionMap the trigger to transition map
 	 * @param triggerlessTransitions the triggerless transitions
 	 * @param initialTransition the initial transition
 	 * @param initialEvent the initial event
 	 */
 	public DefaultStateMachineExecutor(StateMachine<S, E> stateMachine, StateMachine<S, E> relayStateMachine,
-			ExtendedState extendedState, Collection<Transition<S, E>> transitions, Map<Trigger<S, E>, Transition<S, E>> triggerToTransitionMap,
+			ExtendedState extendedState, TransitionDispatchIndex<S, E> transitionIndex, Map<Trigger<S, E>, Transition<S, E>> triggerToTransitionMap,
 			List<Transition<S, E>> triggerlessTransitions, Transition<S, E> initialTransition, Message<E> initialEvent) {
 		this.stateMachine = stateMachine;
 		this.relayStateMachine = relayStateMachine;
 		this.extendedState = extendedState;
 		this.triggerToTransitionMap = triggerToTransitionMap;
 		this.triggerlessTransitions = triggerlessTransitions;
-		this.transitions = transitions;
+		this.transitionIndex = transitionIndex;
 		this.initialTransition = initialTransition;
 		this.initialEvent = initialEvent;
 		registerTriggerListener();
 	}
 
 	@Override
-	public void queueEvent(Message<E> message) {
-		eventQueue.add(message);
+	public boolean queueEvent(Message<E> message) {
+		// trigger is resolved when queue is processed
+		return triggerQueue.offer(new TriggerQueueItem(null, message), !isDrainingThread());
 	}
 
 	@Override
-	public void queueTrigger(Trigger<S, E> trigger, Message<E> message) {
-		triggerQueue.add(new TriggerQueueItem(trigger, message));
+	public boolean queueTrigger(Trigger<S, E> trigger, Message<E> message) {
+		return queueTrigger(trigger, message, null);
+	}
+
+	@Override
+	public boolean queueTrigger(Trigger<S, E> trigger, Message<E> message,
+			SettableListenableFuture<EventResult<S, E>> future) {
+		TriggerQueueItem item = new TriggerQueueItem(trigger, message);
+		item.future = future;
+		return triggerQueue.offer(item, !isDrainingThread());
 	}
 
 	@Override
 	public void queueDeferredEvent(Message<E> message) {
-		deferList.addLast(message);
+		deferredEvents.add(message);
 	}
 
 	@Override
@@ -136,11 +179,200 @@ public class DefaultStateMachineExecutor<S, E> extends LifecycleObjectSupport im
 		scheduleEventQueueProcessing();
 	}
 
+	@Override
+	public List<Boolean> sendEvents(Iterator<Message<E>> events, StateMachineExecutorAcceptor<E> acceptor) {
+		EventBatch batch = new EventBatch(events, acceptor);
+		if (isDrainingThread()) {
+			// we're called from within a running task, i.e. from an action
+			// of this or other machine sharing a same executor, thus a drain
+			// may need this thread and we can't wait for it. only offer events
+			// for acceptance and let requested re-run to process those.
+			while (events.hasNext()) {
+				batch.results.add(acceptor.accept(events.next()));
+			}
+			scheduleEventQueueProcessing();
+			return batch.results;
+		}
+		batchQueue.add(batch);
+		if (callerThreadExecution || getTaskExecutor() == null) {
+			// without an executor use a same handoff as with a caller
+			// thread so that a batch never runs concurrently with a drain
+			drainOnCallerThread();
+		} else {
+			scheduleEventQueueProcessing();
+		}
+		boolean processed = false;
+		try {
+			if (sendEventsTimeout > 0) {
+				processed = batch.latch.await(sendEventsTimeout, TimeUnit.MILLISECONDS);
+			} else {
+				batch.latch.await();
+				processed = true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (!processed) {
+			// events not yet offered are never offered
+			return batch.cancel();
+		}
+		return batch.results;
+	}
+
+	@Override
+	public EventQueueMetrics getEventQueueMetrics() {
+		return triggerQueue;
+	}
+
+	/**
+	 * Sets the capacity of an event queue. Zero or negative capacity
+	 * means an unbounded queue which is also a default. Needs to be set
+	 * before executor is initialized.
+	 *
+	 * @param queueCapacity the new queue capacity
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Sets the policy used when a bounded event queue is full. Defaults
+	 * to {@link EventQueuePolicy#REJECT}. Needs to be set before executor
+	 * is initialized.
+	 *
+	 * @param queuePolicy the new queue policy
+	 */
+	public void setQueuePolicy(EventQueuePolicy queuePolicy) {
+		Assert.notNull(queuePolicy, "Event queue policy must be set");
+		this.queuePolicy = queuePolicy;
+	}
+
+	/**
+	 * Sets the order in which event priority lanes are drained. Defaults
+	 * to {@link EventPriorityDrain#STRICT}. Needs to be set before executor
+	 * is initialized.
+	 *
+	 * @param priorityDrain the new priority drain
+	 */
+	public void setPriorityDrain(EventPriorityDrain priorityDrain) {
+		Assert.notNull(priorityDrain, "Event priority drain must be set");
+		this.priorityDrain = priorityDrain;
+	}
+
+	/**
+	 * Sets the events which are coalesced in an event queue. Queued event
+	 * is replaced by a newer event of a same type instead of queueing both.
+	 * Events can also be coalesced by their
+	 * {@link StateMachineSystemConstants#COALESCE_KEY} header values. Needs to
+	 * be set before executor is initialized.
+	 *
+	 * @param coalescableEvents the new coalescable events
+	 */
+	public void setCoalescableEvents(Collection<E> coalescableEvents) {
+		this.coalescableEvents = coalescableEvents != null ? new HashSet<E>(coalescableEvents)
+				: Collections.<E>emptySet();
+	}
+
+	/**
+	 * Sets if events are executed on a caller thread in a run-to-completion
+	 * fashion instead of using a {@link TaskExecutor}. Events are then processed
+	 * inline by a thread sending an event without allocating tasks. Only one
+	 * thread processes events at a time and events sent while another
+	 * thread is processing, including events sent from actions, are queued
+	 * and processed by that thread before it returns.
+	 *
+	 * @param callerThreadExecution the caller thread execution flag
+	 */
+	public void setCallerThreadExecution(boolean callerThreadExecution) {
+		this.callerThreadExecution = callerThreadExecution;
+	}
+
+	/**
+	 * Sets the max time in milliseconds {@link #sendEvents(Iterator, StateMachineExecutorAcceptor)}
+	 * waits for a batch to be processed. When a timeout elapses, events of
+	 * a batch not yet offered for acceptance are never offered and are
+	 * reported as not accepted. Zero or negative value, which is also a
+	 * default, waits until a whole batch has been processed.
+	 * <p>
+	 * A thread draining this executor, or any executor sharing a same
+	 * {@link TaskExecutor}, never waits as a drain of this executor may be
+	 * queued behind it. Events are then only offered for acceptance and
+	 * processed after a calling action returns.
+	 *
+	 * @param sendEventsTimeout the timeout in milliseconds
+	 */
+	public void setSendEventsTimeout(long sendEventsTimeout) {
+		this.sendEventsTimeout = sendEventsTimeout;
+	}
+
 	@Override
 	public void setStateMachineExecutorTransit(StateMachineExecutorTransit<S, E> stateMachineExecutorTransit) {
 		this.stateMachineExecutorTransit = stateMachineExecutorTransit;
 	}
 
+	@Override
+	public void setStateMachineExecutorExpiry(StateMachineExecutorExpiry<E> stateMachineExecutorExpiry) {
+		this.stateMachineExecutorExpiry = stateMachineExecutorExpiry;
+	}
+
+	@Override
+	protected void onInit() throws Exception {
+		super.onInit();
+		triggerQueue = new BoundedEventQueue<TriggerQueueItem>(queueCapacity, queuePolicy, priorityDrain) {
+
+			@Override
+			protected EventPriority getPriority(TriggerQueueItem item) {
+				Object priority = item.message != null
+						? item.message.getHeaders().get(StateMachineSystemConstants.EVENT_PRIORITY) : null;
+				return resolvePriority(priority, item.message);
+			}
+
+			@Override
+			protected void dropped(TriggerQueueItem item) {
+				completeEventResult(item, ResultType.DENIED, null);
+			}
+
+			@Override
+			protected Object getCoalesceKey(TriggerQueueItem item) {
+				if (item.message == null) {
+					return null;
+				}
+				Object key = item.message.getHeaders().get(StateMachineSystemConstants.COALESCE_KEY);
+				if (key == null && coalescableEvents.contains(item.message.getPayload())) {
+					key = item.message.getPayload();
+				}
+				return key;
+			}
+
+			@Override
+			protected void coalesced(TriggerQueueItem item) {
+				completeEventResult(item, ResultType.DENIED, null);
+			}
+
+			@Override
+			protected boolean isExpired(TriggerQueueItem item) {
+				return item.message != null && isExpiredMessage(item.message);
+			}
+
+			@Override
+			protected void expired(TriggerQueueItem item) {
+				if (log.isDebugEnabled()) {
+					log.debug("Discarding expired event " + item.message);
+				}
+				completeEventResult(item, ResultType.EXPIRED, null);
+				if (stateMachineExecutorExpiry != null) {
+					stateMachineExecutorExpiry.expired(item.message);
+				}
+			}
+
+			@Override
+			protected boolean isCoalescable(TriggerQueueItem item) {
+				// timer ticks don't carry an event and will fire again
+				return item.message == null || getCoalesceKey(item) != null;
+			}
+		};
+	}
+
 	@Override
 	protected void doStart() {
 		super.doStart();
@@ -151,6 +383,8 @@ public class DefaultStateMachineExecutor<S, E> extends LifecycleObjectSupport im
 	protected void doStop() {
 		super.doStop();
 		initialHandled.set(false);
+		releasePendingBatches();
+		releasePendingFutures();
 	}
 
 	@Override
@@ -165,7 +399,8 @@ public class DefaultStateMachineExecutor<S, E> extends LifecycleObjectSupport im
 		interceptors.add(interceptor);
 	}
 
-	private void handleTriggerTrans(List<Transition<S, E>> trans, Message<E> queuedMessage) {
+	private Transition<S, E> handleTriggerTrans(List<Transition<S, E>> trans, Message<E> queuedMessage) {
+		MessageHeaders messageHeaders = null;
 		for (Transition<S, E> t : trans) {
 			if (t == null) {
 				continue;
@@ -179,7 +414,13 @@ public class DefaultStateMachineExecutor<S, E> extends LifecycleObjectSupport im
 				continue;
 			}
 
-			StateContext<S, E> stateContext = buildStateContext(queuedMessage, t, relayStateMachine);
+			// headers are same for all candidates
+			if (messageHeaders == null) {
+				messageHeaders = buildMessageHeaders(queuedMessage, relayStateMachine);
+			}
+			StateContext<S, E> stateContext = new DefaultStateContext<S, E>(
+					queuedMessage != null ? queuedMessage.getPayload() : null, messageHeaders, extendedState, t,
+					relayStateMachine);
 			stateContext = interceptors.preTransition(stateContext);
 			if (stateContext == null) {
 				break;
@@ -189,9 +430,10 @@ public class DefaultStateMachineExecutor<S, E> extends LifecycleObjectSupport im
 			if (transit) {
 				stateMachineExecutorTransit.transit(t, stateContext, queuedMessage);
 				interceptors.postTransition(stateContext);
-				break;
+				return t;
 			}
 		}
+		return null;
 	}
 
 	private void handleInitialTrans(Transition<S, E> tran, Message<E> queuedMessage) {
@@ -201,53 +443,136 @@ public class DefaultStateMachineExecutor<S, E> extends LifecycleObjectSupport im
 	}
 
 	private void scheduleEventQueueProcessing() {
+		if (callerThreadExecution) {
+			drainOnCallerThread();
+			return;
+		}
 		TaskExecutor executor = getTaskExecutor();
 		if (executor == null) {
 			return;
 		}
-		if (task == null) {
-			task = new Runnable() {
-				@Override
-				public void run() {
-					processEventQueue();
-					processTriggerQueue();
-					while (processDeferList()) {
-						processTriggerQueue();
-					}
-					task = null;
-					if (requestTask.getAndSet(false)) {
-						scheduleEventQueueProcessing();
-					}
-				}
-			};
-			executor.execute(task);
-		} else {
-			requestTask.set(true);
+		// same handoff as with a caller thread, only a thread moving
+		// requests from zero submits a task thus never running two drains
+		if (drainRequests.getAndIncrement() == 0) {
+			submitTask(executor);
 		}
 	}
 
-	private void processEventQueue() {
-		log.debug("Process event queue");
-		Message<E> queuedEvent = null;
-		State<S,E> currentState = stateMachine.getState();
-		while ((queuedEvent = eventQueue.poll()) != null) {
-			Message<E> defer = null;
-			for (Transition<S, E> transition : transitions) {
-				State<S, E> source = transition.getSource();
-				Trigger<S, E> trigger = transition.getTrigger();
-
-				if (StateMachineUtils.containsAtleastOne(source.getIds(), currentState.getIds())) {
-					if (trigger != null && trigger.evaluate(new DefaultTriggerContext<S, E>(queuedEvent.getPayload()))) {
-						triggerQueue.add(new TriggerQueueItem(trigger, queuedEvent));
-					} else if (source.getDeferredEvents() != null
-							&& source.getDeferredEvents().contains(queuedEvent.getPayload())) {
-						defer = queuedEvent;
+	private void submitTask(TaskExecutor executor) {
+		try {
+			if (executor instanceof KeyedTaskExecutor) {
+				// keep all drains of this machine on a same stripe
+				((KeyedTaskExecutor) executor).execute(stateMachine.getId(), task);
+			} else {
+				executor.execute(task);
+			}
+		} catch (RuntimeException e) {
+			// let next request try again, nothing will drain queued
+			// batches so don't leave their senders waiting
+			drainRequests.set(0);
+			releasePendingBatches();
+			throw e;
+		}
+	}
+
+	private void releasePendingBatches() {
+		EventBatch batch = null;
+		while ((batch = batchQueue.poll()) != null) {
+			// events never offered are reported as not accepted
+			batch.cancel();
+			batch.latch.countDown();
+		}
+	}
+
+	private void drainOnTaskExecutor() {
+		TaskExecutor executor = getTaskExecutor();
+		int quota = executor instanceof KeyedTaskExecutor ? ((KeyedTaskExecutor) executor).getDrainQuota()
+				: Integer.MAX_VALUE;
+		int requests = drainRequests.get();
+		boolean more = false;
+		boolean completed = false;
+		TaskExecutor previous = drainingExecutor.get();
+		drainingExecutor.set(executor);
+		taskThread = Thread.currentThread();
+		try {
+			more = drainQueues(quota);
+			completed = true;
+		} finally {
+			taskThread = null;
+			if (previous != null) {
+				drainingExecutor.set(previous);
+			} else {
+				drainingExecutor.remove();
+			}
+			if (!completed) {
+				drainRequests.set(0);
+			}
+		}
+		// if quota ran out, go back to the end of a stripe to let
+		// other machines sharing it to proceed
+		if (more || drainRequests.addAndGet(-requests) != 0) {
+			submitTask(executor);
+		}
+	}
+
+	private void drainOnCallerThread() {
+		// thread moving requests from zero becomes a drainer, others only
+		// leave a request which drainer will see before it returns. this
+		// way exactly one thread drains and re-entrant calls don't recurse.
+		if (drainRequests.getAndIncrement() != 0) {
+			return;
+		}
+		int requests = 1;
+		boolean completed = false;
+		try {
+			do {
+				taskThread = Thread.currentThread();
+				drainQueues(Integer.MAX_VALUE);
+				taskThread = null;
+				requests = drainRequests.addAndGet(-requests);
+			} while (requests != 0);
+			completed = true;
+		} finally {
+			if (!completed) {
+				// let next caller become a drainer
+				taskThread = null;
+				drainRequests.set(0);
+			}
+		}
+	}
+
+	private boolean drainQueues(int quota) {
+		drainBudget = quota;
+		processTriggerQueue();
+		while (drainBudget > 0 && processDeferList()) {
+			processTriggerQueue();
+		}
+		if (drainBudget <= 0) {
+			drainBudget = Integer.MAX_VALUE;
+			return true;
+		}
+		// batches wait for their events to be processed fully
+		drainBudget = Integer.MAX_VALUE;
+		processBatchQueue();
+		return false;
+	}
+
+	private void processBatchQueue() {
+		EventBatch batch = null;
+		while ((batch = batchQueue.poll()) != null) {
+			log.debug("Process event batch");
+			try {
+				// every event is processed fully before next one is
+				// offered so that acceptance is based on a state
+				// previous events in a batch resulted
+				while (batch.offerNext()) {
+					processTriggerQueue();
+					while (processDeferList()) {
+						processTriggerQueue();
 					}
 				}
-			}
-			if (defer != null) {
-				log.info("Deferring event " + defer);
-				deferList.addLast(defer);
+			} finally {
+				batch.latch.countDown();
 			}
 		}
 	}
@@ -257,55 +582,67 @@ public class DefaultStateMachineExecutor<S, E> extends LifecycleObjectSupport im
 			return;
 		}
 		if (!initialHandled.getAndSet(true)) {
-			ArrayList<Transition<S, E>> trans = new ArrayList<Transition<S, E>>();
-			trans.add(initialTransition);
 			handleInitialTrans(initialTransition, initialEvent);
 			return;
 		}
 		log.debug("Process trigger queue");
 		TriggerQueueItem queueItem = null;
-		while ((queueItem = triggerQueue.poll()) != null) {
+		while (drainBudget > 0 && (queueItem = triggerQueue.poll()) != null) {
+			if (drainBudget != Integer.MAX_VALUE) {
+				drainBudget--;
+			}
 
 			State<S,E> currentState = stateMachine.getState();
 
 			if (currentState == null) {
+				completeEventResult(queueItem, ResultType.DENIED, null);
 				continue;
 			}
 
 			Message<E> queuedMessage = queueItem.message;
 			E event = queuedMessage != null ? queuedMessage.getPayload() : null;
 
-			// need all transitions trigger could match, event trigger may match
-			// multiple
-			// need to go up from substates and ask if trigger transit, if not
-			// check super
-			ArrayList<Transition<S, E>> trans = new ArrayList<Transition<S, E>>();
-
-			if (event != null) {
-				ArrayList<S> ids = new ArrayList<S>(currentState.getIds());
-				Collections.reverse(ids);
-				for (S id : ids) {
-					for (Entry<Trigger<S, E>, Transition<S, E>> e : triggerToTransitionMap.entrySet()) {
-						Trigger<S, E> tri = e.getKey();
-						E ee = tri.getEvent();
-						Transition<S, E> tra = e.getValue();
-						if (event == ee) {
-							if (tra.getSource().getId() == id && !trans.contains(tra)) {
-								trans.add(tra);
-								continue;
-							}
-						}
+			// plain queued event, resolve trigger or defer
+			if (queueItem.trigger == null) {
+				if (event == null) {
+					completeEventResult(queueItem, ResultType.DENIED, null);
+					continue;
+				}
+				Collection<S> ids = currentState.getIds();
+				if (transitionIndex.findTrigger(ids, event) == null) {
+					if (transitionIndex.isDeferred(ids, event)) {
+						log.info("Deferring event " + queuedMessage);
+						deferredEvents.add(queuedMessage);
+						completeEventResult(queueItem, ResultType.DEFERRED, null);
+					} else {
+						completeEventResult(queueItem, ResultType.DENIED, null);
 					}
+					continue;
 				}
 			}
 
+			// need all transitions trigger could match, event trigger may match
+			// multiple. index gives candidates from substates first and then
+			// going up to super states.
+			List<Transition<S, E>> trans = transitionIndex.findTransitions(currentState.getIds(), event);
+
 			// most likely timer
 			if (trans.isEmpty()) {
-				trans.add(triggerToTransitionMap.get(queueItem.trigger));
+				trans = Collections.singletonList(triggerToTransitionMap.get(queueItem.trigger));
 			}
 
 			// go through candidates and transit max one
-			handleTriggerTrans(trans, queuedMessage);
+			Transition<S, E> transition = null;
+			try {
+				transition = handleTriggerTrans(trans, queuedMessage);
+			} catch (RuntimeException e) {
+				if (queueItem.future != null) {
+					queueItem.future.setException(e);
+				}
+				throw e;
+			}
+			// all candidates may still be rejected by guards
+			completeEventResult(queueItem, transition != null ? ResultType.ACCEPTED : ResultType.DENIED, transition);
 		}
 		if (stateMachine.getState() != null) {
 			// handle triggerless transitions
@@ -313,45 +650,180 @@ public class DefaultStateMachineExecutor<S, E> extends LifecycleObjectSupport im
 		}
 	}
 
+	/**
+	 * Resolves an {@link EventPriority} from a priority header value which is
+	 * either an {@link EventPriority} or its name. Unknown values are logged
+	 * and the event is queued with {@link EventPriority#NORMAL}.
+	 *
+	 * @param priority the priority header value
+	 * @param message the message carrying the header
+	 * @return the event priority
+	 */
+	private static EventPriority resolvePriority(Object priority, Message<?> message) {
+		if (priority == null) {
+			return EventPriority.NORMAL;
+		} else if (priority instanceof EventPriority) {
+			return (EventPriority) priority;
+		} else if (priority instanceof String) {
+			try {
+				return EventPriority.valueOf(((String) priority).trim().toUpperCase(Locale.ENGLISH));
+			} catch (IllegalArgumentException e) {
+				// not a lane name, fall through
+			}
+		}
+		log.warn("Unknown event priority [" + priority + "], using " + EventPriority.NORMAL + " for event " + message);
+		return EventPriority.NORMAL;
+	}
+
+	/**
+	 * Checks if a current thread may be needed to process events of this
+	 * executor and thus must never wait for those, either for a batch to be
+	 * processed or for space in a full queue. That is a thread draining
+	 * this executor and a thread draining other executor using a same
+	 * asynchronous {@link TaskExecutor}, like an other machine sharing a
+	 * single threaded executor or a stripe, as a drain of this executor may
+	 * be queued behind a running one.
+	 *
+	 * @return true if a current thread may be needed to process events
+	 */
+	private boolean isDrainingThread() {
+		if (Thread.currentThread() == taskThread) {
+			return true;
+		}
+		TaskExecutor executor = drainingExecutor.get();
+		return executor != null && !callerThreadExecution && !(executor instanceof SyncTaskExecutor)
+				&& executor == getTaskExecutor();
+	}
+
+	/**
+	 * Checks if events are processed on a thread sending those, which is
+	 * the case with caller thread execution, without a task executor or
+	 * with a {@link SyncTaskExecutor}.
+	 *
+	 * @return true if events are processed on a sending thread
+	 */
+	boolean isSynchronousExecution() {
+		TaskExecutor executor = getTaskExecutor();
+		return callerThreadExecution || executor == null || executor instanceof SyncTaskExecutor;
+	}
+
+	/**
+	 * Clears all events waiting in this executor. Deferred events are
+	 * dropped, queued events are discarded and waiting batches and futures
+	 * are completed as not accepted. Used when a machine is reset to be
+	 * reused so that events from a previous use don't leak into a next one.
+	 */
+	void clearEvents() {
+		deferredEvents.clear();
+		releasePendingBatches();
+		TriggerQueueItem queueItem = null;
+		while ((queueItem = triggerQueue.poll()) != null) {
+			completeEventResult(queueItem, ResultType.DENIED, null);
+		}
+	}
+
+	private void releasePendingFutures() {
+		// nobody would complete futures of items left in a queue, thus
+		// those are denied while items without a future are kept
+		List<TriggerQueueItem> kept = new ArrayList<TriggerQueueItem>();
+		TriggerQueueItem queueItem = null;
+		while ((queueItem = triggerQueue.poll()) != null) {
+			if (queueItem.future != null) {
+				completeEventResult(queueItem, ResultType.DENIED, null);
+			} else {
+				kept.add(queueItem);
+			}
+		}
+		for (TriggerQueueItem item : kept) {
+			triggerQueue.offer(item, false);
+		}
+	}
+
+	private void completeEventResult(TriggerQueueItem queueItem, ResultType resultType, Transition<S, E> transition) {
+		if (queueItem.future == null) {
+			return;
+		}
+		State<S, E> state = stateMachine.getState();
+		Collection<S> ids = state != null ? state.getIds() : Collections.<S>emptyList();
+		queueItem.future.set(new DefaultEventResult<S, E>(queueItem.message, resultType, transition, ids));
+	}
+
 	private boolean processDeferList() {
+		if (deferredEvents.isEmpty()) {
+			return false;
+		}
 		log.debug("Process defer list");
-		boolean triggered = false;
-		ListIterator<Message<E>> iterator = deferList.listIterator();
 		State<S,E> currentState = stateMachine.getState();
-		while (iterator.hasNext()) {
-			Message<E> event = iterator.next();
-			for (Transition<S, E> transition : transitions) {
-				State<S, E> source = transition.getSource();
-				Trigger<S, E> trigger = transition.getTrigger();
-				if (source.equals(currentState)) {
-					if (trigger != null && trigger.evaluate(new DefaultTriggerContext<S, E>(event.getPayload()))) {
-						triggerQueue.add(new TriggerQueueItem(trigger, event));
-						iterator.remove();
-						triggered = true;
-					}
+		if (currentState == null) {
+			return false;
+		}
+		// only release deferred events current state is able to consume
+		List<E> consumable = null;
+		for (E event : transitionIndex.getEvents(currentState.getId())) {
+			if (deferredEvents.contains(event) && findDeferTransition(currentState, event) != null) {
+				if (consumable == null) {
+					consumable = new ArrayList<E>();
 				}
+				consumable.add(event);
+			}
+		}
+		if (consumable == null) {
+			return false;
+		}
+		// expired events are discarded by a queue before evaluation
+		for (Message<E> message : deferredEvents.release(consumable)) {
+			Transition<S, E> transition = findDeferTransition(currentState, message.getPayload());
+			triggerQueue.offer(new TriggerQueueItem(transition.getTrigger(), message), false);
+		}
+		return true;
+	}
+
+	private static boolean isExpiredMessage(Message<?> message) {
+		MessageHeaders headers = message.getHeaders();
+		long expiresAt;
+		Object deadline = headers.get(StateMachineSystemConstants.EVENT_DEADLINE);
+		if (deadline instanceof Number) {
+			expiresAt = ((Number) deadline).longValue();
+		} else {
+			Object ttl = headers.get(StateMachineSystemConstants.EVENT_TTL);
+			Long timestamp = headers.getTimestamp();
+			if (!(ttl instanceof Number) || timestamp == null) {
+				return false;
 			}
+			expiresAt = timestamp + ((Number) ttl).longValue();
 		}
-		return triggered;
+		return System.currentTimeMillis() > expiresAt;
+	}
+
+	private Transition<S, E> findDeferTransition(State<S, E> currentState, E event) {
+		for (Transition<S, E> transition : transitionIndex.getTransitions(currentState.getId(), event)) {
+			if (transition.getSource().equals(currentState)) {
+				return transition;
+			}
+		}
+		return null;
 	}
 
 	private StateContext<S, E> buildStateContext(Message<E> message, Transition<S,E> transition, StateMachine<S, E> stateMachine) {
 		E event = message != null ? message.getPayload() : null;
+		return new DefaultStateContext<S, E>(event, buildMessageHeaders(message, stateMachine), extendedState,
+				transition, stateMachine);
+	}
 
+	private MessageHeaders buildMessageHeaders(Message<E> message, StateMachine<S, E> stateMachine) {
 		// TODO: maybe a direct use of MessageHeaders is wring, combine
 		//       payload and headers as a message?
 
 		// add sm id to headers so that user of a StateContext can
-		// see who initiated this transition
-		MessageHeaders messageHeaders = message != null ? message.getHeaders() : new MessageHeaders(
-				new HashMap<String, Object>());
-		Map<String, Object> map = new HashMap<String, Object>(messageHeaders);
-		if (!map.containsKey(StateMachineSystemConstants.STATEMACHINE_IDENTIFIER)) {
-			// don't set sm id if it's already present because
-			// we want to keep the originating sm id
-			map.put(StateMachineSystemConstants.STATEMACHINE_IDENTIFIER, stateMachine.getId());
+		// see who initiated this transition. don't set sm id if it's
+		// already present because we want to keep the originating sm id.
+		// headers are layered instead of copied.
+		MessageHeaders messageHeaders = message != null ? message.getHeaders() : null;
+		if (messageHeaders != null && messageHeaders.containsKey(StateMachineSystemConstants.STATEMACHINE_IDENTIFIER)) {
+			return messageHeaders;
 		}
-		return new DefaultStateContext<S, E>(event, new MessageHeaders(map), extendedState, transition, stateMachine);
+		return new LayeredMessageHeaders(messageHeaders, StateMachineSystemConstants.STATEMACHINE_IDENTIFIER,
+				stateMachine.getId());
 	}
 
 	private void registerTriggerListener() {
@@ -361,7 +833,7 @@ public class DefaultStateMachineExecutor<S, E> extends LifecycleObjectSupport im
 					@Override
 					public void triggered() {
 						log.debug("TimedTrigger triggered " + trigger);
-						triggerQueue.add(new TriggerQueueItem(trigger, null));
+						triggerQueue.offer(new TriggerQueueItem(trigger, null), false);
 						scheduleEventQueueProcessing();
 					}
 				});
@@ -372,9 +844,50 @@ public class DefaultStateMachineExecutor<S, E> extends LifecycleObjectSupport im
 		}
 	}
 
+	private class EventBatch {
+		final Iterator<Message<E>> events;
+		final StateMachineExecutorAcceptor<E> acceptor;
+		final List<Boolean> results = new ArrayList<Boolean>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		boolean cancelled;
+		public EventBatch(Iterator<Message<E>> events, StateMachineExecutorAcceptor<E> acceptor) {
+			this.events = events;
+			this.acceptor = acceptor;
+		}
+
+		/**
+		 * Offers a next event for acceptance unless batch is cancelled.
+		 *
+		 * @return true if an event was offered
+		 */
+		synchronized boolean offerNext() {
+			if (cancelled || !events.hasNext()) {
+				return false;
+			}
+			results.add(acceptor.accept(events.next()));
+			return true;
+		}
+
+		/**
+		 * Cancels this batch, events not yet offered are reported as not
+		 * accepted and never offered.
+		 *
+		 * @return the results of this batch
+		 */
+		synchronized List<Boolean> cancel() {
+			cancelled = true;
+			while (events.hasNext()) {
+				events.next();
+				results.add(false);
+			}
+			return new ArrayList<Boolean>(results);
+		}
+	}
+
 	private class TriggerQueueItem {
 		Trigger<S, E> trigger;
 		Message<E> message;
+		SettableListenableFuture<EventResult<S, E>> future;
 		public TriggerQueueItem(Trigger<S, E> trigger, Message<E> message) {
 			this.trigger = trigger;
 			this.message = message;
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.messaging.Message;
+
+/**
+ * Store for deferred events indexed by an event. Events can be released
+ * by asking events which a current state is able to consume, thus there is
+ * no need to walk through all deferred events. Released events are always
+ * returned in an order they were deferred.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <E> the type of event
+ */
+public class DeferredEventStore<E> {
+
+	private final Map<E, ArrayDeque<DeferredEvent<E>>> events = new HashMap<E, ArrayDeque<DeferredEvent<E>>>();
+
+	private long sequence;
+
+	private int size;
+
+	/**
+	 * Adds a deferred event into this store.
+	 *
+	 * @param message the message
+	 */
+	public synchronized void add(Message<E> message) {
+		E event = message.getPayload();
+		ArrayDeque<DeferredEvent<E>> queue = events.get(event);
+		if (queue == null) {
+			queue = new ArrayDeque<DeferredEvent<E>>();
+			events.put(event, queue);
+		}
+		queue.add(new DeferredEvent<E>(sequence++, message));
+		size++;
+	}
+
+	/**
+	 * Checks if an event has been deferred.
+	 *
+	 * @param event the event
+	 * @return true, if event is deferred
+	 */
+	public synchronized boolean contains(E event) {
+		return events.containsKey(event);
+	}
+
+	/**
+	 * Removes and returns all deferred messages for given events. Messages
+	 * are returned in an order they were deferred.
+	 *
+	 * @param events the events to release
+	 * @return the released messages, never null
+	 */
+	public synchronized List<Message<E>> release(Collection<E> events) {
+		if (size == 0 || events.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<DeferredEvent<E>> released = null;
+		int buckets = 0;
+		for (E event : events) {
+			ArrayDeque<DeferredEvent<E>> queue = this.events.remove(event);
+			if (queue == null) {
+				continue;
+			}
+			if (released == null) {
+				released = new ArrayList<DeferredEvent<E>>(queue.size());
+			}
+			released.addAll(queue);
+			size -= queue.size();
+			buckets++;
+		}
+		if (released == null) {
+			return Collections.emptyList();
+		}
+		if (buckets > 1) {
+			// merge by original deferral order
+			Collections.sort(released, SEQUENCE_ORDER);
+		}
+		List<Message<E>> messages = new ArrayList<Message<E>>(released.size());
+		for (DeferredEvent<E> deferred : released) {
+			messages.add(deferred.message);
+		}
+		return messages;
+	}
+
+	/**
+	 * Gets the number of deferred events.
+	 *
+	 * @return the number of deferred events
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Checks if store is empty.
+	 *
+	 * @return true, if store is empty
+	 */
+	public synchronized boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all deferred events.
+	 */
+	public synchronized void clear() {
+		events.clear();
+		size = 0;
+	}
+
+	private static final Comparator<DeferredEvent<?>> SEQUENCE_ORDER = new Comparator<DeferredEvent<?>>() {
+
+		@Override
+		public int compare(DeferredEvent<?> left, DeferredEvent<?> right) {
+			return left.sequence < right.sequence ? -1 : (left.sequence == right.sequence ? 0 : 1);
+		}
+	};
+
+	private static class DeferredEvent<E> {
+		final long sequence;
+		final Message<E> message;
+		public DeferredEvent(long sequence, Message<E> message) {
+			this.sequence = sequence;
+			this.message = message;
+		}
+	}
+
+}
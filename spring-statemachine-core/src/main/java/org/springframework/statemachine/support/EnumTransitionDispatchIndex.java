@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.statemachine.transition.Transition;
+import org.springframework.statemachine.trigger.Trigger;
+
+/**
+ * {@link TransitionDispatchIndex} for machines whose states and events are
+ * enums. Event triggered transitions are kept in a table indexed by a state
+ * and an event ordinal so that a lookup is two array accesses instead of
+ * two hash lookups.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ * @see TransitionDispatchIndex#create(Collection)
+ */
+public class EnumTransitionDispatchIndex<S, E> extends TransitionDispatchIndex<S, E> {
+
+	private final Class<?> stateType;
+
+	private final Class<?> eventType;
+
+	private final List<Transition<S, E>>[][] table;
+
+	private final Set<E>[] events;
+
+	/**
+	 * Instantiates a new enum transition dispatch index.
+	 *
+	 * @param transitions the transitions to index
+	 * @param stateType the enum type of states
+	 * @param eventType the enum type of events
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public EnumTransitionDispatchIndex(Collection<Transition<S, E>> transitions, Class<?> stateType, Class<?> eventType) {
+		super(transitions, false);
+		this.stateType = stateType;
+		this.eventType = eventType;
+		int stateCount = stateType.getEnumConstants().length;
+		int eventCount = eventType.getEnumConstants().length;
+		this.table = new List[stateCount][];
+		this.events = new Set[stateCount];
+
+		for (Transition<S, E> transition : transitions) {
+			Trigger<S, E> trigger = transition.getTrigger();
+			if (trigger == null || trigger.getEvent() == null) {
+				continue;
+			}
+			int s = ((Enum<?>) transition.getSource().getId()).ordinal();
+			int e = ((Enum<?>) trigger.getEvent()).ordinal();
+			// rows are only allocated for states having event transitions
+			if (table[s] == null) {
+				table[s] = new List[eventCount];
+				events[s] = EnumSet.noneOf((Class) eventType);
+			}
+			if (table[s][e] == null) {
+				table[s][e] = new ArrayList<Transition<S, E>>(1);
+			}
+			table[s][e].add(transition);
+			events[s].add(trigger.getEvent());
+		}
+		for (int s = 0; s < stateCount; s++) {
+			if (table[s] == null) {
+				continue;
+			}
+			for (int e = 0; e < eventCount; e++) {
+				if (table[s][e] != null) {
+					table[s][e] = Collections.unmodifiableList(table[s][e]);
+				}
+			}
+			events[s] = Collections.unmodifiableSet(events[s]);
+		}
+	}
+
+	@Override
+	public List<Transition<S, E>> getTransitions(S id, E event) {
+		if (!stateType.isInstance(id) || !eventType.isInstance(event)) {
+			return Collections.emptyList();
+		}
+		List<Transition<S, E>>[] row = table[((Enum<?>) id).ordinal()];
+		if (row == null) {
+			return Collections.emptyList();
+		}
+		List<Transition<S, E>> list = row[((Enum<?>) event).ordinal()];
+		return list != null ? list : Collections.<Transition<S, E>>emptyList();
+	}
+
+	@Override
+	public Set<E> getEvents(S id) {
+		if (!stateType.isInstance(id)) {
+			return Collections.emptySet();
+		}
+		Set<E> set = events[((Enum<?>) id).ordinal()];
+		return set != null ? set : Collections.<E>emptySet();
+	}
+
+}
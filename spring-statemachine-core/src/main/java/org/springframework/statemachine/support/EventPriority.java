@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+/**
+ * Priority lanes of a {@link StateMachineExecutor} event queue. Priority
+ * of an event is given with a message header
+ * {@link org.springframework.statemachine.StateMachineSystemConstants#EVENT_PRIORITY}
+ * either as an enum value or its name, like {@code "HIGH"}. Events without
+ * it, or with an unknown value, are queued into a {@link #NORMAL} lane.
+ *
+ * @author Janne Valkealahti
+ *
+ */
+public enum EventPriority {
+
+	/** Lane for urgent events, like cancellations and timeouts. */
+	HIGH(4),
+
+	/** Default lane. */
+	NORMAL(2),
+
+	/** Lane for background events. */
+	LOW(1);
+
+	private final int weight;
+
+	private EventPriority(int weight) {
+		this.weight = weight;
+	}
+
+	/**
+	 * Gets the relative weight of a lane used with
+	 * {@link EventPriorityDrain#WEIGHTED}.
+	 *
+	 * @return the lane weight
+	 */
+	public int getWeight() {
+		return weight;
+	}
+
+}
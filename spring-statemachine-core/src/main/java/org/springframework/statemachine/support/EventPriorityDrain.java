@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+/**
+ * Order in which {@link EventPriority} lanes of an event queue are drained.
+ *
+ * @author Janne Valkealahti
+ *
+ */
+public enum EventPriorityDrain {
+
+	/**
+	 * Higher priority lane is always drained first. Lower priority
+	 * events are processed only when higher lanes are empty.
+	 */
+	STRICT,
+
+	/**
+	 * Lanes are drained in proportion of their weights, thus lower
+	 * priority events are not starved by a constant flow of higher
+	 * priority events.
+	 *
+	 * @see EventPriority#getWeight()
+	 */
+	WEIGHTED
+
+}
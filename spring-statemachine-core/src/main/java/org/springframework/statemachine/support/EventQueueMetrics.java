@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+/**
+ * Runtime metrics of a {@link StateMachineExecutor} event queue.
+ *
+ * @author Janne Valkealahti
+ *
+ */
+public interface EventQueueMetrics {
+
+	/**
+	 * Gets the number of currently queued events.
+	 *
+	 * @return the queue depth
+	 */
+	int getQueueDepth();
+
+	/**
+	 * Gets the queue capacity. Zero or negative value indicates
+	 * an unbounded queue.
+	 *
+	 * @return the queue capacity
+	 */
+	int getQueueCapacity();
+
+	/**
+	 * Gets the count of events rejected because queue was full.
+	 *
+	 * @return the rejected event count
+	 */
+	long getRejectedCount();
+
+	/**
+	 * Gets the count of queued events dropped to make room for new events.
+	 *
+	 * @return the dropped event count
+	 */
+	long getDroppedCount();
+
+	/**
+	 * Gets the count of queued events replaced by newer events
+	 * having a same coalescing key.
+	 *
+	 * @return the coalesced event count
+	 */
+	long getCoalescedCount();
+
+	/**
+	 * Gets the count of queued events discarded because their
+	 * deadline passed before they were processed.
+	 *
+	 * @return the expired event count
+	 */
+	long getExpiredCount();
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+/**
+ * Policies used when a bounded event queue of a {@link StateMachineExecutor}
+ * is full and a new event is offered into it.
+ *
+ * @author Janne Valkealahti
+ *
+ */
+public enum EventQueuePolicy {
+
+	/**
+	 * Caller is blocked until space is available. If event is offered
+	 * from a thread which may be needed to process the queue, event is
+	 * accepted over capacity as blocking would never return. That is a
+	 * thread processing the queue, like from an action, and a thread
+	 * processing queues of other machines using a same asynchronous
+	 * task executor, like machines sharing a single threaded executor or
+	 * a stripe of a {@link StripedTaskExecutor}.
+	 */
+	BLOCK,
+
+	/**
+	 * New event is rejected and not accepted by a state machine.
+	 */
+	REJECT,
+
+	/**
+	 * Oldest queued event from a lowest non-empty {@link EventPriority}
+	 * lane is dropped to make room for a new event.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Oldest queued coalescable event, searching from a lowest
+	 * {@link EventPriority} lane, is dropped to make room for a new
+	 * event. New event is rejected if there are no coalescable events in
+	 * a queue.
+	 *
+	 * @see org.springframework.statemachine.StateMachineSystemConstants#COALESCE_KEY
+	 */
+	DROP_COALESCABLE
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import org.springframework.core.task.TaskExecutor;
+
+/**
+ * {@link TaskExecutor} which can execute tasks by a key. Tasks with equal
+ * keys are executed in order of submission. When used as a task executor
+ * for a state machine, a machine id is used as a key and a drain of a
+ * machine event queue processes at most a drain quota of events before
+ * a machine is submitted again.
+ *
+ * @author Janne Valkealahti
+ *
+ */
+public interface KeyedTaskExecutor extends TaskExecutor {
+
+	/**
+	 * Execute a task by a given key.
+	 *
+	 * @param key the key
+	 * @param task the task
+	 */
+	void execute(Object key, Runnable task);
+
+	/**
+	 * Gets the max number of events processed per drain.
+	 *
+	 * @return the drain quota
+	 */
+	int getDrainQuota();
+
+}
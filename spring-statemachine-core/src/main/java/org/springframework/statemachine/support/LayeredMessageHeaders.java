@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.springframework.messaging.MessageHeaders;
+
+/**
+ * Read-only {@link MessageHeaders} view layering a single header on top
+ * of existing headers without copying them. Contrary to a plain
+ * {@code MessageHeaders} new id and timestamp are not generated, thus
+ * a view exposes id and timestamp of underlying headers if present.
+ * <p>
+ * Layered header is only visible if underlying headers don't already
+ * contain a same key, meaning that existing headers always take precedence.
+ *
+ * @author Janne Valkealahti
+ *
+ */
+public class LayeredMessageHeaders extends MessageHeaders {
+
+	private static final long serialVersionUID = -3425011476011407462L;
+
+	private final Map<String, Object> headers;
+
+	private final String key;
+
+	private final Object value;
+
+	private transient volatile Map<String, Object> merged;
+
+	/**
+	 * Instantiates a new layered message headers.
+	 *
+	 * @param headers the underlying headers
+	 * @param key the layered header key
+	 * @param value the layered header value
+	 */
+	public LayeredMessageHeaders(Map<String, Object> headers, String key, Object value) {
+		super(null, ID_VALUE_NONE, -1L);
+		this.headers = headers != null ? headers : Collections.<String, Object>emptyMap();
+		this.key = key != null && !this.headers.containsKey(key) ? key : null;
+		this.value = value;
+	}
+
+	@Override
+	public Object get(Object key) {
+		if (this.key != null && this.key.equals(key)) {
+			return value;
+		}
+		return headers.get(key);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T get(Object key, Class<T> type) {
+		Object value = get(key);
+		if (value == null) {
+			return null;
+		}
+		if (!type.isAssignableFrom(value.getClass())) {
+			throw new IllegalArgumentException("Incorrect type specified for header '" + key + "'. Expected [" + type
+					+ "] but actual type is [" + value.getClass() + "]");
+		}
+		return (T) value;
+	}
+
+	@Override
+	public UUID getId() {
+		return get(ID, UUID.class);
+	}
+
+	@Override
+	public Long getTimestamp() {
+		return get(TIMESTAMP, Long.class);
+	}
+
+	@Override
+	public Object getReplyChannel() {
+		return get(REPLY_CHANNEL);
+	}
+
+	@Override
+	public Object getErrorChannel() {
+		return get(ERROR_CHANNEL);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return (this.key != null && this.key.equals(key)) || headers.containsKey(key);
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		return getMerged().containsValue(value);
+	}
+
+	@Override
+	public int size() {
+		return headers.size() + (key != null ? 1 : 0);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public Set<String> keySet() {
+		return getMerged().keySet();
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return getMerged().entrySet();
+	}
+
+	@Override
+	public Collection<Object> values() {
+		return getMerged().values();
+	}
+
+	@Override
+	protected Map<String, Object> getRawHeaders() {
+		return getMerged();
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return this == other || (other instanceof Map && getMerged().equals(other));
+	}
+
+	@Override
+	public int hashCode() {
+		return getMerged().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return getMerged().toString();
+	}
+
+	private Map<String, Object> getMerged() {
+		// full view is only needed when headers are iterated which
+		// is rare, thus build it lazily
+		Map<String, Object> map = merged;
+		if (map == null) {
+			map = new LinkedHashMap<String, Object>(headers);
+			if (key != null) {
+				map.put(key, value);
+			}
+			map = Collections.unmodifiableMap(map);
+			merged = map;
+		}
+		return map;
+	}
+
+	private Object writeReplace() {
+		// serialize as plain headers as underlying map is not
+		// stored in fields of a super class
+		UUID id = getId();
+		Long timestamp = getTimestamp();
+		return new SerializedMessageHeaders(getMerged(), id != null ? id : ID_VALUE_NONE,
+				timestamp != null ? timestamp : -1L);
+	}
+
+	private static class SerializedMessageHeaders extends MessageHeaders {
+
+		private static final long serialVersionUID = 6049296412361924393L;
+
+		SerializedMessageHeaders(Map<String, Object> headers, UUID id, Long timestamp) {
+			super(headers, id, timestamp);
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records listener notifications relayed from submachines and regions on a
+ * current thread instead of delivering those immediately. Used when regions
+ * are executed in parallel so that recorded notifications can be delivered
+ * in region order after all regions have completed.
+ * <p>
+ * Recording nests, thus a thread already recording can start a new
+ * recording and restore a previous one when done.
+ *
+ * @author Janne Valkealahti
+ *
+ */
+public abstract class NotificationRecorder {
+
+	private static final ThreadLocal<List<Runnable>> recording = new ThreadLocal<List<Runnable>>();
+
+	/**
+	 * Starts recording notifications on a current thread.
+	 *
+	 * @return the previous recording to be passed to {@link #stop(List)}
+	 */
+	public static List<Runnable> start() {
+		List<Runnable> previous = recording.get();
+		recording.set(new ArrayList<Runnable>());
+		return previous;
+	}
+
+	/**
+	 * Stops recording notifications on a current thread and restores
+	 * a previous recording.
+	 *
+	 * @param previous the previous recording returned from {@link #start()}
+	 * @return the recorded notifications
+	 */
+	public static List<Runnable> stop(List<Runnable> previous) {
+		List<Runnable> recorded = recording.get();
+		if (previous != null) {
+			recording.set(previous);
+		} else {
+			recording.remove();
+		}
+		return recorded;
+	}
+
+	/**
+	 * Checks if notifications are recorded on a current thread.
+	 *
+	 * @return true, if notifications are recorded
+	 */
+	public static boolean isRecording() {
+		return recording.get() != null;
+	}
+
+	/**
+	 * Records a notification if a current thread is recording.
+	 *
+	 * @param notification the notification
+	 * @return true, if notification was recorded
+	 */
+	public static boolean record(Runnable notification) {
+		List<Runnable> recorded = recording.get();
+		if (recorded == null) {
+			return false;
+		}
+		recorded.add(notification);
+		return true;
+	}
+
+	/**
+	 * Delivers recorded notifications.
+	 *
+	 * @param notifications the notifications
+	 */
+	public static void replay(List<Runnable> notifications) {
+		if (notifications == null) {
+			return;
+		}
+		for (Runnable notification : notifications) {
+			notification.run();
+		}
+	}
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.statemachine.state.State;
+
+/**
+ * Immutable index of a state hierarchy. Every state known to a machine,
+ * including states of submachines and regions, is given a dense ordinal
+ * together with a parent, a depth and a set of descendants. Index is built
+ * once when a state machine is initialized so that hierarchy queries don't
+ * need to build recursive state collections.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ */
+public class StateHierarchyIndex<S, E> {
+
+	private final Map<State<S, E>, Integer> ordinals;
+
+	private final List<State<S, E>> states;
+
+	private final int[] parents;
+
+	private final int[] depths;
+
+	private final int[] roots;
+
+	private final BitSet[] descendants;
+
+	/**
+	 * Instantiates a new state hierarchy index.
+	 *
+	 * @param topStates the top level states of a machine
+	 */
+	public StateHierarchyIndex(Collection<State<S, E>> topStates) {
+		Map<State<S, E>, Integer> ordinals = new IdentityHashMap<State<S, E>, Integer>();
+		List<State<S, E>> states = new ArrayList<State<S, E>>();
+		List<Integer> roots = new ArrayList<Integer>();
+		for (State<S, E> top : topStates) {
+			int root = register(top, ordinals, states, roots, -1);
+			for (State<S, E> state : top.getStates()) {
+				register(state, ordinals, states, roots, root);
+			}
+		}
+
+		int size = states.size();
+		this.descendants = new BitSet[size];
+		for (int i = 0; i < size; i++) {
+			State<S, E> state = states.get(i);
+			BitSet bits = new BitSet(size);
+			for (State<S, E> s : state.getStates()) {
+				Integer ordinal = ordinals.get(s);
+				if (ordinal != null && s != state) {
+					bits.set(ordinal);
+				}
+			}
+			descendants[i] = bits;
+		}
+
+		// depth is a number of ancestors and a parent is an
+		// ancestor one level up
+		this.depths = new int[size];
+		this.parents = new int[size];
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				if (descendants[j].get(i)) {
+					depths[i]++;
+				}
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			parents[i] = -1;
+			for (int j = 0; j < size; j++) {
+				if (descendants[j].get(i) && depths[j] == depths[i] - 1) {
+					parents[i] = j;
+					break;
+				}
+			}
+		}
+
+		this.roots = new int[size];
+		for (int i = 0; i < size; i++) {
+			this.roots[i] = roots.get(i);
+		}
+		this.ordinals = ordinals;
+		this.states = states;
+	}
+
+	/**
+	 * Checks if a state is known to this index.
+	 *
+	 * @param state the state
+	 * @return true, if state is indexed
+	 */
+	public boolean contains(State<S, E> state) {
+		return state != null && ordinals.containsKey(state);
+	}
+
+	/**
+	 * Gets the number of indexed states.
+	 *
+	 * @return the number of indexed states
+	 */
+	public int size() {
+		return states.size();
+	}
+
+	/**
+	 * Gets the ordinal given to a state. Ordinals are dense starting
+	 * from zero and are assigned in a same order for machines built from
+	 * a same configuration.
+	 *
+	 * @param state the state
+	 * @return the ordinal or -1 if state is not indexed
+	 */
+	public int getOrdinal(State<S, E> state) {
+		Integer ordinal = state != null ? ordinals.get(state) : null;
+		return ordinal != null ? ordinal : -1;
+	}
+
+	/**
+	 * Checks if a right hand state is a substate of a left hand state
+	 * on any depth. State is not a substate of itself.
+	 *
+	 * @param left the super state
+	 * @param right the sub state
+	 * @return true, if right is a substate of left
+	 * @throws IllegalArgumentException if left is not indexed
+	 */
+	public boolean isSubstate(State<S, E> left, State<S, E> right) {
+		int l = ordinal(left);
+		Integer r = right != null ? ordinals.get(right) : null;
+		return r != null && descendants[l].get(r);
+	}
+
+	/**
+	 * Checks if a right hand state is a substate of a left hand state
+	 * on any depth using state ordinals.
+	 *
+	 * @param left the ordinal of a super state
+	 * @param right the ordinal of a sub state
+	 * @return true, if right is a substate of left
+	 */
+	public boolean isSubstate(int left, int right) {
+		return left >= 0 && left < descendants.length && right >= 0 && descendants[left].get(right);
+	}
+
+	/**
+	 * Gets the top level state of a machine which is either a given state
+	 * itself or its ancestor.
+	 *
+	 * @param state the state
+	 * @return the top level state or null if state is not indexed
+	 */
+	public State<S, E> getRoot(State<S, E> state) {
+		Integer ordinal = state != null ? ordinals.get(state) : null;
+		return ordinal != null ? states.get(roots[ordinal]) : null;
+	}
+
+	/**
+	 * Gets the parent of a state.
+	 *
+	 * @param state the state
+	 * @return the parent or null if state is a top level state
+	 * @throws IllegalArgumentException if state is not indexed
+	 */
+	public State<S, E> getParent(State<S, E> state) {
+		int parent = parents[ordinal(state)];
+		return parent < 0 ? null : states.get(parent);
+	}
+
+	/**
+	 * Gets the depth of a state. Top level states have depth zero.
+	 *
+	 * @param state the state
+	 * @return the depth
+	 * @throws IllegalArgumentException if state is not indexed
+	 */
+	public int getDepth(State<S, E> state) {
+		return depths[ordinal(state)];
+	}
+
+	/**
+	 * Find the least common ancestor of two states. Either one of states
+	 * is returned if it contains the other one.
+	 *
+	 * @param left the left state
+	 * @param right the right state
+	 * @return the least common ancestor or null if states don't share one
+	 * @throws IllegalArgumentException if either state is not indexed
+	 */
+	public State<S, E> findLca(State<S, E> left, State<S, E> right) {
+		int l = ordinal(left);
+		int r = ordinal(right);
+		while (depths[l] > depths[r]) {
+			l = parents[l];
+		}
+		while (depths[r] > depths[l]) {
+			r = parents[r];
+		}
+		while (l != r) {
+			l = parents[l];
+			r = parents[r];
+			if (l < 0 || r < 0) {
+				return null;
+			}
+		}
+		return states.get(l);
+	}
+
+	private int ordinal(State<S, E> state) {
+		Integer ordinal = state != null ? ordinals.get(state) : null;
+		if (ordinal == null) {
+			throw new IllegalArgumentException("State " + state + " is not indexed");
+		}
+		return ordinal;
+	}
+
+	private static <S, E> int register(State<S, E> state, Map<State<S, E>, Integer> ordinals,
+			List<State<S, E>> states, List<Integer> roots, int root) {
+		Integer ordinal = ordinals.get(state);
+		if (ordinal == null) {
+			ordinal = states.size();
+			ordinals.put(state, ordinal);
+			states.add(state);
+			roots.add(root < 0 ? ordinal : root);
+		}
+		return ordinal;
+	}
+
+}
@@ -15,11 +15,16 @@
  */
 package org.springframework.statemachine.support;
 
+import java.util.Iterator;
+import java.util.List;
+
 import org.springframework.messaging.Message;
+import org.springframework.statemachine.EventResult;
 import org.springframework.statemachine.StateContext;
 import org.springframework.statemachine.StateMachine;
 import org.springframework.statemachine.transition.Transition;
 import org.springframework.statemachine.trigger.Trigger;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
 /**
  * Interface for a {@link StateMachine} event executor.
@@ -32,19 +37,34 @@ import org.springframework.statemachine.trigger.Trigger;
 public interface StateMachineExecutor<S, E> {
 
 	/**
-	 * Queue event.
+	 * Queue event. Event is queued into a priority lane given with a
+	 * {@link org.springframework.statemachine.StateMachineSystemConstants#EVENT_PRIORITY}
+	 * message header.
 	 *
 	 * @param message the message
+	 * @return true, if event was queued
 	 */
-	void queueEvent(Message<E> message);
+	boolean queueEvent(Message<E> message);
 
 	/**
 	 * Queue trigger.
 	 *
 	 * @param trigger the trigger
 	 * @param message the message
+	 * @return true, if trigger was queued
+	 */
+	boolean queueTrigger(Trigger<S, E> trigger, Message<E> message);
+
+	/**
+	 * Queue trigger with a future which is completed when
+	 * a trigger has been processed.
+	 *
+	 * @param trigger the trigger
+	 * @param message the message
+	 * @param future the future to complete, may be null
+	 * @return true, if trigger was queued
 	 */
-	void queueTrigger(Trigger<S, E> trigger, Message<E> message);
+	boolean queueTrigger(Trigger<S, E> trigger, Message<E> message, SettableListenableFuture<EventResult<S, E>> future);
 
 	/**
 	 * Queue deferred event.
@@ -58,6 +78,30 @@ public interface StateMachineExecutor<S, E> {
 	 */
 	void execute();
 
+	/**
+	 * Send a batch of events. Whole batch is processed within a single
+	 * execution instead of scheduling an execution per event. Every event
+	 * is offered to a given acceptor and fully processed before a next event
+	 * is offered. This method returns when all events have been processed
+	 * unless it is called from within a running execution, in which case
+	 * events are only offered for acceptance and processed once a current
+	 * execution finishes. Events of a batch still waiting when executor is
+	 * stopped or when an execution can't be scheduled are reported as not
+	 * accepted.
+	 *
+	 * @param events the events
+	 * @param acceptor the acceptor deciding if event is accepted
+	 * @return the acceptance results in order of given events
+	 */
+	List<Boolean> sendEvents(Iterator<Message<E>> events, StateMachineExecutorAcceptor<E> acceptor);
+
+	/**
+	 * Gets the event queue metrics.
+	 *
+	 * @return the event queue metrics
+	 */
+	EventQueueMetrics getEventQueueMetrics();
+
 	/**
 	 * Sets the if initial stage is enabled.
 	 *
@@ -86,6 +130,13 @@ public interface StateMachineExecutor<S, E> {
 	 */
 	void setStateMachineExecutorTransit(StateMachineExecutorTransit<S, E> stateMachineExecutorTransit);
 
+	/**
+	 * Sets the state machine executor expiry.
+	 *
+	 * @param stateMachineExecutorExpiry the state machine executor expiry
+	 */
+	void setStateMachineExecutorExpiry(StateMachineExecutorExpiry<E> stateMachineExecutorExpiry);
+
 	/**
 	 * Adds the state machine interceptor.
 	 *
@@ -93,6 +144,21 @@ public interface StateMachineExecutor<S, E> {
 	 */
 	void addStateMachineInterceptor(StateMachineInterceptor<S, E> interceptor);
 
+	/**
+	 * Callback interface when executor wants to offer an event for acceptance.
+	 */
+	public interface StateMachineExecutorAcceptor<E> {
+
+		/**
+		 * Called when executor wants to know if event is accepted.
+		 *
+		 * @param message the message
+		 * @return true, if event was accepted
+		 */
+		boolean accept(Message<E> message);
+
+	}
+
 	/**
 	 * Callback interface when executor wants to handle transit.
 	 */
@@ -109,4 +175,19 @@ public interface StateMachineExecutor<S, E> {
 
 	}
 
+	/**
+	 * Callback interface when executor discards an expired event.
+	 */
+	public interface StateMachineExecutorExpiry<E> {
+
+		/**
+		 * Called when executor discarded an event because its
+		 * deadline passed before it was processed.
+		 *
+		 * @param message the message
+		 */
+		void expired(Message<E> message);
+
+	}
+
 }
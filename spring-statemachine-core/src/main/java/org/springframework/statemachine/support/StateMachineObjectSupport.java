@@ -25,6 +25,7 @@ import org.springframework.messaging.Message;
 import org.springframework.statemachine.StateMachine;
 import org.springframework.statemachine.event.StateMachineEventPublisher;
 import org.springframework.statemachine.listener.CompositeStateMachineListener;
+import org.springframework.statemachine.listener.EventExpiredListener;
 import org.springframework.statemachine.listener.StateMachineListener;
 import org.springframework.statemachine.state.State;
 import org.springframework.statemachine.transition.Transition;
@@ -133,6 +134,16 @@ public abstract class StateMachineObjectSupport<S, E> extends LifecycleObjectSup
 		}
 	}
 
+	protected void notifyEventExpired(Message<E> event) {
+		stateListener.eventExpired(event);
+		if (contextEventsEnabled) {
+			StateMachineEventPublisher eventPublisher = getStateMachineEventPublisher();
+			if (eventPublisher != null) {
+				eventPublisher.publishEventExpired(this, event);
+			}
+		}
+	}
+
 	protected void notifyTransitionStart(Transition<S,E> transition) {
 		stateListener.transitionStarted(transition);
 		if (contextEventsEnabled) {
@@ -215,59 +226,166 @@ public abstract class StateMachineObjectSupport<S, E> extends LifecycleObjectSup
 	/**
 	 * This class is used to relay listener events from a submachines which works
 	 * as its own listener context. User only connects to main root machine and
-	 * expects to get events for all machines from there.
+	 * expects to get events for all machines from there. Events are recorded
+	 * instead of relayed if a {@link NotificationRecorder} is recording, in
+	 * which case a recorded notification goes through a relay again when
+	 * replayed as a replaying thread may itself be recording.
 	 */
-	protected class StateMachineListenerRelay implements StateMachineListener<S,E> {
+	protected class StateMachineListenerRelay implements StateMachineListener<S,E>, EventExpiredListener<E> {
 
 		@Override
-		public void stateChanged(State<S, E> from, State<S, E> to) {
-			stateListener.stateChanged(from, to);
-			stateChangedInRelay();
+		public void stateChanged(final State<S, E> from, final State<S, E> to) {
+			if (NotificationRecorder.isRecording()) {
+				NotificationRecorder.record(new Runnable() {
+					@Override
+					public void run() {
+						stateChanged(from, to);
+					}
+				});
+			} else {
+				stateListener.stateChanged(from, to);
+				stateChangedInRelay();
+			}
 		}
 
 		@Override
-		public void stateEntered(State<S, E> state) {
-			stateListener.stateEntered(state);
+		public void stateEntered(final State<S, E> state) {
+			if (NotificationRecorder.isRecording()) {
+				NotificationRecorder.record(new Runnable() {
+					@Override
+					public void run() {
+						stateEntered(state);
+					}
+				});
+			} else {
+				stateListener.stateEntered(state);
+			}
 		}
 
 		@Override
-		public void stateExited(State<S, E> state) {
-			stateListener.stateExited(state);
+		public void stateExited(final State<S, E> state) {
+			if (NotificationRecorder.isRecording()) {
+				NotificationRecorder.record(new Runnable() {
+					@Override
+					public void run() {
+						stateExited(state);
+					}
+				});
+			} else {
+				stateListener.stateExited(state);
+			}
 		}
 
 		@Override
-		public void eventNotAccepted(Message<E> event) {
-			stateListener.eventNotAccepted(event);
+		public void eventNotAccepted(final Message<E> event) {
+			if (NotificationRecorder.isRecording()) {
+				NotificationRecorder.record(new Runnable() {
+					@Override
+					public void run() {
+						eventNotAccepted(event);
+					}
+				});
+			} else {
+				stateListener.eventNotAccepted(event);
+			}
 		}
 
 		@Override
-		public void transition(Transition<S, E> transition) {
-			stateListener.transition(transition);
+		public void eventExpired(final Message<E> event) {
+			if (NotificationRecorder.isRecording()) {
+				NotificationRecorder.record(new Runnable() {
+					@Override
+					public void run() {
+						eventExpired(event);
+					}
+				});
+			} else {
+				stateListener.eventExpired(event);
+			}
+		}
+
+		@Override
+		public void transition(final Transition<S, E> transition) {
+			if (NotificationRecorder.isRecording()) {
+				NotificationRecorder.record(new Runnable() {
+					@Override
+					public void run() {
+						transition(transition);
+					}
+				});
+			} else {
+				stateListener.transition(transition);
+			}
 		}
 
 		@Override
-		public void transitionStarted(Transition<S, E> transition) {
-			stateListener.transitionStarted(transition);
+		public void transitionStarted(final Transition<S, E> transition) {
+			if (NotificationRecorder.isRecording()) {
+				NotificationRecorder.record(new Runnable() {
+					@Override
+					public void run() {
+						transitionStarted(transition);
+					}
+				});
+			} else {
+				stateListener.transitionStarted(transition);
+			}
 		}
 
 		@Override
-		public void transitionEnded(Transition<S, E> transition) {
-			stateListener.transitionEnded(transition);
+		public void transitionEnded(final Transition<S, E> transition) {
+			if (NotificationRecorder.isRecording()) {
+				NotificationRecorder.record(new Runnable() {
+					@Override
+					public void run() {
+						transitionEnded(transition);
+					}
+				});
+			} else {
+				stateListener.transitionEnded(transition);
+			}
 		}
 
 		@Override
-		public void stateMachineStarted(StateMachine<S, E> stateMachine) {
-			stateListener.stateMachineStarted(stateMachine);
+		public void stateMachineStarted(final StateMachine<S, E> stateMachine) {
+			if (NotificationRecorder.isRecording()) {
+				NotificationRecorder.record(new Runnable() {
+					@Override
+					public void run() {
+						stateMachineStarted(stateMachine);
+					}
+				});
+			} else {
+				stateListener.stateMachineStarted(stateMachine);
+			}
 		}
 
 		@Override
-		public void stateMachineStopped(StateMachine<S, E> stateMachine) {
-			stateListener.stateMachineStopped(stateMachine);
+		public void stateMachineStopped(final StateMachine<S, E> stateMachine) {
+			if (NotificationRecorder.isRecording()) {
+				NotificationRecorder.record(new Runnable() {
+					@Override
+					public void run() {
+						stateMachineStopped(stateMachine);
+					}
+				});
+			} else {
+				stateListener.stateMachineStopped(stateMachine);
+			}
 		}
 
 		@Override
-		public void stateMachineError(StateMachine<S, E> stateMachine, Exception exception) {
-			stateListener.stateMachineError(stateMachine, exception);
+		public void stateMachineError(final StateMachine<S, E> stateMachine, final Exception exception) {
+			if (NotificationRecorder.isRecording()) {
+				NotificationRecorder.record(new Runnable() {
+					@Override
+					public void run() {
+						stateMachineError(stateMachine, exception);
+					}
+				});
+			} else {
+				stateListener.stateMachineError(stateMachine, exception);
+			}
 		}
 
 	}
@@ -42,9 +42,7 @@ public abstract class StateMachineUtils {
 		if (left == null) {
 			return false;
 		}
-		Collection<State<S, E>> c = left.getStates();
-		c.remove(left);
-		return c.contains(right);
+		return left != right && left.getStates().contains(right);
 	}
 
 	/**
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * {@link KeyedTaskExecutor} routing tasks by a key onto a fixed set of
+ * single-threaded stripes. Tasks with a same key are always executed
+ * in order by a same thread, thus a large number of state machines can
+ * share a small number of threads without per-machine threads or locks.
+ * <p>
+ * When used as a task executor for a state machine, events are dispatched
+ * using a machine id as a key and every drain of a machine event queue
+ * processes at most a drain quota of events before a machine is put back
+ * to the end of its stripe. This way a busy machine can't starve other
+ * machines sharing a same stripe.
+ * <p>
+ * Stripes queue waiting tasks without a limit unless a stripe capacity
+ * is given, in which case a task offered to a full stripe is rejected
+ * with a {@link TaskRejectedException}.
+ *
+ * @author Janne Valkealahti
+ *
+ */
+public class StripedTaskExecutor implements KeyedTaskExecutor, DisposableBean {
+
+	private static final int DEFAULT_DRAIN_QUOTA = 64;
+
+	private final ThreadPoolExecutor[] stripes;
+
+	private final int drainQuota;
+
+	private final int stripeCapacity;
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Instantiates a new striped task executor with a default drain quota.
+	 *
+	 * @param stripes the number of stripes
+	 */
+	public StripedTaskExecutor(int stripes) {
+		this(stripes, DEFAULT_DRAIN_QUOTA);
+	}
+
+	/**
+	 * Instantiates a new striped task executor.
+	 *
+	 * @param stripes the number of stripes
+	 * @param drainQuota the max number of events processed per drain
+	 */
+	public StripedTaskExecutor(int stripes, int drainQuota) {
+		this(stripes, drainQuota, 0);
+	}
+
+	/**
+	 * Instantiates a new striped task executor with a bounded number of
+	 * waiting tasks per stripe.
+	 *
+	 * @param stripes the number of stripes
+	 * @param drainQuota the max number of events processed per drain
+	 * @param stripeCapacity the max number of waiting tasks per stripe,
+	 *        zero or negative for unbounded stripes
+	 */
+	public StripedTaskExecutor(int stripes, int drainQuota, int stripeCapacity) {
+		Assert.isTrue(stripes > 0, "Number of stripes must be positive");
+		Assert.isTrue(drainQuota > 0, "Drain quota must be positive");
+		this.drainQuota = drainQuota;
+		this.stripeCapacity = stripeCapacity;
+		this.stripes = new ThreadPoolExecutor[stripes];
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("StripedTaskExecutor-");
+		threadFactory.setDaemon(true);
+		for (int i = 0; i < stripes; i++) {
+			this.stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, stripeCapacity > 0
+					? new LinkedBlockingQueue<Runnable>(stripeCapacity) : new LinkedBlockingQueue<Runnable>(),
+					threadFactory);
+		}
+	}
+
+	/**
+	 * Execute a task on a next stripe in a round robin fashion.
+	 *
+	 * @param task the task
+	 */
+	@Override
+	public void execute(Runnable task) {
+		execute(stripes[(next.getAndIncrement() & Integer.MAX_VALUE) % stripes.length], task);
+	}
+
+	/**
+	 * Execute a task on a stripe chosen by a given key. Tasks with equal
+	 * keys are executed in order of submission.
+	 *
+	 * @param key the key
+	 * @param task the task
+	 */
+	@Override
+	public void execute(Object key, Runnable task) {
+		Assert.notNull(key, "Key must be set");
+		execute(stripes[getStripe(key)], task);
+	}
+
+	/**
+	 * Gets the stripe index for a key.
+	 *
+	 * @param key the key
+	 * @return the stripe index
+	 */
+	public int getStripe(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return (h & Integer.MAX_VALUE) % stripes.length;
+	}
+
+	/**
+	 * Gets the number of stripes.
+	 *
+	 * @return the number of stripes
+	 */
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	/**
+	 * Gets the max number of events processed per drain.
+	 *
+	 * @return the drain quota
+	 */
+	@Override
+	public int getDrainQuota() {
+		return drainQuota;
+	}
+
+	/**
+	 * Gets the max number of waiting tasks per stripe. Zero or negative
+	 * value indicates unbounded stripes.
+	 *
+	 * @return the stripe capacity
+	 */
+	public int getStripeCapacity() {
+		return stripeCapacity;
+	}
+
+	/**
+	 * Gets the number of tasks waiting on a stripe.
+	 *
+	 * @param stripe the stripe index
+	 * @return the number of waiting tasks
+	 */
+	public int getQueueDepth(int stripe) {
+		return stripes[stripe].getQueue().size();
+	}
+
+	/**
+	 * Shutdown all stripes. Already submitted tasks are executed.
+	 */
+	public void shutdown() {
+		for (ThreadPoolExecutor stripe : stripes) {
+			stripe.shutdown();
+		}
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		shutdown();
+	}
+
+	private static void execute(ThreadPoolExecutor stripe, Runnable task) {
+		try {
+			stripe.execute(task);
+		} catch (RejectedExecutionException e) {
+			throw new TaskRejectedException("Executor [" + stripe + "] did not accept task: " + task, e);
+		}
+	}
+
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.transition.Transition;
+import org.springframework.statemachine.trigger.DefaultTriggerContext;
+import org.springframework.statemachine.trigger.Trigger;
+
+/**
+ * Immutable dispatch index mapping a source state id and an event into
+ * candidate {@link Transition}s. Index is built once when a state machine
+ * is initialized so that dispatching an event only needs to look up
+ * active state ids instead of scanning all transitions.
+ * <p>
+ * Lookups taking a collection of active state ids walk those ids from
+ * the deepest state to the outermost state, thus candidates are returned
+ * in hierarchy order.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ */
+public class TransitionDispatchIndex<S, E> {
+
+	private final Map<S, Map<E, List<Transition<S, E>>>> eventTransitions;
+
+	private final Map<S, List<Transition<S, E>>> evaluatedTransitions;
+
+	private final Map<S, List<State<S, E>>> deferringStates;
+
+	private final Map<S, Set<E>> sourceEvents;
+
+	/**
+	 * Instantiates a new transition dispatch index.
+	 *
+	 * @param transitions the transitions to index
+	 */
+	public TransitionDispatchIndex(Collection<Transition<S, E>> transitions) {
+		this(transitions, true);
+	}
+
+	/**
+	 * Instantiates a new transition dispatch index. Subclasses keeping
+	 * event triggered transitions in their own structures can disable
+	 * indexing those in this class.
+	 *
+	 * @param transitions the transitions to index
+	 * @param indexEvents whether to index event triggered transitions
+	 * @see #getTransitions(Object, Object)
+	 * @see #getEvents(Object)
+	 */
+	protected TransitionDispatchIndex(Collection<Transition<S, E>> transitions, boolean indexEvents) {
+		Map<S, Map<E, List<Transition<S, E>>>> byEvent = new HashMap<S, Map<E, List<Transition<S, E>>>>();
+		Map<S, List<Transition<S, E>>> byEvaluation = new HashMap<S, List<Transition<S, E>>>();
+		Map<S, List<State<S, E>>> deferring = new HashMap<S, List<State<S, E>>>();
+
+		for (Transition<S, E> transition : transitions) {
+			State<S, E> source = transition.getSource();
+			S id = source.getId();
+
+			// deferred events are only checked from states which are
+			// a source of a transition
+			if (source.getDeferredEvents() != null && !source.getDeferredEvents().isEmpty()) {
+				List<State<S, E>> states = deferring.get(id);
+				if (states == null) {
+					states = new ArrayList<State<S, E>>();
+					deferring.put(id, states);
+				}
+				if (!states.contains(source)) {
+					states.add(source);
+				}
+			}
+
+			Trigger<S, E> trigger = transition.getTrigger();
+			if (trigger == null) {
+				continue;
+			}
+			E event = trigger.getEvent();
+			if (event != null) {
+				if (!indexEvents) {
+					continue;
+				}
+				Map<E, List<Transition<S, E>>> events = byEvent.get(id);
+				if (events == null) {
+					events = new HashMap<E, List<Transition<S, E>>>(4);
+					byEvent.put(id, events);
+				}
+				List<Transition<S, E>> list = events.get(event);
+				if (list == null) {
+					list = new ArrayList<Transition<S, E>>(1);
+					events.put(event, list);
+				}
+				list.add(transition);
+			} else {
+				// triggers without an event, like timers, can only
+				// be matched by asking the trigger itself
+				List<Transition<S, E>> list = byEvaluation.get(id);
+				if (list == null) {
+					list = new ArrayList<Transition<S, E>>(1);
+					byEvaluation.put(id, list);
+				}
+				list.add(transition);
+			}
+		}
+
+		Map<S, Set<E>> events = new HashMap<S, Set<E>>();
+		for (Entry<S, Map<E, List<Transition<S, E>>>> entry : byEvent.entrySet()) {
+			for (Entry<E, List<Transition<S, E>>> e : entry.getValue().entrySet()) {
+				e.setValue(Collections.unmodifiableList(e.getValue()));
+			}
+			events.put(entry.getKey(), Collections.unmodifiableSet(entry.getValue().keySet()));
+		}
+		this.eventTransitions = byEvent;
+		this.sourceEvents = events;
+		this.evaluatedTransitions = byEvaluation;
+		this.deferringStates = deferring;
+	}
+
+	/**
+	 * Creates a dispatch index for given transitions. If all source state
+	 * ids and all trigger events are constants of a single enum type, an
+	 * {@link EnumTransitionDispatchIndex} is returned.
+	 *
+	 * @param <S> the type of state
+	 * @param <E> the type of event
+	 * @param transitions the transitions to index
+	 * @return the transition dispatch index
+	 */
+	public static <S, E> TransitionDispatchIndex<S, E> create(Collection<Transition<S, E>> transitions) {
+		Class<?> stateType = null;
+		Class<?> eventType = null;
+		for (Transition<S, E> transition : transitions) {
+			stateType = resolveEnumType(stateType, transition.getSource().getId());
+			if (stateType == null) {
+				return new TransitionDispatchIndex<S, E>(transitions);
+			}
+			Trigger<S, E> trigger = transition.getTrigger();
+			if (trigger != null && trigger.getEvent() != null) {
+				eventType = resolveEnumType(eventType, trigger.getEvent());
+				if (eventType == null) {
+					return new TransitionDispatchIndex<S, E>(transitions);
+				}
+			}
+		}
+		if (stateType == null || eventType == null) {
+			return new TransitionDispatchIndex<S, E>(transitions);
+		}
+		return new EnumTransitionDispatchIndex<S, E>(transitions, stateType, eventType);
+	}
+
+	/**
+	 * Gets the transitions having a source state with a given id and
+	 * triggered by a given event.
+	 *
+	 * @param id the source state id
+	 * @param event the event
+	 * @return the transitions, never null
+	 */
+	public List<Transition<S, E>> getTransitions(S id, E event) {
+		Map<E, List<Transition<S, E>>> events = eventTransitions.get(id);
+		if (events == null) {
+			return Collections.emptyList();
+		}
+		List<Transition<S, E>> list = events.get(event);
+		return list != null ? list : Collections.<Transition<S, E>>emptyList();
+	}
+
+	/**
+	 * Gets the events triggering transitions having a source state
+	 * with a given id.
+	 *
+	 * @param id the source state id
+	 * @return the events, never null
+	 */
+	public Set<E> getEvents(S id) {
+		Set<E> events = sourceEvents.get(id);
+		return events != null ? events : Collections.<E>emptySet();
+	}
+
+	/**
+	 * Find candidate transitions for an event from given active state ids.
+	 * Transitions from a deepest state are returned first.
+	 *
+	 * @param ids the active state ids
+	 * @param event the event
+	 * @return the candidate transitions, never null
+	 */
+	public List<Transition<S, E>> findTransitions(Collection<S> ids, E event) {
+		if (event == null || ids == null) {
+			return Collections.emptyList();
+		}
+		List<Transition<S, E>> found = null;
+		boolean copied = false;
+		ListIterator<S> iterator = reverseIterator(ids);
+		while (iterator.hasPrevious()) {
+			List<Transition<S, E>> list = getTransitions(iterator.previous(), event);
+			if (list.isEmpty()) {
+				continue;
+			}
+			if (found == null) {
+				found = list;
+			} else {
+				if (!copied) {
+					found = new ArrayList<Transition<S, E>>(found);
+					copied = true;
+				}
+				for (Transition<S, E> t : list) {
+					if (!found.contains(t)) {
+						found.add(t);
+					}
+				}
+			}
+		}
+		return found != null ? found : Collections.<Transition<S, E>>emptyList();
+	}
+
+	/**
+	 * Find a first {@link Trigger} from given active state ids which
+	 * would fire for an event.
+	 *
+	 * @param ids the active state ids
+	 * @param event the event
+	 * @return the trigger or null if none fires
+	 */
+	public Trigger<S, E> findTrigger(Collection<S> ids, E event) {
+		if (ids == null) {
+			return null;
+		}
+		ListIterator<S> iterator = reverseIterator(ids);
+		while (iterator.hasPrevious()) {
+			S id = iterator.previous();
+			List<Transition<S, E>> list = getTransitions(id, event);
+			if (!list.isEmpty()) {
+				return list.get(0).getTrigger();
+			}
+			List<Transition<S, E>> evaluated = evaluatedTransitions.get(id);
+			if (evaluated != null) {
+				DefaultTriggerContext<S, E> context = new DefaultTriggerContext<S, E>(event);
+				for (Transition<S, E> t : evaluated) {
+					if (t.getTrigger().evaluate(context)) {
+						return t.getTrigger();
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if an event is deferred by any of states with given active ids.
+	 *
+	 * @param ids the active state ids
+	 * @param event the event
+	 * @return true, if event is deferred
+	 */
+	public boolean isDeferred(Collection<S> ids, E event) {
+		if (ids == null || deferringStates.isEmpty()) {
+			return false;
+		}
+		for (S id : ids) {
+			List<State<S, E>> states = deferringStates.get(id);
+			if (states != null) {
+				for (State<S, E> state : states) {
+					if (state.getDeferredEvents().contains(event)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private static Class<?> resolveEnumType(Class<?> type, Object value) {
+		if (!(value instanceof Enum)) {
+			return null;
+		}
+		Class<?> valueType = ((Enum<?>) value).getDeclaringClass();
+		return type == null || type == valueType ? valueType : null;
+	}
+
+	private static <S> ListIterator<S> reverseIterator(Collection<S> ids) {
+		List<S> list = ids instanceof List ? (List<S>) ids : new ArrayList<S>(ids);
+		return list.listIterator(list.size());
+	}
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.statemachine.state.PseudoStateKind;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.transition.Transition;
+
+/**
+ * Immutable execution plan of a {@link Transition} compiled from a least
+ * common ancestor of its source and target. Plan contains an ordered list
+ * of states to exit, starting from a source and going up to an outermost
+ * exited state, and an ordered list of states to enter, starting from an
+ * outermost entered state and going down to a target. States which are
+ * both exited and entered, like a submachine state which is a source of
+ * an external transition into its own substate, are re-entered and thus
+ * restart their submachines.
+ * <p>
+ * Active substates of an outermost exited state are exited and substates
+ * of a target are entered when submachines and regions are started. If a
+ * target is a transient pseudo state, like a choice or a fork, its final
+ * target is known only at runtime and all states under a least common
+ * ancestor can be entered.
+ * <p>
+ * States are referred by their ordinals in a {@link StateHierarchyIndex}.
+ * Machines built from a same configuration get same ordinals, thus a plan
+ * can be shared by all of them.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ */
+public class TransitionPlan<S, E> {
+
+	private final int source;
+
+	private final int target;
+
+	private final int[] exits;
+
+	private final int[] entries;
+
+	private final int entryScope;
+
+	/**
+	 * Instantiates a new transition plan.
+	 *
+	 * @param source the ordinal of a source or -1 if source is not known
+	 * @param target the ordinal of a target or -1 if target is not known
+	 * @param exits the ordinals of states to exit in order
+	 * @param entries the ordinals of states to enter in order
+	 * @param entryScope the ordinal of a state whose substates are entered or -1 for all states
+	 */
+	public TransitionPlan(int source, int target, int[] exits, int[] entries, int entryScope) {
+		this.source = source;
+		this.target = target;
+		this.exits = exits.clone();
+		this.entries = entries.clone();
+		this.entryScope = entryScope;
+	}
+
+	/**
+	 * Compile a plan for a transition between two states. States not known
+	 * to an index are considered to be outside of it, thus a transition
+	 * without a known source exits all states not containing a target and
+	 * a transition without a known target enters all states.
+	 *
+	 * @param <S> the type of state
+	 * @param <E> the type of event
+	 * @param source the source state
+	 * @param target the target state
+	 * @param index the state hierarchy index
+	 * @return the compiled transition plan
+	 */
+	public static <S, E> TransitionPlan<S, E> compile(State<S, E> source, State<S, E> target,
+			StateHierarchyIndex<S, E> index) {
+		State<S, E> s = index.contains(source) ? source : null;
+		State<S, E> t = index.contains(target) ? target : null;
+
+		// external transition between a state and its substate leaves
+		// the outer state, thus a boundary is a parent of an ancestor
+		State<S, E> boundary = null;
+		if (s != null && t != null) {
+			boundary = index.findLca(s, t);
+			if (boundary == s || boundary == t) {
+				boundary = index.getParent(boundary);
+			}
+		}
+
+		List<State<S, E>> exitPath = path(s, boundary, index);
+		List<State<S, E>> entryPath = path(t, boundary, index);
+		int[] exits = new int[exitPath.size()];
+		for (int i = 0; i < exits.length; i++) {
+			exits[i] = index.getOrdinal(exitPath.get(i));
+		}
+		int[] entries = new int[entryPath.size()];
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = index.getOrdinal(entryPath.get(entries.length - 1 - i));
+		}
+
+		int entryScope;
+		if (s == null || t == null || isTransient(t)) {
+			entryScope = index.getOrdinal(boundary);
+		} else {
+			entryScope = index.getOrdinal(t);
+		}
+		return new TransitionPlan<S, E>(index.getOrdinal(s), index.getOrdinal(t), exits, entries, entryScope);
+	}
+
+	/**
+	 * Gets the ordinal of a source.
+	 *
+	 * @return the source ordinal or -1 if source is not known
+	 */
+	public int getSource() {
+		return source;
+	}
+
+	/**
+	 * Gets the ordinal of a target.
+	 *
+	 * @return the target ordinal or -1 if target is not known
+	 */
+	public int getTarget() {
+		return target;
+	}
+
+	/**
+	 * Gets the ordinals of states to exit, innermost state first.
+	 *
+	 * @return the ordinals of states to exit
+	 */
+	public int[] getExits() {
+		return exits.clone();
+	}
+
+	/**
+	 * Gets the ordinals of states to enter, outermost state first.
+	 *
+	 * @return the ordinals of states to enter
+	 */
+	public int[] getEntries() {
+		return entries.clone();
+	}
+
+	/**
+	 * Gets the ordinals of states which are both exited and entered,
+	 * outermost state first.
+	 *
+	 * @return the ordinals of re-entered states
+	 */
+	public int[] getReentries() {
+		int count = 0;
+		int[] reentries = new int[entries.length];
+		for (int entry : entries) {
+			if (indexOf(exits, entry) >= 0) {
+				reentries[count++] = entry;
+			}
+		}
+		return Arrays.copyOf(reentries, count);
+	}
+
+	/**
+	 * Checks if a state is exited when transition is taken.
+	 *
+	 * @param ordinal the state ordinal
+	 * @param index the state hierarchy index plan was compiled with
+	 * @return true, if state should be exited
+	 */
+	public boolean isExit(int ordinal, StateHierarchyIndex<S, E> index) {
+		if (ordinal < 0) {
+			return false;
+		}
+		if (indexOf(exits, ordinal) >= 0) {
+			return true;
+		}
+		if (exits.length > 0) {
+			return index.isSubstate(exits[exits.length - 1], ordinal);
+		}
+		// without a known source everything but states
+		// containing a target are exited
+		int position = indexOf(entries, ordinal);
+		return position < 0 || position == entries.length - 1;
+	}
+
+	/**
+	 * Checks if a state is entered when transition is taken.
+	 *
+	 * @param ordinal the state ordinal
+	 * @param index the state hierarchy index plan was compiled with
+	 * @return true, if state should be entered
+	 */
+	public boolean isEntry(int ordinal, StateHierarchyIndex<S, E> index) {
+		if (ordinal < 0) {
+			return false;
+		}
+		if (indexOf(entries, ordinal) >= 0) {
+			return true;
+		}
+		return entryScope < 0 || index.isSubstate(entryScope, ordinal);
+	}
+
+	/**
+	 * Checks if a state is re-entered when transition is taken.
+	 *
+	 * @param ordinal the state ordinal
+	 * @return true, if state is both exited and entered
+	 */
+	public boolean isReentry(int ordinal) {
+		return ordinal >= 0 && indexOf(exits, ordinal) >= 0 && indexOf(entries, ordinal) >= 0;
+	}
+
+	@Override
+	public String toString() {
+		return "TransitionPlan [source=" + source + ", target=" + target + ", exits=" + Arrays.toString(exits)
+				+ ", entries=" + Arrays.toString(entries) + ", entryScope=" + entryScope + "]";
+	}
+
+	private static <S, E> List<State<S, E>> path(State<S, E> from, State<S, E> boundary, StateHierarchyIndex<S, E> index) {
+		List<State<S, E>> path = new ArrayList<State<S, E>>();
+		State<S, E> state = from;
+		while (state != null && state != boundary) {
+			path.add(state);
+			state = index.getParent(state);
+		}
+		return path;
+	}
+
+	private static <S, E> boolean isTransient(State<S, E> state) {
+		// initial and end states are real states, other
+		// pseudo states only pass a transition along
+		return state.getPseudoState() != null && state.getPseudoState().getKind() != PseudoStateKind.INITIAL
+				&& state.getPseudoState().getKind() != PseudoStateKind.END;
+	}
+
+	private static int indexOf(int[] ordinals, int ordinal) {
+		for (int i = 0; i < ordinals.length; i++) {
+			if (ordinals[i] == ordinal) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.statemachine.state.State;
+
+/**
+ * Cache of {@link TransitionPlan}s keyed by ordinals of a source and
+ * a target. As ordinals are same for all machines built from a same
+ * configuration, a cache can be shared by those machines so that each plan
+ * is compiled only once.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ */
+public class TransitionPlanCache<S, E> {
+
+	private final ConcurrentMap<Long, TransitionPlan<S, E>> plans = new ConcurrentHashMap<Long, TransitionPlan<S, E>>();
+
+	/**
+	 * Gets a plan for a transition between two states, compiling it
+	 * on a first use.
+	 *
+	 * @param source the source state
+	 * @param target the target state
+	 * @param index the state hierarchy index
+	 * @return the transition plan
+	 */
+	public TransitionPlan<S, E> getTransitionPlan(State<S, E> source, State<S, E> target,
+			StateHierarchyIndex<S, E> index) {
+		Long key = ((long) index.getOrdinal(source) << 32) | (index.getOrdinal(target) & 0xffffffffL);
+		TransitionPlan<S, E> plan = plans.get(key);
+		if (plan == null) {
+			plan = TransitionPlan.compile(source, target, index);
+			TransitionPlan<S, E> existing = plans.putIfAbsent(key, plan);
+			if (existing != null) {
+				plan = existing;
+			}
+		}
+		return plan;
+	}
+
+	/**
+	 * Gets the number of compiled plans.
+	 *
+	 * @return the number of compiled plans
+	 */
+	public int size() {
+		return plans.size();
+	}
+
+}
@@ -15,17 +15,24 @@
  */
 package org.springframework.statemachine;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.junit.Test;
 import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.statemachine.action.Action;
 import org.springframework.statemachine.state.DefaultPseudoState;
 import org.springframework.statemachine.state.EnumState;
@@ -104,6 +111,100 @@ public class EnumStateMachineTests extends AbstractStateMachineTests {
 		assertThat(state, is(stateS3));
 	}
 
+	@Test
+	public void testSendEventsBatch() {
+		ObjectStateMachine<TestStates, TestEvents> machine = buildSimpleMachine();
+		machine.setTaskExecutor(new SyncTaskExecutor());
+		machine.afterPropertiesSet();
+		machine.start();
+		assertThat(machine.getState().getIds(), contains(TestStates.SI));
+
+		List<Boolean> results = machine.sendEvents(Arrays.asList(
+				MessageBuilder.withPayload(TestEvents.E1).build(),
+				MessageBuilder.withPayload(TestEvents.E2).build(),
+				MessageBuilder.withPayload(TestEvents.E1).build(),
+				MessageBuilder.withPayload(TestEvents.E3).build()));
+		assertThat(results, contains(true, true, false, true));
+		assertThat(machine.getState().getIds(), contains(TestStates.S3));
+	}
+
+	@Test
+	public void testSendEventsBatchWithThreadPool() throws Exception {
+		ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+		taskExecutor.setCorePoolSize(1);
+		taskExecutor.afterPropertiesSet();
+		ObjectStateMachine<TestStates, TestEvents> machine = buildSimpleMachine();
+		machine.setTaskExecutor(taskExecutor);
+		machine.afterPropertiesSet();
+		machine.start();
+
+		List<Boolean> results = machine.sendEvents(Arrays.asList(
+				MessageBuilder.withPayload(TestEvents.E1).build(),
+				MessageBuilder.withPayload(TestEvents.E2).build(),
+				MessageBuilder.withPayload(TestEvents.E3).build()));
+		assertThat(results, contains(true, true, true));
+		assertThat(machine.getState().getIds(), contains(TestStates.S3));
+		taskExecutor.shutdown();
+	}
+
+	@Test
+	public void testSendEventsBatchWithoutTaskExecutor() {
+		ObjectStateMachine<TestStates, TestEvents> machine = buildSimpleMachine();
+		machine.afterPropertiesSet();
+		machine.start();
+
+		List<Boolean> results = machine.sendEvents(Arrays.asList(
+				MessageBuilder.withPayload(TestEvents.E1).build(),
+				MessageBuilder.withPayload(TestEvents.E2).build()));
+		assertThat(results, contains(true, true));
+		assertThat(machine.getState().getIds(), contains(TestStates.S2));
+	}
+
+	@Test
+	public void testSendEventsBatchRejectedByTaskExecutor() {
+		RejectingTaskExecutor taskExecutor = new RejectingTaskExecutor();
+		ObjectStateMachine<TestStates, TestEvents> machine = buildSimpleMachine();
+		machine.setTaskExecutor(taskExecutor);
+		machine.afterPropertiesSet();
+		machine.start();
+		assertThat(machine.getState().getIds(), contains(TestStates.SI));
+
+		taskExecutor.reject = true;
+		TaskRejectedException error = null;
+		try {
+			machine.sendEvents(Arrays.asList(MessageBuilder.withPayload(TestEvents.E1).build()));
+		} catch (TaskRejectedException e) {
+			error = e;
+		}
+		assertThat(error, notNullValue());
+
+		taskExecutor.reject = false;
+		List<Boolean> results = machine.sendEvents(Arrays.asList(MessageBuilder.withPayload(TestEvents.E1).build()));
+		assertThat(results, contains(true));
+		assertThat(machine.getState().getIds(), contains(TestStates.S1));
+	}
+
+	@Test
+	public void testSendEventsBatchTimeout() {
+		HoldingTaskExecutor taskExecutor = new HoldingTaskExecutor();
+		ObjectStateMachine<TestStates, TestEvents> machine = buildSimpleMachine();
+		machine.setTaskExecutor(taskExecutor);
+		machine.setSendEventsTimeout(100);
+		machine.afterPropertiesSet();
+		machine.start();
+		taskExecutor.runHeld();
+		assertThat(machine.getState().getIds(), contains(TestStates.SI));
+
+		// nothing drains held tasks, thus batch times out without
+		// offering its events which are then never processed
+		List<Boolean> results = machine.sendEvents(Arrays.asList(
+				MessageBuilder.withPayload(TestEvents.E1).build(),
+				MessageBuilder.withPayload(TestEvents.E2).build()));
+		assertThat(results, contains(false, false));
+		taskExecutor.runHeld();
+		assertThat(machine.getState().getIds(), contains(TestStates.SI));
+	}
+
 	@Test
 	public void testDeferredEvents() {
 		PseudoState<TestStates,TestEvents> pseudoState = new DefaultPseudoState<TestStates,TestEvents>(PseudoStateKind.INITIAL);
@@ -197,6 +298,30 @@ public class EnumStateMachineTests extends AbstractStateMachineTests {
 		machine.sendEvent(MessageBuilder.withPayload(TestEvents.E1).build());
 	}
 
+	private static ObjectStateMachine<TestStates, TestEvents> buildSimpleMachine() {
+		PseudoState<TestStates,TestEvents> pseudoState = new DefaultPseudoState<TestStates,TestEvents>(PseudoStateKind.INITIAL);
+		State<TestStates,TestEvents> stateSI = new EnumState<TestStates,TestEvents>(TestStates.SI, pseudoState);
+		State<TestStates,TestEvents> stateS1 = new EnumState<TestStates,TestEvents>(TestStates.S1);
+		State<TestStates,TestEvents> stateS2 = new EnumState<TestStates,TestEvents>(TestStates.S2);
+		State<TestStates,TestEvents> stateS3 = new EnumState<TestStates,TestEvents>(TestStates.S3);
+
+		Collection<State<TestStates,TestEvents>> states = new ArrayList<State<TestStates,TestEvents>>();
+		states.add(stateSI);
+		states.add(stateS1);
+		states.add(stateS2);
+		states.add(stateS3);
+
+		Collection<Transition<TestStates,TestEvents>> transitions = new ArrayList<Transition<TestStates,TestEvents>>();
+		transitions.add(new DefaultExternalTransition<TestStates,TestEvents>(stateSI, stateS1, null, TestEvents.E1, null,
+				new EventTrigger<TestStates,TestEvents>(TestEvents.E1)));
+		transitions.add(new DefaultExternalTransition<TestStates,TestEvents>(stateS1, stateS2, null, TestEvents.E2, null,
+				new EventTrigger<TestStates,TestEvents>(TestEvents.E2)));
+		transitions.add(new DefaultExternalTransition<TestStates,TestEvents>(stateS2, stateS3, null, TestEvents.E3, null,
+				new EventTrigger<TestStates,TestEvents>(TestEvents.E3)));
+
+		return new ObjectStateMachine<TestStates, TestEvents>(states, transitions, stateSI);
+	}
+
 	private static class LoggingAction implements Action<TestStates, TestEvents> {
 
 		private static final Log log = LogFactory.getLog(LoggingAction.class);
@@ -214,4 +339,38 @@ public class EnumStateMachineTests extends AbstractStateMachineTests {
 
 	}
 
+	private static class HoldingTaskExecutor implements TaskExecutor {
+
+		final List<Runnable> held = new ArrayList<Runnable>();
+
+		@Override
+		public synchronized void execute(Runnable task) {
+			held.add(task);
+		}
+
+		void runHeld() {
+			List<Runnable> tasks;
+			synchronized (this) {
+				tasks = new ArrayList<Runnable>(held);
+				held.clear();
+			}
+			for (Runnable task : tasks) {
+				task.run();
+			}
+		}
+	}
+
+	private static class RejectingTaskExecutor implements TaskExecutor {
+
+		volatile boolean reject;
+
+		@Override
+		public void execute(Runnable task) {
+			if (reject) {
+				throw new TaskRejectedException("Rejected");
+			}
+			task.run();
+		}
+	}
+
 }
@@ -20,12 +20,16 @@ import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
@@ -33,12 +37,17 @@ import org.springframework.context.annotation.AnnotationConfigApplicationContext
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.statemachine.action.Action;
 import org.springframework.statemachine.config.EnableStateMachine;
 import org.springframework.statemachine.config.EnumStateMachineConfigurerAdapter;
+import org.springframework.statemachine.config.builders.StateMachineConfigurationConfigurer;
 import org.springframework.statemachine.config.builders.StateMachineStateConfigurer;
 import org.springframework.statemachine.config.builders.StateMachineTransitionConfigurer;
 import org.springframework.statemachine.event.StateMachineEventPublisherConfiguration;
+import org.springframework.statemachine.listener.StateMachineListenerAdapter;
 import org.springframework.statemachine.region.Region;
 import org.springframework.statemachine.state.DefaultPseudoState;
 import org.springframework.statemachine.state.EnumState;
@@ -347,6 +356,67 @@ public class RegionMachineTests extends AbstractStateMachineTests {
 		assertThat(Math.abs(action1.now-action2.now), lessThan(1999l));
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testRegionExecutorJoinsRegions() throws Exception {
+		context.register(Config5.class);
+		context.refresh();
+		ObjectStateMachine<TestStates,TestEvents> machine =
+				context.getBean(StateMachineSystemConstants.DEFAULT_ID_STATEMACHINE, ObjectStateMachine.class);
+		ThreadRecordingSleepAction action1 = context.getBean("action1", ThreadRecordingSleepAction.class);
+		ThreadRecordingSleepAction action2 = context.getBean("action2", ThreadRecordingSleepAction.class);
+		StateChangeRecorder recorder = new StateChangeRecorder();
+		machine.addStateListener(recorder);
+		machine.start();
+		assertThat(machine.getState().getIds(), containsInAnyOrder(TestStates.S10, TestStates.S20));
+
+		recorder.changed.clear();
+		long start = System.currentTimeMillis();
+		machine.sendEvent(TestEvents.E1);
+		long took = System.currentTimeMillis() - start;
+
+		// regions are joined before sendEvent returns and both
+		// entry actions were executed in parallel
+		assertThat(machine.getState().getIds(), containsInAnyOrder(TestStates.S11, TestStates.S21));
+		assertThat(action1.now, greaterThan(0l));
+		assertThat(action2.now, greaterThan(0l));
+		assertThat(took, lessThan(1400l));
+		assertThat(action1.thread, not(sameInstance(action2.thread)));
+
+		// notifications are delivered in region order
+		List<TestStates> expected = new ArrayList<TestStates>();
+		for (Region<TestStates, TestEvents> region : ((RegionState<TestStates, TestEvents>) machine.getState()).getRegions()) {
+			expected.add(region.getState().getId());
+		}
+		assertThat(recorder.changed, is(expected));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testRejectingRegionExecutorRunsRegionsOnCallingThread() throws Exception {
+		context.register(Config6.class);
+		context.refresh();
+		ObjectStateMachine<TestStates,TestEvents> machine =
+				context.getBean(StateMachineSystemConstants.DEFAULT_ID_STATEMACHINE, ObjectStateMachine.class);
+		ThreadRecordingSleepAction action1 = context.getBean("action1", ThreadRecordingSleepAction.class);
+		ThreadRecordingSleepAction action2 = context.getBean("action2", ThreadRecordingSleepAction.class);
+		StateChangeRecorder recorder = new StateChangeRecorder();
+		machine.addStateListener(recorder);
+		machine.start();
+
+		recorder.changed.clear();
+		machine.sendEvent(TestEvents.E1);
+
+		// rejected region is still processed before sendEvent returns
+		assertThat(machine.getState().getIds(), containsInAnyOrder(TestStates.S11, TestStates.S21));
+		assertThat(action1.thread, sameInstance(action2.thread));
+		List<TestStates> expected = new ArrayList<TestStates>();
+		for (Region<TestStates, TestEvents> region : ((RegionState<TestStates, TestEvents>) machine.getState()).getRegions()) {
+			expected.add(region.getState().getId());
+		}
+		assertThat(recorder.changed, is(expected));
+	}
+
 	@Configuration
 	@EnableStateMachine
 	static class Config1 extends EnumStateMachineConfigurerAdapter<TestStates, TestEvents> {
@@ -497,6 +567,153 @@ public class RegionMachineTests extends AbstractStateMachineTests {
 
 	}
 
+	@Configuration
+	@EnableStateMachine
+	static class Config5 extends EnumStateMachineConfigurerAdapter<TestStates, TestEvents> {
+
+		@Override
+		public void configure(StateMachineConfigurationConfigurer<TestStates, TestEvents> config) throws Exception {
+			config
+				.withConfiguration()
+					.regionExecutor(regionExecutor());
+		}
+
+		@Override
+		public void configure(StateMachineStateConfigurer<TestStates, TestEvents> states) throws Exception {
+			states
+				.withStates()
+					.initial(TestStates.S10)
+					.state(TestStates.S10)
+					.state(TestStates.S11, action1(), null)
+					.and()
+				.withStates()
+					.initial(TestStates.S20)
+					.state(TestStates.S20)
+					.state(TestStates.S21, action2(), null);
+		}
+
+		@Override
+		public void configure(StateMachineTransitionConfigurer<TestStates, TestEvents> transitions) throws Exception {
+			transitions
+				.withExternal()
+					.source(TestStates.S10)
+					.target(TestStates.S11)
+					.event(TestEvents.E1)
+					.and()
+				.withExternal()
+					.source(TestStates.S20)
+					.target(TestStates.S21)
+					.event(TestEvents.E1);
+		}
+
+		@Bean
+		public TaskExecutor regionExecutor() {
+			ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+			taskExecutor.setCorePoolSize(2);
+			return taskExecutor;
+		}
+
+		@Bean
+		public ThreadRecordingSleepAction action1() {
+			return new ThreadRecordingSleepAction(1000);
+		}
+
+		@Bean
+		public ThreadRecordingSleepAction action2() {
+			return new ThreadRecordingSleepAction(500);
+		}
+
+	}
+
+	@Configuration
+	@EnableStateMachine
+	static class Config6 extends EnumStateMachineConfigurerAdapter<TestStates, TestEvents> {
+
+		@Override
+		public void configure(StateMachineConfigurationConfigurer<TestStates, TestEvents> config) throws Exception {
+			config
+				.withConfiguration()
+					.regionExecutor(regionExecutor());
+		}
+
+		@Override
+		public void configure(StateMachineStateConfigurer<TestStates, TestEvents> states) throws Exception {
+			states
+				.withStates()
+					.initial(TestStates.S10)
+					.state(TestStates.S10)
+					.state(TestStates.S11, action1(), null)
+					.and()
+				.withStates()
+					.initial(TestStates.S20)
+					.state(TestStates.S20)
+					.state(TestStates.S21, action2(), null);
+		}
+
+		@Override
+		public void configure(StateMachineTransitionConfigurer<TestStates, TestEvents> transitions) throws Exception {
+			transitions
+				.withExternal()
+					.source(TestStates.S10)
+					.target(TestStates.S11)
+					.event(TestEvents.E1)
+					.and()
+				.withExternal()
+					.source(TestStates.S20)
+					.target(TestStates.S21)
+					.event(TestEvents.E1);
+		}
+
+		@Bean
+		public TaskExecutor regionExecutor() {
+			return new TaskExecutor() {
+
+				@Override
+				public void execute(Runnable task) {
+					throw new TaskRejectedException("Rejected " + task);
+				}
+			};
+		}
+
+		@Bean
+		public ThreadRecordingSleepAction action1() {
+			return new ThreadRecordingSleepAction(1000);
+		}
+
+		@Bean
+		public ThreadRecordingSleepAction action2() {
+			return new ThreadRecordingSleepAction(500);
+		}
+
+	}
+
+	static class ThreadRecordingSleepAction extends TestSleepAction {
+
+		volatile Thread thread;
+
+		public ThreadRecordingSleepAction(long sleep) {
+			super(sleep);
+		}
+
+		@Override
+		public void execute(StateContext<TestStates, TestEvents> context) {
+			thread = Thread.currentThread();
+			super.execute(context);
+		}
+
+	}
+
+	static class StateChangeRecorder extends StateMachineListenerAdapter<TestStates, TestEvents> {
+
+		final List<TestStates> changed = Collections.synchronizedList(new ArrayList<TestStates>());
+
+		@Override
+		public void stateChanged(State<TestStates, TestEvents> from, State<TestStates, TestEvents> to) {
+			changed.add(to.getId());
+		}
+
+	}
+
 	@Configuration
 	@EnableStateMachine
 	static class Config4 extends EnumStateMachineConfigurerAdapter<TestStates, TestEvents> {
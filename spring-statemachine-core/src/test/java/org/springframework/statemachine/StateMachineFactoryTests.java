@@ -16,6 +16,8 @@
 package org.springframework.statemachine;
 
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 import org.junit.Test;
@@ -49,6 +51,28 @@ public class StateMachineFactoryTests extends AbstractStateMachineTests {
 		ctx.close();
 	}
 
+	@SuppressWarnings({ "unchecked" })
+	@Test
+	public void testMachinesShareCompiledModel() throws Exception {
+		AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(Config.class);
+
+		ObjectStateMachineFactory<TestStates, TestEvents> stateMachineFactory =
+				ctx.getBean(StateMachineSystemConstants.DEFAULT_ID_STATEMACHINEFACTORY, ObjectStateMachineFactory.class);
+		StateMachine<TestStates,TestEvents> machine1 = stateMachineFactory.getStateMachine();
+		Object steps = TestUtils.readField("buildSteps", stateMachineFactory);
+		StateMachine<TestStates,TestEvents> machine2 = stateMachineFactory.getStateMachine();
+		assertThat(TestUtils.readField("buildSteps", stateMachineFactory), sameInstance(steps));
+
+		// machines share a definition but not a runtime state
+		machine1.start();
+		machine2.start();
+		machine1.sendEvent(TestEvents.E1);
+		assertThat(machine1.getState().getIds(), contains(TestStates.S2));
+		assertThat(machine2.getState().getIds(), contains(TestStates.S1));
+		assertThat(machine1.getState(), not(sameInstance(machine2.getState())));
+		ctx.close();
+	}
+
 	@Configuration
 	@EnableStateMachineFactory
 	static class Config extends EnumStateMachineConfigurerAdapter<TestStates, TestEvents> {
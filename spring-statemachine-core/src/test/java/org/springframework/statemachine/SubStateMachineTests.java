@@ -34,6 +34,7 @@ import org.springframework.core.task.SyncTaskExecutor;
 import org.springframework.statemachine.action.Action;
 import org.springframework.statemachine.config.EnableStateMachine;
 import org.springframework.statemachine.config.EnumStateMachineConfigurerAdapter;
+import org.springframework.statemachine.config.builders.StateMachineConfigurationConfigurer;
 import org.springframework.statemachine.config.builders.StateMachineStateConfigurer;
 import org.springframework.statemachine.config.builders.StateMachineTransitionConfigurer;
 import org.springframework.statemachine.event.StateMachineEventPublisherConfiguration;
@@ -409,6 +410,35 @@ public class SubStateMachineTests extends AbstractStateMachineTests {
 		assertThat(machine.getState().getIds(), contains(TestStates2.IDLE, TestStates2.OPEN));
 	}
 
+	@Test
+	public void testLazySubmachine() throws Exception {
+		context.register(BaseConfig.class, Config4.class);
+		context.refresh();
+		@SuppressWarnings("unchecked")
+		ObjectStateMachine<TestStates,TestEvents> machine =
+				context.getBean(StateMachineSystemConstants.DEFAULT_ID_STATEMACHINE, ObjectStateMachine.class);
+		StateMachineState<TestStates, TestEvents> s2 = null;
+		for (State<TestStates, TestEvents> state : machine.getStates()) {
+			if (state.getId() == TestStates.S2) {
+				s2 = (StateMachineState<TestStates, TestEvents>) state;
+			}
+		}
+		StateMachine<TestStates, TestEvents> submachine = s2.getSubmachine();
+		assertThat((Boolean)TestUtils.readField("initialized", machine), is(false));
+		assertThat((Boolean)TestUtils.readField("initialized", submachine), is(false));
+
+		machine.start();
+		assertThat(machine.getState().getIds(), contains(TestStates.S1));
+		assertThat((Boolean)TestUtils.readField("initialized", machine), is(true));
+		assertThat((Boolean)TestUtils.readField("initialized", submachine), is(false));
+
+		machine.sendEvent(TestEvents.E1);
+		assertThat(machine.getState().getIds(), contains(TestStates.S2, TestStates.S20));
+		assertThat((Boolean)TestUtils.readField("initialized", submachine), is(true));
+		machine.sendEvent(TestEvents.E2);
+		assertThat(machine.getState().getIds(), contains(TestStates.S2, TestStates.S21));
+	}
+
 	@Configuration
 	@EnableStateMachine
 	public static class Config1 extends EnumStateMachineConfigurerAdapter<TestStates, TestEvents> {
@@ -536,4 +566,46 @@ public class SubStateMachineTests extends AbstractStateMachineTests {
 
 	}
 
+	@Configuration
+	@EnableStateMachine
+	static class Config4 extends EnumStateMachineConfigurerAdapter<TestStates, TestEvents> {
+
+		@Override
+		public void configure(StateMachineConfigurationConfigurer<TestStates, TestEvents> config) throws Exception {
+			config
+				.withConfiguration()
+					.lazyInit(true);
+		}
+
+		@Override
+		public void configure(StateMachineStateConfigurer<TestStates, TestEvents> states) throws Exception {
+			states
+				.withStates()
+					.initial(TestStates.S1)
+					.state(TestStates.S1)
+					.state(TestStates.S2)
+					.and()
+					.withStates()
+						.parent(TestStates.S2)
+						.initial(TestStates.S20)
+						.state(TestStates.S20)
+						.state(TestStates.S21);
+		}
+
+		@Override
+		public void configure(StateMachineTransitionConfigurer<TestStates, TestEvents> transitions) throws Exception {
+			transitions
+				.withExternal()
+					.source(TestStates.S1)
+					.target(TestStates.S2)
+					.event(TestEvents.E1)
+					.and()
+				.withExternal()
+					.source(TestStates.S20)
+					.target(TestStates.S21)
+					.event(TestEvents.E2);
+		}
+
+	}
+
 }
@@ -20,10 +20,12 @@ import static org.junit.Assert.assertThat;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 import org.junit.Test;
 import org.springframework.messaging.Message;
+import org.springframework.statemachine.EventResult;
 import org.springframework.statemachine.ExtendedState;
 import org.springframework.statemachine.StateMachine;
 import org.springframework.statemachine.StateMachineContext;
@@ -31,6 +33,7 @@ import org.springframework.statemachine.listener.StateMachineListener;
 import org.springframework.statemachine.state.State;
 import org.springframework.statemachine.support.StateMachineInterceptor;
 import org.springframework.statemachine.transition.Transition;
+import org.springframework.util.concurrent.ListenableFuture;
 
 public class StateMachineAccessTests {
 
@@ -122,6 +125,21 @@ public class StateMachineAccessTests {
 			return false;
 		}
 
+		@Override
+		public List<Boolean> sendEvents(Collection<Message<String>> events) {
+			return null;
+		}
+
+		@Override
+		public List<Boolean> sendEvents(Iterator<Message<String>> events) {
+			return null;
+		}
+
+		@Override
+		public ListenableFuture<EventResult<String, String>> sendEventAsync(Message<String> event) {
+			return null;
+		}
+
 		@Override
 		public State<String, String> getState() {
 			return null;
@@ -15,20 +15,35 @@
  */
 package org.springframework.statemachine.config;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 import org.springframework.beans.factory.support.StaticListableBeanFactory;
 import org.springframework.context.SmartLifecycle;
 import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.statemachine.EventResult;
+import org.springframework.statemachine.EventResult.ResultType;
+import org.springframework.statemachine.StateContext;
 import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineSystemConstants;
+import org.springframework.statemachine.action.Action;
 import org.springframework.statemachine.config.StateMachineBuilder.Builder;
 import org.springframework.statemachine.config.builders.StateMachineConfigBuilder;
 import org.springframework.statemachine.config.builders.StateMachineConfigurationConfig;
@@ -36,9 +51,15 @@ import org.springframework.statemachine.config.builders.StateMachineStateConfigu
 import org.springframework.statemachine.config.builders.StateMachineStates;
 import org.springframework.statemachine.config.builders.StateMachineTransitionConfigurer;
 import org.springframework.statemachine.config.builders.StateMachineTransitions;
+import org.springframework.statemachine.guard.Guard;
 import org.springframework.statemachine.listener.StateMachineListenerAdapter;
 import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.support.AbstractStateMachine;
+import org.springframework.statemachine.support.EventPriority;
+import org.springframework.statemachine.support.EventQueueMetrics;
+import org.springframework.statemachine.support.EventQueuePolicy;
 import org.springframework.statemachine.transition.Transition;
+import org.springframework.util.concurrent.ListenableFuture;
 
 public class ManualBuilderTests {
 
@@ -165,6 +186,630 @@ public class ManualBuilderTests {
 		assertThat(((SmartLifecycle)stateMachine).isRunning(), is(true));
 	}
 
+	@Test
+	public void testBoundedEventQueueRejects() throws Exception {
+		ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+		taskExecutor.setCorePoolSize(1);
+		taskExecutor.afterPropertiesSet();
+		final CountDownLatch actionLatch = new CountDownLatch(1);
+		final CountDownLatch actionEnteredLatch = new CountDownLatch(1);
+
+		Builder<String, String> builder = StateMachineBuilder.builder();
+
+		builder.configureConfiguration()
+			.withConfiguration()
+				.taskExecutor(taskExecutor)
+				.taskScheduler(new ConcurrentTaskScheduler())
+				.eventQueueCapacity(1)
+				.eventQueuePolicy(EventQueuePolicy.REJECT);
+
+		builder.configureStates()
+			.withStates()
+				.initial("S1").state("S2");
+
+		builder.configureTransitions()
+			.withExternal()
+				.source("S1").target("S2").event("E1")
+				.action(new Action<String, String>() {
+
+					@Override
+					public void execute(StateContext<String, String> context) {
+						actionEnteredLatch.countDown();
+						try {
+							actionLatch.await(2, TimeUnit.SECONDS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+
+		StateMachine<String, String> stateMachine = builder.build();
+		TestListener listener = new TestListener();
+		stateMachine.addStateListener(listener);
+		stateMachine.start();
+		assertThat(listener.stateChangedLatch.await(2, TimeUnit.SECONDS), is(true));
+
+		// executor is busy in an action, thus one event fits into a queue
+		assertThat(stateMachine.sendEvent("E1"), is(true));
+		assertThat(actionEnteredLatch.await(2, TimeUnit.SECONDS), is(true));
+		assertThat(stateMachine.sendEvent("E1"), is(true));
+		assertThat(stateMachine.sendEvent("E1"), is(false));
+
+		EventQueueMetrics metrics = ((AbstractStateMachine<String, String>)stateMachine).getEventQueueMetrics();
+		assertThat(metrics.getQueueCapacity(), is(1));
+		assertThat(metrics.getQueueDepth(), is(1));
+		assertThat(metrics.getRejectedCount(), is(1l));
+
+		listener.stateChangedLatch = new CountDownLatch(1);
+		actionLatch.countDown();
+		assertThat(listener.stateChangedLatch.await(2, TimeUnit.SECONDS), is(true));
+		assertThat(stateMachine.getState().getIds(), containsInAnyOrder("S2"));
+		taskExecutor.shutdown();
+	}
+
+	@Test
+	public void testHighPriorityEventProcessedFirst() throws Exception {
+		// normal priority E3 is sent first but high priority E2 wins
+		assertThat(sendWithPriority(EventPriority.HIGH), containsInAnyOrder("S3"));
+	}
+
+	@Test
+	public void testHighPriorityEventNameProcessedFirst() throws Exception {
+		assertThat(sendWithPriority("HIGH"), containsInAnyOrder("S3"));
+		assertThat(sendWithPriority("high"), containsInAnyOrder("S3"));
+	}
+
+	@Test
+	public void testUnknownPriorityEventProcessedAsNormal() throws Exception {
+		// E3 takes machine back to S1 where E2 is an internal transition
+		assertThat(sendWithPriority("URGENT"), containsInAnyOrder("S1"));
+		assertThat(sendWithPriority(1), containsInAnyOrder("S1"));
+	}
+
+	private static Collection<String> sendWithPriority(Object priority) throws Exception {
+		ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+		taskExecutor.setCorePoolSize(1);
+		taskExecutor.afterPropertiesSet();
+		final CountDownLatch actionLatch = new CountDownLatch(1);
+		final CountDownLatch actionEnteredLatch = new CountDownLatch(1);
+
+		Builder<String, String> builder = StateMachineBuilder.builder();
+
+		builder.configureConfiguration()
+			.withConfiguration()
+				.taskExecutor(taskExecutor)
+				.taskScheduler(new ConcurrentTaskScheduler());
+
+		builder.configureStates()
+			.withStates()
+				.initial("S1").state("S2").state("S3");
+
+		builder.configureTransitions()
+			.withExternal()
+				.source("S1").target("S2").event("E1")
+				.action(new Action<String, String>() {
+
+					@Override
+					public void execute(StateContext<String, String> context) {
+						actionEnteredLatch.countDown();
+						try {
+							actionLatch.await(2, TimeUnit.SECONDS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				})
+				.and()
+			.withInternal()
+				.source("S1").event("E2")
+				.and()
+			.withInternal()
+				.source("S1").event("E3")
+				.and()
+			.withExternal()
+				.source("S2").target("S3").event("E2")
+				.and()
+			.withExternal()
+				.source("S2").target("S1").event("E3")
+				.and()
+			.withInternal()
+				.source("S3").event("E3");
+
+		StateMachine<String, String> stateMachine = builder.build();
+		TestListener listener = new TestListener();
+		stateMachine.addStateListener(listener);
+		stateMachine.start();
+		assertThat(listener.stateChangedLatch.await(2, TimeUnit.SECONDS), is(true));
+
+		assertThat(stateMachine.sendEvent("E1"), is(true));
+		assertThat(actionEnteredLatch.await(2, TimeUnit.SECONDS), is(true));
+
+		// E1, E2 and E3 are each handled by one transition
+		assertThat(stateMachine.sendEvent("E3"), is(true));
+		assertThat(stateMachine.sendEvent(MessageBuilder.withPayload("E2")
+				.setHeader(StateMachineSystemConstants.EVENT_PRIORITY, priority).build()), is(true));
+
+		listener.transitionLatch = new CountDownLatch(3);
+		actionLatch.countDown();
+		assertThat(listener.transitionLatch.await(2, TimeUnit.SECONDS), is(true));
+		Collection<String> ids = stateMachine.getState().getIds();
+		taskExecutor.shutdown();
+		return ids;
+	}
+
+	@Test
+	public void testCallerThreadExecutionQueuesReentrantEvents() throws Exception {
+		final Builder<String, String> builder = StateMachineBuilder.builder();
+		final AtomicReference<StateMachine<String, String>> machine = new AtomicReference<StateMachine<String,String>>();
+		final AtomicReference<String> stateAfterSend = new AtomicReference<String>();
+
+		builder.configureConfiguration()
+			.withConfiguration()
+				.callerThreadExecution(true)
+				.taskScheduler(new ConcurrentTaskScheduler());
+
+		builder.configureStates()
+			.withStates()
+				.initial("S1").state("S2").state("S3");
+
+		builder.configureTransitions()
+			.withExternal()
+				.source("S1").target("S2").event("E1")
+				.action(new Action<String, String>() {
+
+					@Override
+					public void execute(StateContext<String, String> context) {
+						// event is only queued, not processed recursively
+						machine.get().sendEvent("E2");
+						stateAfterSend.set(machine.get().getState().getId());
+					}
+				})
+				.and()
+			.withInternal()
+				.source("S1").event("E2")
+				.and()
+			.withExternal()
+				.source("S2").target("S3").event("E2");
+
+		machine.set(builder.build());
+		machine.get().start();
+		assertThat(machine.get().getState().getIds(), containsInAnyOrder("S1"));
+
+		// processed fully when sendEvent returns
+		assertThat(machine.get().sendEvent("E1"), is(true));
+		assertThat(stateAfterSend.get(), is("S1"));
+		assertThat(machine.get().getState().getIds(), containsInAnyOrder("S3"));
+	}
+
+	@Test
+	public void testCallerThreadExecutionSerializesCallers() throws Exception {
+		final Builder<String, String> builder = StateMachineBuilder.builder();
+		final int[] count = new int[1];
+
+		builder.configureConfiguration()
+			.withConfiguration()
+				.callerThreadExecution(true)
+				.taskScheduler(new ConcurrentTaskScheduler());
+
+		builder.configureStates()
+			.withStates()
+				.initial("S1");
+
+		builder.configureTransitions()
+			.withInternal()
+				.source("S1").event("E1")
+				.action(new Action<String, String>() {
+
+					@Override
+					public void execute(StateContext<String, String> context) {
+						// not thread safe on purpose
+						count[0]++;
+					}
+				});
+
+		final StateMachine<String, String> stateMachine = builder.build();
+		stateMachine.start();
+
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					for (int j = 0; j < 1000; j++) {
+						stateMachine.sendEvent("E1");
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertThat(count[0], is(4000));
+	}
+
+	@Test
+	public void testCoalescableEvents() throws Exception {
+		ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+		taskExecutor.setCorePoolSize(1);
+		taskExecutor.afterPropertiesSet();
+		final CountDownLatch actionLatch = new CountDownLatch(1);
+		final CountDownLatch actionEnteredLatch = new CountDownLatch(1);
+		final List<Object> updates = new ArrayList<Object>();
+
+		Builder<String, String> builder = StateMachineBuilder.builder();
+
+		builder.configureConfiguration()
+			.withConfiguration()
+				.taskExecutor(taskExecutor)
+				.taskScheduler(new ConcurrentTaskScheduler())
+				.coalescableEvents("UPDATE");
+
+		builder.configureStates()
+			.withStates()
+				.initial("S1");
+
+		builder.configureTransitions()
+			.withInternal()
+				.source("S1").event("E1")
+				.action(new Action<String, String>() {
+
+					@Override
+					public void execute(StateContext<String, String> context) {
+						actionEnteredLatch.countDown();
+						try {
+							actionLatch.await(2, TimeUnit.SECONDS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				})
+				.and()
+			.withInternal()
+				.source("S1").event("UPDATE")
+				.action(new Action<String, String>() {
+
+					@Override
+					public void execute(StateContext<String, String> context) {
+						updates.add(context.getMessageHeader("value"));
+					}
+				})
+				.and()
+			.withInternal()
+				.source("S1").event("E2")
+				.action(new Action<String, String>() {
+
+					@Override
+					public void execute(StateContext<String, String> context) {
+						updates.add(context.getMessageHeader("value"));
+					}
+				});
+
+		StateMachine<String, String> stateMachine = builder.build();
+		TestListener listener = new TestListener();
+		stateMachine.addStateListener(listener);
+		stateMachine.start();
+		assertThat(listener.stateChangedLatch.await(2, TimeUnit.SECONDS), is(true));
+
+		// keep executor busy so that events pile up in a queue
+		assertThat(stateMachine.sendEvent("E1"), is(true));
+		assertThat(actionEnteredLatch.await(2, TimeUnit.SECONDS), is(true));
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(stateMachine.sendEvent(MessageBuilder.withPayload("UPDATE").setHeader("value", i).build()), is(true));
+		}
+		assertThat(stateMachine.sendEvent(MessageBuilder.withPayload("E2").setHeader("value", "a")
+				.setHeader(StateMachineSystemConstants.COALESCE_KEY, "key").build()), is(true));
+		assertThat(stateMachine.sendEvent(MessageBuilder.withPayload("E2").setHeader("value", "b")
+				.setHeader(StateMachineSystemConstants.COALESCE_KEY, "key").build()), is(true));
+
+		EventQueueMetrics metrics = ((AbstractStateMachine<String, String>)stateMachine).getEventQueueMetrics();
+		assertThat(metrics.getQueueDepth(), is(2));
+		assertThat(metrics.getCoalescedCount(), is(10l));
+
+		actionLatch.countDown();
+		taskExecutor.shutdown();
+		assertThat(taskExecutor.getThreadPoolExecutor().awaitTermination(2, TimeUnit.SECONDS), is(true));
+		assertThat(updates, contains((Object)9, "b"));
+	}
+
+	@Test
+	public void testExpiredEventsDiscarded() throws Exception {
+		ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+		taskExecutor.setCorePoolSize(1);
+		taskExecutor.afterPropertiesSet();
+		final CountDownLatch actionLatch = new CountDownLatch(1);
+		final CountDownLatch actionEnteredLatch = new CountDownLatch(1);
+		final List<String> executed = new ArrayList<String>();
+
+		Builder<String, String> builder = StateMachineBuilder.builder();
+
+		builder.configureConfiguration()
+			.withConfiguration()
+				.taskExecutor(taskExecutor)
+				.taskScheduler(new ConcurrentTaskScheduler());
+
+		builder.configureStates()
+			.withStates()
+				.initial("S1");
+
+		builder.configureTransitions()
+			.withInternal()
+				.source("S1").event("E1")
+				.action(new Action<String, String>() {
+
+					@Override
+					public void execute(StateContext<String, String> context) {
+						actionEnteredLatch.countDown();
+						try {
+							actionLatch.await(2, TimeUnit.SECONDS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				})
+				.and()
+			.withInternal()
+				.source("S1").event("E2")
+				.action(new Action<String, String>() {
+
+					@Override
+					public void execute(StateContext<String, String> context) {
+						executed.add(context.getMessageHeader("name").toString());
+					}
+				});
+
+		StateMachine<String, String> stateMachine = builder.build();
+		TestListener listener = new TestListener();
+		listener.eventExpiredLatch = new CountDownLatch(2);
+		stateMachine.addStateListener(listener);
+		stateMachine.start();
+		assertThat(listener.stateChangedLatch.await(2, TimeUnit.SECONDS), is(true));
+
+		// keep executor busy so that events expire in a queue
+		assertThat(stateMachine.sendEvent("E1"), is(true));
+		assertThat(actionEnteredLatch.await(2, TimeUnit.SECONDS), is(true));
+
+		long now = System.currentTimeMillis();
+		stateMachine.sendEvent(MessageBuilder.withPayload("E2").setHeader("name", "deadline")
+				.setHeader(StateMachineSystemConstants.EVENT_DEADLINE, now + 10).build());
+		stateMachine.sendEvent(MessageBuilder.withPayload("E2").setHeader("name", "ttl")
+				.setHeader(StateMachineSystemConstants.EVENT_TTL, 10).build());
+		stateMachine.sendEvent(MessageBuilder.withPayload("E2").setHeader("name", "live")
+				.setHeader(StateMachineSystemConstants.EVENT_DEADLINE, now + 60000).build());
+		Thread.sleep(50);
+		actionLatch.countDown();
+
+		assertThat(listener.eventExpiredLatch.await(2, TimeUnit.SECONDS), is(true));
+		taskExecutor.shutdown();
+		assertThat(taskExecutor.getThreadPoolExecutor().awaitTermination(2, TimeUnit.SECONDS), is(true));
+		assertThat(listener.eventExpired.size(), is(2));
+		assertThat(executed, contains("live"));
+		EventQueueMetrics metrics = ((AbstractStateMachine<String, String>)stateMachine).getEventQueueMetrics();
+		assertThat(metrics.getExpiredCount(), is(2l));
+	}
+
+	@Test
+	public void testSendEventAsyncResults() throws Exception {
+		ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+		taskExecutor.setCorePoolSize(1);
+		taskExecutor.afterPropertiesSet();
+
+		Builder<String, String> builder = StateMachineBuilder.builder();
+
+		builder.configureConfiguration()
+			.withConfiguration()
+				.taskExecutor(taskExecutor)
+				.taskScheduler(new ConcurrentTaskScheduler());
+
+		builder.configureStates()
+			.withStates()
+				.initial("S1").state("S2", "E3").state("S3");
+
+		builder.configureTransitions()
+			.withExternal()
+				.source("S1").target("S2").event("E1")
+				.and()
+			.withExternal()
+				.source("S2").target("S3").event("E2")
+				.and()
+			.withExternal()
+				.source("S3").target("S1").event("E3");
+
+		StateMachine<String, String> stateMachine = builder.build();
+		TestListener listener = new TestListener();
+		stateMachine.addStateListener(listener);
+		stateMachine.start();
+		assertThat(listener.stateChangedLatch.await(2, TimeUnit.SECONDS), is(true));
+
+		EventResult<String, String> result = stateMachine.sendEventAsync(
+				MessageBuilder.withPayload("E1").build()).get(2, TimeUnit.SECONDS);
+		assertThat(result.getResultType(), is(ResultType.ACCEPTED));
+		assertThat(result.getMessage().getPayload(), is("E1"));
+		assertThat(result.getTransition().getTarget().getId(), is("S2"));
+		assertThat(result.getStateIds(), containsInAnyOrder("S2"));
+
+		result = stateMachine.sendEventAsync(MessageBuilder.withPayload("E1").build()).get(2, TimeUnit.SECONDS);
+		assertThat(result.getResultType(), is(ResultType.DENIED));
+		assertThat(result.getTransition(), nullValue());
+		assertThat(result.getStateIds(), containsInAnyOrder("S2"));
+
+		result = stateMachine.sendEventAsync(MessageBuilder.withPayload("E3").build()).get(2, TimeUnit.SECONDS);
+		assertThat(result.getResultType(), is(ResultType.DEFERRED));
+		assertThat(result.getStateIds(), containsInAnyOrder("S2"));
+
+		// deferred E3 is processed right after E2
+		listener.stateChangedLatch = new CountDownLatch(2);
+		result = stateMachine.sendEventAsync(MessageBuilder.withPayload("E2").build()).get(2, TimeUnit.SECONDS);
+		assertThat(result.getResultType(), is(ResultType.ACCEPTED));
+		assertThat(result.getTransition().getTarget().getId(), is("S3"));
+		assertThat(listener.stateChangedLatch.await(2, TimeUnit.SECONDS), is(true));
+		assertThat(stateMachine.getState().getIds(), containsInAnyOrder("S1"));
+		taskExecutor.shutdown();
+	}
+
+	@Test
+	public void testSendEventAsyncResultsFromSubmachineAndRegions() throws Exception {
+		Builder<String, String> builder = StateMachineBuilder.builder();
+
+		builder.configureConfiguration()
+			.withConfiguration()
+				.taskExecutor(new SyncTaskExecutor())
+				.taskScheduler(new ConcurrentTaskScheduler());
+
+		builder.configureStates()
+			.withStates()
+				.initial("S1").state("S2")
+				.and()
+				.withStates()
+					.parent("S1")
+					.initial("S11").state("S12", "E4")
+					.and()
+				.withStates()
+					.parent("S2")
+					.initial("S21").state("S22", "E4")
+					.and()
+				.withStates()
+					.parent("S2")
+					.initial("S31").state("S32");
+
+		builder.configureTransitions()
+			.withExternal()
+				.source("S11").target("S12").event("E1")
+				.and()
+			.withExternal()
+				.source("S12").target("S11").event("E5")
+				.and()
+			.withExternal()
+				.source("S1").target("S2").event("E2")
+				.and()
+			.withExternal()
+				.source("S21").target("S22").event("E3")
+				.and()
+			.withExternal()
+				.source("S22").target("S21").event("E5")
+				.and()
+			.withExternal()
+				.source("S31").target("S32").event("E6");
+
+		StateMachine<String, String> stateMachine = builder.build();
+		stateMachine.start();
+
+		// handled by a submachine
+		EventResult<String, String> result = stateMachine.sendEventAsync(
+				MessageBuilder.withPayload("E1").build()).get(2, TimeUnit.SECONDS);
+		assertThat(result.getResultType(), is(ResultType.ACCEPTED));
+		assertThat(result.getTransition().getTarget().getId(), is("S12"));
+		assertThat(result.getStateIds(), containsInAnyOrder("S1", "S12"));
+
+		result = stateMachine.sendEventAsync(MessageBuilder.withPayload("E4").build()).get(2, TimeUnit.SECONDS);
+		assertThat(result.getResultType(), is(ResultType.DEFERRED));
+		assertThat(result.getTransition(), nullValue());
+
+		// denied by a submachine and handled by a machine itself
+		result = stateMachine.sendEventAsync(MessageBuilder.withPayload("E2").build()).get(2, TimeUnit.SECONDS);
+		assertThat(result.getResultType(), is(ResultType.ACCEPTED));
+		assertThat(result.getTransition().getTarget().getId(), is("S2"));
+		assertThat(result.getStateIds(), containsInAnyOrder("S2", "S21", "S31"));
+
+		// handled by one region and denied by other
+		result = stateMachine.sendEventAsync(MessageBuilder.withPayload("E3").build()).get(2, TimeUnit.SECONDS);
+		assertThat(result.getResultType(), is(ResultType.ACCEPTED));
+		assertThat(result.getTransition().getTarget().getId(), is("S22"));
+		assertThat(result.getStateIds(), containsInAnyOrder("S2", "S22", "S31"));
+
+		// deferred by one region and denied by other
+		result = stateMachine.sendEventAsync(MessageBuilder.withPayload("E4").build()).get(2, TimeUnit.SECONDS);
+		assertThat(result.getResultType(), is(ResultType.DEFERRED));
+		assertThat(result.getTransition(), nullValue());
+
+		result = stateMachine.sendEventAsync(MessageBuilder.withPayload("E6").build()).get(2, TimeUnit.SECONDS);
+		assertThat(result.getResultType(), is(ResultType.ACCEPTED));
+		assertThat(result.getTransition().getTarget().getId(), is("S32"));
+		assertThat(result.getStateIds(), containsInAnyOrder("S2", "S22", "S32"));
+
+		result = stateMachine.sendEventAsync(MessageBuilder.withPayload("E1").build()).get(2, TimeUnit.SECONDS);
+		assertThat(result.getResultType(), is(ResultType.DENIED));
+		assertThat(result.getStateIds(), containsInAnyOrder("S2", "S22", "S32"));
+	}
+
+	@Test
+	public void testSendEventAsyncDeniedByGuard() throws Exception {
+		Builder<String, String> builder = StateMachineBuilder.builder();
+
+		builder.configureConfiguration()
+			.withConfiguration()
+				.taskExecutor(new SyncTaskExecutor())
+				.taskScheduler(new ConcurrentTaskScheduler());
+
+		builder.configureStates()
+			.withStates()
+				.initial("S1").state("S2");
+
+		builder.configureTransitions()
+			.withExternal()
+				.source("S1").target("S2").event("E1")
+				.guard(new Guard<String, String>() {
+
+					@Override
+					public boolean evaluate(StateContext<String, String> context) {
+						return false;
+					}
+				});
+
+		StateMachine<String, String> stateMachine = builder.build();
+		stateMachine.start();
+
+		EventResult<String, String> result = stateMachine.sendEventAsync(
+				MessageBuilder.withPayload("E1").build()).get(2, TimeUnit.SECONDS);
+		assertThat(result.getResultType(), is(ResultType.DENIED));
+		assertThat(result.getTransition(), nullValue());
+		assertThat(result.getStateIds(), containsInAnyOrder("S1"));
+	}
+
+	@Test
+	public void testSendEventAsyncCompletedOnStop() throws Exception {
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		TaskExecutor taskExecutor = new TaskExecutor() {
+
+			@Override
+			public void execute(Runnable task) {
+				tasks.add(task);
+			}
+		};
+
+		Builder<String, String> builder = StateMachineBuilder.builder();
+
+		builder.configureConfiguration()
+			.withConfiguration()
+				.taskExecutor(taskExecutor)
+				.taskScheduler(new ConcurrentTaskScheduler());
+
+		builder.configureStates()
+			.withStates()
+				.initial("S1").state("S2");
+
+		builder.configureTransitions()
+			.withExternal()
+				.source("S1").target("S2").event("E1");
+
+		StateMachine<String, String> stateMachine = builder.build();
+		stateMachine.start();
+		// run an initial transition only
+		while (!tasks.isEmpty()) {
+			tasks.remove(0).run();
+		}
+		assertThat(stateMachine.getState().getIds(), containsInAnyOrder("S1"));
+
+		ListenableFuture<EventResult<String, String>> future = stateMachine.sendEventAsync(
+				MessageBuilder.withPayload("E1").build());
+		assertThat(future.isDone(), is(false));
+		stateMachine.stop();
+		assertThat(future.isDone(), is(true));
+		assertThat(future.get().getResultType(), is(ResultType.DENIED));
+	}
+
 	static class Config extends StateMachineConfigurerAdapter<String, String> {
 
 		@Override
@@ -190,7 +835,9 @@ public class ManualBuilderTests {
 
 		volatile CountDownLatch stateChangedLatch = new CountDownLatch(1);
 		volatile CountDownLatch transitionLatch = new CountDownLatch(0);
+		volatile CountDownLatch eventExpiredLatch = new CountDownLatch(1);
 		volatile int stateChangedCount = 0;
+		final List<Message<String>> eventExpired = new ArrayList<Message<String>>();
 
 		@Override
 		public void stateChanged(State<String, String> from, State<String, String> to) {
@@ -203,6 +850,12 @@ public class ManualBuilderTests {
 			transitionLatch.countDown();
 		}
 
+		@Override
+		public void eventExpired(Message<String> event) {
+			eventExpired.add(event);
+			eventExpiredLatch.countDown();
+		}
+
 	}
 
 }
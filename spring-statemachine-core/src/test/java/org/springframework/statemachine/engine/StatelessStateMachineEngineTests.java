@@ -0,0 +1,248 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.engine;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.statemachine.AbstractStateMachineTests;
+import org.springframework.statemachine.EventResult.ResultType;
+import org.springframework.statemachine.StateContext;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachineSystemConstants;
+import org.springframework.statemachine.action.Action;
+import org.springframework.statemachine.config.EnableStateMachineFactory;
+import org.springframework.statemachine.config.EnumStateMachineConfigurerAdapter;
+import org.springframework.statemachine.config.ObjectStateMachineFactory;
+import org.springframework.statemachine.config.StateData;
+import org.springframework.statemachine.config.builders.StateMachineStateConfigurer;
+import org.springframework.statemachine.config.builders.StateMachineStates;
+import org.springframework.statemachine.config.builders.StateMachineTransitionConfigurer;
+import org.springframework.statemachine.config.builders.StateMachineTransitions;
+import org.springframework.statemachine.config.builders.StateMachineTransitions.ChoiceData;
+import org.springframework.statemachine.config.builders.StateMachineTransitions.TransitionData;
+import org.springframework.statemachine.guard.Guard;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.transition.TransitionKind;
+import org.springframework.util.ObjectUtils;
+
+public class StatelessStateMachineEngineTests extends AbstractStateMachineTests {
+
+	@Override
+	protected AnnotationConfigApplicationContext buildContext() {
+		return new AnnotationConfigApplicationContext();
+	}
+
+	@Test
+	public void testTransitionsThroughHierarchy() throws Exception {
+		StatelessStateMachineEngine<TestStates, TestEvents> engine = buildEngine();
+
+		StateMachineContext<TestStates, TestEvents> context = engine.start(traceState());
+		assertThat(context.getState(), is(TestStates.SI));
+
+		StatelessEventResult<TestStates, TestEvents> result = engine.sendEvent(context, TestEvents.E1);
+		assertThat(result.getResultType(), is(ResultType.ACCEPTED));
+		assertThat(result.getStateIds(), contains(TestStates.S2, TestStates.S20));
+		assertThat(trace(result.getStateMachineContext()), contains("eS2", "eS20"));
+
+		result = engine.sendEvent(result.getStateMachineContext(), TestEvents.E2);
+		assertThat(result.getStateIds(), contains(TestStates.S2, TestStates.S21));
+		assertThat(trace(result.getStateMachineContext()), contains("eS2", "eS20", "xS20", "eS21"));
+
+		result = engine.sendEvent(result.getStateMachineContext(),
+				MessageBuilder.withPayload(TestEvents.E3).setHeader("choice", "s1").build());
+		assertThat(result.getStateIds(), contains(TestStates.S1));
+		assertThat(trace(result.getStateMachineContext()), contains("eS2", "eS20", "xS20", "eS21", "xS21", "xS2"));
+		assertThat(engine.isComplete(result.getStateMachineContext()), is(false));
+	}
+
+	@Test
+	public void testDeniedAndDeferred() throws Exception {
+		StatelessStateMachineEngine<TestStates, TestEvents> engine = buildEngine();
+		StateMachineContext<TestStates, TestEvents> context = engine.start(traceState());
+
+		StatelessEventResult<TestStates, TestEvents> result = engine.sendEvent(context, TestEvents.E2);
+		assertThat(result.getResultType(), is(ResultType.DENIED));
+		assertThat(result.getStateMachineContext(), sameInstance(context));
+
+		result = engine.sendEvent(context, TestEvents.E4);
+		assertThat(result.getResultType(), is(ResultType.DEFERRED));
+		assertThat(result.getStateIds(), contains(TestStates.SI));
+	}
+
+	@Test
+	public void testChoiceIntoEndState() throws Exception {
+		StatelessStateMachineEngine<TestStates, TestEvents> engine = buildEngine();
+		StateMachineContext<TestStates, TestEvents> context = engine.start(traceState());
+		context = engine.sendEvent(context, TestEvents.E1).getStateMachineContext();
+		context = engine.sendEvent(context, TestEvents.E3).getStateMachineContext();
+		assertThat(context.getState(), is(TestStates.SF));
+		assertThat(engine.isComplete(context), is(true));
+		assertThat(engine.sendEvent(context, TestEvents.E1).getResultType(), is(ResultType.DENIED));
+	}
+
+	@Test
+	public void testContextsAreIndependent() throws Exception {
+		StatelessStateMachineEngine<TestStates, TestEvents> engine = buildEngine();
+		List<StateMachineContext<TestStates, TestEvents>> contexts = new ArrayList<StateMachineContext<TestStates, TestEvents>>();
+		for (int i = 0; i < 100; i++) {
+			contexts.add(engine.start(traceState()));
+		}
+		for (int i = 0; i < 100; i += 2) {
+			contexts.set(i, engine.sendEvent(contexts.get(i), TestEvents.E1).getStateMachineContext());
+		}
+		for (int i = 0; i < 100; i++) {
+			assertThat(contexts.get(i).getState(), is(i % 2 == 0 ? TestStates.S20 : TestStates.SI));
+		}
+		assertThat(trace(contexts.get(1)).isEmpty(), is(true));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRegionsNotSupported() {
+		List<StateData<TestStates, TestEvents>> stateDatas = new ArrayList<StateData<TestStates, TestEvents>>();
+		stateDatas.add(initial(new StateData<TestStates, TestEvents>(null, null, TestStates.S1, null, null, null)));
+		stateDatas.add(initial(new StateData<TestStates, TestEvents>(TestStates.S1, "R1", TestStates.S10, null, null, null)));
+		stateDatas.add(initial(new StateData<TestStates, TestEvents>(TestStates.S1, "R2", TestStates.S11, null, null, null)));
+		new StatelessStateMachineEngine<TestStates, TestEvents>(new StateMachineStates<TestStates, TestEvents>(stateDatas),
+				new StateMachineTransitions<TestStates, TestEvents>(Collections.<TransitionData<TestStates, TestEvents>>emptyList(),
+						new HashMap<TestStates, List<ChoiceData<TestStates, TestEvents>>>(), null, null));
+	}
+
+	@Test
+	public void testTimerTransitionsNotSupported() {
+		List<StateData<TestStates, TestEvents>> stateDatas = new ArrayList<StateData<TestStates, TestEvents>>();
+		stateDatas.add(initial(new StateData<TestStates, TestEvents>(null, null, TestStates.S1, null, null, null)));
+		stateDatas.add(new StateData<TestStates, TestEvents>(null, null, TestStates.S2, null, null, null));
+		List<TransitionData<TestStates, TestEvents>> transitionDatas = new ArrayList<TransitionData<TestStates, TestEvents>>();
+		transitionDatas.add(new TransitionData<TestStates, TestEvents>(TestStates.S1, TestStates.S2, null, null, 1000l,
+				null, null, TransitionKind.EXTERNAL));
+		IllegalStateException error = null;
+		try {
+			new StatelessStateMachineEngine<TestStates, TestEvents>(new StateMachineStates<TestStates, TestEvents>(stateDatas),
+					new StateMachineTransitions<TestStates, TestEvents>(transitionDatas,
+							new HashMap<TestStates, List<ChoiceData<TestStates, TestEvents>>>(), null, null));
+		} catch (IllegalStateException e) {
+			error = e;
+		}
+		assertThat(error.getMessage(), containsString("timer"));
+	}
+
+	@SuppressWarnings("unchecked")
+	private StatelessStateMachineEngine<TestStates, TestEvents> buildEngine() {
+		context.register(BaseConfig.class, Config1.class);
+		context.refresh();
+		ObjectStateMachineFactory<TestStates, TestEvents> factory = context.getBean(
+				StateMachineSystemConstants.DEFAULT_ID_STATEMACHINEFACTORY, ObjectStateMachineFactory.class);
+		StatelessStateMachineEngine<TestStates, TestEvents> engine = factory.getStatelessStateMachineEngine();
+		assertThat(factory.getStatelessStateMachineEngine(), sameInstance(engine));
+		return engine;
+	}
+
+	private static DefaultExtendedState traceState() {
+		DefaultExtendedState extendedState = new DefaultExtendedState();
+		extendedState.getVariables().put("trace", new ArrayList<String>());
+		return extendedState;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<String> trace(StateMachineContext<TestStates, TestEvents> context) {
+		return (List<String>) context.getExtendedState().getVariables().get("trace");
+	}
+
+	private static StateData<TestStates, TestEvents> initial(StateData<TestStates, TestEvents> stateData) {
+		stateData.setInitial(true);
+		return stateData;
+	}
+
+	@Configuration
+	@EnableStateMachineFactory
+	static class Config1 extends EnumStateMachineConfigurerAdapter<TestStates, TestEvents> {
+
+		@Override
+		public void configure(StateMachineStateConfigurer<TestStates, TestEvents> states) throws Exception {
+			states
+				.withStates()
+					.initial(TestStates.SI)
+					.state(TestStates.SI, TestEvents.E4)
+					.state(TestStates.S1)
+					.state(TestStates.S2, Arrays.asList(trace("eS2")), Arrays.asList(trace("xS2")))
+					.choice(TestStates.S3)
+					.end(TestStates.SF)
+					.and()
+					.withStates()
+						.parent(TestStates.S2)
+						.initial(TestStates.S20)
+						.state(TestStates.S20, Arrays.asList(trace("eS20")), Arrays.asList(trace("xS20")))
+						.state(TestStates.S21, Arrays.asList(trace("eS21")), Arrays.asList(trace("xS21")));
+		}
+
+		@Override
+		public void configure(StateMachineTransitionConfigurer<TestStates, TestEvents> transitions) throws Exception {
+			transitions
+				.withExternal()
+					.source(TestStates.SI).target(TestStates.S2).event(TestEvents.E1)
+					.and()
+				.withExternal()
+					.source(TestStates.S20).target(TestStates.S21).event(TestEvents.E2)
+					.and()
+				.withExternal()
+					.source(TestStates.S2).target(TestStates.S3).event(TestEvents.E3)
+					.and()
+				.withChoice()
+					.source(TestStates.S3)
+					.first(TestStates.S1, s1Guard())
+					.last(TestStates.SF);
+		}
+
+		@Bean
+		public Guard<TestStates, TestEvents> s1Guard() {
+			return new Guard<TestStates, TestEvents>() {
+
+				@Override
+				public boolean evaluate(StateContext<TestStates, TestEvents> context) {
+					return ObjectUtils.nullSafeEquals("s1", context.getMessageHeaders().get("choice", String.class));
+				}
+			};
+		}
+
+		private static Action<TestStates, TestEvents> trace(final String name) {
+			return new Action<TestStates, TestEvents>() {
+
+				@SuppressWarnings("unchecked")
+				@Override
+				public void execute(StateContext<TestStates, TestEvents> context) {
+					((List<String>) context.getExtendedState().getVariables().get("trace")).add(name);
+				}
+			};
+		}
+
+	}
+
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.journal;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.statemachine.AbstractStateMachineTests;
+import org.springframework.statemachine.StateContext;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachineSystemConstants;
+import org.springframework.statemachine.access.StateMachineAccess;
+import org.springframework.statemachine.access.StateMachineFunction;
+import org.springframework.statemachine.action.Action;
+import org.springframework.statemachine.config.EnableStateMachine;
+import org.springframework.statemachine.config.EnumStateMachineConfigurerAdapter;
+import org.springframework.statemachine.config.builders.StateMachineStateConfigurer;
+import org.springframework.statemachine.config.builders.StateMachineTransitionConfigurer;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+public class StateMachineJournalTests extends AbstractStateMachineTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Override
+	protected AnnotationConfigApplicationContext buildContext() {
+		return new AnnotationConfigApplicationContext();
+	}
+
+	@Test
+	public void testInterceptorJournalsStateChanges() throws Exception {
+		context.register(Config1.class);
+		context.refresh();
+		@SuppressWarnings("unchecked")
+		StateMachine<TestStates, TestEvents> machine = context.getBean(StateMachineSystemConstants.DEFAULT_ID_STATEMACHINE, StateMachine.class);
+		final StateMachineJournal<TestStates, TestEvents> journal = buildJournal(JournalSyncPolicy.ALWAYS, 4096);
+		machine.getStateMachineAccessor().doWithRegion(new StateMachineFunction<StateMachineAccess<TestStates, TestEvents>>() {
+
+			@Override
+			public void apply(StateMachineAccess<TestStates, TestEvents> function) {
+				function.addStateMachineInterceptor(new JournalingStateMachineInterceptor<TestStates, TestEvents>(journal, "machine1"));
+			}
+		});
+		machine.start();
+		assertThat(journal.replay("machine1"), nullValue());
+
+		machine.sendEvent(TestEvents.E1);
+		machine.sendEvent(TestEvents.E2);
+		assertThat(machine.getState().getIds(), containsInAnyOrder(TestStates.S3));
+		assertThat(journal.getLastSequence(), is(2l));
+
+		StateMachineContext<TestStates, TestEvents> replayed = journal.replay("machine1");
+		assertThat(replayed.getState(), is(TestStates.S3));
+		assertThat(replayed.getEvent(), is(TestEvents.E2));
+		assertThat(replayed.getExtendedState().getVariables().get("count"), is((Object)1));
+
+		DefaultExtendedState extendedState = new DefaultExtendedState();
+		extendedState.getVariables().put("count", 5);
+		journal.snapshot("machine1", new DefaultStateMachineContext<TestStates, TestEvents>(TestStates.S2, null, null, extendedState));
+		final StateMachineContext<TestStates, TestEvents> snapshot = journal.replay("machine1");
+
+		machine.stop();
+		machine.getStateMachineAccessor().doWithAllRegions(new StateMachineFunction<StateMachineAccess<TestStates, TestEvents>>() {
+
+			@Override
+			public void apply(StateMachineAccess<TestStates, TestEvents> function) {
+				function.resetStateMachine(snapshot);
+			}
+		});
+		machine.start();
+		assertThat(machine.getState().getIds(), containsInAnyOrder(TestStates.S2));
+		assertThat(machine.getExtendedState().getVariables().get("count"), is((Object)5));
+		journal.stop();
+	}
+
+	@Test
+	public void testInterceptorJournalsInternalTransitions() throws Exception {
+		context.register(Config1.class);
+		context.refresh();
+		@SuppressWarnings("unchecked")
+		StateMachine<TestStates, TestEvents> machine = context.getBean(StateMachineSystemConstants.DEFAULT_ID_STATEMACHINE, StateMachine.class);
+		final StateMachineJournal<TestStates, TestEvents> journal = buildJournal(JournalSyncPolicy.ALWAYS, 4096);
+		machine.getStateMachineAccessor().doWithRegion(new StateMachineFunction<StateMachineAccess<TestStates, TestEvents>>() {
+
+			@Override
+			public void apply(StateMachineAccess<TestStates, TestEvents> function) {
+				function.addStateMachineInterceptor(new JournalingStateMachineInterceptor<TestStates, TestEvents>(journal, "machine1"));
+			}
+		});
+		machine.start();
+
+		machine.sendEvent(TestEvents.E1);
+		machine.sendEvent(TestEvents.E3);
+		assertThat(machine.getState().getIds(), containsInAnyOrder(TestStates.S2));
+		assertThat(journal.getLastSequence(), is(2l));
+
+		StateMachineContext<TestStates, TestEvents> replayed = journal.replay("machine1");
+		assertThat(replayed.getState(), is(TestStates.S2));
+		assertThat(replayed.getEvent(), is(TestEvents.E3));
+		assertThat(replayed.getExtendedState().getVariables().get("count"), is((Object)2));
+		journal.stop();
+	}
+
+	@Test
+	public void testReplayAppliesTransitionsOnSnapshot() throws Exception {
+		StateMachineJournal<String, String> journal = buildJournal(JournalSyncPolicy.NONE, 256);
+		journal.append("machine1", context("S0"));
+		List<StateMachineContext<String, String>> childs = new ArrayList<StateMachineContext<String, String>>();
+		childs.add(context("S11"));
+		childs.add(context("S21"));
+		journal.snapshot("machine1", new DefaultStateMachineContext<String, String>(childs, "S1", null, null, null));
+		for (int i = 2; i < 10; i++) {
+			journal.append("machine1", context("S" + i));
+			journal.append("machine2", context("S" + i));
+		}
+		assertThat(segments().length, greaterThan(1));
+
+		StateMachineContext<String, String> replayed = journal.replay("machine1");
+		assertThat(replayed.getState(), is("S9"));
+		assertThat(replayed.getChilds().size(), is(2));
+		assertThat(replayed.getChilds().get(0).getState(), is("S11"));
+		assertThat(replayed.getChilds().get(1).getState(), is("S21"));
+		assertThat(journal.replay("machine2").getChilds().size(), is(0));
+		journal.stop();
+
+		journal = buildJournal(JournalSyncPolicy.NONE, 256);
+		replayed = journal.replay("machine1");
+		assertThat(replayed.getState(), is("S9"));
+		assertThat(replayed.getChilds().size(), is(2));
+
+		journal.snapshot("machine1", context("S10"));
+		replayed = journal.replay("machine1");
+		assertThat(replayed.getState(), is("S10"));
+		assertThat(replayed.getChilds().size(), is(0));
+		journal.stop();
+	}
+
+	@Test
+	public void testSegmentRotationAndRecovery() throws Exception {
+		StateMachineJournal<String, String> journal = buildJournal(JournalSyncPolicy.NONE, 256);
+		for (int i = 0; i < 50; i++) {
+			journal.append("machine" + (i % 5), context("S" + i));
+		}
+		assertThat(segments().length, greaterThan(1));
+		assertThat(journal.replay("machine0").getState(), is("S45"));
+		assertThat(journal.replay("machine4").getState(), is("S49"));
+		assertThat(journal.replay("machine5"), nullValue());
+		journal.stop();
+
+		journal = buildJournal(JournalSyncPolicy.NONE, 256);
+		assertThat(journal.getLastSequence(), is(50l));
+		assertThat(journal.replay("machine3").getState(), is("S48"));
+		assertThat(journal.append("machine3", context("S50")), is(51l));
+		assertThat(journal.replay("machine3").getState(), is("S50"));
+		journal.stop();
+	}
+
+	@Test
+	public void testRecoveryStopsAtCorruptedRecord() throws Exception {
+		StateMachineJournal<String, String> journal = buildJournal(JournalSyncPolicy.ALWAYS, 4096);
+		journal.append("machine1", context("S1"));
+		journal.append("machine1", context("S2"));
+		journal.append("machine1", context("S3"));
+		journal.stop();
+
+		// flip a byte in a body of a last record
+		RandomAccessFile file = new RandomAccessFile(segments()[0], "rw");
+		long position = 0;
+		long last = 0;
+		while (true) {
+			file.seek(position);
+			int size = file.readInt();
+			if (size == 0) {
+				break;
+			}
+			last = position;
+			position += 8 + size;
+		}
+		file.seek(last + 8 + 1);
+		byte b = file.readByte();
+		file.seek(last + 8 + 1);
+		file.writeByte(b ^ 0xff);
+		file.close();
+
+		journal = buildJournal(JournalSyncPolicy.ALWAYS, 4096);
+		assertThat(journal.getLastSequence(), is(2l));
+		assertThat(journal.replay("machine1").getState(), is("S2"));
+		assertThat(journal.append("machine1", context("S4")), is(3l));
+		assertThat(journal.replay("machine1").getState(), is("S4"));
+		journal.stop();
+	}
+
+	@Test
+	public void testGroupCommitFromMultipleThreads() throws Exception {
+		final StateMachineJournal<String, String> journal = buildJournal(JournalSyncPolicy.ALWAYS, 8192);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<Long>> futures = new ArrayList<Future<Long>>();
+		for (int t = 0; t < 4; t++) {
+			final String machineId = "machine" + t;
+			futures.add(executor.submit(new Callable<Long>() {
+
+				@Override
+				public Long call() throws Exception {
+					long sequence = 0;
+					for (int i = 0; i < 100; i++) {
+						long appended = journal.append(machineId, context("S" + i));
+						assertThat(appended, greaterThan(sequence));
+						sequence = appended;
+					}
+					return sequence;
+				}
+			}));
+		}
+		for (Future<Long> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+
+		assertThat(journal.getLastSequence(), is(400l));
+		for (int t = 0; t < 4; t++) {
+			assertThat(journal.replay("machine" + t).getState(), is("S99"));
+		}
+		journal.stop();
+	}
+
+	private <S, E> StateMachineJournal<S, E> buildJournal(JournalSyncPolicy syncPolicy, int segmentSize) {
+		StateMachineJournal<S, E> journal = new StateMachineJournal<S, E>(folder.getRoot());
+		journal.setSyncPolicy(syncPolicy);
+		journal.setSegmentSize(segmentSize);
+		journal.afterPropertiesSet();
+		journal.start();
+		return journal;
+	}
+
+	private File[] segments() {
+		File[] files = folder.getRoot().listFiles();
+		Arrays.sort(files);
+		return files;
+	}
+
+	private static StateMachineContext<String, String> context(String state) {
+		return new DefaultStateMachineContext<String, String>(state, null, null, null);
+	}
+
+	@Configuration
+	@EnableStateMachine
+	static class Config1 extends EnumStateMachineConfigurerAdapter<TestStates, TestEvents> {
+
+		@Override
+		public void configure(StateMachineStateConfigurer<TestStates, TestEvents> states) throws Exception {
+			states
+				.withStates()
+					.initial(TestStates.S1)
+					.state(TestStates.S2)
+					.state(TestStates.S3);
+		}
+
+		@Override
+		public void configure(StateMachineTransitionConfigurer<TestStates, TestEvents> transitions) throws Exception {
+			transitions
+				.withExternal()
+					.source(TestStates.S1).target(TestStates.S2).event(TestEvents.E1).action(countAction())
+					.and()
+				.withExternal()
+					.source(TestStates.S2).target(TestStates.S3).event(TestEvents.E2)
+					.and()
+				.withInternal()
+					.source(TestStates.S2).event(TestEvents.E3).action(countAction());
+		}
+
+		@Bean
+		public Action<TestStates, TestEvents> countAction() {
+			return new Action<TestStates, TestEvents>() {
+
+				@Override
+				public void execute(StateContext<TestStates, TestEvents> context) {
+					Integer count = context.getExtendedState().get("count", Integer.class);
+					context.getExtendedState().getVariables().put("count", count != null ? count + 1 : 1);
+				}
+			};
+		}
+
+	}
+
+}
@@ -103,6 +103,25 @@ public class ListenerTests extends AbstractStateMachineTests {
 		ctx.close();
 	}
 
+	@Test
+	public void testEventExpiredOnlyToImplementingListeners() {
+		CompositeStateMachineListener<TestStates, TestEvents> composite =
+				new CompositeStateMachineListener<TestStates, TestEvents>();
+		final ArrayList<Message<TestEvents>> expired = new ArrayList<Message<TestEvents>>();
+		composite.register(new TestStateMachineListener());
+		composite.register(new StateMachineListenerAdapter<TestStates, TestEvents>() {
+
+			@Override
+			public void eventExpired(Message<TestEvents> event) {
+				expired.add(event);
+			}
+		});
+
+		Message<TestEvents> event = MessageBuilder.withPayload(TestEvents.E1).build();
+		composite.eventExpired(event);
+		assertThat(expired, contains(event));
+	}
+
 	private static class LoggingAction implements Action<TestStates, TestEvents> {
 
 		private static final Log log = LogFactory.getLog(LoggingAction.class);
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.pool;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.context.Lifecycle;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.statemachine.AbstractStateMachineTests;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachineException;
+import org.springframework.statemachine.StateMachineSystemConstants;
+import org.springframework.statemachine.config.EnableStateMachineFactory;
+import org.springframework.statemachine.config.EnumStateMachineConfigurerAdapter;
+import org.springframework.statemachine.config.StateMachineFactory;
+import org.springframework.statemachine.config.builders.StateMachineStateConfigurer;
+import org.springframework.statemachine.config.builders.StateMachineTransitionConfigurer;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+public class DefaultStateMachinePoolTests extends AbstractStateMachineTests {
+
+	@Override
+	protected AnnotationConfigApplicationContext buildContext() {
+		return new AnnotationConfigApplicationContext();
+	}
+
+	@Test
+	public void testReturnedMachineIsResetAndReused() throws Exception {
+		DefaultStateMachinePool<TestStates, TestEvents> pool = buildPool(0);
+
+		StateMachine<TestStates, TestEvents> machine1 = pool.borrowStateMachine();
+		assertThat(machine1.getState().getIds(), containsInAnyOrder(TestStates.S1, TestStates.S11));
+		machine1.sendEvent(TestEvents.E1);
+		machine1.sendEvent(TestEvents.E2);
+		machine1.getExtendedState().getVariables().put("foo", 1);
+		assertThat(machine1.getState().getIds(), containsInAnyOrder(TestStates.S2));
+		pool.returnStateMachine(machine1);
+
+		StateMachine<TestStates, TestEvents> machine2 = pool.borrowStateMachine();
+		assertThat(machine2, sameInstance(machine1));
+		assertThat(machine2.getState().getIds(), containsInAnyOrder(TestStates.S1, TestStates.S11));
+		assertThat(machine2.getExtendedState().getVariables().get("foo"), nullValue());
+		machine2.sendEvent(TestEvents.E1);
+		assertThat(machine2.getState().getIds(), containsInAnyOrder(TestStates.S1, TestStates.S12));
+		pool.returnStateMachine(machine2);
+
+		StateMachinePoolMetrics metrics = pool.getPoolMetrics();
+		assertThat(metrics.getCreatedCount(), is(1l));
+		assertThat(metrics.getBorrowedCount(), is(2l));
+		assertThat(metrics.getReturnedCount(), is(2l));
+		assertThat(metrics.getActiveCount(), is(0));
+		assertThat(metrics.getIdleCount(), is(1));
+		pool.stop();
+	}
+
+	@Test
+	public void testBorrowWithContext() throws Exception {
+		DefaultStateMachinePool<TestStates, TestEvents> pool = buildPool(0);
+		pool.returnStateMachine(pool.borrowStateMachine());
+
+		Map<Object, Object> variables = new HashMap<Object, Object>();
+		variables.put("foo", 1);
+		StateMachine<TestStates, TestEvents> machine = pool.borrowStateMachine(
+				new DefaultStateMachineContext<TestStates, TestEvents>(TestStates.S12, null, null,
+						new DefaultExtendedState(variables)));
+		assertThat(machine.getState().getIds(), containsInAnyOrder(TestStates.S1, TestStates.S12));
+		assertThat((Integer)machine.getExtendedState().getVariables().get("foo"), is(1));
+		machine.sendEvent(TestEvents.E2);
+		assertThat(machine.getState().getIds(), containsInAnyOrder(TestStates.S2));
+		pool.returnStateMachine(machine);
+
+		machine = pool.borrowStateMachine(new DefaultStateMachineContext<TestStates, TestEvents>(TestStates.S2, null,
+				null, null));
+		assertThat(machine.getState().getIds(), containsInAnyOrder(TestStates.S2));
+		assertThat(machine.getExtendedState().getVariables().isEmpty(), is(true));
+		assertThat(pool.getPoolMetrics().getCreatedCount(), is(1l));
+		pool.stop();
+	}
+
+	@Test
+	public void testBorrowWithChildContext() throws Exception {
+		DefaultStateMachinePool<TestStates, TestEvents> pool = buildPool(0);
+		pool.returnStateMachine(pool.borrowStateMachine());
+
+		List<StateMachineContext<TestStates, TestEvents>> childs = new ArrayList<StateMachineContext<TestStates, TestEvents>>();
+		childs.add(new DefaultStateMachineContext<TestStates, TestEvents>(TestStates.S12, null, null, null));
+		StateMachine<TestStates, TestEvents> machine = pool.borrowStateMachine(
+				new DefaultStateMachineContext<TestStates, TestEvents>(childs, TestStates.S1, null, null, null));
+		assertThat(machine.getState().getIds(), containsInAnyOrder(TestStates.S1, TestStates.S12));
+		machine.sendEvent(TestEvents.E2);
+		assertThat(machine.getState().getIds(), containsInAnyOrder(TestStates.S2));
+		pool.returnStateMachine(machine);
+		pool.stop();
+	}
+
+	@Test
+	public void testDeferredEventsClearedOnReturn() throws Exception {
+		DefaultStateMachinePool<TestStates, TestEvents> pool = buildPool(0);
+
+		StateMachine<TestStates, TestEvents> machine1 = pool.borrowStateMachine();
+		// deferred in S1, would move S2 back into S1 if it leaked
+		assertThat(machine1.sendEvent(TestEvents.E3), is(true));
+		assertThat(machine1.getState().getIds(), containsInAnyOrder(TestStates.S1, TestStates.S11));
+		pool.returnStateMachine(machine1);
+
+		StateMachine<TestStates, TestEvents> machine2 = pool.borrowStateMachine();
+		assertThat(machine2, sameInstance(machine1));
+		machine2.sendEvent(TestEvents.E2);
+		assertThat(machine2.getState().getIds(), containsInAnyOrder(TestStates.S2));
+		pool.returnStateMachine(machine2);
+		pool.stop();
+	}
+
+	@Test
+	public void testMaxSize() throws Exception {
+		DefaultStateMachinePool<TestStates, TestEvents> pool = buildPool(1);
+
+		StateMachine<TestStates, TestEvents> machine = pool.borrowStateMachine();
+		StateMachineException error = null;
+		try {
+			pool.borrowStateMachine();
+		} catch (StateMachineException e) {
+			error = e;
+		}
+		assertThat(error, not(nullValue()));
+		assertThat(pool.getPoolMetrics().getExhaustedCount(), is(1l));
+
+		pool.invalidateStateMachine(machine);
+		assertThat(pool.getPoolMetrics().getDiscardedCount(), is(1l));
+		assertThat(((Lifecycle)machine).isRunning(), is(false));
+
+		StateMachine<TestStates, TestEvents> machine2 = pool.borrowStateMachine();
+		assertThat(machine2, not(sameInstance(machine)));
+		assertThat(pool.getPoolMetrics().getCreatedCount(), is(2l));
+		pool.returnStateMachine(machine2);
+		pool.stop();
+	}
+
+	@Test
+	public void testIdleEviction() throws Exception {
+		DefaultStateMachinePool<TestStates, TestEvents> pool = buildPool(0);
+		pool.setIdleTimeout(10);
+
+		StateMachine<TestStates, TestEvents> machine1 = pool.borrowStateMachine();
+		pool.returnStateMachine(machine1);
+		assertThat(pool.evictIdle(), is(0));
+		Thread.sleep(50);
+		assertThat(pool.evictIdle(), is(1));
+		assertThat(((Lifecycle)machine1).isRunning(), is(false));
+		assertThat(pool.getPoolMetrics().getIdleCount(), is(0));
+		assertThat(pool.getPoolMetrics().getEvictedCount(), is(1l));
+
+		StateMachine<TestStates, TestEvents> machine2 = pool.borrowStateMachine();
+		assertThat(machine2, not(sameInstance(machine1)));
+		pool.returnStateMachine(machine2);
+		pool.stop();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReturnUnknownMachine() throws Exception {
+		DefaultStateMachinePool<TestStates, TestEvents> pool = buildPool(0);
+		StateMachine<TestStates, TestEvents> machine = pool.borrowStateMachine();
+		pool.returnStateMachine(machine);
+		pool.returnStateMachine(machine);
+	}
+
+	@SuppressWarnings("unchecked")
+	private DefaultStateMachinePool<TestStates, TestEvents> buildPool(int maxSize) {
+		context.register(BaseConfig.class, Config1.class);
+		context.refresh();
+		StateMachineFactory<TestStates, TestEvents> factory = context.getBean(
+				StateMachineSystemConstants.DEFAULT_ID_STATEMACHINEFACTORY, StateMachineFactory.class);
+		DefaultStateMachinePool<TestStates, TestEvents> pool = new DefaultStateMachinePool<TestStates, TestEvents>(
+				factory, maxSize);
+		pool.afterPropertiesSet();
+		pool.start();
+		return pool;
+	}
+
+	@Configuration
+	@EnableStateMachineFactory
+	static class Config1 extends EnumStateMachineConfigurerAdapter<TestStates, TestEvents> {
+
+		@Override
+		public void configure(StateMachineStateConfigurer<TestStates, TestEvents> states) throws Exception {
+			states
+				.withStates()
+					.initial(TestStates.S1)
+					.state(TestStates.S1, TestEvents.E3)
+					.state(TestStates.S2)
+					.and()
+					.withStates()
+						.parent(TestStates.S1)
+						.initial(TestStates.S11)
+						.state(TestStates.S11)
+						.state(TestStates.S12);
+		}
+
+		@Override
+		public void configure(StateMachineTransitionConfigurer<TestStates, TestEvents> transitions) throws Exception {
+			transitions
+				.withExternal()
+					.source(TestStates.S11).target(TestStates.S12).event(TestEvents.E1)
+					.and()
+				.withExternal()
+					.source(TestStates.S1).target(TestStates.S2).event(TestEvents.E2)
+					.and()
+				.withExternal()
+					.source(TestStates.S2).target(TestStates.S1).event(TestEvents.E3);
+		}
+
+	}
+
+}
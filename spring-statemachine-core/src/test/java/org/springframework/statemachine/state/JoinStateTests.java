@@ -21,6 +21,7 @@ import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -31,10 +32,13 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.statemachine.AbstractStateMachineTests;
 import org.springframework.statemachine.ObjectStateMachine;
 import org.springframework.statemachine.StateMachineSystemConstants;
+import org.springframework.statemachine.TestUtils;
 import org.springframework.statemachine.config.EnableStateMachine;
 import org.springframework.statemachine.config.EnumStateMachineConfigurerAdapter;
 import org.springframework.statemachine.config.builders.StateMachineStateConfigurer;
 import org.springframework.statemachine.config.builders.StateMachineTransitionConfigurer;
+import org.springframework.statemachine.listener.CompositeStateMachineListener;
+import org.springframework.statemachine.listener.StateMachineListener;
 import org.springframework.statemachine.listener.StateMachineListenerAdapter;
 import org.springframework.statemachine.transition.Transition;
 
@@ -193,6 +197,42 @@ public class JoinStateTests extends AbstractStateMachineTests {
 		assertThat(machine.getState().getIds(), contains(TestStates.S4));
 	}
 
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testJoinTrackerReused() throws Exception {
+		context.register(BaseConfig.class, Config1.class);
+		context.refresh();
+		ObjectStateMachine<TestStates,TestEvents> machine =
+				context.getBean(StateMachineSystemConstants.DEFAULT_ID_STATEMACHINE, ObjectStateMachine.class);
+		machine.start();
+		machine.sendEvent(TestEvents.E1);
+		List<StateMachineListener<TestStates, TestEvents>> listeners1 = getListeners(machine);
+		machine.sendEvent(TestEvents.E2);
+		machine.sendEvent(TestEvents.E3);
+		assertThat(machine.getState().getIds(), contains(TestStates.S4));
+
+		machine.sendEvent(TestEvents.E4);
+		machine.sendEvent(TestEvents.E1);
+		List<StateMachineListener<TestStates, TestEvents>> listeners2 = getListeners(machine);
+		machine.sendEvent(TestEvents.E2);
+		machine.sendEvent(TestEvents.E3);
+		assertThat(machine.getState().getIds(), contains(TestStates.S4));
+
+		// same join tracker is kept registered between joins
+		assertThat(listeners2, is(listeners1));
+	}
+
+	private static List<StateMachineListener<TestStates, TestEvents>> getListeners(
+			ObjectStateMachine<TestStates, TestEvents> machine) throws Exception {
+		CompositeStateMachineListener<TestStates, TestEvents> composite = TestUtils.readField("stateListener", machine);
+		List<StateMachineListener<TestStates, TestEvents>> listeners = new ArrayList<StateMachineListener<TestStates, TestEvents>>();
+		Iterator<StateMachineListener<TestStates, TestEvents>> iterator = composite.getListeners().iterator();
+		while (iterator.hasNext()) {
+			listeners.add(iterator.next());
+		}
+		return listeners;
+	}
+
 	@Configuration
 	@EnableStateMachine
 	static class Config1 extends EnumStateMachineConfigurerAdapter<TestStates, TestEvents> {
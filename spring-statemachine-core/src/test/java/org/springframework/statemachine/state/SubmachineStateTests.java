@@ -17,7 +17,9 @@ package org.springframework.statemachine.state;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 import java.util.ArrayList;
@@ -98,6 +100,37 @@ public class SubmachineStateTests extends AbstractStateMachineTests {
 		assertThat(state.getIds(), contains(TestStates.S4, TestStates.SI));
 	}
 
+	@Test
+	public void testIdsSnapshotSharedUntilStateChanges() {
+		PseudoState<TestStates,TestEvents> pseudoState = new DefaultPseudoState<TestStates,TestEvents>(PseudoStateKind.INITIAL);
+		State<TestStates,TestEvents> stateSI = new EnumState<TestStates,TestEvents>(TestStates.SI, pseudoState);
+		State<TestStates,TestEvents> stateS1 = new EnumState<TestStates,TestEvents>(TestStates.S1);
+
+		Collection<State<TestStates,TestEvents>> states = new ArrayList<State<TestStates,TestEvents>>();
+		states.add(stateSI);
+		states.add(stateS1);
+
+		Collection<Transition<TestStates,TestEvents>> transitions = new ArrayList<Transition<TestStates,TestEvents>>();
+		transitions.add(new DefaultExternalTransition<TestStates,TestEvents>(stateSI, stateS1, null, TestEvents.E1, null,
+				new EventTrigger<TestStates,TestEvents>(TestEvents.E1)));
+
+		ObjectStateMachine<TestStates, TestEvents> machine = new ObjectStateMachine<TestStates, TestEvents>(states, transitions, stateSI);
+		machine.setTaskExecutor(new SyncTaskExecutor());
+		machine.afterPropertiesSet();
+		machine.start();
+
+		StateMachineState<TestStates,TestEvents> state = new StateMachineState<TestStates,TestEvents>(TestStates.S4, machine);
+
+		Collection<TestStates> ids = state.getIds();
+		assertThat(ids, contains(TestStates.S4, TestStates.SI));
+		assertThat(state.getIds(), sameInstance(ids));
+
+		machine.sendEvent(TestEvents.E1);
+		assertThat(state.getIds(), contains(TestStates.S4, TestStates.S1));
+		assertThat(state.getIds(), not(sameInstance(ids)));
+		assertThat(state.getIds(), sameInstance(state.getIds()));
+	}
+
 	@Test
 	@SuppressWarnings("unchecked")
 	public void testFromSimpleToOtherSubstate() {
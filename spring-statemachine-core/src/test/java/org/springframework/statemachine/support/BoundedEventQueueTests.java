@@ -0,0 +1,298 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class BoundedEventQueueTests {
+
+	@Test
+	public void testUnbounded() {
+		BoundedEventQueue<String> queue = new BoundedEventQueue<String>();
+		for (int i = 0; i < 100; i++) {
+			assertThat(queue.offer("E" + i, true), is(true));
+		}
+		assertThat(queue.getQueueDepth(), is(100));
+		assertThat(queue.getRejectedCount(), is(0l));
+	}
+
+	@Test
+	public void testReject() {
+		BoundedEventQueue<String> queue = new BoundedEventQueue<String>(2, EventQueuePolicy.REJECT);
+		assertThat(queue.offer("E1", true), is(true));
+		assertThat(queue.offer("E2", true), is(true));
+		assertThat(queue.offer("E3", true), is(false));
+		assertThat(queue.getQueueDepth(), is(2));
+		assertThat(queue.getRejectedCount(), is(1l));
+		assertThat(queue.poll(), is("E1"));
+		assertThat(queue.offer("E3", true), is(true));
+		assertThat(queue.poll(), is("E2"));
+		assertThat(queue.poll(), is("E3"));
+		assertThat(queue.poll(), nullValue());
+	}
+
+	@Test
+	public void testDropOldest() {
+		BoundedEventQueue<String> queue = new BoundedEventQueue<String>(2, EventQueuePolicy.DROP_OLDEST);
+		assertThat(queue.offer("E1", true), is(true));
+		assertThat(queue.offer("E2", true), is(true));
+		assertThat(queue.offer("E3", true), is(true));
+		assertThat(queue.getDroppedCount(), is(1l));
+		assertThat(queue.poll(), is("E2"));
+		assertThat(queue.poll(), is("E3"));
+	}
+
+	@Test
+	public void testDropCoalescable() {
+		BoundedEventQueue<String> queue = new BoundedEventQueue<String>(2, EventQueuePolicy.DROP_COALESCABLE) {
+
+			@Override
+			protected boolean isCoalescable(String item) {
+				return item.startsWith("C");
+			}
+		};
+		assertThat(queue.offer("E1", true), is(true));
+		assertThat(queue.offer("C1", true), is(true));
+		assertThat(queue.offer("E2", true), is(true));
+		assertThat(queue.offer("E3", true), is(false));
+		assertThat(queue.getDroppedCount(), is(1l));
+		assertThat(queue.getRejectedCount(), is(1l));
+		assertThat(queue.poll(), is("E1"));
+		assertThat(queue.poll(), is("E2"));
+	}
+
+	@Test
+	public void testStrictPriority() {
+		BoundedEventQueue<String> queue = new PriorityQueue(EventPriorityDrain.STRICT);
+		queue.offer("L1", true);
+		queue.offer("N1", true);
+		queue.offer("H1", true);
+		queue.offer("N2", true);
+		queue.offer("H2", true);
+		assertThat(queue.poll(), is("H1"));
+		assertThat(queue.poll(), is("H2"));
+		assertThat(queue.poll(), is("N1"));
+		assertThat(queue.poll(), is("N2"));
+		assertThat(queue.poll(), is("L1"));
+		assertThat(queue.poll(), nullValue());
+	}
+
+	@Test
+	public void testWeightedPriority() {
+		BoundedEventQueue<String> queue = new PriorityQueue(EventPriorityDrain.WEIGHTED);
+		for (int i = 0; i < 6; i++) {
+			queue.offer("H", true);
+			queue.offer("N", true);
+			queue.offer("L", true);
+		}
+		StringBuilder buf = new StringBuilder();
+		String item = null;
+		while ((item = queue.poll()) != null) {
+			buf.append(item);
+		}
+		assertThat(buf.toString(), is("HHHHNNLHHNNLNNLLLL"));
+	}
+
+	@Test
+	public void testDropOldestFromLowestLane() {
+		BoundedEventQueue<String> queue = new PriorityQueue(2, EventPriorityDrain.STRICT);
+		queue.offer("N1", true);
+		queue.offer("L1", true);
+		queue.offer("H1", true);
+		assertThat(queue.poll(), is("H1"));
+		assertThat(queue.poll(), is("N1"));
+		assertThat(queue.poll(), nullValue());
+	}
+
+	@Test
+	public void testBlock() throws Exception {
+		final BoundedEventQueue<String> queue = new BoundedEventQueue<String>(1, EventQueuePolicy.BLOCK);
+		assertThat(queue.offer("E1", true), is(true));
+		final CountDownLatch latch = new CountDownLatch(1);
+		Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				queue.offer("E2", true);
+				latch.countDown();
+			}
+		});
+		thread.start();
+		assertThat(latch.await(200, TimeUnit.MILLISECONDS), is(false));
+		assertThat(queue.poll(), is("E1"));
+		assertThat(latch.await(2, TimeUnit.SECONDS), is(true));
+		assertThat(queue.poll(), is("E2"));
+
+		// non-blocking caller goes over capacity
+		assertThat(queue.offer("E3", true), is(true));
+		assertThat(queue.offer("E4", false), is(true));
+		assertThat(queue.getQueueDepth(), is(2));
+	}
+
+	@Test
+	public void testCoalesceReplacesPendingInPlace() {
+		final List<String> replaced = new ArrayList<String>();
+		BoundedEventQueue<String> queue = new BoundedEventQueue<String>(2, EventQueuePolicy.REJECT) {
+
+			@Override
+			protected Object getCoalesceKey(String item) {
+				// items like U1:a and U1:b share a key U1
+				int index = item.indexOf(':');
+				return index > 0 ? item.substring(0, index) : null;
+			}
+
+			@Override
+			protected void coalesced(String item) {
+				replaced.add(item);
+			}
+		};
+		assertThat(queue.offer("U1:a", true), is(true));
+		assertThat(queue.offer("E1", true), is(true));
+		// full queue still accepts coalesced items
+		assertThat(queue.offer("U1:b", true), is(true));
+		assertThat(queue.offer("U1:c", true), is(true));
+		assertThat(queue.offer("U2:a", true), is(false));
+		assertThat(queue.getQueueDepth(), is(2));
+		assertThat(queue.getCoalescedCount(), is(2l));
+		assertThat(replaced, contains("U1:a", "U1:b"));
+		assertThat(queue.poll(), is("U1:c"));
+		// polled key is no longer pending
+		assertThat(queue.offer("U1:d", true), is(true));
+		assertThat(queue.poll(), is("E1"));
+		assertThat(queue.poll(), is("U1:d"));
+		assertThat(queue.poll(), nullValue());
+		assertThat(queue.getCoalescedCount(), is(2l));
+	}
+
+	@Test
+	public void testCoalesceMovesToHigherPriorityLane() {
+		BoundedEventQueue<String> queue = new PriorityQueue(EventPriorityDrain.STRICT) {
+
+			@Override
+			protected Object getCoalesceKey(String item) {
+				// items like N:u and H:u share a key u
+				int index = item.indexOf(':');
+				return index > 0 ? item.substring(index + 1) : null;
+			}
+		};
+		queue.offer("N1", true);
+		queue.offer("N:u", true);
+		queue.offer("N2", true);
+		queue.offer("L:v", true);
+		queue.offer("H1", true);
+		// higher priority moves to an end of a high lane
+		assertThat(queue.offer("H:u", true), is(true));
+		// lower priority keeps a position
+		assertThat(queue.offer("L:u", true), is(true));
+		assertThat(queue.offer("N:v", true), is(true));
+		assertThat(queue.getQueueDepth(), is(5));
+		assertThat(queue.poll(), is("H1"));
+		assertThat(queue.poll(), is("L:u"));
+		assertThat(queue.poll(), is("N1"));
+		assertThat(queue.poll(), is("N2"));
+		assertThat(queue.poll(), is("N:v"));
+		assertThat(queue.poll(), nullValue());
+	}
+
+	@Test
+	public void testExpiredDiscardedOnPoll() {
+		final List<String> expired = new ArrayList<String>();
+		BoundedEventQueue<String> queue = new BoundedEventQueue<String>() {
+
+			@Override
+			protected boolean isExpired(String item) {
+				return item.startsWith("X");
+			}
+
+			@Override
+			protected void expired(String item) {
+				expired.add(item);
+			}
+		};
+		assertThat(queue.offer("X1", true), is(true));
+		assertThat(queue.offer("E1", true), is(true));
+		assertThat(queue.offer("X2", true), is(true));
+		assertThat(queue.offer("X3", true), is(true));
+		assertThat(queue.poll(), is("E1"));
+		assertThat(queue.poll(), nullValue());
+		assertThat(queue.getQueueDepth(), is(0));
+		assertThat(queue.getExpiredCount(), is(3l));
+		assertThat(expired, contains("X1", "X2", "X3"));
+	}
+
+	@Test
+	public void testDroppedCalledWithoutLock() throws Exception {
+		final List<Integer> depths = new ArrayList<Integer>();
+		final BoundedEventQueue<String> queue = new BoundedEventQueue<String>(1, EventQueuePolicy.DROP_OLDEST) {
+
+			@Override
+			protected void dropped(String item) {
+				// other thread would block if lock is still held
+				final BoundedEventQueue<String> self = this;
+				final CountDownLatch latch = new CountDownLatch(1);
+				new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						depths.add(self.getQueueDepth());
+						latch.countDown();
+					}
+				}).start();
+				try {
+					assertThat(latch.await(2, TimeUnit.SECONDS), is(true));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		assertThat(queue.offer("E1", true), is(true));
+		assertThat(queue.offer("E2", true), is(true));
+		assertThat(depths, contains(1));
+		assertThat(queue.poll(), is("E2"));
+	}
+
+	private static class PriorityQueue extends BoundedEventQueue<String> {
+
+		PriorityQueue(EventPriorityDrain drain) {
+			this(0, drain);
+		}
+
+		PriorityQueue(int capacity, EventPriorityDrain drain) {
+			super(capacity, EventQueuePolicy.DROP_OLDEST, drain);
+		}
+
+		@Override
+		protected EventPriority getPriority(String item) {
+			if (item.startsWith("H")) {
+				return EventPriority.HIGH;
+			} else if (item.startsWith("L")) {
+				return EventPriority.LOW;
+			}
+			return EventPriority.NORMAL;
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+public class DeferredEventStoreTests {
+
+	@Test
+	public void testReleaseKeepsDeferralOrder() {
+		DeferredEventStore<String> store = new DeferredEventStore<String>();
+		store.add(message("E1", 1));
+		store.add(message("E2", 2));
+		store.add(message("E3", 3));
+		store.add(message("E1", 4));
+		store.add(message("E2", 5));
+		assertThat(store.size(), is(5));
+
+		assertThat(orders(store.release(Arrays.asList("E2", "E1"))), contains(1, 2, 4, 5));
+		assertThat(store.size(), is(1));
+		assertThat(store.contains("E1"), is(false));
+		assertThat(store.contains("E3"), is(true));
+		assertThat(orders(store.release(Arrays.asList("E3"))), contains(3));
+		assertThat(store.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testReleaseUnknown() {
+		DeferredEventStore<String> store = new DeferredEventStore<String>();
+		assertThat(store.release(Arrays.asList("E1")).isEmpty(), is(true));
+		store.add(message("E1", 1));
+		assertThat(store.release(Arrays.asList("E2")).isEmpty(), is(true));
+		assertThat(store.size(), is(1));
+		store.clear();
+		assertThat(store.isEmpty(), is(true));
+	}
+
+	private static Message<String> message(String event, int order) {
+		return MessageBuilder.withPayload(event).setHeader("order", order).build();
+	}
+
+	private static List<Integer> orders(List<Message<String>> messages) {
+		List<Integer> orders = new ArrayList<Integer>();
+		for (Message<String> message : messages) {
+			orders.add(message.getHeaders().get("order", Integer.class));
+		}
+		return orders;
+	}
+
+}
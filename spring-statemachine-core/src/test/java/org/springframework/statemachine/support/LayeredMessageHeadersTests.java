@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+
+public class LayeredMessageHeadersTests {
+
+	@Test
+	public void testLayeredHeader() {
+		Message<String> message = MessageBuilder.withPayload("E1").setHeader("foo", "bar").build();
+		LayeredMessageHeaders headers = new LayeredMessageHeaders(message.getHeaders(), "key", "value");
+		assertThat(headers.get("foo"), is((Object)"bar"));
+		assertThat(headers.get("key"), is((Object)"value"));
+		assertThat(headers.containsKey("key"), is(true));
+		assertThat(headers.size(), is(message.getHeaders().size() + 1));
+		assertThat(headers.getId(), sameInstance(message.getHeaders().getId()));
+		assertThat(headers.getTimestamp(), is(message.getHeaders().getTimestamp()));
+		assertThat(headers.entrySet().size(), is(headers.size()));
+		assertThat(headers, hasEntry("key", (Object)"value"));
+	}
+
+	@Test
+	public void testExistingHeaderWins() {
+		Message<String> message = MessageBuilder.withPayload("E1").setHeader("key", "original").build();
+		LayeredMessageHeaders headers = new LayeredMessageHeaders(message.getHeaders(), "key", "value");
+		assertThat(headers.get("key"), is((Object)"original"));
+		assertThat(headers.size(), is(message.getHeaders().size()));
+	}
+
+	@Test
+	public void testEmpty() {
+		LayeredMessageHeaders headers = new LayeredMessageHeaders(null, null, null);
+		assertThat(headers.isEmpty(), is(true));
+		assertThat(headers.getId(), nullValue());
+		assertThat(headers.get("foo"), nullValue());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testReadOnly() {
+		new LayeredMessageHeaders(null, "key", "value").put("foo", "bar");
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		Message<String> message = MessageBuilder.withPayload("E1").setHeader("foo", "bar").build();
+		LayeredMessageHeaders headers = new LayeredMessageHeaders(message.getHeaders(), "key", "value");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(headers);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		MessageHeaders read = (MessageHeaders) in.readObject();
+
+		assertThat(read.get("foo"), is((Object)"bar"));
+		assertThat(read.get("key"), is((Object)"value"));
+		assertThat(read.getId(), is(message.getHeaders().getId()));
+	}
+
+}
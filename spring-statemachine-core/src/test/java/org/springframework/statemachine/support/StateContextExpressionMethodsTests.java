@@ -21,6 +21,8 @@ import static org.junit.Assert.assertThat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
@@ -30,6 +32,7 @@ import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.statemachine.EventResult;
 import org.springframework.statemachine.ExtendedState;
 import org.springframework.statemachine.StateContext;
 import org.springframework.statemachine.StateMachine;
@@ -41,6 +44,7 @@ import org.springframework.statemachine.state.State;
 import org.springframework.statemachine.transition.Transition;
 import org.springframework.statemachine.transition.TransitionKind;
 import org.springframework.statemachine.trigger.Trigger;
+import org.springframework.util.concurrent.ListenableFuture;
 
 public class StateContextExpressionMethodsTests {
 
@@ -156,6 +160,25 @@ public class StateContextExpressionMethodsTests {
 			return sendEvent(MessageBuilder.createMessage(event, new MessageHeaders(new HashMap<String, Object>())));
 		}
 
+		@Override
+		public List<Boolean> sendEvents(Collection<Message<SpelEvents>> events) {
+			return sendEvents(events.iterator());
+		}
+
+		@Override
+		public List<Boolean> sendEvents(Iterator<Message<SpelEvents>> events) {
+			List<Boolean> results = new ArrayList<Boolean>();
+			while (events.hasNext()) {
+				results.add(sendEvent(events.next()));
+			}
+			return results;
+		}
+
+		@Override
+		public ListenableFuture<EventResult<SpelStates, SpelEvents>> sendEventAsync(Message<SpelEvents> event) {
+			return null;
+		}
+
 		@Override
 		public State<SpelStates, SpelEvents> getState() {
 			return null;
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.junit.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.statemachine.AbstractStateMachineTests.TestEvents;
+import org.springframework.statemachine.AbstractStateMachineTests.TestStates;
+import org.springframework.statemachine.ObjectStateMachine;
+import org.springframework.statemachine.state.DefaultPseudoState;
+import org.springframework.statemachine.state.EnumState;
+import org.springframework.statemachine.state.PseudoStateKind;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.state.StateMachineState;
+import org.springframework.statemachine.transition.Transition;
+
+public class StateHierarchyIndexTests {
+
+	@Test
+	public void testHierarchy() throws Exception {
+		// S1 and S2 top level, S2 has submachine with S20 and S21
+		State<TestStates, TestEvents> s20 = new EnumState<TestStates, TestEvents>(TestStates.S20,
+				new DefaultPseudoState<TestStates, TestEvents>(PseudoStateKind.INITIAL));
+		State<TestStates, TestEvents> s21 = new EnumState<TestStates, TestEvents>(TestStates.S21);
+		Collection<State<TestStates, TestEvents>> subStates = new ArrayList<State<TestStates, TestEvents>>();
+		subStates.add(s20);
+		subStates.add(s21);
+		ObjectStateMachine<TestStates, TestEvents> submachine = new ObjectStateMachine<TestStates, TestEvents>(
+				subStates, new ArrayList<Transition<TestStates, TestEvents>>(), s20);
+		submachine.setTaskExecutor(new SyncTaskExecutor());
+		submachine.afterPropertiesSet();
+
+		State<TestStates, TestEvents> s1 = new EnumState<TestStates, TestEvents>(TestStates.S1);
+		State<TestStates, TestEvents> s2 = new StateMachineState<TestStates, TestEvents>(TestStates.S2, submachine);
+		State<TestStates, TestEvents> s3 = new EnumState<TestStates, TestEvents>(TestStates.S3);
+		Collection<State<TestStates, TestEvents>> states = new ArrayList<State<TestStates, TestEvents>>();
+		states.add(s1);
+		states.add(s2);
+
+		StateHierarchyIndex<TestStates, TestEvents> index = new StateHierarchyIndex<TestStates, TestEvents>(states);
+
+		assertThat(index.contains(s21), is(true));
+		assertThat(index.contains(s3), is(false));
+
+		assertThat(index.isSubstate(s2, s21), is(true));
+		assertThat(index.isSubstate(s2, s2), is(false));
+		assertThat(index.isSubstate(s21, s2), is(false));
+		assertThat(index.isSubstate(s1, s21), is(false));
+		assertThat(index.isSubstate(s2, s3), is(false));
+		assertThat(index.isSubstate(index.getOrdinal(s2), index.getOrdinal(s21)), is(true));
+		assertThat(index.isSubstate(index.getOrdinal(s21), index.getOrdinal(s2)), is(false));
+		assertThat(index.isSubstate(-1, index.getOrdinal(s21)), is(false));
+
+		assertThat(index.getDepth(s1), is(0));
+		assertThat(index.getDepth(s21), is(1));
+		assertThat(index.getParent(s21), sameInstance(s2));
+		assertThat(index.getParent(s2), nullValue());
+
+		assertThat(index.getRoot(s21), sameInstance(s2));
+		assertThat(index.getRoot(s1), sameInstance(s1));
+		assertThat(index.getRoot(s3), nullValue());
+
+		assertThat(index.findLca(s20, s21), sameInstance(s2));
+		assertThat(index.findLca(s2, s21), sameInstance(s2));
+		assertThat(index.findLca(s1, s21), nullValue());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownState() {
+		Collection<State<TestStates, TestEvents>> states = new ArrayList<State<TestStates, TestEvents>>();
+		states.add(new EnumState<TestStates, TestEvents>(TestStates.S1));
+		StateHierarchyIndex<TestStates, TestEvents> index = new StateHierarchyIndex<TestStates, TestEvents>(states);
+		index.getDepth(new EnumState<TestStates, TestEvents>(TestStates.S2));
+	}
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
+import org.springframework.statemachine.StateContext;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.action.Action;
+import org.springframework.statemachine.config.StateMachineBuilder;
+import org.springframework.statemachine.config.StateMachineBuilder.Builder;
+
+public class StripedTaskExecutorTests {
+
+	@Test
+	public void testSameKeyKeepsOrder() throws Exception {
+		StripedTaskExecutor executor = new StripedTaskExecutor(4);
+		final List<Integer> results = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch latch = new CountDownLatch(100);
+		for (int i = 0; i < 100; i++) {
+			final int value = i;
+			executor.execute("key", new Runnable() {
+
+				@Override
+				public void run() {
+					results.add(value);
+					latch.countDown();
+				}
+			});
+		}
+		assertThat(latch.await(2, TimeUnit.SECONDS), is(true));
+		for (int i = 0; i < 100; i++) {
+			assertThat(results.get(i), is(i));
+		}
+		assertThat(executor.getStripe("key"), is(executor.getStripe("key")));
+		executor.shutdown();
+	}
+
+	@Test
+	public void testDrainQuotaKeepsMachinesFair() throws Exception {
+		StripedTaskExecutor executor = new StripedTaskExecutor(1, 10);
+		AtomicInteger hotCount = new AtomicInteger();
+		AtomicInteger coldCount = new AtomicInteger();
+		final AtomicInteger hotCountWhenColdRan = new AtomicInteger(-1);
+		final CountDownLatch coldLatch = new CountDownLatch(1);
+
+		StateMachine<String, String> hot = buildMachine(executor, hotCount, null, null);
+		StateMachine<String, String> cold = buildMachine(executor, coldCount, hotCount, hotCountWhenColdRan);
+		hot.start();
+		cold.start();
+		awaitStripe(executor);
+
+		// block a stripe so that both machines have queued events
+		final CountDownLatch blockLatch = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					blockLatch.await(2, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		for (int i = 0; i < 100; i++) {
+			assertThat(hot.sendEvent("E1"), is(true));
+		}
+		assertThat(cold.sendEvent("E1"), is(true));
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				coldLatch.countDown();
+			}
+		});
+		blockLatch.countDown();
+
+		awaitStripe(executor);
+		assertThat(coldLatch.await(2, TimeUnit.SECONDS), is(true));
+		assertThat(hotCount.get(), is(100));
+		assertThat(coldCount.get(), is(1));
+		// cold machine got its turn after one drain quota of a hot machine
+		assertThat(hotCountWhenColdRan.get(), is(10));
+		executor.shutdown();
+	}
+
+	@Test
+	public void testSendEventsFromMachineOnSameStripe() throws Exception {
+		StripedTaskExecutor executor = new StripedTaskExecutor(1);
+		AtomicInteger count = new AtomicInteger();
+		final StateMachine<String, String> target = buildMachine(executor, count, null, null);
+		final AtomicReference<List<Boolean>> results = new AtomicReference<List<Boolean>>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		StateMachine<String, String> source = buildMachine(executor, new Action<String, String>() {
+
+			@Override
+			public void execute(StateContext<String, String> context) {
+				// target drain can only run on this same stripe thread
+				results.set(target.sendEvents(Arrays.asList(MessageBuilder.withPayload("E1").build(),
+						MessageBuilder.withPayload("E1").build())));
+				latch.countDown();
+			}
+		});
+		target.start();
+		source.start();
+		awaitStripe(executor);
+
+		assertThat(source.sendEvent("E1"), is(true));
+		assertThat(latch.await(2, TimeUnit.SECONDS), is(true));
+		assertThat(results.get(), contains(true, true));
+		awaitStripe(executor);
+		assertThat(count.get(), is(2));
+		executor.shutdown();
+	}
+
+	@Test
+	public void testBlockingQueueFromMachineOnSameStripe() throws Exception {
+		StripedTaskExecutor executor = new StripedTaskExecutor(1);
+		final AtomicInteger count = new AtomicInteger();
+		final StateMachine<String, String> target = buildMachine(executor, new Action<String, String>() {
+
+			@Override
+			public void execute(StateContext<String, String> context) {
+				count.incrementAndGet();
+			}
+		}, 1);
+		final CountDownLatch latch = new CountDownLatch(1);
+		StateMachine<String, String> source = buildMachine(executor, new Action<String, String>() {
+
+			@Override
+			public void execute(StateContext<String, String> context) {
+				// a full target queue can only be drained on this same
+				// stripe thread, events are accepted over capacity
+				for (int i = 0; i < 3; i++) {
+					target.sendEvent("E1");
+				}
+				latch.countDown();
+			}
+		});
+		target.start();
+		source.start();
+		awaitStripe(executor);
+
+		assertThat(source.sendEvent("E1"), is(true));
+		assertThat(latch.await(2, TimeUnit.SECONDS), is(true));
+		awaitStripe(executor);
+		assertThat(count.get(), is(3));
+		executor.shutdown();
+	}
+
+	@Test
+	public void testStripeCapacityRejects() throws Exception {
+		StripedTaskExecutor executor = new StripedTaskExecutor(1, 64, 1);
+		final CountDownLatch running = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(2);
+		Runnable task = new Runnable() {
+
+			@Override
+			public void run() {
+				running.countDown();
+				try {
+					release.await(2, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				done.countDown();
+			}
+		};
+		executor.execute("key", task);
+		assertThat(running.await(2, TimeUnit.SECONDS), is(true));
+		executor.execute("key", task);
+		assertThat(executor.getQueueDepth(0), is(1));
+		try {
+			executor.execute("key", task);
+			fail("Full stripe should reject a task");
+		} catch (TaskRejectedException e) {
+			// expected
+		}
+		release.countDown();
+		assertThat(done.await(2, TimeUnit.SECONDS), is(true));
+		executor.shutdown();
+	}
+
+	@Test
+	public void testKeyedTaskExecutorUsesMachineId() throws Exception {
+		final StripedTaskExecutor delegate = new StripedTaskExecutor(2, 1);
+		final List<Object> keys = Collections.synchronizedList(new ArrayList<Object>());
+		KeyedTaskExecutor executor = new KeyedTaskExecutor() {
+
+			@Override
+			public void execute(Runnable task) {
+				delegate.execute(task);
+			}
+
+			@Override
+			public void execute(Object key, Runnable task) {
+				keys.add(key);
+				delegate.execute(key, task);
+			}
+
+			@Override
+			public int getDrainQuota() {
+				return delegate.getDrainQuota();
+			}
+		};
+		final CountDownLatch latch = new CountDownLatch(3);
+		StateMachine<String, String> machine = buildMachine(executor, new Action<String, String>() {
+
+			@Override
+			public void execute(StateContext<String, String> context) {
+				latch.countDown();
+			}
+		});
+		machine.start();
+		machine.sendEvents(Arrays.asList(MessageBuilder.withPayload("E1").build(),
+				MessageBuilder.withPayload("E1").build(), MessageBuilder.withPayload("E1").build()));
+		assertThat(latch.await(2, TimeUnit.SECONDS), is(true));
+		assertThat(keys.isEmpty(), is(false));
+		assertThat(new HashSet<Object>(keys), contains((Object) machine.getId()));
+		delegate.shutdown();
+	}
+
+	private static StateMachine<String, String> buildMachine(StripedTaskExecutor executor, final AtomicInteger count,
+			final AtomicInteger other, final AtomicInteger otherWhenRan) throws Exception {
+		return buildMachine(executor, new Action<String, String>() {
+
+			@Override
+			public void execute(StateContext<String, String> context) {
+				count.incrementAndGet();
+				if (otherWhenRan != null) {
+					otherWhenRan.set(other.get());
+				}
+			}
+		});
+	}
+
+	private static StateMachine<String, String> buildMachine(TaskExecutor executor, Action<String, String> action)
+			throws Exception {
+		return buildMachine(executor, action, 0);
+	}
+
+	private static StateMachine<String, String> buildMachine(TaskExecutor executor, Action<String, String> action,
+			int blockingCapacity) throws Exception {
+		Builder<String, String> builder = StateMachineBuilder.builder();
+		builder.configureConfiguration()
+			.withConfiguration()
+				.taskExecutor(executor)
+				.taskScheduler(new ConcurrentTaskScheduler())
+				.eventQueueCapacity(blockingCapacity)
+				.eventQueuePolicy(EventQueuePolicy.BLOCK);
+		builder.configureStates()
+			.withStates()
+				.initial("S1");
+		builder.configureTransitions()
+			.withInternal()
+				.source("S1").event("E1")
+				.action(action);
+		return builder.build();
+	}
+
+	private static void awaitStripe(StripedTaskExecutor executor) throws Exception {
+		// stripe is idle once a marker task has run
+		for (int i = 0; i < 10; i++) {
+			final CountDownLatch latch = new CountDownLatch(1);
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					latch.countDown();
+				}
+			});
+			assertThat(latch.await(2, TimeUnit.SECONDS), is(true));
+		}
+	}
+
+}
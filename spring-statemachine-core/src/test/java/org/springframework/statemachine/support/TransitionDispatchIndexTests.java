@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.springframework.statemachine.AbstractStateMachineTests.TestEvents;
+import org.springframework.statemachine.AbstractStateMachineTests.TestStates;
+import org.springframework.statemachine.state.EnumState;
+import org.springframework.statemachine.state.ObjectState;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.transition.DefaultExternalTransition;
+import org.springframework.statemachine.transition.Transition;
+import org.springframework.statemachine.trigger.EventTrigger;
+
+public class TransitionDispatchIndexTests {
+
+	@Test
+	public void testCandidatesInHierarchyOrder() {
+		State<TestStates, TestEvents> s1 = new EnumState<TestStates, TestEvents>(TestStates.S1);
+		State<TestStates, TestEvents> s11 = new EnumState<TestStates, TestEvents>(TestStates.S11);
+		State<TestStates, TestEvents> s2 = new EnumState<TestStates, TestEvents>(TestStates.S2);
+
+		Transition<TestStates, TestEvents> t1 = transition(s1, s2, TestEvents.E1);
+		Transition<TestStates, TestEvents> t2 = transition(s11, s2, TestEvents.E1);
+		Transition<TestStates, TestEvents> t3 = transition(s2, s1, TestEvents.E2);
+
+		Collection<Transition<TestStates, TestEvents>> transitions = new ArrayList<Transition<TestStates, TestEvents>>();
+		transitions.add(t1);
+		transitions.add(t2);
+		transitions.add(t3);
+		TransitionDispatchIndex<TestStates, TestEvents> index = new TransitionDispatchIndex<TestStates, TestEvents>(transitions);
+
+		assertThat(index.findTransitions(Arrays.asList(TestStates.S1, TestStates.S11), TestEvents.E1), contains(t2, t1));
+		assertThat(index.findTransitions(Arrays.asList(TestStates.S1), TestEvents.E1), contains(t1));
+		assertThat(index.findTransitions(Arrays.asList(TestStates.S1, TestStates.S11), TestEvents.E2).isEmpty(), is(true));
+		assertThat(index.findTrigger(Arrays.asList(TestStates.S1, TestStates.S11), TestEvents.E1), sameInstance(t2.getTrigger()));
+		assertThat(index.findTrigger(Arrays.asList(TestStates.S2), TestEvents.E1), nullValue());
+	}
+
+	@Test
+	public void testDeferred() {
+		Collection<TestEvents> deferred = Arrays.asList(TestEvents.E3);
+		State<TestStates, TestEvents> s1 = new EnumState<TestStates, TestEvents>(TestStates.S1, deferred);
+		State<TestStates, TestEvents> s2 = new EnumState<TestStates, TestEvents>(TestStates.S2);
+
+		Collection<Transition<TestStates, TestEvents>> transitions = new ArrayList<Transition<TestStates, TestEvents>>();
+		transitions.add(transition(s1, s2, TestEvents.E1));
+		TransitionDispatchIndex<TestStates, TestEvents> index = new TransitionDispatchIndex<TestStates, TestEvents>(transitions);
+
+		assertThat(index.isDeferred(Arrays.asList(TestStates.S1), TestEvents.E3), is(true));
+		assertThat(index.isDeferred(Arrays.asList(TestStates.S1), TestEvents.E2), is(false));
+		assertThat(index.isDeferred(Arrays.asList(TestStates.S2), TestEvents.E3), is(false));
+	}
+
+	@Test
+	public void testEnumIndexCreated() {
+		State<TestStates, TestEvents> s1 = new EnumState<TestStates, TestEvents>(TestStates.S1);
+		State<TestStates, TestEvents> s11 = new EnumState<TestStates, TestEvents>(TestStates.S11);
+		State<TestStates, TestEvents> s2 = new EnumState<TestStates, TestEvents>(TestStates.S2);
+
+		Transition<TestStates, TestEvents> t1 = transition(s1, s2, TestEvents.E1);
+		Transition<TestStates, TestEvents> t2 = transition(s11, s2, TestEvents.E1);
+		Transition<TestStates, TestEvents> t3 = transition(s2, s1, TestEvents.E2);
+
+		Collection<Transition<TestStates, TestEvents>> transitions = new ArrayList<Transition<TestStates, TestEvents>>();
+		transitions.add(t1);
+		transitions.add(t2);
+		transitions.add(t3);
+		TransitionDispatchIndex<TestStates, TestEvents> index = TransitionDispatchIndex.create(transitions);
+
+		assertThat(index, instanceOf(EnumTransitionDispatchIndex.class));
+		assertThat(index.findTransitions(Arrays.asList(TestStates.S1, TestStates.S11), TestEvents.E1), contains(t2, t1));
+		assertThat(index.getTransitions(TestStates.S2, TestEvents.E2), contains(t3));
+		assertThat(index.getTransitions(TestStates.S3, TestEvents.E2).isEmpty(), is(true));
+		assertThat(index.getEvents(TestStates.S2), contains(TestEvents.E2));
+		assertThat(index.getEvents(TestStates.S3).isEmpty(), is(true));
+	}
+
+	@Test
+	public void testObjectIndexCreated() {
+		State<String, String> s1 = new ObjectState<String, String>("S1");
+		State<String, String> s2 = new ObjectState<String, String>("S2");
+		Transition<String, String> t1 = new DefaultExternalTransition<String, String>(s1, s2, null, "E1", null,
+				new EventTrigger<String, String>("E1"));
+
+		TransitionDispatchIndex<String, String> index = TransitionDispatchIndex.create(Collections.singletonList(t1));
+
+		assertThat(index, not(instanceOf(EnumTransitionDispatchIndex.class)));
+		assertThat(index.getTransitions("S1", "E1"), contains(t1));
+	}
+
+	private static Transition<TestStates, TestEvents> transition(State<TestStates, TestEvents> source,
+			State<TestStates, TestEvents> target, TestEvents event) {
+		return new DefaultExternalTransition<TestStates, TestEvents>(source, target, null, event, null,
+				new EventTrigger<TestStates, TestEvents>(event));
+	}
+
+}
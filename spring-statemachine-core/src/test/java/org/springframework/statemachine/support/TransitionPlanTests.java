@@ -0,0 +1,397 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.support;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
+import org.springframework.statemachine.ObjectStateMachine;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.AbstractStateMachineTests.TestEvents;
+import org.springframework.statemachine.AbstractStateMachineTests.TestStates;
+import org.springframework.statemachine.config.StateMachineBuilder;
+import org.springframework.statemachine.listener.StateMachineListenerAdapter;
+import org.springframework.statemachine.state.DefaultPseudoState;
+import org.springframework.statemachine.state.EnumState;
+import org.springframework.statemachine.state.PseudoStateKind;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.state.StateMachineState;
+import org.springframework.statemachine.transition.Transition;
+
+public class TransitionPlanTests {
+
+	@Test
+	public void testCompiledPlans() throws Exception {
+		Hierarchy h = new Hierarchy();
+
+		// sibling transition within a submachine stays inside it
+		TransitionPlan<TestStates, TestEvents> plan = TransitionPlan.compile(h.s111, h.s112, h.index);
+		assertThat(h.ids(plan.getExits()), contains(TestStates.S111));
+		assertThat(h.ids(plan.getEntries()), contains(TestStates.S112));
+		assertThat(h.ids(plan.getReentries()), empty());
+		assertThat(h.isExit(plan, h.s11), is(false));
+		assertThat(h.isEntry(plan, h.s11), is(false));
+
+		// into a submachine enters its parents outermost first
+		plan = TransitionPlan.compile(h.s2, h.s112, h.index);
+		assertThat(h.ids(plan.getExits()), contains(TestStates.S2));
+		assertThat(h.ids(plan.getEntries()), contains(TestStates.S1, TestStates.S11, TestStates.S112));
+		assertThat(h.isEntry(plan, h.s111), is(false));
+
+		// out of a submachine exits its parents innermost first
+		plan = TransitionPlan.compile(h.s112, h.s2, h.index);
+		assertThat(h.ids(plan.getExits()), contains(TestStates.S112, TestStates.S11, TestStates.S1));
+		assertThat(h.ids(plan.getEntries()), contains(TestStates.S2));
+		assertThat(h.isExit(plan, h.s111), is(true));
+		assertThat(h.isExit(plan, h.s12), is(true));
+		assertThat(h.isEntry(plan, h.s1), is(false));
+	}
+
+	@Test
+	public void testCompiledReentryPlans() throws Exception {
+		Hierarchy h = new Hierarchy();
+
+		// self transition re-enters a submachine state
+		TransitionPlan<TestStates, TestEvents> plan = TransitionPlan.compile(h.s1, h.s1, h.index);
+		assertThat(h.ids(plan.getExits()), contains(TestStates.S1));
+		assertThat(h.ids(plan.getEntries()), contains(TestStates.S1));
+		assertThat(h.ids(plan.getReentries()), contains(TestStates.S1));
+		assertThat(h.isExit(plan, h.s112), is(true));
+		assertThat(h.isEntry(plan, h.s11), is(true));
+
+		// from a submachine state into its own substate restarts a submachine
+		plan = TransitionPlan.compile(h.s1, h.s12, h.index);
+		assertThat(h.ids(plan.getExits()), contains(TestStates.S1));
+		assertThat(h.ids(plan.getEntries()), contains(TestStates.S1, TestStates.S12));
+		assertThat(h.ids(plan.getReentries()), contains(TestStates.S1));
+		assertThat(h.isExit(plan, h.s11), is(true));
+
+		// from a substate into its own parent restarts a submachine
+		plan = TransitionPlan.compile(h.s112, h.s1, h.index);
+		assertThat(h.ids(plan.getExits()), contains(TestStates.S112, TestStates.S11, TestStates.S1));
+		assertThat(h.ids(plan.getEntries()), contains(TestStates.S1));
+		assertThat(h.ids(plan.getReentries()), contains(TestStates.S1));
+
+		// between substates a submachine state is not re-entered
+		plan = TransitionPlan.compile(h.s11, h.s12, h.index);
+		assertThat(h.ids(plan.getExits()), contains(TestStates.S11));
+		assertThat(h.ids(plan.getEntries()), contains(TestStates.S12));
+		assertThat(h.ids(plan.getReentries()), empty());
+		assertThat(plan.isReentry(h.index.getOrdinal(h.s1)), is(false));
+		assertThat(h.isExit(plan, h.s1), is(false));
+	}
+
+	@Test
+	public void testCompiledPlansWithoutKnownStates() throws Exception {
+		Hierarchy h = new Hierarchy();
+
+		// transient target enters everything under a common ancestor
+		TransitionPlan<TestStates, TestEvents> plan = TransitionPlan.compile(h.s2, h.s3, h.index);
+		assertThat(h.ids(plan.getExits()), contains(TestStates.S2));
+		assertThat(h.ids(plan.getEntries()), contains(TestStates.S3));
+		assertThat(h.isEntry(plan, h.s12), is(true));
+
+		// initial transition doesn't have a source, states
+		// containing a target are kept
+		plan = TransitionPlan.compile(null, h.s111, h.index);
+		assertThat(plan.getSource(), is(-1));
+		assertThat(h.ids(plan.getExits()), empty());
+		assertThat(h.ids(plan.getEntries()), contains(TestStates.S1, TestStates.S11, TestStates.S111));
+		assertThat(h.isExit(plan, h.s1), is(false));
+		assertThat(h.isExit(plan, h.s111), is(true));
+		assertThat(h.isExit(plan, h.s2), is(true));
+		assertThat(h.isEntry(plan, h.s2), is(true));
+
+		// states outside of an index
+		State<TestStates, TestEvents> s4 = new EnumState<TestStates, TestEvents>(TestStates.S4);
+		plan = TransitionPlan.compile(s4, h.s12, h.index);
+		assertThat(plan.getSource(), is(-1));
+		assertThat(h.ids(plan.getExits()), empty());
+		assertThat(h.isEntry(plan, h.s2), is(true));
+		assertThat(plan.isExit(-1, h.index), is(false));
+		assertThat(plan.isEntry(-1, h.index), is(false));
+	}
+
+	@Test
+	public void testPlanCache() throws Exception {
+		Hierarchy h1 = new Hierarchy();
+		Hierarchy h2 = new Hierarchy();
+		TransitionPlanCache<TestStates, TestEvents> cache = new TransitionPlanCache<TestStates, TestEvents>();
+
+		// same configuration gives same ordinals, thus a plan is shared
+		TransitionPlan<TestStates, TestEvents> plan = cache.getTransitionPlan(h1.s112, h1.s2, h1.index);
+		assertThat(cache.getTransitionPlan(h2.s112, h2.s2, h2.index), sameInstance(plan));
+		assertThat(cache.getTransitionPlan(null, h2.s2, h2.index), not(sameInstance(plan)));
+		assertThat(cache.getTransitionPlan(h2.s2, h2.s112, h2.index), not(sameInstance(plan)));
+		assertThat(cache.size(), is(3));
+	}
+
+	@Test
+	public void testNestedTransitionOrder() throws Exception {
+		StateMachineBuilder.Builder<String, String> builder = builder();
+		builder.configureStates()
+			.withStates()
+				.initial("S1").state("S2")
+				.and()
+				.withStates()
+					.parent("S1")
+					.initial("S11")
+					.and()
+					.withStates()
+						.parent("S11")
+						.initial("S111")
+						.and()
+				.withStates()
+					.parent("S2")
+					.initial("S21");
+		builder.configureTransitions()
+			.withExternal()
+				.source("S111").target("S2").event("E1");
+
+		StateMachine<String, String> machine = builder.build();
+		RecordingListener listener = start(machine);
+		assertThat(listener.events, contains("entry S1", "entry S11", "entry S111"));
+
+		listener.events.clear();
+		machine.sendEvent("E1");
+		assertThat(listener.events, contains("exit S111", "exit S11", "exit S1", "entry S2", "entry S21"));
+		assertThat(machine.getState().getIds(), contains("S2", "S21"));
+	}
+
+	@Test
+	public void testSubmachineTransitionOrder() throws Exception {
+		StateMachineBuilder.Builder<String, String> builder = builder();
+		builder.configureStates()
+			.withStates()
+				.initial("S1").state("S2")
+				.and()
+				.withStates()
+					.parent("S1")
+					.initial("S11").state("S12");
+		builder.configureTransitions()
+			.withExternal()
+				.source("S11").target("S12").event("E1")
+				.and()
+			.withExternal()
+				.source("S2").target("S12").event("E2")
+				.and()
+			.withExternal()
+				.source("S12").target("S2").event("E3");
+
+		StateMachine<String, String> machine = builder.build();
+		RecordingListener listener = start(machine);
+
+		// transition within a submachine keeps its parent
+		listener.events.clear();
+		machine.sendEvent("E1");
+		assertThat(listener.events, contains("exit S11", "entry S12"));
+
+		listener.events.clear();
+		machine.sendEvent("E3");
+		assertThat(listener.events, contains("exit S12", "exit S1", "entry S2"));
+
+		// transition into a submachine enters its parent first, starting
+		// a submachine enters its initial state before a target is entered
+		listener.events.clear();
+		machine.sendEvent("E2");
+		assertThat(listener.events, contains("exit S2", "entry S1", "entry S11", "entry S12"));
+		assertThat(machine.getState().getIds(), contains("S1", "S12"));
+	}
+
+	@Test
+	public void testSubmachineReentryOrder() throws Exception {
+		StateMachineBuilder.Builder<String, String> builder = builder();
+		builder.configureStates()
+			.withStates()
+				.initial("S1").state("S2")
+				.and()
+				.withStates()
+					.parent("S1")
+					.initial("S11").state("S12");
+		builder.configureTransitions()
+			.withExternal()
+				.source("S1").target("S12").event("E1")
+				.and()
+			.withExternal()
+				.source("S12").target("S1").event("E2")
+				.and()
+			.withExternal()
+				.source("S11").target("S12").event("E3");
+
+		StateMachine<String, String> machine = builder.build();
+		RecordingListener listener = start(machine);
+
+		// between substates a parent is kept
+		listener.events.clear();
+		machine.sendEvent("E3");
+		assertThat(listener.events, contains("exit S11", "entry S12"));
+
+		// substate into its own parent exits and re-enters a parent,
+		// a machine then returns into a source substate
+		listener.events.clear();
+		machine.sendEvent("E2");
+		assertThat(listener.events, contains("exit S12", "exit S1", "entry S1", "entry S12"));
+		assertThat(machine.getState().getIds(), contains("S1", "S12"));
+
+		// parent into its own substate exits and re-enters a parent,
+		// restarted submachine enters its initial state before a target
+		listener.events.clear();
+		machine.sendEvent("E1");
+		assertThat(listener.events, contains("exit S12", "exit S1", "entry S1", "entry S11", "entry S12"));
+		assertThat(machine.getState().getIds(), contains("S1", "S12"));
+	}
+
+	@Test
+	public void testSelfTransitionOrder() throws Exception {
+		StateMachineBuilder.Builder<String, String> builder = builder();
+		builder.configureStates()
+			.withStates()
+				.initial("S1").state("S2")
+				.and()
+				.withStates()
+					.parent("S1")
+					.initial("S11").state("S12");
+		builder.configureTransitions()
+			.withExternal()
+				.source("S1").target("S1").event("E1")
+				.and()
+			.withExternal()
+				.source("S11").target("S12").event("E2")
+				.and()
+			.withInternal()
+				.source("S1").event("E3");
+
+		StateMachine<String, String> machine = builder.build();
+		RecordingListener listener = start(machine);
+
+		listener.events.clear();
+		machine.sendEvent("E2");
+		assertThat(listener.events, contains("exit S11", "entry S12"));
+
+		// external self transition exits and re-enters a whole state
+		listener.events.clear();
+		machine.sendEvent("E1");
+		assertThat(listener.events, contains("exit S12", "exit S1", "entry S1", "entry S11"));
+		assertThat(machine.getState().getIds(), contains("S1", "S11"));
+
+		// internal transition doesn't exit or enter anything
+		listener.events.clear();
+		assertThat(machine.sendEvent("E3"), is(true));
+		assertThat(listener.events, empty());
+	}
+
+	private static class Hierarchy {
+
+		final State<TestStates, TestEvents> s1;
+		final State<TestStates, TestEvents> s11;
+		final State<TestStates, TestEvents> s111;
+		final State<TestStates, TestEvents> s112;
+		final State<TestStates, TestEvents> s12;
+		final State<TestStates, TestEvents> s2;
+		final State<TestStates, TestEvents> s3;
+		final List<State<TestStates, TestEvents>> all = new ArrayList<State<TestStates, TestEvents>>();
+		final StateHierarchyIndex<TestStates, TestEvents> index;
+
+		// S1 has submachine with S11 and S12, S11 has submachine with
+		// S111 and S112, S2 is a simple state and S3 is a choice
+		Hierarchy() throws Exception {
+			s111 = new EnumState<TestStates, TestEvents>(TestStates.S111,
+					new DefaultPseudoState<TestStates, TestEvents>(PseudoStateKind.INITIAL));
+			s112 = new EnumState<TestStates, TestEvents>(TestStates.S112);
+			s11 = new StateMachineState<TestStates, TestEvents>(TestStates.S11, machine(s111, s112),
+					new DefaultPseudoState<TestStates, TestEvents>(PseudoStateKind.INITIAL));
+			s12 = new EnumState<TestStates, TestEvents>(TestStates.S12);
+			s1 = new StateMachineState<TestStates, TestEvents>(TestStates.S1, machine(s11, s12));
+			s2 = new EnumState<TestStates, TestEvents>(TestStates.S2);
+			s3 = new EnumState<TestStates, TestEvents>(TestStates.S3,
+					new DefaultPseudoState<TestStates, TestEvents>(PseudoStateKind.CHOICE));
+			all.addAll(Arrays.asList(s1, s11, s111, s112, s12, s2, s3));
+			index = new StateHierarchyIndex<TestStates, TestEvents>(Arrays.asList(s1, s2, s3));
+		}
+
+		List<TestStates> ids(int[] ordinals) {
+			List<TestStates> ids = new ArrayList<TestStates>();
+			for (int ordinal : ordinals) {
+				for (State<TestStates, TestEvents> state : all) {
+					if (index.getOrdinal(state) == ordinal) {
+						ids.add(state.getId());
+					}
+				}
+			}
+			return ids;
+		}
+
+		boolean isExit(TransitionPlan<TestStates, TestEvents> plan, State<TestStates, TestEvents> state) {
+			return plan.isExit(index.getOrdinal(state), index);
+		}
+
+		boolean isEntry(TransitionPlan<TestStates, TestEvents> plan, State<TestStates, TestEvents> state) {
+			return plan.isEntry(index.getOrdinal(state), index);
+		}
+
+		private static ObjectStateMachine<TestStates, TestEvents> machine(State<TestStates, TestEvents> initial,
+				State<TestStates, TestEvents> other) throws Exception {
+			ObjectStateMachine<TestStates, TestEvents> machine = new ObjectStateMachine<TestStates, TestEvents>(
+					Arrays.asList(initial, other), new ArrayList<Transition<TestStates, TestEvents>>(), initial);
+			machine.setTaskExecutor(new SyncTaskExecutor());
+			machine.afterPropertiesSet();
+			return machine;
+		}
+	}
+
+	private static StateMachineBuilder.Builder<String, String> builder() throws Exception {
+		StateMachineBuilder.Builder<String, String> builder = StateMachineBuilder.builder();
+		builder.configureConfiguration()
+			.withConfiguration()
+				.taskExecutor(new SyncTaskExecutor())
+				.taskScheduler(new ConcurrentTaskScheduler());
+		return builder;
+	}
+
+	private static RecordingListener start(StateMachine<String, String> machine) {
+		RecordingListener listener = new RecordingListener();
+		machine.addStateListener(listener);
+		machine.start();
+		return listener;
+	}
+
+	private static class RecordingListener extends StateMachineListenerAdapter<String, String> {
+
+		final List<String> events = new ArrayList<String>();
+
+		@Override
+		public void stateEntered(State<String, String> state) {
+			events.add("entry " + state.getId());
+		}
+
+		@Override
+		public void stateExited(State<String, String> state) {
+			events.add("exit " + state.getId());
+		}
+	}
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.recipes.persist;
+
+import java.util.Iterator;
+
+import org.springframework.messaging.Message;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.access.StateMachineAccess;
+import org.springframework.statemachine.access.StateMachineFunction;
+import org.springframework.statemachine.config.StateMachineFactory;
+import org.springframework.statemachine.listener.AbstractCompositeListener;
+import org.springframework.statemachine.pool.DefaultStateMachinePool;
+import org.springframework.statemachine.pool.StateMachinePoolMetrics;
+import org.springframework.statemachine.recipes.persist.PersistStateMachineHandler.PersistStateChangeListener;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.support.AbstractStateMachine;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+import org.springframework.statemachine.support.LifecycleObjectSupport;
+import org.springframework.statemachine.support.StateMachineInterceptorAdapter;
+import org.springframework.statemachine.transition.Transition;
+import org.springframework.util.Assert;
+
+/**
+ * {@code ConcurrentPersistStateMachineHandler} is a recipe which can be used
+ * to handle a state change of an arbitrary entity in a persistent storage
+ * from multiple threads.
+ * <p>
+ * Where {@link PersistStateMachineHandler} stops, resets and restarts a
+ * single shared machine for every event, this handler borrows a machine
+ * from a pool built on a {@link StateMachineFactory}, resets it in place
+ * into a state of an entity, sends an event and returns the machine. Events
+ * for independent entities are then processed in parallel. Serializing
+ * events of a same entity is left to the persistent storage.
+ * <p>
+ * Events need to be processed on a calling thread so that persist listeners
+ * are called before a machine is returned to the pool, thus machines need
+ * to be configured with a synchronous task executor or with caller thread
+ * execution. Machines processing events on other threads are rejected when
+ * first created. Events deferred or left queued by a previous use are
+ * cleared by the pool when a machine is returned.
+ *
+ * @author Janne Valkealahti
+ *
+ */
+public class ConcurrentPersistStateMachineHandler extends LifecycleObjectSupport {
+
+	private final PersistingStateMachinePool pool;
+	private final PersistingStateChangeInterceptor interceptor = new PersistingStateChangeInterceptor();
+	private final CompositePersistStateChangeListener listeners = new CompositePersistStateChangeListener();
+
+	/**
+	 * Instantiates a new concurrent persist state machine handler
+	 * using an unbounded pool.
+	 *
+	 * @param stateMachineFactory the state machine factory
+	 */
+	public ConcurrentPersistStateMachineHandler(StateMachineFactory<String, String> stateMachineFactory) {
+		this(stateMachineFactory, 0);
+	}
+
+	/**
+	 * Instantiates a new concurrent persist state machine handler.
+	 *
+	 * @param stateMachineFactory the state machine factory
+	 * @param maxSize the maximum number of pooled machines, zero or negative for unbounded
+	 */
+	public ConcurrentPersistStateMachineHandler(StateMachineFactory<String, String> stateMachineFactory, int maxSize) {
+		Assert.notNull(stateMachineFactory, "State machine factory must be set");
+		this.pool = new PersistingStateMachinePool(stateMachineFactory, maxSize);
+	}
+
+	/**
+	 * Sets the maximum time in milliseconds a call waits for a machine
+	 * when all machines are in use.
+	 *
+	 * @param maxWait the max wait in milliseconds
+	 * @see DefaultStateMachinePool#setMaxWait(long)
+	 */
+	public void setMaxWait(long maxWait) {
+		pool.setMaxWait(maxWait);
+	}
+
+	/**
+	 * Sets the time in milliseconds an unused machine is kept.
+	 *
+	 * @param idleTimeout the idle timeout in milliseconds
+	 * @see DefaultStateMachinePool#setIdleTimeout(long)
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		pool.setIdleTimeout(idleTimeout);
+	}
+
+	@Override
+	protected void onInit() throws Exception {
+		if (getBeanFactory() != null) {
+			pool.setBeanFactory(getBeanFactory());
+		}
+		if (getTaskScheduler() != null) {
+			pool.setTaskScheduler(getTaskScheduler());
+		}
+		pool.afterPropertiesSet();
+	}
+
+	@Override
+	protected void doStart() {
+		pool.start();
+	}
+
+	@Override
+	protected void doStop() {
+		pool.stop();
+	}
+
+	/**
+	 * Handle event with entity.
+	 *
+	 * @param event the event
+	 * @param state the state
+	 * @return true if event was accepted
+	 */
+	public boolean handleEventWithState(Message<String> event, String state) {
+		StateMachine<String, String> stateMachine = pool.borrowStateMachine(new DefaultStateMachineContext<String, String>(
+				state, null, null, null));
+		try {
+			return stateMachine.sendEvent(event);
+		} finally {
+			pool.returnStateMachine(stateMachine);
+		}
+	}
+
+	/**
+	 * Adds the persist state change listener.
+	 *
+	 * @param listener the listener
+	 */
+	public void addPersistStateChangeListener(PersistStateChangeListener listener) {
+		listeners.register(listener);
+	}
+
+	/**
+	 * Gets the metrics of a pool used by this handler.
+	 *
+	 * @return the pool metrics
+	 */
+	public StateMachinePoolMetrics getPoolMetrics() {
+		return pool.getPoolMetrics();
+	}
+
+	private class PersistingStateMachinePool extends DefaultStateMachinePool<String, String> {
+
+		public PersistingStateMachinePool(StateMachineFactory<String, String> stateMachineFactory, int maxSize) {
+			super(stateMachineFactory, maxSize);
+		}
+
+		@Override
+		protected StateMachine<String, String> createStateMachine() {
+			StateMachine<String, String> stateMachine = super.createStateMachine();
+			stateMachine.getStateMachineAccessor().doWithAllRegions(new StateMachineFunction<StateMachineAccess<String,String>>() {
+
+				@Override
+				public void apply(StateMachineAccess<String, String> function) {
+					if (function instanceof AbstractStateMachine) {
+						Assert.state(((AbstractStateMachine<String, String>) function).isSynchronousExecution(),
+								"Pooled machines need to process events on a calling thread, "
+										+ "use a synchronous task executor or caller thread execution");
+					}
+					function.addStateMachineInterceptor(interceptor);
+				}
+			});
+			return stateMachine;
+		}
+	}
+
+	private class PersistingStateChangeInterceptor extends StateMachineInterceptorAdapter<String, String> {
+
+		@Override
+		public void preStateChange(State<String, String> state, Message<String> message,
+				Transition<String, String> transition, StateMachine<String, String> stateMachine) {
+			listeners.onPersist(state, message, transition, stateMachine);
+		}
+	}
+
+	private class CompositePersistStateChangeListener extends AbstractCompositeListener<PersistStateChangeListener> implements
+		PersistStateChangeListener {
+
+		@Override
+		public void onPersist(State<String, String> state, Message<String> message,
+				Transition<String, String> transition, StateMachine<String, String> stateMachine) {
+			for (Iterator<PersistStateChangeListener> iterator = getListeners().reverse(); iterator.hasNext();) {
+				PersistStateChangeListener listener = iterator.next();
+				listener.onPersist(state, message, transition, stateMachine);
+			}
+		}
+	}
+
+}
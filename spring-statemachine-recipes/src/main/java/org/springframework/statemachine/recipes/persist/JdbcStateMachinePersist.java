@@ -0,0 +1,226 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.recipes.persist;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachineException;
+import org.springframework.statemachine.ensemble.StateMachinePersist;
+import org.springframework.statemachine.kryo.KryoStateMachineSerializationService;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * {@link StateMachinePersist} using a relational database as a storage
+ * and kryo libraries as a backing serialization technique.
+ * <p>
+ * A whole {@link StateMachineContext} including its child contexts and
+ * extended state variables is stored as a single binary column keyed by
+ * a machine or business id. Writes are guarded by a version column so that
+ * a stale context is never written over a newer one. Reads and writes of
+ * multiple contexts are done with a single statement per batch.
+ * <p>
+ * Expected table with a default name looks like:
+ * <pre>
+ * create table state_machine_context (
+ *   machine_id varchar(256) not null primary key,
+ *   version bigint not null,
+ *   context varbinary(65536) not null)
+ * </pre>
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <S> the type of state
+ * @param <E> the type of event
+ */
+public class JdbcStateMachinePersist<S, E> implements StateMachinePersist<S, E, VersionedStateMachineId> {
+
+	/** Default table name */
+	public static final String DEFAULT_TABLE_NAME = "state_machine_context";
+
+	private final KryoStateMachineSerializationService<S, E> serializationService = new KryoStateMachineSerializationService<S, E>();
+	private final JdbcTemplate jdbcTemplate;
+	private final String selectSql;
+	private final String insertSql;
+	private final String updateSql;
+	private int batchSize = 100;
+
+	/**
+	 * Instantiates a new jdbc state machine persist using a default table name.
+	 *
+	 * @param jdbcTemplate the jdbc template
+	 */
+	public JdbcStateMachinePersist(JdbcTemplate jdbcTemplate) {
+		this(jdbcTemplate, DEFAULT_TABLE_NAME);
+	}
+
+	/**
+	 * Instantiates a new jdbc state machine persist.
+	 *
+	 * @param jdbcTemplate the jdbc template
+	 * @param tableName the table name
+	 */
+	public JdbcStateMachinePersist(JdbcTemplate jdbcTemplate, String tableName) {
+		Assert.notNull(jdbcTemplate, "Jdbc template must be set");
+		Assert.hasText(tableName, "Table name must be set");
+		this.jdbcTemplate = jdbcTemplate;
+		this.selectSql = "select machine_id, version, context from " + tableName + " where machine_id in ";
+		this.insertSql = "insert into " + tableName + " (machine_id, version, context) values (?, 1, ?)";
+		this.updateSql = "update " + tableName + " set context = ?, version = version + 1 where machine_id = ? and version = ?";
+	}
+
+	/**
+	 * Sets the maximum number of contexts read or written with a single
+	 * statement. Default is 100.
+	 *
+	 * @param batchSize the batch size
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "Batch size must be positive");
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	public void write(StateMachineContext<S, E> context, VersionedStateMachineId id) {
+		Map<VersionedStateMachineId, StateMachineContext<S, E>> contexts = new HashMap<VersionedStateMachineId, StateMachineContext<S, E>>(1);
+		contexts.put(id, context);
+		writeAll(contexts);
+	}
+
+	@Override
+	public StateMachineContext<S, E> read(VersionedStateMachineId id) {
+		List<VersionedStateMachineId> ids = new ArrayList<VersionedStateMachineId>(1);
+		ids.add(id);
+		return readAll(ids).get(0);
+	}
+
+	/**
+	 * Write multiple contexts. Contexts not yet persisted are inserted
+	 * and others are updated if a persisted version still matches a
+	 * version of an id. Versions of written ids are incremented.
+	 * <p>
+	 * Batches are not written atomically unless this method is called
+	 * within a transaction.
+	 *
+	 * @param contexts the contexts keyed by ids
+	 * @throws StateMachineException if writing failed or some contexts
+	 *         were modified or inserted concurrently
+	 */
+	public void writeAll(Map<VersionedStateMachineId, StateMachineContext<S, E>> contexts) {
+		List<VersionedStateMachineId> inserts = new ArrayList<VersionedStateMachineId>();
+		List<Object[]> insertArgs = new ArrayList<Object[]>();
+		List<VersionedStateMachineId> updates = new ArrayList<VersionedStateMachineId>();
+		List<Object[]> updateArgs = new ArrayList<Object[]>();
+		for (Entry<VersionedStateMachineId, StateMachineContext<S, E>> entry : contexts.entrySet()) {
+			VersionedStateMachineId id = entry.getKey();
+			byte[] data = serializationService.serializeStateMachineContext(entry.getValue());
+			if (id.getVersion() == 0) {
+				inserts.add(id);
+				insertArgs.add(new Object[] { id.getId(), data });
+			} else {
+				updates.add(id);
+				updateArgs.add(new Object[] { data, id.getId(), id.getVersion() });
+			}
+		}
+
+		List<VersionedStateMachineId> conflicts = new ArrayList<VersionedStateMachineId>();
+		try {
+			for (int i = 0; i < inserts.size(); i += batchSize) {
+				int end = Math.min(i + batchSize, inserts.size());
+				jdbcTemplate.batchUpdate(insertSql, insertArgs.subList(i, end));
+				for (VersionedStateMachineId id : inserts.subList(i, end)) {
+					id.setVersion(1);
+				}
+			}
+			for (int i = 0; i < updates.size(); i += batchSize) {
+				int end = Math.min(i + batchSize, updates.size());
+				int[] counts = jdbcTemplate.batchUpdate(updateSql, updateArgs.subList(i, end));
+				for (int j = 0; j < counts.length; j++) {
+					VersionedStateMachineId id = updates.get(i + j);
+					if (counts[j] == 0) {
+						conflicts.add(id);
+					} else {
+						id.setVersion(id.getVersion() + 1);
+					}
+				}
+			}
+		} catch (DuplicateKeyException e) {
+			// contexts were inserted concurrently after those were read,
+			// ids of batches not inserted are still at version zero
+			for (VersionedStateMachineId id : inserts) {
+				if (id.getVersion() == 0) {
+					conflicts.add(id);
+				}
+			}
+			throw new StateMachineException("Contexts modified concurrently " + conflicts, e);
+		} catch (DataAccessException e) {
+			throw new StateMachineException("Error persisting data", e);
+		}
+		if (!conflicts.isEmpty()) {
+			throw new StateMachineException("Contexts modified concurrently " + conflicts);
+		}
+	}
+
+	/**
+	 * Read multiple contexts. Versions of given ids are updated from
+	 * persisted contexts and set to zero for missing contexts.
+	 *
+	 * @param ids the ids
+	 * @return the contexts in order of given ids, null for missing contexts
+	 */
+	public List<StateMachineContext<S, E>> readAll(List<VersionedStateMachineId> ids) {
+		final Map<String, StateMachineContext<S, E>> contexts = new HashMap<String, StateMachineContext<S, E>>(ids.size());
+		final Map<String, Long> versions = new HashMap<String, Long>(ids.size());
+		for (int i = 0; i < ids.size(); i += batchSize) {
+			List<VersionedStateMachineId> batch = ids.subList(i, Math.min(i + batchSize, ids.size()));
+			Object[] args = new Object[batch.size()];
+			String[] placeholders = new String[batch.size()];
+			for (int j = 0; j < args.length; j++) {
+				args[j] = batch.get(j).getId();
+				placeholders[j] = "?";
+			}
+			String sql = selectSql + "(" + StringUtils.arrayToCommaDelimitedString(placeholders) + ")";
+			jdbcTemplate.query(sql, args, new RowCallbackHandler() {
+
+				@Override
+				public void processRow(ResultSet rs) throws SQLException {
+					String id = rs.getString(1);
+					versions.put(id, rs.getLong(2));
+					contexts.put(id, serializationService.deserializeStateMachineContext(rs.getBytes(3)));
+				}
+			});
+		}
+		List<StateMachineContext<S, E>> result = new ArrayList<StateMachineContext<S, E>>(ids.size());
+		for (VersionedStateMachineId id : ids) {
+			Long version = versions.get(id.getId());
+			id.setVersion(version != null ? version : 0);
+			result.add(contexts.get(id.getId()));
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.recipes.persist;
+
+import org.springframework.util.Assert;
+
+/**
+ * Identifies a persisted state machine context and keeps track of a
+ * version of it as last seen by a {@link JdbcStateMachinePersist}. A
+ * version is updated with every read and write, version zero meaning
+ * that a context has not yet been persisted.
+ *
+ * @author Janne Valkealahti
+ *
+ */
+public class VersionedStateMachineId {
+
+	private final String id;
+	private volatile long version;
+
+	/**
+	 * Instantiates a new versioned state machine id for a context
+	 * not yet persisted.
+	 *
+	 * @param id the machine or business id
+	 */
+	public VersionedStateMachineId(String id) {
+		this(id, 0);
+	}
+
+	/**
+	 * Instantiates a new versioned state machine id.
+	 *
+	 * @param id the machine or business id
+	 * @param version the known version
+	 */
+	public VersionedStateMachineId(String id, long version) {
+		Assert.notNull(id, "Id must be set");
+		this.id = id;
+		this.version = version;
+	}
+
+	/**
+	 * Gets the machine or business id.
+	 *
+	 * @return the id
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the version.
+	 *
+	 * @return the version
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Sets the version.
+	 *
+	 * @param version the new version
+	 */
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	@Override
+	public String toString() {
+		return "VersionedStateMachineId [id=" + id + ", version=" + version + "]";
+	}
+
+}
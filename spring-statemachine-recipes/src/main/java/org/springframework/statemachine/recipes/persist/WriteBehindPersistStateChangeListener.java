@@ -0,0 +1,299 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.recipes.persist;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.recipes.persist.PersistStateMachineHandler.PersistStateChangeListener;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.support.LifecycleObjectSupport;
+import org.springframework.statemachine.transition.Transition;
+import org.springframework.util.Assert;
+
+/**
+ * {@link PersistStateChangeListener} which writes state changes behind
+ * the state machine using {@link JdbcTemplate} batch updates.
+ * <p>
+ * A state change is only recorded in memory, keyed by a value of a
+ * message header identifying an entity. Repeated changes of a same entity
+ * are coalesced so that only a latest state is written. Pending changes
+ * are flushed with a single batch update when a batch size is reached,
+ * when a flush interval elapses and when this listener is stopped.
+ * Size triggered flushes are executed with a flush {@link TaskExecutor},
+ * by default a dedicated {@link SimpleAsyncTaskExecutor}, so that a thread
+ * recording a change never waits for a database. Interval triggered
+ * flushes are executed with a {@link TaskScheduler}.
+ * <p>
+ * Number of pending entities is capped by a max pending size. When a
+ * change of a new entity would exceed it, the recording thread flushes
+ * pending changes itself, throttling state changes to a rate a database
+ * can keep up with. Changes of a failed write are kept pending, thus
+ * while a database is unavailable pending entities may exceed the cap.
+ * <p>
+ * Flushes never overlap and are executed in an order changes were taken
+ * from memory, thus an older state of an entity never overwrites a newer
+ * one. A call to {@link #flush()} acts as a barrier, returning only
+ * after all changes recorded before it have been written.
+ * <p>
+ * An update statement is given a state id as a first parameter and an
+ * entity key as a second parameter, for example
+ * {@code update orders set state = ? where id = ?}.
+ *
+ * @author Janne Valkealahti
+ *
+ */
+public class WriteBehindPersistStateChangeListener extends LifecycleObjectSupport implements
+		PersistStateChangeListener {
+
+	private static final Log log = LogFactory.getLog(WriteBehindPersistStateChangeListener.class);
+
+	private final JdbcTemplate jdbcTemplate;
+	private final String updateSql;
+	private final String keyHeader;
+	private int batchSize = 100;
+	private long flushInterval = 1000;
+	private int maxPending = 10000;
+	private TaskExecutor flushExecutor = new SimpleAsyncTaskExecutor("write-behind-");
+	private final Object pendingLock = new Object();
+	private final Object flushLock = new Object();
+	private Map<Object, String> pending = new LinkedHashMap<Object, String>();
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+	private final AtomicLong writtenCount = new AtomicLong();
+	private volatile ScheduledFuture<?> flushFuture;
+
+	/**
+	 * Instantiates a new write behind persist state change listener.
+	 *
+	 * @param jdbcTemplate the jdbc template
+	 * @param updateSql the update statement taking a state and a key
+	 * @param keyHeader the message header identifying an entity
+	 */
+	public WriteBehindPersistStateChangeListener(JdbcTemplate jdbcTemplate, String updateSql, String keyHeader) {
+		Assert.notNull(jdbcTemplate, "Jdbc template must be set");
+		Assert.hasText(updateSql, "Update statement must be set");
+		Assert.hasText(keyHeader, "Key header must be set");
+		this.jdbcTemplate = jdbcTemplate;
+		this.updateSql = updateSql;
+		this.keyHeader = keyHeader;
+	}
+
+	/**
+	 * Sets the number of pending entities triggering a flush. Zero or
+	 * negative value disables size triggered flushes. Default is 100.
+	 *
+	 * @param batchSize the batch size
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the interval in milliseconds between time triggered flushes.
+	 * Zero or negative value disables time triggered flushes. Default
+	 * is 1000.
+	 *
+	 * @param flushInterval the flush interval in milliseconds
+	 */
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Sets the max number of pending entities. When a change of a new
+	 * entity would exceed it, pending changes are flushed on a calling
+	 * thread. Zero or negative value disables the cap. Default is 10000.
+	 *
+	 * @param maxPending the max pending entities
+	 */
+	public void setMaxPending(int maxPending) {
+		this.maxPending = maxPending;
+	}
+
+	/**
+	 * Sets the task executor used for size triggered flushes. Default is
+	 * a {@link SimpleAsyncTaskExecutor}. Setting a synchronous executor
+	 * makes size triggered flushes run on a thread recording a change.
+	 *
+	 * @param flushExecutor the flush executor
+	 */
+	public void setFlushExecutor(TaskExecutor flushExecutor) {
+		Assert.notNull(flushExecutor, "Flush executor must be set");
+		this.flushExecutor = flushExecutor;
+	}
+
+	@Override
+	protected void doStart() {
+		TaskScheduler taskScheduler = getTaskScheduler();
+		if (flushInterval > 0 && taskScheduler != null) {
+			flushFuture = taskScheduler.scheduleWithFixedDelay(new Runnable() {
+
+				@Override
+				public void run() {
+					flushQuietly();
+				}
+			}, flushInterval);
+		}
+	}
+
+	@Override
+	protected void doStop() {
+		ScheduledFuture<?> future = flushFuture;
+		if (future != null) {
+			future.cancel(false);
+			flushFuture = null;
+		}
+		flushQuietly();
+	}
+
+	@Override
+	public void onPersist(State<String, String> state, Message<String> message,
+			Transition<String, String> transition, StateMachine<String, String> stateMachine) {
+		if (state == null || message == null) {
+			return;
+		}
+		Object key = message.getHeaders().get(keyHeader);
+		if (key == null) {
+			return;
+		}
+		if (maxPending > 0) {
+			boolean full;
+			synchronized (pendingLock) {
+				full = pending.size() >= maxPending && !pending.containsKey(key);
+			}
+			if (full) {
+				flushQuietly();
+			}
+		}
+		int size;
+		synchronized (pendingLock) {
+			pending.put(key, state.getId());
+			size = pending.size();
+		}
+		if (batchSize > 0 && size >= batchSize) {
+			requestFlush();
+		}
+	}
+
+	/**
+	 * Writes all pending state changes and waits until those and any
+	 * flush already in progress have been written.
+	 *
+	 * @return the number of written entities
+	 */
+	public int flush() {
+		synchronized (flushLock) {
+			Map<Object, String> batch;
+			synchronized (pendingLock) {
+				if (pending.isEmpty()) {
+					return 0;
+				}
+				batch = pending;
+				pending = new LinkedHashMap<Object, String>();
+			}
+			List<Object[]> args = new ArrayList<Object[]>(batch.size());
+			for (Entry<Object, String> entry : batch.entrySet()) {
+				args.add(new Object[] { entry.getValue(), entry.getKey() });
+			}
+			try {
+				jdbcTemplate.batchUpdate(updateSql, args);
+			} catch (RuntimeException e) {
+				requeue(batch);
+				throw e;
+			}
+			writtenCount.addAndGet(batch.size());
+			return batch.size();
+		}
+	}
+
+	/**
+	 * Gets the number of entities having a state change not yet written.
+	 *
+	 * @return the pending count
+	 */
+	public int getPendingCount() {
+		synchronized (pendingLock) {
+			return pending.size();
+		}
+	}
+
+	/**
+	 * Gets the number of entity states written so far.
+	 *
+	 * @return the written count
+	 */
+	public long getWrittenCount() {
+		return writtenCount.get();
+	}
+
+	private void requestFlush() {
+		if (!flushRequested.compareAndSet(false, true)) {
+			return;
+		}
+		Runnable task = new Runnable() {
+
+			@Override
+			public void run() {
+				flushRequested.set(false);
+				flushQuietly();
+			}
+		};
+		try {
+			flushExecutor.execute(task);
+		} catch (TaskRejectedException e) {
+			flushRequested.set(false);
+			log.warn("Flush request rejected, pending changes are written with a next flush", e);
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (Exception e) {
+			log.error("Error flushing pending state changes", e);
+		}
+	}
+
+	private void requeue(Map<Object, String> batch) {
+		// failed changes are put in front of pending changes recorded
+		// while a write was in progress, those are then kept behind in
+		// their own order and a newer change of a same entity wins
+		synchronized (pendingLock) {
+			Map<Object, String> merged = new LinkedHashMap<Object, String>(batch);
+			for (Entry<Object, String> entry : pending.entrySet()) {
+				merged.remove(entry.getKey());
+				merged.put(entry.getKey(), entry.getValue());
+			}
+			pending = merged;
+		}
+	}
+
+}
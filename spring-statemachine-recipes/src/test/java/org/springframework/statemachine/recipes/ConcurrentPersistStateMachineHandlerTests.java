@@ -0,0 +1,292 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.recipes;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineSystemConstants;
+import org.springframework.statemachine.config.EnableStateMachineFactory;
+import org.springframework.statemachine.config.StateMachineConfigurerAdapter;
+import org.springframework.statemachine.config.StateMachineFactory;
+import org.springframework.statemachine.config.builders.StateMachineConfigurationConfigurer;
+import org.springframework.statemachine.config.builders.StateMachineStateConfigurer;
+import org.springframework.statemachine.config.builders.StateMachineTransitionConfigurer;
+import org.springframework.statemachine.recipes.persist.ConcurrentPersistStateMachineHandler;
+import org.springframework.statemachine.recipes.persist.PersistStateMachineHandler.PersistStateChangeListener;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.transition.Transition;
+
+public class ConcurrentPersistStateMachineHandlerTests {
+
+	private AnnotationConfigApplicationContext context;
+
+	@Before
+	public void setup() {
+		context = new AnnotationConfigApplicationContext(Config1.class);
+	}
+
+	@After
+	public void clean() {
+		context.close();
+	}
+
+	@Test
+	public void testIndependentEntitiesInParallel() throws Exception {
+		final ConcurrentPersistStateMachineHandler handler = buildHandler();
+		final Map<Integer, String> db = new ConcurrentHashMap<Integer, String>();
+		handler.addPersistStateChangeListener(new TestPersistStateChangeListener(db));
+
+		int threads = 4;
+		int orders = 200;
+		for (int i = 0; i < orders; i++) {
+			db.put(i, "PLACED");
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			futures.add(executor.submit(new Callable<Boolean>() {
+
+				@Override
+				public Boolean call() throws Exception {
+					boolean accepted = true;
+					for (int order = thread; order < 200; order += 4) {
+						for (String event : new String[] { "PROCESS", "SEND", "DELIVER" }) {
+							accepted &= handler.handleEventWithState(
+									MessageBuilder.withPayload(event).setHeader("order", order).build(), db.get(order));
+						}
+					}
+					return accepted;
+				}
+			}));
+		}
+		for (Future<Boolean> future : futures) {
+			assertThat(future.get(), is(true));
+		}
+		executor.shutdown();
+
+		for (int i = 0; i < orders; i++) {
+			assertThat(db.get(i), is("DELIVERED"));
+		}
+		assertThat(handler.getPoolMetrics().getCreatedCount(), lessThanOrEqualTo((long)threads));
+		assertThat(handler.getPoolMetrics().getActiveCount(), is(0));
+		handler.stop();
+	}
+
+	@Test
+	public void testEventDenied() throws Exception {
+		ConcurrentPersistStateMachineHandler handler = buildHandler();
+		Map<Integer, String> db = new ConcurrentHashMap<Integer, String>();
+		handler.addPersistStateChangeListener(new TestPersistStateChangeListener(db));
+		db.put(1, "SENT");
+
+		assertThat(handler.handleEventWithState(MessageBuilder.withPayload("PROCESS").setHeader("order", 1).build(),
+				"SENT"), is(false));
+		assertThat(db.get(1), is("SENT"));
+		assertThat(handler.handleEventWithState(MessageBuilder.withPayload("DELIVER").setHeader("order", 1).build(),
+				"SENT"), is(true));
+		assertThat(db.get(1), is("DELIVERED"));
+		handler.stop();
+	}
+
+	@Test
+	public void testDeferredEventNotLeakedToNextEntity() throws Exception {
+		context.close();
+		context = new AnnotationConfigApplicationContext(Config2.class);
+		ConcurrentPersistStateMachineHandler handler = buildHandler(1);
+		Map<Integer, String> db = new ConcurrentHashMap<Integer, String>();
+		handler.addPersistStateChangeListener(new TestPersistStateChangeListener(db));
+		db.put(1, "PLACED");
+		db.put(2, "PROCESSING");
+
+		// DELIVER is deferred in PLACED and must not be processed
+		// when a same machine is lent for a next entity
+		handler.handleEventWithState(MessageBuilder.withPayload("DELIVER").setHeader("order", 1).build(), "PLACED");
+		assertThat(handler.handleEventWithState(MessageBuilder.withPayload("SEND").setHeader("order", 2).build(),
+				"PROCESSING"), is(true));
+		assertThat(handler.getPoolMetrics().getCreatedCount(), is(1l));
+		assertThat(db.get(1), is("PLACED"));
+		assertThat(db.get(2), is("SENT"));
+		handler.stop();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testAsyncExecutorRejected() throws Exception {
+		context.close();
+		context = new AnnotationConfigApplicationContext(Config3.class);
+		ConcurrentPersistStateMachineHandler handler = buildHandler(0);
+		try {
+			handler.handleEventWithState(MessageBuilder.withPayload("PROCESS").setHeader("order", 1).build(), "PLACED");
+		} finally {
+			assertThat(handler.getPoolMetrics().getActiveCount(), is(0));
+			handler.stop();
+		}
+	}
+
+	private ConcurrentPersistStateMachineHandler buildHandler() {
+		return buildHandler(0);
+	}
+
+	@SuppressWarnings("unchecked")
+	private ConcurrentPersistStateMachineHandler buildHandler(int maxSize) {
+		StateMachineFactory<String, String> factory = context.getBean(
+				StateMachineSystemConstants.DEFAULT_ID_STATEMACHINEFACTORY, StateMachineFactory.class);
+		ConcurrentPersistStateMachineHandler handler = new ConcurrentPersistStateMachineHandler(factory, maxSize);
+		handler.afterPropertiesSet();
+		handler.start();
+		return handler;
+	}
+
+	private static class TestPersistStateChangeListener implements PersistStateChangeListener {
+
+		final Map<Integer, String> db;
+
+		TestPersistStateChangeListener(Map<Integer, String> db) {
+			this.db = db;
+		}
+
+		@Override
+		public void onPersist(State<String, String> state, Message<String> message,
+				Transition<String, String> transition, StateMachine<String, String> stateMachine) {
+			if (message != null && message.getHeaders().containsKey("order")) {
+				db.put(message.getHeaders().get("order", Integer.class), state.getId());
+			}
+		}
+	}
+
+	@Configuration
+	@EnableStateMachineFactory
+	static class Config1 extends StateMachineConfigurerAdapter<String, String> {
+
+		@Override
+		public void configure(StateMachineConfigurationConfigurer<String, String> config) throws Exception {
+			config
+				.withConfiguration()
+					.taskExecutor(new SyncTaskExecutor());
+		}
+
+		@Override
+		public void configure(StateMachineStateConfigurer<String, String> states) throws Exception {
+			states
+				.withStates()
+					.initial("PLACED")
+					.state("PROCESSING")
+					.state("SENT")
+					.state("DELIVERED");
+		}
+
+		@Override
+		public void configure(StateMachineTransitionConfigurer<String, String> transitions) throws Exception {
+			transitions
+				.withExternal()
+					.source("PLACED").target("PROCESSING").event("PROCESS")
+					.and()
+				.withExternal()
+					.source("PROCESSING").target("SENT").event("SEND")
+					.and()
+				.withExternal()
+					.source("SENT").target("DELIVERED").event("DELIVER");
+		}
+
+	}
+
+	@Configuration
+	@EnableStateMachineFactory
+	static class Config2 extends StateMachineConfigurerAdapter<String, String> {
+
+		@Override
+		public void configure(StateMachineConfigurationConfigurer<String, String> config) throws Exception {
+			config
+				.withConfiguration()
+					.taskExecutor(new SyncTaskExecutor());
+		}
+
+		@Override
+		public void configure(StateMachineStateConfigurer<String, String> states) throws Exception {
+			states
+				.withStates()
+					.initial("PLACED")
+					.state("PLACED", "DELIVER")
+					.state("PROCESSING")
+					.state("SENT")
+					.state("DELIVERED");
+		}
+
+		@Override
+		public void configure(StateMachineTransitionConfigurer<String, String> transitions) throws Exception {
+			transitions
+				.withExternal()
+					.source("PLACED").target("PROCESSING").event("PROCESS")
+					.and()
+				.withExternal()
+					.source("PROCESSING").target("SENT").event("SEND")
+					.and()
+				.withExternal()
+					.source("SENT").target("DELIVERED").event("DELIVER");
+		}
+
+	}
+
+	@Configuration
+	@EnableStateMachineFactory
+	static class Config3 extends StateMachineConfigurerAdapter<String, String> {
+
+		@Bean
+		public TaskExecutor taskExecutor() {
+			return new SimpleAsyncTaskExecutor();
+		}
+
+		@Override
+		public void configure(StateMachineStateConfigurer<String, String> states) throws Exception {
+			states
+				.withStates()
+					.initial("PLACED")
+					.state("PROCESSING");
+		}
+
+		@Override
+		public void configure(StateMachineTransitionConfigurer<String, String> transitions) throws Exception {
+			transitions
+				.withExternal()
+					.source("PLACED").target("PROCESSING").event("PROCESS");
+		}
+
+	}
+
+}
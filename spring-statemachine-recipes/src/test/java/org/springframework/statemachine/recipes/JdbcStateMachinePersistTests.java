@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.recipes;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachineException;
+import org.springframework.statemachine.recipes.persist.JdbcStateMachinePersist;
+import org.springframework.statemachine.recipes.persist.VersionedStateMachineId;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+public class JdbcStateMachinePersistTests {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+
+	@Before
+	public void setup() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("create table state_machine_context (machine_id varchar(256) not null primary key, "
+				+ "version bigint not null, context varbinary(65536) not null)");
+	}
+
+	@After
+	public void clean() {
+		database.shutdown();
+	}
+
+	@Test
+	public void testWriteAndRead() {
+		JdbcStateMachinePersist<String, String> persist = new JdbcStateMachinePersist<String, String>(jdbcTemplate);
+
+		List<StateMachineContext<String, String>> childs = new ArrayList<StateMachineContext<String, String>>();
+		childs.add(new DefaultStateMachineContext<String, String>("S11", null, null, null));
+		childs.add(new DefaultStateMachineContext<String, String>("S21", null, null, null));
+		Map<String, Object> headers = new HashMap<String, Object>();
+		headers.put("order", 1);
+		DefaultExtendedState extendedState = new DefaultExtendedState();
+		extendedState.getVariables().put("count", 2);
+		VersionedStateMachineId id = new VersionedStateMachineId("order1");
+		persist.write(new DefaultStateMachineContext<String, String>(childs, "S1", "E1", headers, extendedState), id);
+		assertThat(id.getVersion(), is(1l));
+
+		VersionedStateMachineId readId = new VersionedStateMachineId("order1");
+		StateMachineContext<String, String> context = persist.read(readId);
+		assertThat(readId.getVersion(), is(1l));
+		assertThat(context.getState(), is("S1"));
+		assertThat(context.getEvent(), is("E1"));
+		assertThat(context.getEventHeaders().get("order"), is((Object)1));
+		assertThat(context.getExtendedState().getVariables().get("count"), is((Object)2));
+		assertThat(context.getChilds().size(), is(2));
+		assertThat(context.getChilds().get(0).getState(), is("S11"));
+		assertThat(context.getChilds().get(1).getState(), is("S21"));
+
+		VersionedStateMachineId missingId = new VersionedStateMachineId("order2", 3);
+		assertThat(persist.read(missingId), nullValue());
+		assertThat(missingId.getVersion(), is(0l));
+	}
+
+	@Test
+	public void testOptimisticVersioning() {
+		JdbcStateMachinePersist<String, String> persist = new JdbcStateMachinePersist<String, String>(jdbcTemplate);
+		VersionedStateMachineId id1 = new VersionedStateMachineId("order1");
+		persist.write(context("S1"), id1);
+
+		VersionedStateMachineId id2 = new VersionedStateMachineId("order1");
+		assertThat(persist.read(id2).getState(), is("S1"));
+		persist.write(context("S2"), id2);
+		assertThat(id2.getVersion(), is(2l));
+
+		StateMachineException e1 = null;
+		try {
+			persist.write(context("S3"), id1);
+		} catch (StateMachineException e) {
+			e1 = e;
+		}
+		assertThat(e1, notNullValue());
+		assertThat(id1.getVersion(), is(1l));
+		assertThat(persist.read(id1).getState(), is("S2"));
+		assertThat(id1.getVersion(), is(2l));
+
+		StateMachineException e2 = null;
+		try {
+			persist.write(context("S3"), new VersionedStateMachineId("order1"));
+		} catch (StateMachineException e) {
+			e2 = e;
+		}
+		assertThat(e2, notNullValue());
+		assertThat(e2.getMessage(), startsWith("Contexts modified concurrently"));
+	}
+
+	@Test
+	public void testBatchWriteAndRead() {
+		JdbcStateMachinePersist<String, String> persist = new JdbcStateMachinePersist<String, String>(jdbcTemplate);
+		persist.setBatchSize(3);
+
+		List<VersionedStateMachineId> ids = new ArrayList<VersionedStateMachineId>();
+		Map<VersionedStateMachineId, StateMachineContext<String, String>> contexts =
+				new LinkedHashMap<VersionedStateMachineId, StateMachineContext<String, String>>();
+		for (int i = 0; i < 10; i++) {
+			VersionedStateMachineId id = new VersionedStateMachineId("order" + i);
+			ids.add(id);
+			contexts.put(id, context("S" + i));
+		}
+		persist.writeAll(contexts);
+		assertThat(jdbcTemplate.queryForObject("select count(*) from state_machine_context", Integer.class), is(10));
+
+		for (VersionedStateMachineId id : ids) {
+			contexts.put(id, context("X"));
+		}
+		persist.writeAll(contexts);
+
+		List<VersionedStateMachineId> readIds = new ArrayList<VersionedStateMachineId>();
+		readIds.add(new VersionedStateMachineId("order9"));
+		readIds.add(new VersionedStateMachineId("missing"));
+		readIds.add(new VersionedStateMachineId("order0"));
+		readIds.add(new VersionedStateMachineId("order5"));
+		List<StateMachineContext<String, String>> read = persist.readAll(readIds);
+		assertThat(read.size(), is(4));
+		assertThat(read.get(0).getState(), is("X"));
+		assertThat(read.get(1), nullValue());
+		assertThat(read.get(2).getState(), is("X"));
+		assertThat(read.get(3).getState(), is("X"));
+		List<Long> versions = new ArrayList<Long>();
+		for (VersionedStateMachineId id : readIds) {
+			versions.add(id.getVersion());
+		}
+		assertThat(versions, contains(2l, 0l, 2l, 2l));
+	}
+
+	private static StateMachineContext<String, String> context(String state) {
+		return new DefaultStateMachineContext<String, String>(state, null, null, null);
+	}
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.statemachine.recipes;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
+import org.springframework.statemachine.recipes.persist.WriteBehindPersistStateChangeListener;
+import org.springframework.statemachine.state.ObjectState;
+
+public class WriteBehindPersistStateChangeListenerTests {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+
+	@Before
+	public void setup() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("create table orders (id int, state varchar(256))");
+		for (int i = 0; i < 10; i++) {
+			jdbcTemplate.update("insert into orders (id, state) values (?, ?)", i, "PLACED");
+		}
+	}
+
+	@After
+	public void clean() {
+		database.shutdown();
+	}
+
+	@Test
+	public void testCoalesceAndFlush() {
+		WriteBehindPersistStateChangeListener listener = buildListener(0, 0);
+
+		persist(listener, 1, "PROCESSING");
+		persist(listener, 1, "SENT");
+		persist(listener, 2, "PROCESSING");
+		assertThat(listener.getPendingCount(), is(2));
+		assertThat(state(1), is("PLACED"));
+
+		assertThat(listener.flush(), is(2));
+		assertThat(listener.getPendingCount(), is(0));
+		assertThat(listener.getWrittenCount(), is(2l));
+		assertThat(state(1), is("SENT"));
+		assertThat(state(2), is("PROCESSING"));
+		assertThat(listener.flush(), is(0));
+		listener.stop();
+	}
+
+	@Test
+	public void testFlushOnBatchSize() {
+		WriteBehindPersistStateChangeListener listener = buildListener(3, 0);
+		listener.setFlushExecutor(new SyncTaskExecutor());
+
+		persist(listener, 1, "PROCESSING");
+		persist(listener, 2, "PROCESSING");
+		assertThat(state(1), is("PLACED"));
+		persist(listener, 3, "PROCESSING");
+		assertThat(listener.getPendingCount(), is(0));
+		assertThat(state(1), is("PROCESSING"));
+		assertThat(state(3), is("PROCESSING"));
+		listener.stop();
+	}
+
+	@Test
+	public void testFlushOnBatchSizeNotOnCallingThread() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicReference<Thread> flushThread = new AtomicReference<Thread>();
+		WriteBehindPersistStateChangeListener listener = new WriteBehindPersistStateChangeListener(new JdbcTemplate(
+				database) {
+
+			@Override
+			public int[] batchUpdate(String sql, List<Object[]> batchArgs) throws DataAccessException {
+				flushThread.set(Thread.currentThread());
+				int[] updated = super.batchUpdate(sql, batchArgs);
+				latch.countDown();
+				return updated;
+			}
+		}, "update orders set state = ? where id = ?", "order");
+		listener.setBatchSize(2);
+		listener.setFlushInterval(0);
+		listener.afterPropertiesSet();
+
+		persist(listener, 1, "PROCESSING");
+		persist(listener, 2, "PROCESSING");
+		assertThat(latch.await(2, TimeUnit.SECONDS), is(true));
+		assertThat(flushThread.get(), not(Thread.currentThread()));
+		assertThat(state(2), is("PROCESSING"));
+		listener.stop();
+	}
+
+	@Test
+	public void testMaxPendingFlushesOnCallingThread() {
+		WriteBehindPersistStateChangeListener listener = buildListener(0, 0);
+		listener.setMaxPending(2);
+
+		persist(listener, 1, "PROCESSING");
+		persist(listener, 2, "PROCESSING");
+		persist(listener, 2, "SENT");
+		assertThat(listener.getPendingCount(), is(2));
+		assertThat(state(1), is("PLACED"));
+		persist(listener, 3, "PROCESSING");
+		assertThat(listener.getPendingCount(), is(1));
+		assertThat(state(1), is("PROCESSING"));
+		assertThat(state(2), is("SENT"));
+		assertThat(state(3), is("PLACED"));
+		listener.stop();
+	}
+
+	@Test
+	public void testFlushOnInterval() throws Exception {
+		WriteBehindPersistStateChangeListener listener = buildListener(0, 50);
+		listener.setTaskScheduler(new ConcurrentTaskScheduler(Executors.newSingleThreadScheduledExecutor()));
+		listener.start();
+
+		persist(listener, 1, "SENT");
+		for (int i = 0; i < 100 && listener.getPendingCount() > 0; i++) {
+			Thread.sleep(20);
+		}
+		assertThat(state(1), is("SENT"));
+		listener.stop();
+	}
+
+	@Test
+	public void testFlushOnStop() {
+		WriteBehindPersistStateChangeListener listener = buildListener(0, 0);
+		listener.start();
+		persist(listener, 1, "DELIVERED");
+		listener.stop();
+		assertThat(state(1), is("DELIVERED"));
+	}
+
+	@Test
+	public void testFailedFlushKeepsNewerChanges() {
+		jdbcTemplate.execute("alter table orders alter column state set data type varchar(8)");
+		WriteBehindPersistStateChangeListener listener = buildListener(0, 0);
+
+		persist(listener, 1, "TOO_LONG_STATE");
+		persist(listener, 2, "SENT");
+		try {
+			listener.flush();
+		} catch (RuntimeException e) {
+		}
+		assertThat(listener.getPendingCount(), is(2));
+		persist(listener, 1, "SENT");
+		assertThat(listener.flush(), is(2));
+		assertThat(state(1), is("SENT"));
+		assertThat(state(2), is("SENT"));
+	}
+
+	private WriteBehindPersistStateChangeListener buildListener(int batchSize, long flushInterval) {
+		WriteBehindPersistStateChangeListener listener = new WriteBehindPersistStateChangeListener(jdbcTemplate,
+				"update orders set state = ? where id = ?", "order");
+		listener.setBatchSize(batchSize);
+		listener.setFlushInterval(flushInterval);
+		listener.afterPropertiesSet();
+		return listener;
+	}
+
+	private static void persist(WriteBehindPersistStateChangeListener listener, int order, String state) {
+		listener.onPersist(new ObjectState<String, String>(state),
+				MessageBuilder.withPayload("E").setHeader("order", order).build(), null, null);
+	}
+
+	private String state(int order) {
+		return jdbcTemplate.queryForObject("select state from orders where id = ?", String.class, order);
+	}
+
+}
@@ -25,6 +25,7 @@ import static org.junit.Assert.assertThat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -34,6 +35,7 @@ import org.apache.zookeeper.KeeperException;
 import org.junit.Test;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.messaging.Message;
+import org.springframework.statemachine.EventResult;
 import org.springframework.statemachine.ExtendedState;
 import org.springframework.statemachine.StateMachine;
 import org.springframework.statemachine.StateMachineContext;
@@ -46,6 +48,7 @@ import org.springframework.statemachine.state.State;
 import org.springframework.statemachine.support.DefaultExtendedState;
 import org.springframework.statemachine.support.DefaultStateMachineContext;
 import org.springframework.statemachine.transition.Transition;
+import org.springframework.util.concurrent.ListenableFuture;
 
 public class ZookeeperStateMachineEnsembleTests extends AbstractZookeeperTests {
 
@@ -631,6 +634,21 @@ public class ZookeeperStateMachineEnsembleTests extends AbstractZookeeperTests {
 			return false;
 		}
 
+		@Override
+		public List<Boolean> sendEvents(Collection<Message<String>> events) {
+			return null;
+		}
+
+		@Override
+		public List<Boolean> sendEvents(Iterator<Message<String>> events) {
+			return null;
+		}
+
+		@Override
+		public ListenableFuture<EventResult<String, String>> sendEventAsync(Message<String> event) {
+			return null;
+		}
+
 		@Override
 		public State<String, String> getState() {
 			return null;